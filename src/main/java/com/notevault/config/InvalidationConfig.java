@@ -0,0 +1,42 @@
+package com.notevault.config;
+
+import com.notevault.invalidation.InvalidationBus;
+import com.notevault.invalidation.InvalidationTransport;
+import com.notevault.invalidation.JdbcInvalidationTransport;
+import com.notevault.invalidation.LocalInvalidationTransport;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Sets up the cache invalidation bus. With app.invalidation.transport=jdbc, the default,
+ * nodes exchange events through the database; set it to local when running a single
+ * node to keep events in memory.
+ */
+@Configuration
+public class InvalidationConfig {
+
+    @Bean
+    public InvalidationBus invalidationBus(InvalidationTransport transport, ApplicationEventPublisher eventPublisher) {
+        return new InvalidationBus(transport, eventPublisher);
+    }
+
+    @Bean(initMethod = "initializeSchema")
+    @ConditionalOnProperty(name = "app.invalidation.transport", havingValue = "jdbc", matchIfMissing = true)
+    public JdbcInvalidationTransport jdbcInvalidationTransport(
+            JdbcTemplate jdbcTemplate,
+            @Value("${app.invalidation.batch-size:500}") int batchSize,
+            @Value("${app.invalidation.gap-timeout-ms:10000}") long gapTimeoutMs,
+            @Value("${app.invalidation.retention-ms:3600000}") long retentionMs) {
+        return new JdbcInvalidationTransport(jdbcTemplate, batchSize, gapTimeoutMs, retentionMs);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "app.invalidation.transport", havingValue = "local")
+    public LocalInvalidationTransport localInvalidationTransport() {
+        return new LocalInvalidationTransport();
+    }
+}
@@ -0,0 +1,42 @@
+package com.notevault.config;
+
+import com.notevault.service.SessionRevocationService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import javax.servlet.*;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpSession;
+import java.io.IOException;
+
+/**
+ * Drops sessions of users that were banned or lost admin rights after logging in,
+ * so controllers never see stale userId/isAdmin attributes.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 100)
+@RequiredArgsConstructor
+public class SessionRevocationFilter implements Filter {
+
+    private final SessionRevocationService sessionRevocationService;
+
+    @Override
+    public void doFilter(ServletRequest req, ServletResponse res, FilterChain chain)
+            throws IOException, ServletException {
+        HttpSession session = ((HttpServletRequest) req).getSession(false);
+        if (session != null) {
+            try {
+                Integer userId = (Integer) session.getAttribute("userId");
+                Integer epoch = (Integer) session.getAttribute(SessionRevocationService.SESSION_EPOCH_ATTRIBUTE);
+                if (userId != null && sessionRevocationService.isRevoked(userId, epoch)) {
+                    session.invalidate();
+                }
+            } catch (IllegalStateException e) {
+                // Session was invalidated concurrently
+            }
+        }
+        chain.doFilter(req, res);
+    }
+}
@@ -0,0 +1,35 @@
+package com.notevault.config;
+
+import com.notevault.session.JdbcSessionRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.session.config.annotation.web.http.EnableSpringHttpSession;
+
+import java.time.Duration;
+
+/**
+ * Replaces the container's HttpSession with sessions kept in the database, so any node
+ * behind the load balancer can serve any request. Set app.session.store=container to
+ * fall back to the servlet container's in-memory sessions.
+ */
+@Configuration
+@EnableSpringHttpSession
+@ConditionalOnProperty(name = "app.session.store", havingValue = "jdbc")
+public class SessionStoreConfig {
+
+    @Bean(initMethod = "initializeSchema")
+    public JdbcSessionRepository sessionRepository(
+            JdbcTemplate jdbcTemplate,
+            @Value("${app.session.max-inactive-interval-seconds:1800}") long maxInactiveIntervalSeconds,
+            @Value("${app.session.touch-interval-seconds:60}") long touchIntervalSeconds,
+            @Value("${app.session.near-cache-size:10000}") int nearCacheSize,
+            @Value("${app.session.cleanup-batch-size:500}") int cleanupBatchSize) {
+        return new JdbcSessionRepository(jdbcTemplate,
+                Duration.ofSeconds(maxInactiveIntervalSeconds),
+                Duration.ofSeconds(touchIntervalSeconds),
+                nearCacheSize, cleanupBatchSize);
+    }
+}
@@ -4,12 +4,21 @@ import lombok.RequiredArgsConstructor;
 import com.notevault.model.BannedEmail;
 import com.notevault.model.User;
 import com.notevault.service.BannedEmailService;
+import com.notevault.service.NoteExportService;
 import com.notevault.service.NoteService;
+import com.notevault.service.SingleFlight;
+import com.notevault.service.StorageAccountingService;
+import com.notevault.service.UploadGarbageCollector;
 import com.notevault.service.UserService;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
+import java.io.IOException;
+import java.time.LocalDate;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -23,6 +32,10 @@ public class AdminController {
     private final UserService userService;
     private final NoteService noteService;
     private final BannedEmailService bannedEmailService;
+    private final UploadGarbageCollector uploadGarbageCollector;
+    private final StorageAccountingService storageAccountingService;
+    private final NoteExportService noteExportService;
+    private final SingleFlight singleFlight;
 
     // Helper method to check if the current user is an admin
     private boolean isAdmin(HttpSession session) {
@@ -294,4 +307,149 @@ public class AdminController {
             ));
         }
     }
-}
\ No newline at end of file
+
+    @PostMapping("/uploads/gc")
+    public ResponseEntity<?> collectOrphanedUploads(
+            @RequestParam(defaultValue = "true") boolean dryRun,
+            HttpSession session) {
+        if (!isAdmin(session)) {
+            return ResponseEntity.status(403).body(Map.of("success", false, "message", "Unauthorized"));
+        }
+
+        try {
+            UploadGarbageCollector.GcReport report = uploadGarbageCollector.collect(dryRun);
+            if (report == null) {
+                return ResponseEntity.status(409).body(Map.of(
+                    "success", false,
+                    "message", "Upload garbage collection is already running"
+                ));
+            }
+            return ResponseEntity.ok(Map.of("success", true, "report", report));
+        } catch (Exception e) {
+            return ResponseEntity.status(500).body(Map.of(
+                "success", false, 
+                "message", "Error collecting orphaned uploads: " + e.getMessage()
+            ));
+        }
+    }
+
+    @GetMapping("/uploads/gc/stats")
+    public ResponseEntity<?> getUploadGcStats(HttpSession session) {
+        if (!isAdmin(session)) {
+            return ResponseEntity.status(403).body(Map.of("success", false, "message", "Unauthorized"));
+        }
+
+        return ResponseEntity.ok(Map.of("success", true, "stats", uploadGarbageCollector.getStats()));
+    }
+
+    @GetMapping("/single-flight/stats")
+    public ResponseEntity<?> getSingleFlightStats(HttpSession session) {
+        if (!isAdmin(session)) {
+            return ResponseEntity.status(403).body(Map.of("success", false, "message", "Unauthorized"));
+        }
+
+        return ResponseEntity.ok(Map.of("success", true, "stats", singleFlight.getStats()));
+    }
+
+    @GetMapping("/storage/top")
+    public ResponseEntity<?> getTopStorageConsumers(
+            @RequestParam(defaultValue = "20") int limit,
+            HttpSession session) {
+        if (!isAdmin(session)) {
+            return ResponseEntity.status(403).body(Map.of("success", false, "message", "Unauthorized"));
+        }
+
+        try {
+            List<Map<String, Object>> consumers = storageAccountingService.getTopConsumers(Math.max(1, Math.min(limit, 100)))
+                    .stream()
+                    .map(usage -> {
+                        Map<String, Object> usageData = new HashMap<>();
+                        usageData.put("userId", usage.getUserId());
+                        usageData.put("bytesUsed", usage.getBytesUsed());
+                        usageData.put("objectCount", usage.getObjectCount());
+                        usageData.put("quotaBytes", storageAccountingService.getQuota(usage));
+                        return usageData;
+                    })
+                    .collect(Collectors.toList());
+            return ResponseEntity.ok(Map.of("success", true, "consumers", consumers));
+        } catch (Exception e) {
+            return ResponseEntity.status(500).body(Map.of(
+                "success", false,
+                "message", "Error loading storage usage: " + e.getMessage()
+            ));
+        }
+    }
+
+    @GetMapping("/users/{userId}/storage")
+    public ResponseEntity<?> getUserStorage(@PathVariable Integer userId, HttpSession session) {
+        if (!isAdmin(session)) {
+            return ResponseEntity.status(403).body(Map.of("success", false, "message", "Unauthorized"));
+        }
+
+        var usage = storageAccountingService.getUsage(userId);
+        Map<String, Object> usageData = new HashMap<>();
+        usageData.put("userId", userId);
+        usageData.put("bytesUsed", usage.getBytesUsed());
+        usageData.put("objectCount", usage.getObjectCount());
+        usageData.put("quotaBytes", storageAccountingService.getQuota(usage));
+        return ResponseEntity.ok(Map.of("success", true, "usage", usageData));
+    }
+
+    @PutMapping("/users/{userId}/storage-quota")
+    public ResponseEntity<?> setUserStorageQuota(
+            @PathVariable Integer userId,
+            @RequestBody Map<String, Object> quotaData,
+            HttpSession session) {
+        if (!isAdmin(session)) {
+            return ResponseEntity.status(403).body(Map.of("success", false, "message", "Unauthorized"));
+        }
+
+        try {
+            // A missing or null quota resets the user to the default
+            Long quotaBytes = quotaData.get("quotaBytes") != null
+                    ? Long.valueOf(quotaData.get("quotaBytes").toString()) : null;
+            storageAccountingService.setQuota(userId, quotaBytes);
+            return ResponseEntity.ok(Map.of("success", true, "message", "Storage quota updated"));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(Map.of(
+                "success", false,
+                "message", "Error updating storage quota: " + e.getMessage()
+            ));
+        }
+    }
+
+    @PostMapping("/storage/recalculate")
+    public ResponseEntity<?> recalculateStorageUsage(HttpSession session) {
+        if (!isAdmin(session)) {
+            return ResponseEntity.status(403).body(Map.of("success", false, "message", "Unauthorized"));
+        }
+
+        try {
+            storageAccountingService.recalculate();
+            return ResponseEntity.ok(Map.of("success", true, "message", "Storage usage recalculated"));
+        } catch (Exception e) {
+            return ResponseEntity.status(500).body(Map.of(
+                "success", false,
+                "message", "Error recalculating storage usage: " + e.getMessage()
+            ));
+        }
+    }
+
+    @GetMapping("/export")
+    public void exportNotes(
+            @RequestParam(required = false) Integer userId,
+            @RequestParam(defaultValue = NoteExportService.FORMAT_JSON) String format,
+            HttpSession session,
+            HttpServletResponse response) throws IOException {
+        if (!isAdmin(session)) {
+            response.sendError(HttpServletResponse.SC_FORBIDDEN, "Unauthorized");
+            return;
+        }
+
+        String filename = "notevault-export-" + (userId != null ? "user-" + userId + "-" : "") + LocalDate.now() + ".zip";
+        response.setContentType("application/zip");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION,
+                ContentDisposition.attachment().filename(filename).build().toString());
+        noteExportService.export(userId, format, response.getOutputStream());
+    }
+}
@@ -2,6 +2,7 @@ package com.notevault.controller.api;
 
 import lombok.RequiredArgsConstructor;
 import com.notevault.model.User;
+import com.notevault.service.SessionRevocationService;
 import com.notevault.service.UserService;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -17,6 +18,7 @@ import java.util.Optional;
 public class AuthController {
 
     private final UserService userService;
+    private final SessionRevocationService sessionRevocationService;
 
     @PostMapping("/login")
     public ResponseEntity<?> login(@RequestParam String username, 
@@ -48,6 +50,8 @@ public class AuthController {
                 session.setAttribute("userId", user.getId());
                 session.setAttribute("username", user.getUsername());
                 session.setAttribute("isAdmin", user.getIsAdmin());
+                session.setAttribute(SessionRevocationService.SESSION_EPOCH_ATTRIBUTE,
+                        sessionRevocationService.currentEpoch(user.getId()));
                 
                 response.put("success", true);
                 response.put("userId", user.getId());
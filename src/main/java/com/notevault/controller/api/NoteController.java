@@ -1,17 +1,42 @@
 package com.notevault.controller.api;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
-import com.notevault.dto.NoteDTO;
+import com.notevault.model.Attachment;
 import com.notevault.model.Note;
+import com.notevault.model.NoteRevision;
+import com.notevault.model.ChunkedUpload;
+import com.notevault.service.AttachmentService;
+import com.notevault.service.ChunkedUploadService;
+import com.notevault.service.NoteArrangeService;
+import com.notevault.service.NoteExportService;
+import com.notevault.service.NoteImportService;
+import com.notevault.service.NoteJsonCache;
+import com.notevault.service.NoteRevisionService;
 import com.notevault.service.NoteService;
+import com.notevault.service.TagFacetService;
+import com.notevault.service.TextDelta;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 @RestController
@@ -20,19 +45,66 @@ import java.util.stream.Collectors;
 public class NoteController {
 
     private final NoteService noteService;
+    private final NoteRevisionService noteRevisionService;
+    private final NoteExportService noteExportService;
+    private final NoteImportService noteImportService;
+    private final NoteArrangeService noteArrangeService;
+    private final NoteJsonCache noteJsonCache;
+    private final TagFacetService tagFacetService;
+    private final ObjectMapper objectMapper;
+    private final AttachmentService attachmentService;
+    private final ChunkedUploadService chunkedUploadService;
 
     @GetMapping
-    public ResponseEntity<?> getAllNotes(HttpSession session) {
+    public ResponseEntity<?> getAllNotes(
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+            HttpSession session,
+            HttpServletResponse response) throws IOException {
         Integer userId = (Integer) session.getAttribute("userId");
         if (userId == null) {
             return ResponseEntity.status(401).body("Not authenticated");
         }
         
-        List<Note> notes = noteService.getAllNotesByUser(userId);
-        List<NoteDTO> noteDTOs = notes.stream()
-                .map(NoteDTO::fromNote)
-                .collect(Collectors.toList());
-        return ResponseEntity.ok(noteDTOs);
+        writeNotes(noteService.getAllNotesByUser(userId), accept, response);
+        return null;
+    }
+    
+    /**
+     * Writes the notes as NoteDTOs from their cached encoding instead of serializing them
+     * again: CBOR if the client prefers it over JSON, JSON otherwise.
+     */
+    private void writeNotes(List<Note> notes, String accept, HttpServletResponse response) throws IOException {
+        if (prefersCbor(accept)) {
+            response.setContentType(MediaType.APPLICATION_CBOR_VALUE);
+            noteJsonCache.writeCborArray(notes, response.getOutputStream());
+        } else {
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            noteJsonCache.writeArray(notes, response.getOutputStream());
+        }
+    }
+    
+    private static boolean prefersCbor(String accept) {
+        if (accept == null || !accept.contains(MediaType.APPLICATION_CBOR_VALUE)) {
+            return false;
+        }
+        try {
+            List<MediaType> mediaTypes = MediaType.parseMediaTypes(accept);
+            MediaType.sortBySpecificityAndQuality(mediaTypes);
+            for (MediaType mediaType : mediaTypes) {
+                if (mediaType.getQualityValue() == 0) {
+                    continue;
+                }
+                if (mediaType.equalsTypeAndSubtype(MediaType.APPLICATION_CBOR)) {
+                    return true;
+                }
+                if (mediaType.isCompatibleWith(MediaType.APPLICATION_JSON)) {
+                    return false;
+                }
+            }
+        } catch (InvalidMediaTypeException e) {
+            // Fall back to JSON
+        }
+        return false;
     }
     
     @PostMapping
@@ -49,7 +121,7 @@ public class NoteController {
             Note note = noteService.createEnhancedNote(userId, noteData);
             Map<String, Object> response = new HashMap<>();
             response.put("success", true);
-            response.put("note", note);
+            response.put("note", noteJsonCache.toRawJson(note));
             return ResponseEntity.ok(response);
         } catch (Exception e) {
             Map<String, Object> response = new HashMap<>();
@@ -74,11 +146,16 @@ public class NoteController {
         }
         
         try {
-            Note note = noteService.updateEnhancedNote(noteId, noteData);
+            Note note = noteService.updateEnhancedNote(noteId, noteData, userId);
             Map<String, Object> response = new HashMap<>();
             response.put("success", true);
-            response.put("note", note);
+            response.put("note", noteJsonCache.toRawJson(note));
             return ResponseEntity.ok(response);
+        } catch (NoteService.VersionConflictException e) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", e.getMessage());
+            return ResponseEntity.status(409).body(response);
         } catch (Exception e) {
             Map<String, Object> response = new HashMap<>();
             response.put("success", false);
@@ -87,6 +164,70 @@ public class NoteController {
         }
     }
     
+    @PatchMapping("/{noteId}/content")
+    public ResponseEntity<?> patchNoteContent(
+            @PathVariable Integer noteId,
+            @RequestBody Map<String, Object> patchData,
+            HttpSession session) {
+        
+        Integer userId = (Integer) session.getAttribute("userId");
+        if (userId == null) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", "Not authenticated");
+            return ResponseEntity.status(401).body(response);
+        }
+        
+        try {
+            int baseVersion = Integer.parseInt(String.valueOf(patchData.get("baseVersion")));
+            @SuppressWarnings("unchecked")
+            List<Map<String, Object>> operations = (List<Map<String, Object>>) patchData.get("operations");
+            NoteService.ContentPatch patch = noteService.patchContent(noteId, baseVersion,
+                    parseOperations(operations), userId);
+            
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", !patch.isConflict());
+            response.put("version", patch.getVersion());
+            if (patch.isConflict()) {
+                response.put("message", "The note changed too much to apply these edits");
+                response.put("content", patch.getContent());
+                return ResponseEntity.status(409).body(response);
+            }
+            response.put("operations", patch.getOperations());
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        }
+    }
+    
+    /**
+     * Reads operations of the form {"type": "insert", "position": 4, "text": "abc"} and
+     * {"type": "delete", "position": 4, "length": 3}, each against the text left by the
+     * previous one.
+     */
+    private List<TextDelta> parseOperations(List<Map<String, Object>> operations) {
+        if (operations == null || operations.isEmpty()) {
+            throw new RuntimeException("No operations given");
+        }
+        List<TextDelta> deltas = new ArrayList<>();
+        for (Map<String, Object> operation : operations) {
+            int position = Integer.parseInt(String.valueOf(operation.get("position")));
+            String type = String.valueOf(operation.get("type"));
+            if ("insert".equals(type)) {
+                String text = (String) operation.get("text");
+                deltas.add(new TextDelta(position, 0, text != null ? text : ""));
+            } else if ("delete".equals(type)) {
+                deltas.add(new TextDelta(position, Integer.parseInt(String.valueOf(operation.get("length"))), ""));
+            } else {
+                throw new RuntimeException("Unknown operation type: " + type);
+            }
+        }
+        return deltas;
+    }
+    
     @PutMapping("/{noteId}/position")
     public ResponseEntity<?> updateNotePosition(
             @PathVariable Integer noteId,
@@ -103,6 +244,41 @@ public class NoteController {
         return ResponseEntity.ok(note);
     }
     
+    @PostMapping("/arrange")
+    public ResponseEntity<?> arrangeNotes(
+            @RequestBody Map<String, Object> arrangeData,
+            HttpSession session) {
+        
+        Integer userId = (Integer) session.getAttribute("userId");
+        Map<String, Object> response = new HashMap<>();
+        if (userId == null) {
+            response.put("success", false);
+            response.put("message", "Not authenticated");
+            return ResponseEntity.status(401).body(response);
+        }
+        
+        try {
+            String strategy = (String) arrangeData.getOrDefault("strategy", NoteArrangeService.STRATEGY_GRID);
+            List<Integer> noteIds = null;
+            if (arrangeData.get("noteIds") instanceof List) {
+                noteIds = ((List<?>) arrangeData.get("noteIds")).stream()
+                    .map(id -> ((Number) id).intValue())
+                    .collect(Collectors.toList());
+            }
+            Integer columns = arrangeData.get("columns") instanceof Number ? ((Number) arrangeData.get("columns")).intValue() : null;
+            
+            List<Map<String, Object>> layout = noteArrangeService.arrange(userId, strategy, noteIds, columns);
+            response.put("success", true);
+            response.put("strategy", strategy);
+            response.put("notes", layout);
+            return ResponseEntity.ok(response);
+        } catch (RuntimeException e) {
+            response.put("success", false);
+            response.put("message", e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        }
+    }
+    
     @DeleteMapping("/{noteId}")
     public ResponseEntity<?> deleteNote(
             @PathVariable Integer noteId,
@@ -120,9 +296,41 @@ public class NoteController {
         return ResponseEntity.ok(response);
     }
     
-    @GetMapping("/search")
-    public ResponseEntity<?> searchNotes(
-            @RequestParam String searchTerm,
+    @GetMapping("/{noteId}/revisions")
+    public ResponseEntity<?> getRevisions(@PathVariable Integer noteId, HttpSession session) {
+        Integer userId = (Integer) session.getAttribute("userId");
+        if (userId == null) {
+            return ResponseEntity.status(401).body("Not authenticated");
+        }
+        
+        try {
+            Note note = noteService.getNoteById(noteId);
+            if (!noteService.canViewNote(note, userId)) {
+                return ResponseEntity.status(403).body(Map.of("success", false, "message", "Access denied"));
+            }
+            List<Map<String, Object>> revisions = noteRevisionService.listRevisions(noteId).stream()
+                    .map(revision -> {
+                        Map<String, Object> revisionData = new HashMap<>();
+                        revisionData.put("revisionNumber", revision.getRevisionNumber());
+                        revisionData.put("title", revision.getTitle());
+                        revisionData.put("authorId", revision.getAuthorId());
+                        revisionData.put("createdAt", revision.getCreatedAt());
+                        return revisionData;
+                    })
+                    .collect(Collectors.toList());
+            return ResponseEntity.ok(Map.of("success", true, "revisions", revisions));
+        } catch (Exception e) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        }
+    }
+    
+    @GetMapping("/{noteId}/revisions/{revisionNumber}")
+    public ResponseEntity<?> getRevision(
+            @PathVariable Integer noteId,
+            @PathVariable Integer revisionNumber,
             HttpSession session) {
         
         Integer userId = (Integer) session.getAttribute("userId");
@@ -130,10 +338,159 @@ public class NoteController {
             return ResponseEntity.status(401).body("Not authenticated");
         }
         
-        List<Note> notes = noteService.searchNotes(userId, searchTerm);
-        return ResponseEntity.ok(notes);
+        try {
+            Note note = noteService.getNoteById(noteId);
+            if (!noteService.canViewNote(note, userId)) {
+                return ResponseEntity.status(403).body(Map.of("success", false, "message", "Access denied"));
+            }
+            NoteRevision revision = noteRevisionService.getRevision(noteId, revisionNumber);
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", true);
+            response.put("revisionNumber", revision.getRevisionNumber());
+            response.put("title", revision.getTitle());
+            response.put("content", noteRevisionService.rebuild(noteId, revisionNumber));
+            response.put("authorId", revision.getAuthorId());
+            response.put("createdAt", revision.getCreatedAt());
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        }
+    }
+    
+    @PostMapping("/{noteId}/revisions/{revisionNumber}/restore")
+    public ResponseEntity<?> restoreRevision(
+            @PathVariable Integer noteId,
+            @PathVariable Integer revisionNumber,
+            HttpSession session) {
+        
+        Integer userId = (Integer) session.getAttribute("userId");
+        if (userId == null) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", "Not authenticated");
+            return ResponseEntity.status(401).body(response);
+        }
+        
+        try {
+            Note note = noteService.restoreRevision(noteId, revisionNumber, userId);
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", true);
+            response.put("note", noteJsonCache.toRawJson(note));
+            return ResponseEntity.ok(response);
+        } catch (NoteService.VersionConflictException e) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", e.getMessage());
+            return ResponseEntity.status(409).body(response);
+        } catch (Exception e) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        }
     }
     
+    @GetMapping("/export")
+    public void exportNotes(
+            @RequestParam(defaultValue = NoteExportService.FORMAT_JSON) String format,
+            HttpSession session,
+            HttpServletResponse response) throws IOException {
+        
+        Integer userId = (Integer) session.getAttribute("userId");
+        if (userId == null) {
+            response.sendError(HttpServletResponse.SC_UNAUTHORIZED, "Not authenticated");
+            return;
+        }
+        
+        response.setContentType("application/zip");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                .filename("notevault-export-" + LocalDate.now() + ".zip").build().toString());
+        noteExportService.export(userId, format, response.getOutputStream());
+    }
+    
+    /**
+     * Imports an export archive sent as the raw request body. Progress is streamed back
+     * as one JSON object per line while the import runs.
+     */
+    @PostMapping("/import")
+    public void importNotes(
+            HttpServletRequest request,
+            HttpSession session,
+            HttpServletResponse response) throws IOException {
+        
+        Integer userId = (Integer) session.getAttribute("userId");
+        if (userId == null) {
+            response.sendError(HttpServletResponse.SC_UNAUTHORIZED, "Not authenticated");
+            return;
+        }
+        
+        response.setContentType("application/x-ndjson");
+        OutputStream out = response.getOutputStream();
+        Consumer<Map<String, Object>> progress = event -> {
+            try {
+                out.write(objectMapper.writeValueAsBytes(event));
+                out.write('\n');
+                out.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        };
+        try (InputStream in = request.getInputStream()) {
+            noteImportService.importArchive(userId, in, progress);
+        } catch (Exception e) {
+            progress.accept(Map.of("type", "failed", "message", String.valueOf(e.getMessage())));
+        }
+    }
+    
+    @GetMapping("/tags")
+    public ResponseEntity<?> getTags(
+            @RequestParam(required = false) String prefix,
+            @RequestParam(defaultValue = "50") int limit,
+            HttpSession session) {
+        
+        Integer userId = (Integer) session.getAttribute("userId");
+        if (userId == null) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", "Not authenticated");
+            return ResponseEntity.status(401).body(response);
+        }
+        
+        Map<String, Object> response = new HashMap<>(tagFacetService.getFacets(userId, prefix, Math.max(1, Math.min(limit, 500))));
+        response.put("success", true);
+        return ResponseEntity.ok(response);
+    }
+    
+    @GetMapping("/search")
+    public ResponseEntity<?> searchNotes(
+            @RequestParam(required = false) String searchTerm,
+            @RequestParam(required = false) String tags,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+            HttpSession session,
+            HttpServletResponse response) throws IOException {
+        
+        Integer userId = (Integer) session.getAttribute("userId");
+        if (userId == null) {
+            return ResponseEntity.status(401).body("Not authenticated");
+        }
+        
+        List<Note> notes;
+        try {
+            notes = noteService.searchNotes(userId, searchTerm, tags);
+        } catch (RuntimeException e) {
+            Map<String, Object> error = new HashMap<>();
+            error.put("success", false);
+            error.put("message", e.getMessage());
+            return ResponseEntity.badRequest().body(error);
+        }
+
+        writeNotes(notes, accept, response);
+        return null;
+    }
+
     @PostMapping("/upload")
     public ResponseEntity<?> uploadFile(
             @RequestParam("file") MultipartFile file,
@@ -160,4 +517,193 @@ public class NoteController {
             return ResponseEntity.badRequest().body(response);
         }
     }
-}
\ No newline at end of file
+    
+    @PostMapping("/attachments")
+    public ResponseEntity<?> uploadAttachment(
+            @RequestParam("file") MultipartFile file,
+            HttpSession session) {
+        
+        Integer userId = (Integer) session.getAttribute("userId");
+        if (userId == null) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", "Not authenticated");
+            return ResponseEntity.status(401).body(response);
+        }
+        
+        try (InputStream in = file.getInputStream()) {
+            Attachment attachment = attachmentService.storeAttachment(
+                    in, userId, file.getOriginalFilename(), file.getContentType());
+            return ResponseEntity.ok(attachmentResponse(attachment));
+        } catch (Exception e) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        }
+    }
+    
+    @PostMapping(value = "/attachments/binary", consumes = {"application/octet-stream", "image/*"})
+    public ResponseEntity<?> uploadBinaryAttachment(
+            @RequestParam(required = false) String filename,
+            HttpServletRequest request,
+            HttpSession session) {
+        
+        Integer userId = (Integer) session.getAttribute("userId");
+        if (userId == null) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", "Not authenticated");
+            return ResponseEntity.status(401).body(response);
+        }
+        
+        try (InputStream in = request.getInputStream()) {
+            Attachment attachment = attachmentService.storeAttachment(
+                    in, userId, filename, request.getContentType());
+            return ResponseEntity.ok(attachmentResponse(attachment));
+        } catch (Exception e) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        }
+    }
+    
+    @PostMapping("/upload/chunked")
+    public ResponseEntity<?> initiateChunkedUpload(@RequestBody Map<String, Object> uploadData, HttpSession session) {
+        Integer userId = (Integer) session.getAttribute("userId");
+        if (userId == null) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", "Not authenticated");
+            return ResponseEntity.status(401).body(response);
+        }
+        
+        try {
+            Long totalSize = uploadData.get("totalSize") != null
+                    ? Long.valueOf(uploadData.get("totalSize").toString()) : null;
+            Integer chunkSize = uploadData.get("chunkSize") != null
+                    ? Integer.valueOf(uploadData.get("chunkSize").toString()) : null;
+            ChunkedUpload upload = chunkedUploadService.initiate(userId,
+                    (String) uploadData.get("filename"), (String) uploadData.get("contentType"), totalSize, chunkSize);
+            
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", true);
+            response.put("uploadId", upload.getId());
+            response.put("chunkSize", upload.getChunkSize());
+            response.put("chunkCount", upload.getChunkCount());
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        }
+    }
+    
+    @PutMapping("/upload/chunked/{uploadId}/chunks/{chunkIndex}")
+    public ResponseEntity<?> uploadChunk(
+            @PathVariable String uploadId,
+            @PathVariable int chunkIndex,
+            @RequestHeader(value = "X-Chunk-Checksum", required = false) String checksum,
+            HttpServletRequest request,
+            HttpSession session) {
+        
+        Integer userId = (Integer) session.getAttribute("userId");
+        if (userId == null) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", "Not authenticated");
+            return ResponseEntity.status(401).body(response);
+        }
+        
+        try (InputStream in = request.getInputStream()) {
+            chunkedUploadService.writeChunk(uploadId, userId, chunkIndex, checksum, in);
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", true);
+            response.put("chunkIndex", chunkIndex);
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        }
+    }
+    
+    @GetMapping("/upload/chunked/{uploadId}")
+    public ResponseEntity<?> getChunkedUploadStatus(@PathVariable String uploadId, HttpSession session) {
+        Integer userId = (Integer) session.getAttribute("userId");
+        if (userId == null) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", "Not authenticated");
+            return ResponseEntity.status(401).body(response);
+        }
+        
+        try {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", true);
+            response.put("receivedChunks", chunkedUploadService.getReceivedChunks(uploadId, userId));
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", e.getMessage());
+            return ResponseEntity.status(404).body(response);
+        }
+    }
+    
+    @PostMapping("/upload/chunked/{uploadId}/complete")
+    public ResponseEntity<?> completeChunkedUpload(@PathVariable String uploadId, HttpSession session) {
+        Integer userId = (Integer) session.getAttribute("userId");
+        if (userId == null) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", "Not authenticated");
+            return ResponseEntity.status(401).body(response);
+        }
+        
+        try {
+            Attachment attachment = chunkedUploadService.complete(uploadId, userId);
+            return ResponseEntity.ok(attachmentResponse(attachment));
+        } catch (Exception e) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        }
+    }
+    
+    @DeleteMapping("/upload/chunked/{uploadId}")
+    public ResponseEntity<?> abortChunkedUpload(@PathVariable String uploadId, HttpSession session) {
+        Integer userId = (Integer) session.getAttribute("userId");
+        if (userId == null) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", "Not authenticated");
+            return ResponseEntity.status(401).body(response);
+        }
+        
+        try {
+            chunkedUploadService.abort(uploadId, userId);
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", true);
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        }
+    }
+    
+    private Map<String, Object> attachmentResponse(Attachment attachment) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("attachmentId", attachment.getId());
+        response.put("filePath", attachment.getFilePath());
+        response.put("size", attachment.getSizeBytes());
+        return response;
+    }
+}
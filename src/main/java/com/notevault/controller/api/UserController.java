@@ -4,6 +4,10 @@ import lombok.RequiredArgsConstructor;
 import com.notevault.model.User;
 import com.notevault.service.UserService;
 import com.notevault.service.NoteService;
+import com.notevault.service.PublicFeedService;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
@@ -22,6 +26,7 @@ public class UserController {
 
     private final UserService userService;
     private final NoteService noteService;
+    private final PublicFeedService publicFeedService;
 
     @GetMapping("/search")
     public ResponseEntity<?> searchUsers(@RequestParam(required = false) String q, HttpSession session) {
@@ -201,20 +206,30 @@ public class UserController {
     }
 
     @GetMapping("/profile/{userId}/public-notes")
-    public ResponseEntity<?> getUserPublicNotes(@PathVariable Integer userId, HttpSession session) {
+    public ResponseEntity<?> getUserPublicNotes(
+            @PathVariable Integer userId,
+            @RequestParam(required = false) Integer before,
+            @RequestParam(defaultValue = "20") int limit,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+            HttpSession session) {
         Integer currentUserId = (Integer) session.getAttribute("userId");
         if (currentUserId == null) {
             return ResponseEntity.status(401).body("Not authenticated");
         }
 
         try {
-            // Get public notes for the specified user
-            var publicNotes = noteService.getPublicNotesByUserId(userId);
+            // Pages are the same for every viewer, but only logged-in users may see them
+            PublicFeedService.FeedPage page = publicFeedService.getPage(userId, before, Math.max(1, Math.min(limit, 100)));
+            CacheControl cacheControl = CacheControl.noCache().cachePrivate();
+            if (ifNoneMatch != null && (ifNoneMatch.contains(page.getEtag()) || ifNoneMatch.trim().equals("*"))) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(page.getEtag()).cacheControl(cacheControl).build();
+            }
             
             Map<String, Object> response = new HashMap<>();
             response.put("success", true);
-            response.put("notes", publicNotes);
-            return ResponseEntity.ok(response);
+            response.put("notes", page.getNotes());
+            response.put("nextCursor", page.getNextCursor());
+            return ResponseEntity.ok().eTag(page.getEtag()).cacheControl(cacheControl).body(response);
         } catch (Exception e) {
             Map<String, Object> response = new HashMap<>();
             response.put("success", false);
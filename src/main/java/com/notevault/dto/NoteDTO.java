@@ -14,6 +14,8 @@ public class NoteDTO {
     private String title;
     private String tag;
     private String content;
+    private String renderedHtml;
+    private Integer version;
     private Integer positionX;
     private Integer positionY;
     private String color;
@@ -22,6 +24,8 @@ public class NoteDTO {
     private String sharedWith;
     private Boolean hasImages;
     private String imagePaths;
+    private String thumbnailPaths;
+    private String attachmentIds;
     private String editingPermission;
     
     // Author information
@@ -29,13 +33,20 @@ public class NoteDTO {
     private String authorUsername;
     private String authorDisplayName;
     private String authorProfilePicture;
+    private String authorProfileThumbnail;
     
-    public static NoteDTO fromNote(Note note) {
+    /**
+     * Thumbnails are resolved by the caller: the note's card thumbnails in the order of its
+     * image paths, and the author's avatar thumbnail.
+     */
+    public static NoteDTO fromNote(Note note, String thumbnailPaths, String authorProfileThumbnail) {
         NoteDTO dto = new NoteDTO();
         dto.setId(note.getId());
         dto.setTitle(note.getTitle());
         dto.setTag(note.getTag());
         dto.setContent(note.getContent());
+        dto.setRenderedHtml(note.getRenderedHtml());
+        dto.setVersion(note.getVersion() != null ? note.getVersion() : 0);
         dto.setPositionX(note.getPositionX());
         dto.setPositionY(note.getPositionY());
         dto.setColor(note.getColor());
@@ -44,6 +55,8 @@ public class NoteDTO {
         dto.setSharedWith(note.getSharedWith());
         dto.setHasImages(note.getHasImages());
         dto.setImagePaths(note.getImagePaths());
+        dto.setThumbnailPaths(thumbnailPaths);
+        dto.setAttachmentIds(note.getAttachmentIds());
         dto.setEditingPermission(note.getEditingPermission() != null ? note.getEditingPermission().getValue() : "creator_only");
         
         // Set author information
@@ -54,6 +67,7 @@ public class NoteDTO {
             dto.setAuthorDisplayName(author.getDisplayName() != null && !author.getDisplayName().trim().isEmpty() 
                 ? author.getDisplayName() : author.getUsername());
             dto.setAuthorProfilePicture(author.getProfilePicture());
+            dto.setAuthorProfileThumbnail(authorProfileThumbnail);
         }
         
         return dto;
@@ -0,0 +1,57 @@
+package com.notevault.invalidation;
+
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import java.util.UUID;
+import java.util.logging.Logger;
+
+/**
+ * Keeps the in-memory caches of all nodes consistent. A service that changes data
+ * publishes an event after updating its own node's caches; every other node receives it
+ * with its next poll and publishes it as an application event, which the caches handle
+ * with an @EventListener for InvalidationEvent.
+ *
+ * Events published inside a transaction are written with it, so other nodes see them
+ * only once the change itself is committed. A failed publish is logged and does not fail
+ * the write; caches then fall back on their own expiry or periodic reload.
+ */
+public class InvalidationBus {
+
+    private static final Logger logger = Logger.getLogger(InvalidationBus.class.getName());
+
+    private final InvalidationTransport transport;
+    private final ApplicationEventPublisher eventPublisher;
+    private final String nodeId = UUID.randomUUID().toString();
+
+    public InvalidationBus(InvalidationTransport transport, ApplicationEventPublisher eventPublisher) {
+        this.transport = transport;
+        this.eventPublisher = eventPublisher;
+    }
+
+    public void publish(InvalidationEvent event) {
+        event.setOrigin(nodeId);
+        try {
+            transport.publish(event);
+        } catch (Exception e) {
+            logger.warning("Could not publish " + event + ": " + e.getMessage());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.invalidation.poll-interval-ms:1000}")
+    public void poll() {
+        try {
+            transport.deliver(this::dispatch);
+        } catch (Exception e) {
+            // Undelivered events are handed over again on the next poll
+            logger.warning("Error delivering invalidation events: " + e.getMessage());
+        }
+    }
+
+    private void dispatch(InvalidationEvent event) {
+        // This node's caches were updated when the event was published
+        if (!nodeId.equals(event.getOrigin())) {
+            eventPublisher.publishEvent(event);
+        }
+    }
+}
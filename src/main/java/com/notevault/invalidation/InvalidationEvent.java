@@ -0,0 +1,39 @@
+package com.notevault.invalidation;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Tells other nodes that data they may hold in memory has changed. Events carry only
+ * what identifies the change; receivers reload whatever they cache for it.
+ *
+ * Delivery is at least once, so handling an event twice must be harmless.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class InvalidationEvent {
+
+    public enum Type {
+        NOTE,
+        USER
+    }
+
+    private Type type;
+    // Note id for NOTE events, user id for USER events
+    private Integer id;
+    private Integer ownerId;
+    // Whether the note is public, or was before the change
+    private boolean publicNote;
+    // Node that published the event
+    private String origin;
+
+    public static InvalidationEvent note(Integer noteId, Integer ownerId, boolean publicNote) {
+        return new InvalidationEvent(Type.NOTE, noteId, ownerId, publicNote, null);
+    }
+
+    public static InvalidationEvent user(Integer userId) {
+        return new InvalidationEvent(Type.USER, userId, userId, false, null);
+    }
+}
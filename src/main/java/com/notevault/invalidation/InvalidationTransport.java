@@ -0,0 +1,21 @@
+package com.notevault.invalidation;
+
+import java.util.function.Consumer;
+
+/**
+ * Carries invalidation events between nodes.
+ *
+ * Every event published by any node is handed to deliver on every node at least once.
+ * An event counts as delivered only once the handler returned normally; if it throws,
+ * deliver stops and the same event is handed over again on the next call.
+ */
+public interface InvalidationTransport {
+
+    void publish(InvalidationEvent event);
+
+    /**
+     * Hands events published since the last call to the handler, oldest first, and
+     * returns how many were delivered.
+     */
+    int deliver(Consumer<InvalidationEvent> handler);
+}
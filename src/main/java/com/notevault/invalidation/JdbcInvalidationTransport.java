@@ -0,0 +1,160 @@
+package com.notevault.invalidation;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import java.util.List;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+/**
+ * Transport shared by all nodes through a change-log table. Publishing appends a row;
+ * every node polls the rows after its cursor in batches of batchSize.
+ *
+ * Ids are handed out when a row is inserted but become visible when its transaction
+ * commits, so a poll can see a row while an earlier id is still missing. Rows past such a
+ * gap are delivered right away and remembered; the cursor only moves over the gap once it
+ * is filled, or after gapTimeoutMs, when the missing id is taken to belong to a
+ * transaction that rolled back. Rows are kept for retentionMs and then removed.
+ */
+public class JdbcInvalidationTransport implements InvalidationTransport {
+
+    private static final Logger logger = Logger.getLogger(JdbcInvalidationTransport.class.getName());
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int batchSize;
+    private final long gapTimeoutMs;
+    private final long retentionMs;
+
+    // Every row up to the cursor has been delivered, as have these rows after it
+    private long cursor;
+    private final TreeSet<Long> deliveredAfterCursor = new TreeSet<>();
+    private long gapSince;
+
+    public JdbcInvalidationTransport(JdbcTemplate jdbcTemplate, int batchSize, long gapTimeoutMs, long retentionMs) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.batchSize = batchSize;
+        this.gapTimeoutMs = gapTimeoutMs;
+        this.retentionMs = retentionMs;
+    }
+
+    public void initializeSchema() {
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS nv_invalidation (" +
+                "id BIGINT AUTO_INCREMENT PRIMARY KEY, " +
+                "event_type VARCHAR(20) NOT NULL, " +
+                "entity_id INT, " +
+                "owner_id INT, " +
+                "public_note BOOLEAN NOT NULL DEFAULT FALSE, " +
+                "origin VARCHAR(36), " +
+                "created_at BIGINT NOT NULL)");
+        try {
+            jdbcTemplate.execute("CREATE INDEX idx_nv_invalidation_created_at ON nv_invalidation (created_at)");
+        } catch (Exception e) {
+            // Index already exists
+        }
+
+        // Caches start out empty or freshly loaded, so only changes from now on matter
+        Long newest = jdbcTemplate.queryForObject("SELECT MAX(id) FROM nv_invalidation", Long.class);
+        synchronized (this) {
+            cursor = newest != null ? newest : 0L;
+        }
+    }
+
+    @Override
+    public void publish(InvalidationEvent event) {
+        jdbcTemplate.update("INSERT INTO nv_invalidation (event_type, entity_id, owner_id, public_note, origin, " +
+                        "created_at) VALUES (?, ?, ?, ?, ?, ?)",
+                event.getType().name(), event.getId(), event.getOwnerId(), event.isPublicNote(), event.getOrigin(),
+                System.currentTimeMillis());
+    }
+
+    @Override
+    public synchronized int deliver(Consumer<InvalidationEvent> handler) {
+        int delivered = 0;
+        while (true) {
+            List<Row> rows = jdbcTemplate.query(
+                    "SELECT id, event_type, entity_id, owner_id, public_note, origin " +
+                    "FROM nv_invalidation WHERE id > ? ORDER BY id LIMIT ?",
+                    (rs, rowNum) -> new Row(rs.getLong("id"), event(rs.getString("event_type"),
+                            (Integer) rs.getObject("entity_id"), (Integer) rs.getObject("owner_id"),
+                            rs.getBoolean("public_note"), rs.getString("origin"))),
+                    cursor, batchSize);
+            long previousCursor = cursor;
+            int previousDelivered = delivered;
+            try {
+                for (Row row : rows) {
+                    if (deliveredAfterCursor.contains(row.id)) {
+                        continue;
+                    }
+                    // Events of a type this node does not know were published by a newer version
+                    if (row.event != null) {
+                        handler.accept(row.event);
+                        delivered++;
+                    }
+                    deliveredAfterCursor.add(row.id);
+                }
+            } finally {
+                advanceCursor();
+            }
+            // A full batch of rows that were all delivered before sits behind a gap
+            if (rows.size() < batchSize || (cursor == previousCursor && delivered == previousDelivered)) {
+                return delivered;
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.invalidation.cleanup-interval-ms:60000}")
+    public void cleanUpOldEvents() {
+        try {
+            int removed = jdbcTemplate.update("DELETE FROM nv_invalidation WHERE created_at < ?",
+                    System.currentTimeMillis() - retentionMs);
+            if (removed > 0) {
+                logger.info("Removed " + removed + " old invalidation events");
+            }
+        } catch (Exception e) {
+            logger.warning("Error cleaning up invalidation events: " + e.getMessage());
+        }
+    }
+
+    private void advanceCursor() {
+        long now = System.currentTimeMillis();
+        while (true) {
+            while (deliveredAfterCursor.remove(cursor + 1)) {
+                cursor++;
+            }
+            if (deliveredAfterCursor.isEmpty()) {
+                gapSince = 0;
+                return;
+            }
+            if (gapSince == 0) {
+                gapSince = now;
+                return;
+            }
+            if (now - gapSince < gapTimeoutMs) {
+                return;
+            }
+            cursor = deliveredAfterCursor.first() - 1;
+            gapSince = 0;
+        }
+    }
+
+    private static InvalidationEvent event(String type, Integer id, Integer ownerId, boolean publicNote,
+                                           String origin) {
+        try {
+            return new InvalidationEvent(InvalidationEvent.Type.valueOf(type), id, ownerId, publicNote, origin);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static final class Row {
+        private final long id;
+        private final InvalidationEvent event;
+
+        private Row(long id, InvalidationEvent event) {
+            this.id = id;
+            this.event = event;
+        }
+    }
+}
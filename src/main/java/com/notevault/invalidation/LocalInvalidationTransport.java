@@ -0,0 +1,31 @@
+package com.notevault.invalidation;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+
+/**
+ * Transport for a single node: events are queued in memory and delivered back to the
+ * node that published them, so nothing leaves the JVM and no table is needed.
+ */
+public class LocalInvalidationTransport implements InvalidationTransport {
+
+    private final Queue<InvalidationEvent> queue = new ConcurrentLinkedQueue<>();
+
+    @Override
+    public void publish(InvalidationEvent event) {
+        queue.add(event);
+    }
+
+    @Override
+    public synchronized int deliver(Consumer<InvalidationEvent> handler) {
+        int delivered = 0;
+        InvalidationEvent event;
+        while ((event = queue.peek()) != null) {
+            handler.accept(event);
+            queue.poll();
+            delivered++;
+        }
+        return delivered;
+    }
+}
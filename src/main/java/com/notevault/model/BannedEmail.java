@@ -3,6 +3,7 @@ package com.notevault.model;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.GenericGenerator;
 
 import javax.persistence.*;
 import java.time.LocalDateTime;
@@ -15,7 +16,8 @@ import java.time.LocalDateTime;
 public class BannedEmail {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(generator = "pooled-id")
+    @GenericGenerator(name = "pooled-id", strategy = PooledIdGenerator.NAME)
     private Integer id;
 
     @Column(name = "email", nullable = false, unique = true, length = 100)
@@ -0,0 +1,43 @@
+package com.notevault.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.*;
+
+@Entity
+@Table(name = "blob_references",
+       uniqueConstraints = @UniqueConstraint(name = "uk_blob_references_owner",
+                                             columnNames = {"owner_type", "owner_id", "blob_hash"}),
+       indexes = @Index(name = "idx_blob_references_blob_hash", columnList = "blob_hash"))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BlobReference {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "blob_hash", nullable = false, length = 64)
+    private String blobHash;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "owner_type", nullable = false, length = 20)
+    private OwnerType ownerType;
+
+    @Column(name = "owner_id", nullable = false)
+    private Integer ownerId;
+
+    // User whose storage is charged for this reference, and by how much
+    @Column(name = "user_id")
+    private Integer userId;
+
+    @Column(name = "size_bytes")
+    private Long sizeBytes;
+
+    public enum OwnerType {
+        NOTE, PROFILE_PICTURE, ATTACHMENT
+    }
+}
@@ -0,0 +1,31 @@
+package com.notevault.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.*;
+
+@Entity
+@Table(name = "chunked_upload_parts",
+       uniqueConstraints = @UniqueConstraint(name = "uk_chunked_upload_parts_chunk",
+                                             columnNames = {"upload_id", "chunk_index"}))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ChunkedUploadPart {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "upload_id", nullable = false, length = 36)
+    private String uploadId;
+
+    @Column(name = "chunk_index", nullable = false)
+    private Integer chunkIndex;
+
+    // SHA-256 of the chunk, hex encoded
+    @Column(name = "checksum", nullable = false, length = 64)
+    private String checksum;
+}
@@ -0,0 +1,98 @@
+package com.notevault.model;
+
+import javax.persistence.AttributeConverter;
+import javax.persistence.Converter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Stores large text compressed in a text column.
+ *
+ * Values of at least COMPRESSION_THRESHOLD characters are deflated at the fastest level
+ * and stored base64 encoded behind a two character header ("\u0001D"), but only when that
+ * is actually shorter. Everything else is stored as is, so rows written before
+ * compression existed read unchanged. The rare plain value that starts with the marker
+ * character is escaped with "\u0001P".
+ */
+@Converter
+public class CompressedTextConverter implements AttributeConverter<String, String> {
+
+    public static final int COMPRESSION_THRESHOLD = 4096;
+
+    public static final char MARKER = '\u0001';
+    private static final char DEFLATED = 'D';
+    private static final char PLAIN = 'P';
+
+    @Override
+    public String convertToDatabaseColumn(String value) {
+        return encode(value);
+    }
+
+    @Override
+    public String convertToEntityAttribute(String value) {
+        return decode(value);
+    }
+
+    public static String encode(String value) {
+        if (value == null) {
+            return null;
+        }
+        if (value.length() >= COMPRESSION_THRESHOLD) {
+            String compressed = MARKER + "" + DEFLATED + Base64.getEncoder().encodeToString(deflate(value));
+            if (compressed.length() < value.length()) {
+                return compressed;
+            }
+        }
+        return !value.isEmpty() && value.charAt(0) == MARKER ? MARKER + "" + PLAIN + value : value;
+    }
+
+    public static String decode(String value) {
+        if (!isEncoded(value)) {
+            return value;
+        }
+        switch (value.charAt(1)) {
+            case DEFLATED:
+                return inflate(Base64.getDecoder().decode(value.substring(2)));
+            case PLAIN:
+                return value.substring(2);
+            default:
+                return value;
+        }
+    }
+
+    public static boolean isEncoded(String value) {
+        return value != null && value.length() >= 2 && value.charAt(0) == MARKER;
+    }
+
+    private static byte[] deflate(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 3);
+        try (DeflaterOutputStream deflaterOut = new DeflaterOutputStream(out, deflater, 8192)) {
+            deflaterOut.write(bytes);
+        } catch (IOException e) {
+            throw new RuntimeException("Error compressing text: " + e.getMessage());
+        } finally {
+            deflater.end();
+        }
+        return out.toByteArray();
+    }
+
+    private static String inflate(byte[] compressed) {
+        Inflater inflater = new Inflater();
+        try (InflaterInputStream in = new InflaterInputStream(new ByteArrayInputStream(compressed), inflater, 8192)) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new RuntimeException("Error decompressing text: " + e.getMessage());
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.notevault.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.*;
+
+/**
+ * Next free id of a table whose ids are handed out in blocks by IdBlockAllocator.
+ */
+@Entity
+@Table(name = "id_sequence")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class IdSequence {
+
+    // Name of the table the ids are for
+    @Id
+    @Column(name = "name", length = 64)
+    private String name;
+
+    @Column(name = "next_value", nullable = false)
+    private Long nextValue;
+}
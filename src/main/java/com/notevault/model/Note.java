@@ -4,20 +4,25 @@ import com.fasterxml.jackson.annotation.JsonBackReference;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.DynamicUpdate;
+import org.hibernate.annotations.GenericGenerator;
 
 import javax.persistence.*;
 import javax.persistence.AttributeConverter;
 import javax.persistence.Converter;
 
 @Entity
-@Table(name = "notiz")
+@Table(name = "notiz",
+       indexes = @Index(name = "idx_notiz_owner_privacy", columnList = "B_id, privacy_level, N_id"))
+@DynamicUpdate
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 public class Note {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(generator = "pooled-id")
+    @GenericGenerator(name = "pooled-id", strategy = PooledIdGenerator.NAME)
     @Column(name = "N_id")
     private Integer id;
 
@@ -28,8 +33,18 @@ public class Note {
     private String tag = "";
 
     @Column(name = "Inhalt", columnDefinition = "MEDIUMTEXT")
+    @Convert(converter = CompressedTextConverter.class)
     private String content = "";
 
+    // Incremented whenever title or content change; matches the revision number
+    @Column(name = "version")
+    private Integer version;
+
+    // HTML rendered on write for code and rich text notes, compressed like the content
+    @Column(name = "rendered_html", columnDefinition = "MEDIUMTEXT")
+    @Convert(converter = CompressedTextConverter.class)
+    private String renderedHtml;
+
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "B_id")
     @JsonBackReference
@@ -67,6 +82,10 @@ public class Note {
     @Column(name = "image_paths", columnDefinition = "TEXT")
     private String imagePaths;
     
+    // Attachments uploaded separately (comma-separated attachment ids)
+    @Column(name = "attachment_ids", columnDefinition = "TEXT")
+    private String attachmentIds;
+    
     // Editing permissions
     @Enumerated(EnumType.STRING)
     @Column(name = "editing_permission")
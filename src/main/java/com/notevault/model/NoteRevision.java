@@ -0,0 +1,45 @@
+package com.notevault.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "note_revisions",
+       uniqueConstraints = @UniqueConstraint(name = "uk_note_revisions_number",
+                                             columnNames = {"note_id", "revision_number"}))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class NoteRevision {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "note_id", nullable = false)
+    private Integer noteId;
+
+    @Column(name = "revision_number", nullable = false)
+    private Integer revisionNumber;
+
+    // Snapshots hold the full content, other revisions a delta to the previous revision
+    @Column(name = "snapshot", nullable = false)
+    private Boolean snapshot = false;
+
+    @Column(name = "data", columnDefinition = "MEDIUMTEXT")
+    @Convert(converter = CompressedTextConverter.class)
+    private String data;
+
+    @Column(name = "title")
+    private String title;
+
+    @Column(name = "author_id")
+    private Integer authorId;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt = LocalDateTime.now();
+}
@@ -0,0 +1,30 @@
+package com.notevault.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.*;
+
+/**
+ * Links a note to one of the tags in its tag column.
+ */
+@Entity
+@Table(name = "note_tags",
+       uniqueConstraints = @UniqueConstraint(name = "uk_note_tags_note_tag", columnNames = {"note_id", "tag_id"}),
+       indexes = @Index(name = "idx_note_tags_tag", columnList = "tag_id"))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class NoteTag {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "note_id", nullable = false)
+    private Integer noteId;
+
+    @Column(name = "tag_id", nullable = false)
+    private Integer tagId;
+}
@@ -0,0 +1,27 @@
+package com.notevault.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.*;
+
+@Entity
+@Table(name = "session_revocations", indexes = @Index(name = "idx_session_revocations_updated_at", columnList = "updated_at"))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SessionRevocation {
+
+    @Id
+    @Column(name = "user_id")
+    private Integer userId;
+
+    // Sessions that were issued with a lower epoch are no longer valid
+    @Column(name = "epoch", nullable = false)
+    private Integer epoch = 0;
+
+    // Epoch millis of the last revocation, used by other nodes to poll for changes
+    @Column(name = "updated_at", nullable = false)
+    private Long updatedAt = 0L;
+}
@@ -0,0 +1,26 @@
+package com.notevault.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.*;
+
+/**
+ * Single row counting how often storage usage was recalculated, so deltas recorded before
+ * a recalculation are not added on top of it.
+ */
+@Entity
+@Table(name = "storage_generation")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class StorageGeneration {
+
+    @Id
+    @Column(name = "id")
+    private Integer id;
+
+    @Column(name = "generation", nullable = false)
+    private Long generation;
+}
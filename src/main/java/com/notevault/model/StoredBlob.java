@@ -0,0 +1,38 @@
+package com.notevault.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "stored_blobs")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class StoredBlob {
+
+    // SHA-256 of the content, hex encoded
+    @Id
+    @Column(name = "hash", length = 64)
+    private String hash;
+
+    @Column(name = "file_path", nullable = false, length = 255)
+    private String filePath;
+
+    @Column(name = "size_bytes", nullable = false)
+    private Long sizeBytes = 0L;
+
+    // Number of notes, profiles and attachments using this blob
+    @Column(name = "ref_count", nullable = false)
+    private Integer refCount = 0;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt = LocalDateTime.now();
+
+    // Unreferenced blobs are only deleted once they were not uploaded again for a while
+    @Column(name = "last_uploaded_at", nullable = false)
+    private LocalDateTime lastUploadedAt = LocalDateTime.now();
+}
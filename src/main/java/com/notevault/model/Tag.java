@@ -0,0 +1,27 @@
+package com.notevault.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.*;
+
+/**
+ * A distinct tag, normalized to trimmed lower case. Notes link to tags through NoteTag.
+ */
+@Entity
+@Table(name = "tags")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class Tag {
+
+    public static final int MAX_NAME_LENGTH = 100;
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Integer id;
+
+    @Column(name = "name", nullable = false, unique = true, length = MAX_NAME_LENGTH)
+    private String name;
+}
@@ -0,0 +1,30 @@
+package com.notevault.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.*;
+
+@Entity
+@Table(name = "user_storage_usage",
+       indexes = @Index(name = "idx_user_storage_usage_bytes", columnList = "bytes_used"))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UserStorageUsage {
+
+    @Id
+    @Column(name = "user_id")
+    private Integer userId;
+
+    @Column(name = "bytes_used", nullable = false)
+    private Long bytesUsed = 0L;
+
+    @Column(name = "object_count", nullable = false)
+    private Long objectCount = 0L;
+
+    // Null means the default quota applies
+    @Column(name = "quota_bytes")
+    private Long quotaBytes;
+}
@@ -0,0 +1,13 @@
+package com.notevault.repository;
+
+import com.notevault.model.Attachment;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface AttachmentRepository extends JpaRepository<Attachment, Integer> {
+    List<Attachment> findByIdInAndUserId(Collection<Integer> ids, Integer userId);
+}
@@ -0,0 +1,12 @@
+package com.notevault.repository;
+
+import com.notevault.model.BlobReference;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface BlobReferenceRepository extends JpaRepository<BlobReference, Long> {
+    List<BlobReference> findByOwnerTypeAndOwnerId(BlobReference.OwnerType ownerType, Integer ownerId);
+}
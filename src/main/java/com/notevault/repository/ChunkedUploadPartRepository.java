@@ -0,0 +1,19 @@
+package com.notevault.repository;
+
+import com.notevault.model.ChunkedUploadPart;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface ChunkedUploadPartRepository extends JpaRepository<ChunkedUploadPart, Long> {
+    List<ChunkedUploadPart> findByUploadIdOrderByChunkIndex(String uploadId);
+    Optional<ChunkedUploadPart> findByUploadIdAndChunkIndex(String uploadId, Integer chunkIndex);
+    long countByUploadId(String uploadId);
+
+    @Transactional
+    void deleteByUploadId(String uploadId);
+}
@@ -0,0 +1,13 @@
+package com.notevault.repository;
+
+import com.notevault.model.ChunkedUpload;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface ChunkedUploadRepository extends JpaRepository<ChunkedUpload, String> {
+    List<ChunkedUpload> findByCreatedAtBefore(LocalDateTime createdAt);
+}
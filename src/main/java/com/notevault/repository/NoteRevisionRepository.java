@@ -0,0 +1,39 @@
+package com.notevault.repository;
+
+import com.notevault.model.NoteRevision;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface NoteRevisionRepository extends JpaRepository<NoteRevision, Long> {
+    Optional<NoteRevision> findTopByNoteIdOrderByRevisionNumberDesc(Integer noteId);
+    Optional<NoteRevision> findTopByNoteIdOrderByRevisionNumberAsc(Integer noteId);
+    Optional<NoteRevision> findByNoteIdAndRevisionNumber(Integer noteId, Integer revisionNumber);
+    List<NoteRevision> findByNoteIdOrderByRevisionNumberDesc(Integer noteId);
+
+    @Query("SELECT r FROM NoteRevision r WHERE r.noteId = :noteId AND r.revisionNumber BETWEEN :first AND :last " +
+           "ORDER BY r.revisionNumber")
+    List<NoteRevision> findRange(@Param("noteId") Integer noteId, @Param("first") Integer first,
+                                 @Param("last") Integer last);
+
+    @Query("SELECT MAX(r.revisionNumber) FROM NoteRevision r WHERE r.noteId = :noteId AND r.snapshot = true " +
+           "AND r.revisionNumber <= :revisionNumber")
+    Integer findSnapshotAtOrBefore(@Param("noteId") Integer noteId, @Param("revisionNumber") Integer revisionNumber);
+
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM NoteRevision r WHERE r.noteId = :noteId AND r.revisionNumber < :revisionNumber")
+    int deleteOlderThan(@Param("noteId") Integer noteId, @Param("revisionNumber") Integer revisionNumber);
+
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM NoteRevision r WHERE r.noteId = :noteId")
+    int deleteByNoteId(@Param("noteId") Integer noteId);
+}
@@ -0,0 +1,12 @@
+package com.notevault.repository;
+
+import com.notevault.model.SessionRevocation;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface SessionRevocationRepository extends JpaRepository<SessionRevocation, Integer> {
+    List<SessionRevocation> findByUpdatedAtGreaterThan(Long updatedAt);
+}
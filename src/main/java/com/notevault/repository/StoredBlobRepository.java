@@ -0,0 +1,34 @@
+package com.notevault.repository;
+
+import com.notevault.model.StoredBlob;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface StoredBlobRepository extends JpaRepository<StoredBlob, String> {
+    List<StoredBlob> findByRefCountLessThanEqualAndLastUploadedAtBefore(Integer refCount, LocalDateTime lastUploadedAt,
+                                                                       Pageable pageable);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE StoredBlob b SET b.refCount = b.refCount + :delta WHERE b.hash = :hash")
+    int adjustRefCount(@Param("hash") String hash, @Param("delta") int delta);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE StoredBlob b SET b.lastUploadedAt = :uploadedAt WHERE b.hash = :hash")
+    int touch(@Param("hash") String hash, @Param("uploadedAt") LocalDateTime uploadedAt);
+
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM StoredBlob b WHERE b.hash = :hash AND b.refCount <= 0 AND b.lastUploadedAt < :cutoff")
+    int deleteIfUnreferenced(@Param("hash") String hash, @Param("cutoff") LocalDateTime cutoff);
+}
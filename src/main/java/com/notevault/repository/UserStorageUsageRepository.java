@@ -0,0 +1,61 @@
+package com.notevault.repository;
+
+import com.notevault.model.UserStorageUsage;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+@Repository
+public interface UserStorageUsageRepository extends JpaRepository<UserStorageUsage, Integer> {
+    List<UserStorageUsage> findAllByOrderByBytesUsedDesc(Pageable pageable);
+
+    /**
+     * Adds the delta unless storage usage was recalculated since the generation it was
+     * recorded in, in which case the recalculation already counted it and 0 is returned.
+     * InnoDB share-locks the generation row it selects from, so this waits for a running recalculation.
+     */
+    @Transactional
+    @Modifying
+    @Query(value = "INSERT INTO user_storage_usage (user_id, bytes_used, object_count) "
+            + "SELECT :userId, :bytes, :objects FROM storage_generation WHERE id = 1 AND generation = :generation "
+            + "ON DUPLICATE KEY UPDATE bytes_used = bytes_used + :bytes, object_count = object_count + :objects",
+            nativeQuery = true)
+    int addUsage(@Param("generation") long generation, @Param("userId") Integer userId,
+                 @Param("bytes") long bytes, @Param("objects") long objects);
+
+    @Transactional
+    @Modifying
+    @Query(value = "INSERT IGNORE INTO storage_generation (id, generation) VALUES (1, 0)", nativeQuery = true)
+    int initGeneration();
+
+    /**
+     * Returns the current generation and keeps it share-locked until the caller's transaction
+     * ends, so a recalculation either sees the blob references written in it or comes after it.
+     */
+    @Query(value = "SELECT generation FROM storage_generation WHERE id = 1 LOCK IN SHARE MODE", nativeQuery = true)
+    Long lockGeneration();
+
+    @Transactional
+    @Modifying
+    @Query(value = "UPDATE storage_generation SET generation = generation + 1 WHERE id = 1", nativeQuery = true)
+    int nextGeneration();
+
+    @Transactional
+    @Modifying
+    @Query(value = "UPDATE user_storage_usage SET bytes_used = 0, object_count = 0", nativeQuery = true)
+    int resetUsage();
+
+    @Transactional
+    @Modifying
+    @Query(value = "INSERT INTO user_storage_usage (user_id, bytes_used, object_count) "
+            + "SELECT user_id, SUM(size_bytes), COUNT(*) FROM blob_references WHERE user_id IS NOT NULL GROUP BY user_id "
+            + "ON DUPLICATE KEY UPDATE bytes_used = VALUES(bytes_used), object_count = VALUES(object_count)",
+            nativeQuery = true)
+    int recalculateFromReferences();
+}
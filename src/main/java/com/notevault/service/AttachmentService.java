@@ -0,0 +1,109 @@
+package com.notevault.service;
+
+import lombok.RequiredArgsConstructor;
+import com.notevault.model.Attachment;
+import com.notevault.model.BlobReference;
+import com.notevault.repository.AttachmentRepository;
+import org.apache.commons.io.input.CountingInputStream;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+@Service
+@RequiredArgsConstructor
+public class AttachmentService {
+
+    private final AttachmentRepository attachmentRepository;
+    private final FileStorageService fileStorageService;
+
+    @Value("${app.attachments.max-size-bytes:26214400}")
+    private long maxAttachmentSize;
+
+    /**
+     * Streams an attachment straight to disk and records it for the user.
+     */
+    public Attachment storeAttachment(InputStream in, Integer userId, String originalFilename, String contentType)
+            throws IOException {
+        // Checked before storing: an empty file would be the shared empty blob, which is not ours to delete
+        PushbackInputStream content = new PushbackInputStream(in);
+        int first = content.read();
+        if (first == -1) {
+            throw new RuntimeException("File is empty");
+        }
+        content.unread(first);
+
+        CountingInputStream counting = new CountingInputStream(content) {
+            @Override
+            protected synchronized void afterRead(int n) {
+                super.afterRead(n);
+                if (getByteCount() > maxAttachmentSize) {
+                    throw new RuntimeException("Attachment exceeds the maximum size of " + maxAttachmentSize + " bytes");
+                }
+            }
+        };
+
+        String filePath = fileStorageService.store(counting, userId, FileStorageService.extensionOf(originalFilename));
+        return registerAttachment(filePath, userId, originalFilename, contentType, counting.getByteCount());
+    }
+
+    /**
+     * Records a file that is already in the blob store as an attachment of the user.
+     */
+    public Attachment registerAttachment(String filePath, Integer userId, String originalFilename,
+                                         String contentType, long sizeBytes) {
+        Attachment attachment = new Attachment();
+        attachment.setUserId(userId);
+        attachment.setFilePath(filePath);
+        attachment.setOriginalFilename(originalFilename);
+        attachment.setContentType(contentType);
+        attachment.setSizeBytes(sizeBytes);
+        attachment.setCreatedAt(LocalDateTime.now());
+        Attachment savedAttachment = attachmentRepository.save(attachment);
+        fileStorageService.updateReferences(BlobReference.OwnerType.ATTACHMENT, savedAttachment.getId(), userId,
+                Collections.singletonList(filePath));
+        return savedAttachment;
+    }
+
+    /**
+     * Returns the user's attachments with the given ids, failing if any of them is unknown
+     * or belongs to somebody else.
+     */
+    public List<Attachment> getOwnedAttachments(Collection<Integer> attachmentIds, Integer userId) {
+        if (attachmentIds == null || attachmentIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+        List<Attachment> attachments = attachmentRepository.findByIdInAndUserId(attachmentIds, userId);
+        if (attachments.size() != attachmentIds.size()) {
+            throw new RuntimeException("Attachment not found");
+        }
+        return attachments;
+    }
+
+    public List<Attachment> getAttachments(Collection<Integer> attachmentIds) {
+        if (attachmentIds == null || attachmentIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+        return attachmentRepository.findAllById(attachmentIds);
+    }
+
+    public static List<Integer> parseIds(String attachmentIds) {
+        List<Integer> ids = new ArrayList<>();
+        if (attachmentIds == null || attachmentIds.trim().isEmpty()) {
+            return ids;
+        }
+        for (String id : attachmentIds.split(",")) {
+            if (!id.trim().isEmpty()) {
+                ids.add(Integer.valueOf(id.trim()));
+            }
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,277 @@
+package com.notevault.service;
+
+import lombok.RequiredArgsConstructor;
+import com.notevault.model.Attachment;
+import com.notevault.model.ChunkedUpload;
+import com.notevault.model.ChunkedUploadPart;
+import com.notevault.repository.ChunkedUploadPartRepository;
+import com.notevault.repository.ChunkedUploadRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+/**
+ * Resumable uploads for large attachments.
+ *
+ * An upload is initiated with its total size, which preallocates the target file under
+ * uploads/tmp/chunked. Chunks can then be sent in any order and in parallel; each one is
+ * streamed to a file of its own, checked against its SHA-256 and only then copied to its
+ * offset, so no request buffers more than a small copy buffer and a bad retry never
+ * overwrites a chunk that was already accepted. Received chunks are recorded in the
+ * database, which lets clients ask what is missing after a dropped connection. Completing
+ * the upload moves the file into the blob store.
+ */
+@Service
+@RequiredArgsConstructor
+public class ChunkedUploadService {
+
+    private static final Logger logger = Logger.getLogger(ChunkedUploadService.class.getName());
+
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    private final ChunkedUploadRepository chunkedUploadRepository;
+    private final ChunkedUploadPartRepository chunkedUploadPartRepository;
+    private final FileStorageService fileStorageService;
+    private final AttachmentService attachmentService;
+    private final StorageAccountingService storageAccountingService;
+
+    @Value("${app.uploads-dir:uploads}")
+    private String uploadsDir;
+
+    @Value("${app.uploads.chunked.max-size-bytes:2147483648}")
+    private long maxUploadSize;
+
+    @Value("${app.uploads.chunked.default-chunk-size:4194304}")
+    private int defaultChunkSize;
+
+    @Value("${app.uploads.chunked.min-chunk-size:262144}")
+    private int minChunkSize;
+
+    @Value("${app.uploads.chunked.max-chunk-size:16777216}")
+    private int maxChunkSize;
+
+    @Value("${app.uploads.chunked.expiry-hours:24}")
+    private long expiryHours;
+
+    public ChunkedUpload initiate(Integer userId, String filename, String contentType, Long totalSize, Integer chunkSize)
+            throws IOException {
+        if (totalSize == null || totalSize <= 0) {
+            throw new RuntimeException("File is empty");
+        }
+        if (totalSize > maxUploadSize) {
+            throw new RuntimeException("File exceeds the maximum size of " + maxUploadSize + " bytes");
+        }
+        storageAccountingService.checkQuota(userId, totalSize);
+        int size = chunkSize != null ? chunkSize : defaultChunkSize;
+        if (size < minChunkSize || size > maxChunkSize) {
+            throw new RuntimeException("Chunk size must be between " + minChunkSize + " and " + maxChunkSize + " bytes");
+        }
+
+        ChunkedUpload upload = new ChunkedUpload();
+        upload.setId(UUID.randomUUID().toString());
+        upload.setUserId(userId);
+        upload.setFilename(filename);
+        upload.setContentType(contentType);
+        upload.setTotalSize(totalSize);
+        upload.setChunkSize(size);
+        upload.setChunkCount((int) ((totalSize + size - 1) / size));
+        upload.setCreatedAt(LocalDateTime.now());
+
+        Path partFile = partFile(upload.getId());
+        Files.createDirectories(partFile.getParent());
+        try (RandomAccessFile file = new RandomAccessFile(partFile.toFile(), "rw")) {
+            file.setLength(totalSize);
+        }
+        return chunkedUploadRepository.save(upload);
+    }
+
+    /**
+     * Writes one chunk at its offset. Sending a chunk again overwrites it once its checksum
+     * matches, so failed or interrupted chunks are simply retried.
+     */
+    public void writeChunk(String uploadId, Integer userId, int chunkIndex, String checksum, InputStream in)
+            throws IOException {
+        ChunkedUpload upload = getUpload(uploadId, userId);
+        if (chunkIndex < 0 || chunkIndex >= upload.getChunkCount()) {
+            throw new RuntimeException("Invalid chunk index");
+        }
+        if (checksum == null || !checksum.trim().toLowerCase(Locale.ROOT).matches("[0-9a-f]{64}")) {
+            throw new RuntimeException("A SHA-256 checksum is required for every chunk");
+        }
+        String expectedChecksum = checksum.trim().toLowerCase(Locale.ROOT);
+
+        long offset = (long) chunkIndex * upload.getChunkSize();
+        long expectedLength = Math.min(upload.getChunkSize(), upload.getTotalSize() - offset);
+        MessageDigest digest = FileStorageService.sha256();
+        long written = 0;
+
+        Path chunkFile = Files.createTempFile(partFile(uploadId).getParent(), uploadId + "-", ".chunk");
+        try {
+            try (FileChannel chunk = FileChannel.open(chunkFile, StandardOpenOption.WRITE)) {
+                byte[] buffer = new byte[COPY_BUFFER_SIZE];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    if (written + read > expectedLength) {
+                        throw new RuntimeException("Chunk is larger than " + expectedLength + " bytes");
+                    }
+                    digest.update(buffer, 0, read);
+                    ByteBuffer data = ByteBuffer.wrap(buffer, 0, read);
+                    while (data.hasRemaining()) {
+                        written += chunk.write(data);
+                    }
+                }
+            }
+
+            if (written != expectedLength) {
+                throw new RuntimeException("Chunk is incomplete: expected " + expectedLength + " bytes, got " + written);
+            }
+            if (!FileStorageService.toHex(digest.digest()).equals(expectedChecksum)) {
+                throw new RuntimeException("Chunk checksum mismatch");
+            }
+
+            try (FileChannel chunk = FileChannel.open(chunkFile, StandardOpenOption.READ);
+                 FileChannel channel = FileChannel.open(partFile(uploadId), StandardOpenOption.WRITE)) {
+                long copied = 0;
+                while (copied < written) {
+                    copied += channel.transferFrom(chunk, offset + copied, written - copied);
+                }
+            } catch (NoSuchFileException e) {
+                throw new RuntimeException("Upload not found");
+            }
+        } finally {
+            Files.deleteIfExists(chunkFile);
+        }
+
+        ChunkedUploadPart part = chunkedUploadPartRepository.findByUploadIdAndChunkIndex(uploadId, chunkIndex)
+                .orElse(new ChunkedUploadPart(null, uploadId, chunkIndex, null));
+        part.setChecksum(expectedChecksum);
+        try {
+            chunkedUploadPartRepository.save(part);
+        } catch (DataIntegrityViolationException e) {
+            // The same chunk was recorded by a parallel retry, the data on disk is identical
+        }
+    }
+
+    public List<Integer> getReceivedChunks(String uploadId, Integer userId) {
+        getUpload(uploadId, userId);
+        return chunkedUploadPartRepository.findByUploadIdOrderByChunkIndex(uploadId).stream()
+                .map(ChunkedUploadPart::getChunkIndex)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Checks that every chunk arrived, moves the file into the blob store and records it as
+     * an attachment of the user.
+     */
+    public Attachment complete(String uploadId, Integer userId) throws IOException {
+        ChunkedUpload upload = getUpload(uploadId, userId);
+        if (chunkedUploadPartRepository.countByUploadId(uploadId) != upload.getChunkCount()) {
+            throw new RuntimeException("Upload is missing chunks");
+        }
+
+        // Claiming the file by renaming it makes a second complete request fail cleanly
+        Path completingFile = completingFile(uploadId);
+        try {
+            Files.move(partFile(uploadId), completingFile, StandardCopyOption.ATOMIC_MOVE);
+        } catch (NoSuchFileException e) {
+            throw new RuntimeException("Upload is already being completed");
+        }
+
+        String filePath;
+        try {
+            filePath = fileStorageService.storeFile(completingFile, FileStorageService.extensionOf(upload.getFilename()));
+        } catch (IOException | RuntimeException e) {
+            // Hand the file back so that complete can be retried
+            try {
+                Files.move(completingFile, partFile(uploadId), StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException moveError) {
+                logger.warning("Could not release chunked upload " + uploadId + ": " + moveError.getMessage());
+            }
+            throw e;
+        }
+        deleteRecords(uploadId);
+        return attachmentService.registerAttachment(filePath, userId, upload.getFilename(),
+                upload.getContentType(), upload.getTotalSize());
+    }
+
+    public void abort(String uploadId, Integer userId) throws IOException {
+        getUpload(uploadId, userId);
+        deleteFiles(uploadId);
+        deleteRecords(uploadId);
+    }
+
+    @Scheduled(fixedDelayString = "${app.uploads.chunked.cleanup-interval-ms:3600000}")
+    public void deleteExpiredUploads() {
+        try {
+            List<ChunkedUpload> expired = chunkedUploadRepository.findByCreatedAtBefore(
+                    LocalDateTime.now().minusHours(expiryHours));
+            for (ChunkedUpload upload : expired) {
+                deleteFiles(upload.getId());
+                deleteRecords(upload.getId());
+            }
+            if (!expired.isEmpty()) {
+                logger.info("Deleted " + expired.size() + " expired chunked uploads");
+            }
+        } catch (Exception e) {
+            logger.warning("Error deleting expired chunked uploads: " + e.getMessage());
+        }
+    }
+
+    private ChunkedUpload getUpload(String uploadId, Integer userId) {
+        ChunkedUpload upload = chunkedUploadRepository.findById(uploadId)
+                .orElseThrow(() -> new RuntimeException("Upload not found"));
+        if (!upload.getUserId().equals(userId)) {
+            throw new RuntimeException("Upload not found");
+        }
+        return upload;
+    }
+
+    private void deleteRecords(String uploadId) {
+        chunkedUploadPartRepository.deleteByUploadId(uploadId);
+        chunkedUploadRepository.deleteById(uploadId);
+    }
+
+    private void deleteFiles(String uploadId) throws IOException {
+        Files.deleteIfExists(partFile(uploadId));
+        Files.deleteIfExists(completingFile(uploadId));
+        // Chunks still being received, or left behind by a crash
+        try (DirectoryStream<Path> chunks = Files.newDirectoryStream(partFile(uploadId).getParent(), uploadId + "-*.chunk")) {
+            for (Path chunk : chunks) {
+                Files.deleteIfExists(chunk);
+            }
+        } catch (NoSuchFileException e) {
+            // Nothing was ever written
+        }
+    }
+
+    private Path completingFile(String uploadId) {
+        return partFile(uploadId).resolveSibling(uploadId + ".complete");
+    }
+
+    private Path partFile(String uploadId) {
+        // Upload ids are generated UUIDs; anything else must not reach the file system
+        UUID.fromString(uploadId);
+        return Paths.get(uploadsDir, "tmp", "chunked", uploadId + ".part");
+    }
+}
@@ -0,0 +1,129 @@
+package com.notevault.service;
+
+import java.util.Set;
+
+/**
+ * Small language-agnostic highlighter for code notes. It recognises the constructs most
+ * languages share (comments, strings, numbers, common keywords and literals) in a single
+ * pass and wraps them in tok-* spans; everything else is escaped and copied through.
+ */
+final class CodeHighlighter {
+
+    private static final Set<String> KEYWORDS = Set.of(
+            "abstract", "as", "async", "await", "break", "case", "catch", "class", "const", "continue",
+            "def", "default", "defer", "del", "do", "elif", "else", "enum", "except", "export", "extends",
+            "final", "finally", "fn", "for", "from", "func", "function", "go", "if", "impl", "implements",
+            "import", "in", "instanceof", "interface", "is", "lambda", "let", "match", "mod", "module", "mut",
+            "namespace", "new", "not", "and", "or", "package", "private", "protected", "pub", "public",
+            "raise", "return", "select", "static", "struct", "super", "switch", "this", "self", "throw",
+            "throws", "trait", "try", "type", "typeof", "use", "using", "var", "void", "while", "with",
+            "yield", "int", "long", "double", "float", "boolean", "bool", "char", "string", "byte", "short",
+            "SELECT", "FROM", "WHERE", "INSERT", "INTO", "VALUES", "UPDATE", "SET", "DELETE", "JOIN", "LEFT",
+            "RIGHT", "INNER", "ON", "GROUP", "BY", "ORDER", "HAVING", "LIMIT", "CREATE", "TABLE", "AND", "OR",
+            "NOT", "AS", "echo", "then", "fi", "done", "esac");
+
+    private static final Set<String> LITERALS = Set.of(
+            "true", "false", "null", "nil", "None", "True", "False", "undefined", "NaN", "NULL");
+
+    private CodeHighlighter() {
+    }
+
+    static String highlight(String code) {
+        StringBuilder out = new StringBuilder(code.length() + code.length() / 4 + 32);
+        out.append("<pre class=\"code-highlight\"><code>");
+        int length = code.length();
+        int i = 0;
+
+        while (i < length) {
+            char c = code.charAt(i);
+            int end;
+            if (code.startsWith("//", i) || (c == '#' && atLineStartOrSpace(code, i))
+                    || (code.startsWith("-- ", i))) {
+                end = code.indexOf('\n', i);
+                i = span(out, "tok-comment", code, i, end < 0 ? length : end);
+            } else if (code.startsWith("/*", i)) {
+                end = code.indexOf("*/", i + 2);
+                i = span(out, "tok-comment", code, i, end < 0 ? length : end + 2);
+            } else if (code.startsWith("<!--", i)) {
+                end = code.indexOf("-->", i + 4);
+                i = span(out, "tok-comment", code, i, end < 0 ? length : end + 3);
+            } else if (c == '"' || c == '\'' || c == '`') {
+                i = span(out, "tok-string", code, i, stringEnd(code, i));
+            } else if (Character.isDigit(c) && (i == 0 || !Character.isLetterOrDigit(code.charAt(i - 1)))) {
+                end = i + 1;
+                while (end < length && (Character.isLetterOrDigit(code.charAt(end)) || code.charAt(end) == '.'
+                        || code.charAt(end) == '_')) {
+                    end++;
+                }
+                i = span(out, "tok-number", code, i, end);
+            } else if (Character.isLetter(c) || c == '_' || c == '$') {
+                end = i + 1;
+                while (end < length && (Character.isLetterOrDigit(code.charAt(end)) || code.charAt(end) == '_'
+                        || code.charAt(end) == '$')) {
+                    end++;
+                }
+                String word = code.substring(i, end);
+                if (KEYWORDS.contains(word)) {
+                    i = span(out, "tok-keyword", code, i, end);
+                } else if (LITERALS.contains(word)) {
+                    i = span(out, "tok-literal", code, i, end);
+                } else {
+                    escape(out, code, i, end);
+                    i = end;
+                }
+            } else {
+                escape(out, code, i, i + 1);
+                i++;
+            }
+        }
+
+        out.append("</code></pre>");
+        return out.toString();
+    }
+
+    private static boolean atLineStartOrSpace(String code, int index) {
+        return index == 0 || Character.isWhitespace(code.charAt(index - 1));
+    }
+
+    private static int stringEnd(String code, int start) {
+        char quote = code.charAt(start);
+        int i = start + 1;
+        while (i < code.length()) {
+            char c = code.charAt(i);
+            if (c == '\\') {
+                i += 2;
+                continue;
+            }
+            if (c == quote) {
+                return i + 1;
+            }
+            // Only template strings span lines
+            if (c == '\n' && quote != '`') {
+                return i;
+            }
+            i++;
+        }
+        return code.length();
+    }
+
+    private static int span(StringBuilder out, String cssClass, String code, int start, int end) {
+        end = Math.min(end, code.length());
+        out.append("<span class=\"").append(cssClass).append("\">");
+        escape(out, code, start, end);
+        out.append("</span>");
+        return end;
+    }
+
+    private static void escape(StringBuilder out, String text, int start, int end) {
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '&': out.append("&amp;"); break;
+                case '<': out.append("&lt;"); break;
+                case '>': out.append("&gt;"); break;
+                case '"': out.append("&quot;"); break;
+                default: out.append(c);
+            }
+        }
+    }
+}
@@ -0,0 +1,268 @@
+package com.notevault.service;
+
+import lombok.RequiredArgsConstructor;
+import com.notevault.model.BlobReference;
+import com.notevault.model.StoredBlob;
+import com.notevault.repository.BlobReferenceRepository;
+import com.notevault.repository.StoredBlobRepository;
+import org.apache.commons.io.input.CountingInputStream;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Logger;
+
+/**
+ * Content-addressed store for uploaded files.
+ *
+ * Uploads are hashed with SHA-256 while they are streamed to a temporary file and then
+ * moved to uploads/blobs/ab/cd/&lt;hash&gt;.ext. Uploading content that is already stored
+ * costs no further disk space. Notes, profile pictures and attachments register
+ * references to the blobs they use; blobs without references are deleted, together with
+ * their thumbnails, after a grace period that gives fresh uploads time to be linked.
+ */
+@Service
+@RequiredArgsConstructor
+public class FileStorageService {
+
+    private static final Logger logger = Logger.getLogger(FileStorageService.class.getName());
+
+    private final StoredBlobRepository storedBlobRepository;
+    private final BlobReferenceRepository blobReferenceRepository;
+    private final ImageDerivativeService imageDerivativeService;
+    private final StorageAccountingService storageAccountingService;
+
+    // Serializes storing and deleting the same blob on this node
+    private final Object[] blobLocks = createLocks(64);
+
+    @Value("${app.uploads-dir:uploads}")
+    private String uploadsDir;
+
+    @Value("${app.blobs.unreferenced-grace-hours:24}")
+    private long unreferencedGraceHours;
+
+    @Value("${app.blobs.cleanup-batch-size:500}")
+    private int cleanupBatchSize;
+
+    /**
+     * Stores the stream in the blob store. If the user has a storage quota, the upload is
+     * cut off as soon as it would exceed it.
+     */
+    public String store(InputStream in, Integer userId, String extension) throws IOException {
+        long remainingBytes = userId != null ? storageAccountingService.getRemainingBytes(userId) : Long.MAX_VALUE;
+        if (remainingBytes <= 0) {
+            throw new RuntimeException("Storage quota exceeded");
+        }
+        if (remainingBytes < Long.MAX_VALUE) {
+            in = new CountingInputStream(in) {
+                @Override
+                protected synchronized void afterRead(int n) {
+                    super.afterRead(n);
+                    if (getByteCount() > remainingBytes) {
+                        throw new RuntimeException("Storage quota exceeded");
+                    }
+                }
+            };
+        }
+
+        Path tempDir = Paths.get(uploadsDir, "tmp");
+        Files.createDirectories(tempDir);
+        Path tempFile = Files.createTempFile(tempDir, "upload-", ".part");
+
+        try {
+            DigestInputStream digestIn = new DigestInputStream(in, sha256());
+            long size = Files.copy(digestIn, tempFile, StandardCopyOption.REPLACE_EXISTING);
+            return storeBlob(tempFile, toHex(digestIn.getMessageDigest().digest()), size, extension);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    /**
+     * Moves a file that was assembled elsewhere under uploads (e.g. a chunked upload) into
+     * the blob store. Once stored the file is gone, whether or not its content was stored
+     * already; if storing fails it is left in place.
+     */
+    public String storeFile(Path file, String extension) throws IOException {
+        MessageDigest digest = sha256();
+        try (InputStream in = Files.newInputStream(file)) {
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        String filePath = storeBlob(file, toHex(digest.digest()), Files.size(file), extension);
+        Files.deleteIfExists(file);
+        return filePath;
+    }
+
+    private String storeBlob(Path file, String hash, long size, String extension) throws IOException {
+        synchronized (lockFor(hash)) {
+            LocalDateTime now = LocalDateTime.now();
+            StoredBlob existing = storedBlobRepository.findById(hash).orElse(null);
+            if (existing != null && Files.exists(Paths.get(existing.getFilePath()))
+                    && storedBlobRepository.touch(hash, now) > 0) {
+                return existing.getFilePath();
+            }
+
+            Path target = blobPath(hash, extension);
+            Files.createDirectories(target.getParent());
+            Files.move(file, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+            StoredBlob blob = existing != null ? existing : new StoredBlob();
+            blob.setHash(hash);
+            blob.setFilePath(target.toString());
+            blob.setSizeBytes(size);
+            blob.setLastUploadedAt(now);
+            storedBlobRepository.save(blob);
+            imageDerivativeService.submit(target);
+            return blob.getFilePath();
+        }
+    }
+
+    /**
+     * Makes the owner reference exactly the blobs behind the given paths, charging new
+     * references to the given user. Paths outside the blob store (uploads from before it
+     * existed) are ignored.
+     */
+    @Transactional
+    public void updateReferences(BlobReference.OwnerType ownerType, Integer ownerId, Integer userId,
+                                 Collection<String> paths) {
+        Set<String> wanted = new HashSet<>();
+        if (paths != null) {
+            for (String path : paths) {
+                String hash = hashOf(path);
+                if (hash != null) {
+                    wanted.add(hash);
+                }
+            }
+        }
+
+        long generation = storageAccountingService.lockGeneration();
+        List<BlobReference> existing = blobReferenceRepository.findByOwnerTypeAndOwnerId(ownerType, ownerId);
+        for (BlobReference reference : existing) {
+            if (!wanted.remove(reference.getBlobHash())) {
+                blobReferenceRepository.delete(reference);
+                storedBlobRepository.adjustRefCount(reference.getBlobHash(), -1);
+                if (reference.getSizeBytes() != null) {
+                    storageAccountingService.record(generation, reference.getUserId(), -reference.getSizeBytes(), -1);
+                }
+            }
+        }
+        for (String hash : wanted) {
+            StoredBlob blob = storedBlobRepository.findById(hash).orElse(null);
+            if (blob != null && storedBlobRepository.adjustRefCount(hash, 1) > 0) {
+                blobReferenceRepository.save(new BlobReference(null, hash, ownerType, ownerId, userId, blob.getSizeBytes()));
+                storageAccountingService.record(generation, userId, blob.getSizeBytes(), 1);
+            }
+        }
+    }
+
+    @Transactional
+    public void releaseReferences(BlobReference.OwnerType ownerType, Integer ownerId) {
+        updateReferences(ownerType, ownerId, null, null);
+    }
+
+    @Scheduled(fixedDelayString = "${app.blobs.cleanup-interval-ms:3600000}")
+    public void deleteUnreferencedBlobs() {
+        try {
+            LocalDateTime cutoff = LocalDateTime.now().minusHours(unreferencedGraceHours);
+            int deleted = 0;
+            List<StoredBlob> candidates;
+            do {
+                candidates = storedBlobRepository.findByRefCountLessThanEqualAndLastUploadedAtBefore(
+                        0, cutoff, PageRequest.of(0, cleanupBatchSize));
+                for (StoredBlob blob : candidates) {
+                    synchronized (lockFor(blob.getHash())) {
+                        if (storedBlobRepository.deleteIfUnreferenced(blob.getHash(), cutoff) > 0) {
+                            Path file = Paths.get(blob.getFilePath());
+                            imageDerivativeService.deleteDerivatives(file);
+                            Files.deleteIfExists(file);
+                            deleted++;
+                        }
+                    }
+                }
+            } while (candidates.size() == cleanupBatchSize);
+            if (deleted > 0) {
+                logger.info("Deleted " + deleted + " unreferenced blobs");
+            }
+        } catch (Exception e) {
+            logger.warning("Error deleting unreferenced blobs: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the content hash of a path inside the blob store, or null for other paths.
+     */
+    public static String hashOf(String path) {
+        if (path == null || path.trim().isEmpty()) {
+            return null;
+        }
+        Path fileName = Paths.get(path.trim()).getFileName();
+        if (fileName == null) {
+            return null;
+        }
+        String name = fileName.toString();
+        int dot = name.indexOf('.');
+        String hash = dot >= 0 ? name.substring(0, dot) : name;
+        return hash.matches("[0-9a-f]{64}") ? hash : null;
+    }
+
+    public static String extensionOf(String filename) {
+        if (filename == null || filename.lastIndexOf('.') < 0) {
+            return "";
+        }
+        String extension = filename.substring(filename.lastIndexOf('.'));
+        // Only keep simple extensions, anything else could escape the upload directory
+        return extension.matches("\\.[A-Za-z0-9]{1,10}") ? extension.toLowerCase() : "";
+    }
+
+    private Path blobPath(String hash, String extension) {
+        return Paths.get(uploadsDir, "blobs", hash.substring(0, 2), hash.substring(2, 4), hash + extension);
+    }
+
+    private Object lockFor(String hash) {
+        return blobLocks[Math.floorMod(hash.hashCode(), blobLocks.length)];
+    }
+
+    private static Object[] createLocks(int count) {
+        Object[] locks = new Object[count];
+        for (int i = 0; i < count; i++) {
+            locks[i] = new Object();
+        }
+        return locks;
+    }
+
+    static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+}
@@ -0,0 +1,341 @@
+package com.notevault.service;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Single-pass allowlist sanitizer for rich text notes.
+ *
+ * The input is scanned once, left to right, without building a DOM: text is escaped,
+ * allowed tags are re-emitted with only their allowed attributes, other tags are dropped
+ * while keeping their text, and script-like elements are dropped including their content.
+ * Unclosed tags are closed at the end so a note cannot break the markup around it.
+ */
+final class HtmlSanitizer {
+
+    private static final Set<String> ALLOWED_TAGS = Set.of(
+            "p", "br", "b", "strong", "i", "em", "u", "s", "strike", "del", "ins", "mark", "code", "pre",
+            "blockquote", "ul", "ol", "li", "h1", "h2", "h3", "h4", "h5", "h6", "a", "span", "div", "hr",
+            "sub", "sup", "small", "table", "thead", "tbody", "tr", "th", "td", "img");
+
+    private static final Set<String> VOID_TAGS = Set.of("br", "hr", "img");
+
+    private static final Set<String> DROPPED_WITH_CONTENT = Set.of(
+            "script", "style", "iframe", "object", "embed", "template", "noscript", "textarea", "title",
+            "head", "svg", "math", "select");
+
+    private static final Map<String, Set<String>> ALLOWED_ATTRIBUTES = Map.of(
+            "a", Set.of("href", "title"),
+            "img", Set.of("src", "alt", "title", "width", "height"),
+            "td", Set.of("colspan", "rowspan"),
+            "th", Set.of("colspan", "rowspan"));
+
+    private static final Set<String> URL_ATTRIBUTES = Set.of("href", "src");
+    private static final Set<String> NUMERIC_ATTRIBUTES = Set.of("width", "height", "colspan", "rowspan");
+
+    private HtmlSanitizer() {
+    }
+
+    static String sanitize(String html) {
+        if (html == null || html.isEmpty()) {
+            return "";
+        }
+        StringBuilder out = new StringBuilder(html.length() + 16);
+        Deque<String> openTags = new ArrayDeque<>();
+        int length = html.length();
+        int i = 0;
+
+        while (i < length) {
+            char c = html.charAt(i);
+            if (c == '<') {
+                if (html.startsWith("<!--", i)) {
+                    int end = html.indexOf("-->", i + 4);
+                    i = end < 0 ? length : end + 3;
+                    continue;
+                }
+                if (i + 1 < length && (html.charAt(i + 1) == '!' || html.charAt(i + 1) == '?')) {
+                    int end = html.indexOf('>', i);
+                    i = end < 0 ? length : end + 1;
+                    continue;
+                }
+                int next = readTag(html, i, out, openTags);
+                if (next > i) {
+                    i = next;
+                    continue;
+                }
+                out.append("&lt;");
+            } else if (c == '&') {
+                int entityEnd = entityEnd(html, i);
+                if (entityEnd > 0) {
+                    out.append(html, i, entityEnd);
+                    i = entityEnd;
+                    continue;
+                }
+                out.append("&amp;");
+            } else if (c == '>') {
+                out.append("&gt;");
+            } else if (c == '"') {
+                out.append("&quot;");
+            } else if (c != '\0') {
+                out.append(c);
+            }
+            i++;
+        }
+
+        while (!openTags.isEmpty()) {
+            out.append("</").append(openTags.pop()).append('>');
+        }
+        return out.toString();
+    }
+
+    /**
+     * Handles the tag starting at start and returns the index after it, or start if the
+     * '&lt;' does not begin a tag and should be escaped as text.
+     */
+    private static int readTag(String html, int start, StringBuilder out, Deque<String> openTags) {
+        int length = html.length();
+        int i = start + 1;
+        boolean closing = i < length && html.charAt(i) == '/';
+        if (closing) {
+            i++;
+        }
+        int nameStart = i;
+        while (i < length && Character.isLetterOrDigit(html.charAt(i))) {
+            i++;
+        }
+        if (i == nameStart || !Character.isLetter(html.charAt(nameStart))) {
+            return start;
+        }
+        String name = html.substring(nameStart, i).toLowerCase(Locale.ROOT);
+
+        StringBuilder attributes = new StringBuilder();
+        boolean selfClosing = false;
+        Set<String> allowedAttributes = ALLOWED_ATTRIBUTES.getOrDefault(name, Set.of());
+        while (true) {
+            while (i < length && (Character.isWhitespace(html.charAt(i)) || html.charAt(i) == '/')) {
+                selfClosing = html.charAt(i) == '/';
+                i++;
+            }
+            if (i >= length) {
+                // Unterminated tag, drop the rest of the input
+                return length;
+            }
+            if (html.charAt(i) == '>') {
+                i++;
+                break;
+            }
+            selfClosing = false;
+
+            int attributeStart = i;
+            while (i < length && !Character.isWhitespace(html.charAt(i))
+                    && html.charAt(i) != '=' && html.charAt(i) != '>' && html.charAt(i) != '/') {
+                i++;
+            }
+            String attributeName = html.substring(attributeStart, i).toLowerCase(Locale.ROOT);
+            while (i < length && Character.isWhitespace(html.charAt(i))) {
+                i++;
+            }
+            String value = null;
+            if (i < length && html.charAt(i) == '=') {
+                i++;
+                while (i < length && Character.isWhitespace(html.charAt(i))) {
+                    i++;
+                }
+                if (i < length && (html.charAt(i) == '"' || html.charAt(i) == '\'')) {
+                    char quote = html.charAt(i);
+                    int end = html.indexOf(quote, i + 1);
+                    if (end < 0) {
+                        return length;
+                    }
+                    value = html.substring(i + 1, end);
+                    i = end + 1;
+                } else {
+                    int valueStart = i;
+                    while (i < length && !Character.isWhitespace(html.charAt(i)) && html.charAt(i) != '>') {
+                        i++;
+                    }
+                    value = html.substring(valueStart, i);
+                }
+            }
+            if (!closing && value != null && allowedAttributes.contains(attributeName)) {
+                appendAttribute(attributes, attributeName, decodeEntities(value));
+            }
+        }
+
+        if (DROPPED_WITH_CONTENT.contains(name)) {
+            if (closing || selfClosing) {
+                return i;
+            }
+            int end = indexOfIgnoreCase(html, "</" + name, i);
+            if (end < 0) {
+                return length;
+            }
+            int close = html.indexOf('>', end);
+            return close < 0 ? length : close + 1;
+        }
+        if (!ALLOWED_TAGS.contains(name)) {
+            return i;
+        }
+
+        if (closing) {
+            if (openTags.contains(name)) {
+                String open;
+                do {
+                    open = openTags.pop();
+                    out.append("</").append(open).append('>');
+                } while (!open.equals(name));
+            }
+            return i;
+        }
+
+        out.append('<').append(name).append(attributes);
+        if (name.equals("a")) {
+            out.append(" rel=\"nofollow noopener noreferrer\"");
+        }
+        out.append('>');
+        if (!VOID_TAGS.contains(name)) {
+            openTags.push(name);
+        }
+        return i;
+    }
+
+    private static void appendAttribute(StringBuilder attributes, String name, String value) {
+        if (URL_ATTRIBUTES.contains(name) && !isSafeUrl(value)) {
+            return;
+        }
+        if (NUMERIC_ATTRIBUTES.contains(name) && !value.trim().matches("\\d{1,5}")) {
+            return;
+        }
+        attributes.append(' ').append(name).append("=\"");
+        escapeAttribute(attributes, value.trim());
+        attributes.append('"');
+    }
+
+    static boolean isSafeUrl(String url) {
+        StringBuilder compact = new StringBuilder(url.length());
+        for (int i = 0; i < url.length(); i++) {
+            char c = url.charAt(i);
+            // Browsers ignore whitespace and control characters inside the scheme
+            if (c > ' ') {
+                compact.append(Character.toLowerCase(c));
+            }
+        }
+        String value = compact.toString();
+        if (value.startsWith("http:") || value.startsWith("https:") || value.startsWith("mailto:")) {
+            return true;
+        }
+        int colon = value.indexOf(':');
+        if (colon < 0) {
+            return true;
+        }
+        // A colon after the first path, query or fragment character is not a scheme
+        for (int i = 0; i < colon; i++) {
+            char c = value.charAt(i);
+            if (c == '/' || c == '?' || c == '#') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void escapeAttribute(StringBuilder out, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '&': out.append("&amp;"); break;
+                case '<': out.append("&lt;"); break;
+                case '>': out.append("&gt;"); break;
+                case '"': out.append("&quot;"); break;
+                case '\'': out.append("&#39;"); break;
+                default: out.append(c);
+            }
+        }
+    }
+
+    private static String decodeEntities(String value) {
+        if (value.indexOf('&') < 0) {
+            return value;
+        }
+        StringBuilder decoded = new StringBuilder(value.length());
+        int i = 0;
+        while (i < value.length()) {
+            char c = value.charAt(i);
+            int end = c == '&' ? entityEnd(value, i) : -1;
+            if (end < 0) {
+                decoded.append(c);
+                i++;
+                continue;
+            }
+            String entity = value.substring(i + 1, end - 1);
+            if (entity.startsWith("#x") || entity.startsWith("#X")) {
+                decoded.appendCodePoint(codePoint(entity.substring(2), 16));
+            } else if (entity.startsWith("#")) {
+                decoded.appendCodePoint(codePoint(entity.substring(1), 10));
+            } else {
+                switch (entity) {
+                    case "amp": decoded.append('&'); break;
+                    case "lt": decoded.append('<'); break;
+                    case "gt": decoded.append('>'); break;
+                    case "quot": decoded.append('"'); break;
+                    case "apos": decoded.append('\''); break;
+                    case "colon": decoded.append(':'); break;
+                    case "tab": decoded.append('\t'); break;
+                    case "newline": decoded.append('\n'); break;
+                    default: decoded.append(value, i, end);
+                }
+            }
+            i = end;
+        }
+        return decoded.toString();
+    }
+
+    private static int codePoint(String digits, int radix) {
+        try {
+            int codePoint = Integer.parseInt(digits, radix);
+            return Character.isValidCodePoint(codePoint) && codePoint != 0 ? codePoint : 0xFFFD;
+        } catch (NumberFormatException e) {
+            return 0xFFFD;
+        }
+    }
+
+    /**
+     * Returns the index after a well-formed character reference starting at start, or -1.
+     */
+    private static int entityEnd(String text, int start) {
+        int i = start + 1;
+        int length = text.length();
+        boolean numeric = i < length && text.charAt(i) == '#';
+        boolean hex = false;
+        if (numeric) {
+            i++;
+            hex = i < length && (text.charAt(i) == 'x' || text.charAt(i) == 'X');
+            if (hex) {
+                i++;
+            }
+        }
+        int bodyStart = i;
+        while (i < length && i - bodyStart < 32) {
+            char c = text.charAt(i);
+            boolean valid = numeric
+                    ? (hex ? Character.digit(c, 16) >= 0 : Character.isDigit(c))
+                    : Character.isLetterOrDigit(c);
+            if (!valid) {
+                break;
+            }
+            i++;
+        }
+        return i > bodyStart && i < length && text.charAt(i) == ';' ? i + 1 : -1;
+    }
+
+    private static int indexOfIgnoreCase(String text, String needle, int from) {
+        for (int i = from; i <= text.length() - needle.length(); i++) {
+            if (text.regionMatches(true, i, needle, 0, needle.length())) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,412 @@
+package com.notevault.service;
+
+import java.util.Arrays;
+
+/**
+ * Compressed set of non-negative ints in the Roaring layout: ids are grouped by their high
+ * 16 bits, and each group keeps its low 16 bits either as a sorted array (up to 4096
+ * values) or as a 65536 bit bitmap, whichever is smaller. Sparse sets cost two bytes per
+ * id, dense ones one bit, and AND, OR and AND NOT work group by group.
+ *
+ * Not thread-safe; and, or and andNot return new bitmaps and leave their inputs alone.
+ */
+final class IdBitmap {
+
+    private static final int ARRAY_MAX = 4096;
+
+    private char[] keys = new char[0];
+    private Container[] containers = new Container[0];
+    private int size;
+
+    boolean add(int id) {
+        checkId(id);
+        char key = (char) (id >>> 16);
+        int index = Arrays.binarySearch(keys, 0, size, key);
+        if (index < 0) {
+            index = -index - 1;
+            insertContainer(index, key, new ArrayContainer());
+        }
+        int before = containers[index].cardinality();
+        containers[index] = containers[index].add((char) id);
+        return containers[index].cardinality() > before;
+    }
+
+    boolean remove(int id) {
+        checkId(id);
+        int index = Arrays.binarySearch(keys, 0, size, (char) (id >>> 16));
+        if (index < 0) {
+            return false;
+        }
+        int before = containers[index].cardinality();
+        containers[index] = containers[index].remove((char) id);
+        boolean removed = containers[index].cardinality() < before;
+        if (containers[index].cardinality() == 0) {
+            System.arraycopy(keys, index + 1, keys, index, size - index - 1);
+            System.arraycopy(containers, index + 1, containers, index, size - index - 1);
+            containers[--size] = null;
+        }
+        return removed;
+    }
+
+    boolean contains(int id) {
+        if (id < 0) {
+            return false;
+        }
+        int index = Arrays.binarySearch(keys, 0, size, (char) (id >>> 16));
+        return index >= 0 && containers[index].contains((char) id);
+    }
+
+    int cardinality() {
+        int cardinality = 0;
+        for (int i = 0; i < size; i++) {
+            cardinality += containers[i].cardinality();
+        }
+        return cardinality;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns the ids in ascending order.
+     */
+    int[] toArray() {
+        int[] ids = new int[cardinality()];
+        int position = 0;
+        for (int i = 0; i < size; i++) {
+            position = containers[i].copyTo(ids, position, keys[i] << 16);
+        }
+        return ids;
+    }
+
+    IdBitmap copy() {
+        IdBitmap copy = new IdBitmap();
+        copy.keys = Arrays.copyOf(keys, size);
+        copy.containers = new Container[size];
+        for (int i = 0; i < size; i++) {
+            copy.containers[i] = containers[i].copy();
+        }
+        copy.size = size;
+        return copy;
+    }
+
+    static IdBitmap and(IdBitmap a, IdBitmap b) {
+        IdBitmap result = new IdBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < a.size && j < b.size) {
+            if (a.keys[i] < b.keys[j]) {
+                i++;
+            } else if (a.keys[i] > b.keys[j]) {
+                j++;
+            } else {
+                result.append(a.keys[i], a.containers[i].and(b.containers[j]));
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    static IdBitmap or(IdBitmap a, IdBitmap b) {
+        IdBitmap result = new IdBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < a.size || j < b.size) {
+            if (j >= b.size || (i < a.size && a.keys[i] < b.keys[j])) {
+                result.append(a.keys[i], a.containers[i].copy());
+                i++;
+            } else if (i >= a.size || a.keys[i] > b.keys[j]) {
+                result.append(b.keys[j], b.containers[j].copy());
+                j++;
+            } else {
+                result.append(a.keys[i], a.containers[i].or(b.containers[j]));
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    static IdBitmap andNot(IdBitmap a, IdBitmap b) {
+        IdBitmap result = new IdBitmap();
+        int j = 0;
+        for (int i = 0; i < a.size; i++) {
+            while (j < b.size && b.keys[j] < a.keys[i]) {
+                j++;
+            }
+            boolean overlaps = j < b.size && b.keys[j] == a.keys[i];
+            result.append(a.keys[i], overlaps ? a.containers[i].andNot(b.containers[j]) : a.containers[i].copy());
+        }
+        return result;
+    }
+
+    private void append(char key, Container container) {
+        if (container.cardinality() > 0) {
+            insertContainer(size, key, container);
+        }
+    }
+
+    private void insertContainer(int index, char key, Container container) {
+        if (size == keys.length) {
+            int capacity = Math.max(4, size * 2);
+            keys = Arrays.copyOf(keys, capacity);
+            containers = Arrays.copyOf(containers, capacity);
+        }
+        System.arraycopy(keys, index, keys, index + 1, size - index);
+        System.arraycopy(containers, index, containers, index + 1, size - index);
+        keys[index] = key;
+        containers[index] = container;
+        size++;
+    }
+
+    private static void checkId(int id) {
+        if (id < 0) {
+            throw new IllegalArgumentException("Negative id: " + id);
+        }
+    }
+
+    private abstract static class Container {
+        abstract int cardinality();
+
+        abstract boolean contains(char value);
+
+        abstract Container add(char value);
+
+        abstract Container remove(char value);
+
+        abstract Container copy();
+
+        abstract int copyTo(int[] target, int position, int high);
+
+        abstract long[] toWords();
+
+        Container and(Container other) {
+            if (this instanceof ArrayContainer) {
+                return ((ArrayContainer) this).filter(other, true);
+            }
+            if (other instanceof ArrayContainer) {
+                return ((ArrayContainer) other).filter(this, true);
+            }
+            long[] words = toWords();
+            long[] otherWords = ((BitmapContainer) other).words;
+            for (int i = 0; i < words.length; i++) {
+                words[i] &= otherWords[i];
+            }
+            return BitmapContainer.of(words);
+        }
+
+        Container or(Container other) {
+            if (this instanceof ArrayContainer && other instanceof ArrayContainer
+                    && cardinality() + other.cardinality() <= ARRAY_MAX) {
+                return ((ArrayContainer) this).union((ArrayContainer) other);
+            }
+            long[] words = toWords();
+            long[] otherWords = other.toWords();
+            for (int i = 0; i < words.length; i++) {
+                words[i] |= otherWords[i];
+            }
+            return BitmapContainer.of(words);
+        }
+
+        Container andNot(Container other) {
+            if (this instanceof ArrayContainer) {
+                return ((ArrayContainer) this).filter(other, false);
+            }
+            long[] words = toWords();
+            long[] otherWords = other.toWords();
+            for (int i = 0; i < words.length; i++) {
+                words[i] &= ~otherWords[i];
+            }
+            return BitmapContainer.of(words);
+        }
+    }
+
+    private static final class ArrayContainer extends Container {
+        private char[] values;
+        private int cardinality;
+
+        ArrayContainer() {
+            this(new char[4], 0);
+        }
+
+        ArrayContainer(char[] values, int cardinality) {
+            this.values = values;
+            this.cardinality = cardinality;
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        boolean contains(char value) {
+            return Arrays.binarySearch(values, 0, cardinality, value) >= 0;
+        }
+
+        @Override
+        Container add(char value) {
+            int index = Arrays.binarySearch(values, 0, cardinality, value);
+            if (index >= 0) {
+                return this;
+            }
+            if (cardinality == ARRAY_MAX) {
+                return new BitmapContainer(toWords(), cardinality).add(value);
+            }
+            index = -index - 1;
+            if (cardinality == values.length) {
+                values = Arrays.copyOf(values, Math.min(ARRAY_MAX, cardinality * 2));
+            }
+            System.arraycopy(values, index, values, index + 1, cardinality - index);
+            values[index] = value;
+            cardinality++;
+            return this;
+        }
+
+        @Override
+        Container remove(char value) {
+            int index = Arrays.binarySearch(values, 0, cardinality, value);
+            if (index >= 0) {
+                System.arraycopy(values, index + 1, values, index, cardinality - index - 1);
+                cardinality--;
+            }
+            return this;
+        }
+
+        @Override
+        Container copy() {
+            return new ArrayContainer(Arrays.copyOf(values, Math.max(cardinality, 1)), cardinality);
+        }
+
+        @Override
+        int copyTo(int[] target, int position, int high) {
+            for (int i = 0; i < cardinality; i++) {
+                target[position++] = high | values[i];
+            }
+            return position;
+        }
+
+        @Override
+        long[] toWords() {
+            long[] words = new long[1024];
+            for (int i = 0; i < cardinality; i++) {
+                words[values[i] >>> 6] |= 1L << values[i];
+            }
+            return words;
+        }
+
+        Container filter(Container other, boolean keepContained) {
+            char[] result = new char[Math.max(cardinality, 1)];
+            int count = 0;
+            for (int i = 0; i < cardinality; i++) {
+                if (other.contains(values[i]) == keepContained) {
+                    result[count++] = values[i];
+                }
+            }
+            return new ArrayContainer(result, count);
+        }
+
+        Container union(ArrayContainer other) {
+            char[] result = new char[Math.max(cardinality + other.cardinality, 1)];
+            int i = 0;
+            int j = 0;
+            int count = 0;
+            while (i < cardinality || j < other.cardinality) {
+                if (j >= other.cardinality || (i < cardinality && values[i] < other.values[j])) {
+                    result[count++] = values[i++];
+                } else if (i >= cardinality || values[i] > other.values[j]) {
+                    result[count++] = other.values[j++];
+                } else {
+                    result[count++] = values[i++];
+                    j++;
+                }
+            }
+            return new ArrayContainer(result, count);
+        }
+    }
+
+    private static final class BitmapContainer extends Container {
+        private final long[] words;
+        private int cardinality;
+
+        BitmapContainer(long[] words, int cardinality) {
+            this.words = words;
+            this.cardinality = cardinality;
+        }
+
+        static Container of(long[] words) {
+            int cardinality = 0;
+            for (long word : words) {
+                cardinality += Long.bitCount(word);
+            }
+            if (cardinality > ARRAY_MAX) {
+                return new BitmapContainer(words, cardinality);
+            }
+            char[] values = new char[Math.max(cardinality, 1)];
+            int count = 0;
+            for (int i = 0; i < words.length; i++) {
+                long word = words[i];
+                while (word != 0) {
+                    values[count++] = (char) (i * 64 + Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+            return new ArrayContainer(values, count);
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        boolean contains(char value) {
+            return (words[value >>> 6] & (1L << value)) != 0;
+        }
+
+        @Override
+        Container add(char value) {
+            if (!contains(value)) {
+                words[value >>> 6] |= 1L << value;
+                cardinality++;
+            }
+            return this;
+        }
+
+        @Override
+        Container remove(char value) {
+            if (contains(value)) {
+                words[value >>> 6] &= ~(1L << value);
+                cardinality--;
+                if (cardinality <= ARRAY_MAX) {
+                    return of(words);
+                }
+            }
+            return this;
+        }
+
+        @Override
+        Container copy() {
+            return new BitmapContainer(words.clone(), cardinality);
+        }
+
+        @Override
+        int copyTo(int[] target, int position, int high) {
+            for (int i = 0; i < words.length; i++) {
+                long word = words[i];
+                while (word != 0) {
+                    target[position++] = high | (i * 64 + Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+            return position;
+        }
+
+        @Override
+        long[] toWords() {
+            return words.clone();
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.notevault.service;
+
+import lombok.RequiredArgsConstructor;
+import com.notevault.model.PooledIdGenerator;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Logger;
+
+/**
+ * Hands out ids for tables with auto increment ids in blocks reserved from id_sequence.
+ *
+ * Each node reserves blockSize ids at a time with a single compare-and-set update of the
+ * table's id_sequence row and then hands them out from an in-memory counter; only the
+ * thread that finds the block used up takes a lock to reserve the next one. A table's row
+ * is created on first use from its current MAX(id), and moved forward if rows were
+ * inserted through auto increment in the meantime, so ids never collide with existing
+ * rows. Ids of blocks that are not used up before a restart are skipped.
+ */
+@Service
+@RequiredArgsConstructor
+public class IdBlockAllocator {
+
+    private static final Logger logger = Logger.getLogger(IdBlockAllocator.class.getName());
+
+    private static final int MAX_RESERVE_ATTEMPTS = 20;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final PlatformTransactionManager transactionManager;
+
+    private final Map<String, AtomicReference<Block>> blocks = new ConcurrentHashMap<>();
+    private final Map<String, Boolean> initializedSequences = new ConcurrentHashMap<>();
+
+    private TransactionTemplate reserveTransaction;
+
+    @Value("${app.ids.block-size:50}")
+    private int blockSize;
+
+    @PostConstruct
+    public void init() {
+        // Reservations commit on their own so they never hold the row lock for a caller's transaction
+        reserveTransaction = new TransactionTemplate(transactionManager);
+        reserveTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        PooledIdGenerator.setAllocator(this);
+    }
+
+    /**
+     * Returns the next id for the table.
+     */
+    public long nextId(String table, String idColumn) {
+        AtomicReference<Block> current = blocks.computeIfAbsent(table, key -> new AtomicReference<>());
+        while (true) {
+            Block block = current.get();
+            if (block != null) {
+                long id = block.next.getAndIncrement();
+                if (id < block.limit) {
+                    return id;
+                }
+            }
+            synchronized (current) {
+                if (current.get() == block) {
+                    long start = reserve(table, idColumn, blockSize);
+                    current.set(new Block(start, start + blockSize));
+                }
+            }
+        }
+    }
+
+    /**
+     * Reserves count consecutive ids for the table and returns the first, for bulk
+     * inserts that set ids themselves.
+     */
+    public long reserveRange(String table, String idColumn, int count) {
+        return reserve(table, idColumn, count);
+    }
+
+    private long reserve(String table, String idColumn, int count) {
+        if (!table.matches("\\w+") || !idColumn.matches("\\w+")) {
+            throw new IllegalArgumentException("Invalid table or column name");
+        }
+        Long start = reserveTransaction.execute(status -> {
+            initializeSequence(table, idColumn);
+            for (int attempt = 0; attempt < MAX_RESERVE_ATTEMPTS; attempt++) {
+                Long next = jdbcTemplate.queryForObject(
+                        "SELECT next_value FROM id_sequence WHERE name = ?", Long.class, table);
+                if (jdbcTemplate.update("UPDATE id_sequence SET next_value = ? WHERE name = ? AND next_value = ?",
+                        next + count, table, next) == 1) {
+                    return next;
+                }
+            }
+            return null;
+        });
+        if (start == null) {
+            throw new RuntimeException("Could not reserve ids for " + table);
+        }
+        return start;
+    }
+
+    private void initializeSequence(String table, String idColumn) {
+        if (initializedSequences.containsKey(table)) {
+            return;
+        }
+        long firstFree = jdbcTemplate.queryForObject(
+                "SELECT COALESCE(MAX(" + idColumn + "), 0) + 1 FROM " + table, Long.class);
+        try {
+            jdbcTemplate.update("INSERT INTO id_sequence (name, next_value) VALUES (?, ?)", table, firstFree);
+        } catch (DuplicateKeyException e) {
+            // Another node created it; make sure it is past rows inserted without the allocator
+            int moved = jdbcTemplate.update("UPDATE id_sequence SET next_value = ? WHERE name = ? AND next_value < ?",
+                    firstFree, table, firstFree);
+            if (moved > 0) {
+                logger.info("Moved id sequence of " + table + " forward to " + firstFree);
+            }
+        }
+        initializedSequences.put(table, Boolean.TRUE);
+    }
+
+    private static final class Block {
+        private final AtomicLong next;
+        private final long limit;
+
+        private Block(long start, long limit) {
+            this.next = new AtomicLong(start);
+            this.limit = limit;
+        }
+    }
+}
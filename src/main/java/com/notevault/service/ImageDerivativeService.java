@@ -0,0 +1,348 @@
+package com.notevault.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Generates smaller versions of uploaded images in the background: thumbnails in a few
+ * widths and a recompressed JPEG. Derivatives are written next to the original as
+ * &lt;name&gt;_w150.jpg, &lt;name&gt;_w300.jpg, ... and &lt;name&gt;_c.jpg. Images with
+ * transparency keep PNG thumbnails and get no recompressed variant.
+ *
+ * The work queue is bounded; when it is full new images are skipped and simply keep being
+ * served in full size, as are images with more than app.images.max-pixels pixels, whose
+ * dimensions are read from the header before anything is decoded.
+ *
+ * Which thumbnails exist is remembered when they are generated, so resolving them for a
+ * NoteDTO does not stat the file system. Thumbnails generated before a restart or by another node
+ * are looked up on disk once; a miss is checked again after a minute.
+ */
+@Service
+public class ImageDerivativeService {
+
+    public static final int CARD_THUMBNAIL_WIDTH = 300;
+    public static final int AVATAR_THUMBNAIL_WIDTH = 150;
+
+    private static final Logger logger = Logger.getLogger(ImageDerivativeService.class.getName());
+
+    private static final List<String> IMAGE_EXTENSIONS = List.of(".png", ".jpg", ".jpeg", ".gif", ".bmp");
+
+    private static final int MAX_KNOWN_THUMBNAILS = 10000;
+    private static final long MISSING_THUMBNAIL_RECHECK_MS = 60_000;
+
+    // Thumbnail (or the original, if there is none) by original path and width
+    private final Map<String, KnownThumbnail> knownThumbnails = Collections.synchronizedMap(
+            new LinkedHashMap<String, KnownThumbnail>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, KnownThumbnail> eldest) {
+                    return size() > MAX_KNOWN_THUMBNAILS;
+                }
+            });
+
+    @Value("${app.images.thumbnail-widths:150,300,600}")
+    private int[] thumbnailWidths;
+
+    @Value("${app.images.jpeg-quality:0.8}")
+    private float jpegQuality;
+
+    @Value("${app.images.worker-threads:2}")
+    private int workerThreads;
+
+    @Value("${app.images.queue-capacity:200}")
+    private int queueCapacity;
+
+    @Value("${app.images.max-pixels:40000000}")
+    private long maxPixels;
+
+    private ThreadPoolExecutor executor;
+
+    // Bumped whenever this service writes thumbnails, so cached output can be rebuilt with them
+    private final AtomicLong thumbnailsGenerated = new AtomicLong();
+
+    @PostConstruct
+    public void start() {
+        AtomicInteger threadNumber = new AtomicInteger();
+        executor = new ThreadPoolExecutor(workerThreads, workerThreads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "image-derivatives-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                },
+                (runnable, pool) -> logger.warning("Image derivative queue is full, skipping an image"));
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Queues derivative generation for a newly stored file. Files that are not images are ignored.
+     */
+    public void submit(Path original) {
+        if (!isImage(original.toString())) {
+            return;
+        }
+        executor.execute(() -> {
+            try {
+                generateDerivatives(original);
+            } catch (Exception e) {
+                logger.warning("Error generating derivatives for " + original + ": " + e.getMessage());
+            }
+        });
+    }
+
+    void generateDerivatives(Path original) throws IOException {
+        BufferedImage image = read(original);
+        if (image == null) {
+            return;
+        }
+        boolean hasAlpha = image.getColorModel().hasAlpha();
+
+        for (int width : thumbnailWidths) {
+            if (width >= image.getWidth()) {
+                knownThumbnails.put(thumbnailKey(original.toString(), width), KnownThumbnail.none(original));
+                continue;
+            }
+            BufferedImage thumbnail = resize(image, width, hasAlpha);
+            Path target = derivativePath(original, "_w" + width + (hasAlpha ? ".png" : ".jpg"));
+            write(thumbnail, target, hasAlpha);
+            knownThumbnails.put(thumbnailKey(original.toString(), width), new KnownThumbnail(target.toString(), Long.MAX_VALUE));
+        }
+        thumbnailsGenerated.incrementAndGet();
+
+        if (!hasAlpha) {
+            Path target = derivativePath(original, "_c.jpg");
+            write(image, target, false);
+            if (Files.size(target) >= Files.size(original)) {
+                Files.deleteIfExists(target);
+            }
+        }
+    }
+
+    /**
+     * Deletes every derivative of the original, for when the original itself is deleted.
+     */
+    public void deleteDerivatives(Path original) throws IOException {
+        if (!isImage(original.toString())) {
+            return;
+        }
+        String name = original.getFileName().toString();
+        String baseName = name.substring(0, name.lastIndexOf('.'));
+        try (DirectoryStream<Path> derivatives = Files.newDirectoryStream(original.getParent(),
+                baseName + "_{w[0-9]*,c}.{jpg,png}")) {
+            for (Path derivative : derivatives) {
+                Files.deleteIfExists(derivative);
+            }
+        } catch (NoSuchFileException e) {
+            // The directory is gone already
+        }
+        String keyPrefix = original + "@";
+        synchronized (knownThumbnails) {
+            knownThumbnails.keySet().removeIf(key -> key.startsWith(keyPrefix));
+        }
+    }
+
+    /**
+     * Returns null for images that are too large to decode safely or that no reader
+     * understands.
+     */
+    private BufferedImage read(Path original) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(original.toFile())) {
+            Iterator<ImageReader> readers = in != null ? ImageIO.getImageReaders(in) : Collections.emptyIterator();
+            if (!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                long pixels = (long) reader.getWidth(0) * reader.getHeight(0);
+                if (pixels > maxPixels) {
+                    logger.info("Not generating derivatives for " + original + ": " + pixels + " pixels");
+                    return null;
+                }
+                return reader.read(0);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Returns the thumbnail of the requested width if it was generated already,
+     * and the original path otherwise.
+     */
+    public String thumbnailPath(String path, int width) {
+        if (path == null || path.trim().isEmpty() || !isImage(path.trim())) {
+            return path;
+        }
+        String key = thumbnailKey(path.trim(), width);
+        KnownThumbnail known = knownThumbnails.get(key);
+        if (known != null && known.validUntil > System.currentTimeMillis()) {
+            return known.path;
+        }
+
+        Path original = Paths.get(path.trim());
+        for (String extension : new String[] {".jpg", ".png"}) {
+            Path thumbnail = derivativePath(original, "_w" + width + extension);
+            if (Files.exists(thumbnail)) {
+                knownThumbnails.put(key, new KnownThumbnail(thumbnail.toString(), Long.MAX_VALUE));
+                return thumbnail.toString();
+            }
+        }
+        knownThumbnails.put(key, new KnownThumbnail(path.trim(), System.currentTimeMillis() + MISSING_THUMBNAIL_RECHECK_MS));
+        return path.trim();
+    }
+
+    public long thumbnailsGenerated() {
+        return thumbnailsGenerated.get();
+    }
+
+    public String thumbnailPaths(String paths, int width) {
+        if (paths == null || paths.trim().isEmpty()) {
+            return paths;
+        }
+        List<String> thumbnails = new ArrayList<>();
+        for (String path : paths.split(",")) {
+            thumbnails.add(thumbnailPath(path, width));
+        }
+        return String.join(",", thumbnails);
+    }
+
+    private static BufferedImage resize(BufferedImage image, int width, boolean hasAlpha) {
+        int height = Math.max(1, (int) Math.round((double) image.getHeight() * width / image.getWidth()));
+        BufferedImage current = image;
+        int currentWidth = image.getWidth();
+        int currentHeight = image.getHeight();
+
+        // Halve in steps first, a single large bilinear step looks noticeably worse
+        do {
+            currentWidth = Math.max(width, currentWidth / 2);
+            currentHeight = Math.max(height, currentHeight / 2);
+            BufferedImage step = new BufferedImage(currentWidth, currentHeight,
+                    hasAlpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+            Graphics2D graphics = step.createGraphics();
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.drawImage(current, 0, 0, currentWidth, currentHeight, null);
+            graphics.dispose();
+            current = step;
+        } while (currentWidth != width || currentHeight != height);
+
+        return current;
+    }
+
+    private void write(BufferedImage image, Path target, boolean png) throws IOException {
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try {
+            if (png) {
+                ImageIO.write(image, "png", temp.toFile());
+            } else {
+                writeJpeg(toRgb(image), temp);
+            }
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private void writeJpeg(BufferedImage image, Path target) throws IOException {
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("jpeg");
+        if (!writers.hasNext()) {
+            throw new IOException("No JPEG writer available");
+        }
+        ImageWriter writer = writers.next();
+        try (ImageOutputStream out = ImageIO.createImageOutputStream(target.toFile())) {
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(jpegQuality);
+            param.setProgressiveMode(ImageWriteParam.MODE_DEFAULT);
+            writer.setOutput(out);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    private static BufferedImage toRgb(BufferedImage image) {
+        if (image.getType() == BufferedImage.TYPE_INT_RGB) {
+            return image;
+        }
+        BufferedImage rgb = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = rgb.createGraphics();
+        graphics.drawImage(image, 0, 0, null);
+        graphics.dispose();
+        return rgb;
+    }
+
+    private static String thumbnailKey(String path, int width) {
+        return path + "@" + width;
+    }
+
+    private static Path derivativePath(Path original, String suffix) {
+        String name = original.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        String baseName = dot >= 0 ? name.substring(0, dot) : name;
+        return original.resolveSibling(baseName + suffix);
+    }
+
+    private static boolean isImage(String path) {
+        String lower = path.toLowerCase(Locale.ROOT);
+        for (String extension : IMAGE_EXTENSIONS) {
+            if (lower.endsWith(extension)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static final class KnownThumbnail {
+        private final String path;
+        private final long validUntil;
+
+        private KnownThumbnail(String path, long validUntil) {
+            this.path = path;
+            this.validUntil = validUntil;
+        }
+
+        // The image is narrower than the thumbnail width, so it is served as is
+        private static KnownThumbnail none(Path original) {
+            return new KnownThumbnail(original.toString(), Long.MAX_VALUE);
+        }
+    }
+}
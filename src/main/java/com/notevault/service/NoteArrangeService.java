@@ -0,0 +1,274 @@
+package com.notevault.service;
+
+import lombok.RequiredArgsConstructor;
+import com.notevault.invalidation.InvalidationBus;
+import com.notevault.invalidation.InvalidationEvent;
+import com.notevault.model.Note;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Arranges a user's notes on the board.
+ *
+ * Strategies:
+ *   grid        lays the notes out in reading order on a grid
+ *   pack-by-tag lays out one grid per tag (the first tag of each note) and packs those
+ *               blocks into shelves, largest first
+ *   de-overlap  keeps every note where it is unless it overlaps one placed before it,
+ *               in which case it moves right or down, whichever stays closer, until it
+ *               is free; placed notes are kept in a RectQuadtree so each check is O(log n)
+ *
+ * Notes are treated as noteWidth x noteHeight boxes, the size they are shown at on the
+ * board. The new positions are written in a single batched update; moved public notes are
+ * refreshed in the public snapshot and announced to other nodes, as for a single move.
+ */
+@Service
+@RequiredArgsConstructor
+public class NoteArrangeService {
+
+    public static final String STRATEGY_GRID = "grid";
+    public static final String STRATEGY_PACK_BY_TAG = "pack-by-tag";
+    public static final String STRATEGY_DE_OVERLAP = "de-overlap";
+
+    private static final String UNTAGGED = "";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final SingleFlight singleFlight;
+    private final PublicNoteSnapshotService publicNoteSnapshotService;
+    private final InvalidationBus invalidationBus;
+
+    @Value("${app.arrange.note-width:280}")
+    private int noteWidth;
+
+    @Value("${app.arrange.note-height:200}")
+    private int noteHeight;
+
+    @Value("${app.arrange.gap:20}")
+    private int gap;
+
+    /**
+     * Arranges the user's notes, or only those in noteIds if given, and returns the new
+     * position of every arranged note.
+     */
+    public List<Map<String, Object>> arrange(Integer userId, String strategy, List<Integer> noteIds, Integer columns) {
+        List<Placement> notes = loadNotes(userId, noteIds);
+        if (!notes.isEmpty()) {
+            switch (strategy) {
+                case STRATEGY_GRID:
+                    notes.sort(READING_ORDER);
+                    long[] origin = origin(notes);
+                    layoutGrid(notes, origin[0], origin[1], columns != null && columns > 0 ? columns : defaultColumns(notes.size()));
+                    break;
+                case STRATEGY_PACK_BY_TAG:
+                    packByTag(notes);
+                    break;
+                case STRATEGY_DE_OVERLAP:
+                    deOverlap(notes);
+                    break;
+                default:
+                    throw new RuntimeException("Unknown strategy: " + strategy);
+            }
+            save(userId, notes);
+        }
+
+        List<Map<String, Object>> layout = new ArrayList<>();
+        for (Placement note : notes) {
+            Map<String, Object> position = new LinkedHashMap<>();
+            position.put("id", note.id);
+            position.put("positionX", note.x);
+            position.put("positionY", note.y);
+            layout.add(position);
+        }
+        return layout;
+    }
+
+    private List<Placement> loadNotes(Integer userId, List<Integer> noteIds) {
+        Set<Integer> selected = noteIds != null && !noteIds.isEmpty() ? new HashSet<>(noteIds) : null;
+        List<Placement> notes = new ArrayList<>();
+        jdbcTemplate.query("SELECT N_id, Tag, position_x, position_y, privacy_level FROM notiz WHERE B_id = ? ORDER BY N_id", rs -> {
+            int id = rs.getInt("N_id");
+            if (selected == null || selected.contains(id)) {
+                int x = rs.getObject("position_x") != null ? rs.getInt("position_x") : 0;
+                int y = rs.getObject("position_y") != null ? rs.getInt("position_y") : 0;
+                boolean publicNote = Note.PrivacyLevel.everyone.getValue().equals(rs.getString("privacy_level"));
+                notes.add(new Placement(id, firstTag(rs.getString("Tag")), x, y, publicNote));
+            }
+        }, userId);
+        return notes;
+    }
+
+    private void layoutGrid(List<Placement> notes, long originX, long originY, int columns) {
+        for (int i = 0; i < notes.size(); i++) {
+            notes.get(i).moveTo(originX + (long) (i % columns) * (noteWidth + gap),
+                    originY + (long) (i / columns) * (noteHeight + gap));
+        }
+    }
+
+    private void packByTag(List<Placement> notes) {
+        long[] origin = origin(notes);
+        Map<String, List<Placement>> groups = new TreeMap<>();
+        notes.sort(READING_ORDER);
+        for (Placement note : notes) {
+            groups.computeIfAbsent(note.tag, tag -> new ArrayList<>()).add(note);
+        }
+        List<List<Placement>> blocks = new ArrayList<>(groups.values());
+        blocks.sort(Comparator.comparingInt((List<Placement> block) -> block.size()).reversed());
+
+        // Shelf packing: blocks go left to right until the shelf is full, then a new shelf starts below
+        long cellArea = (long) (noteWidth + gap) * (noteHeight + gap);
+        long shelfWidth = Math.max(blockWidth(blocks.get(0).size()), (long) Math.sqrt((double) notes.size() * cellArea * 1.5));
+        long x = origin[0];
+        long y = origin[1];
+        long shelfHeight = 0;
+        for (List<Placement> block : blocks) {
+            long width = blockWidth(block.size());
+            if (x > origin[0] && x - origin[0] + width > shelfWidth) {
+                x = origin[0];
+                y += shelfHeight + 2L * gap;
+                shelfHeight = 0;
+            }
+            int columns = defaultColumns(block.size());
+            layoutGrid(block, x, y, columns);
+            long rows = (block.size() + columns - 1) / columns;
+            shelfHeight = Math.max(shelfHeight, rows * (noteHeight + gap) - gap);
+            x += width + 2L * gap;
+        }
+    }
+
+    private void deOverlap(List<Placement> notes) {
+        notes.sort(READING_ORDER);
+        long minX = Long.MAX_VALUE;
+        long minY = Long.MAX_VALUE;
+        long maxX = Long.MIN_VALUE;
+        long maxY = Long.MIN_VALUE;
+        for (Placement note : notes) {
+            minX = Math.min(minX, note.x);
+            minY = Math.min(minY, note.y);
+            maxX = Math.max(maxX, note.x);
+            maxY = Math.max(maxY, note.y);
+        }
+        // Leave room for notes pushed right or down; anything beyond still works, just slower
+        long extent = Math.max(maxX - minX, maxY - minY) + (long) (noteWidth + noteHeight + 2 * gap) * (long) Math.sqrt(notes.size()) + 1;
+        RectQuadtree placed = new RectQuadtree(minX, minY, minX + extent, minY + extent);
+
+        for (Placement note : notes) {
+            long x = note.x;
+            long y = note.y;
+            while (true) {
+                // The gap counts as part of the note so arranged notes do not touch
+                List<RectQuadtree.Rect> overlapping = placed.query(
+                        new RectQuadtree.Rect(note.id, x, y, noteWidth + gap, noteHeight + gap));
+                if (overlapping.isEmpty()) {
+                    break;
+                }
+                long right = x;
+                long below = y;
+                for (RectQuadtree.Rect rect : overlapping) {
+                    right = Math.max(right, rect.right());
+                    below = Math.max(below, rect.bottom());
+                }
+                if (Math.abs(right - note.x) + Math.abs(y - note.y) <= Math.abs(x - note.x) + Math.abs(below - note.y)) {
+                    x = right;
+                } else {
+                    y = below;
+                }
+            }
+            note.moveTo(x, y);
+            placed.insert(new RectQuadtree.Rect(note.id, x, y, noteWidth + gap, noteHeight + gap));
+        }
+    }
+
+    private void save(Integer userId, List<Placement> notes) {
+        List<Object[]> updates = new ArrayList<>();
+        List<Integer> publicNoteIds = new ArrayList<>();
+        for (Placement note : notes) {
+            if (note.moved) {
+                updates.add(new Object[] {note.x, note.y, note.id, userId});
+                if (note.publicNote) {
+                    publicNoteIds.add(note.id);
+                }
+            }
+        }
+        if (!updates.isEmpty()) {
+            jdbcTemplate.batchUpdate("UPDATE notiz SET position_x = ?, position_y = ? WHERE N_id = ? AND B_id = ?", updates);
+            singleFlight.forget("board:");
+        }
+        if (!publicNoteIds.isEmpty()) {
+            publicNoteSnapshotService.refresh(publicNoteIds);
+            for (Integer noteId : publicNoteIds) {
+                invalidationBus.publish(InvalidationEvent.note(noteId, userId, true));
+            }
+        }
+    }
+
+    private long blockWidth(int notes) {
+        return (long) defaultColumns(notes) * (noteWidth + gap) - gap;
+    }
+
+    private static int defaultColumns(int notes) {
+        return Math.max(1, (int) Math.ceil(Math.sqrt(notes)));
+    }
+
+    private static long[] origin(List<Placement> notes) {
+        long x = Long.MAX_VALUE;
+        long y = Long.MAX_VALUE;
+        for (Placement note : notes) {
+            x = Math.min(x, note.x);
+            y = Math.min(y, note.y);
+        }
+        return new long[] {Math.max(0, x), Math.max(0, y)};
+    }
+
+    private static String firstTag(String tag) {
+        if (tag == null) {
+            return UNTAGGED;
+        }
+        for (String value : tag.split(",")) {
+            if (!value.trim().isEmpty()) {
+                return value.trim().toLowerCase(Locale.ROOT);
+            }
+        }
+        return UNTAGGED;
+    }
+
+    private static final Comparator<Placement> READING_ORDER =
+            Comparator.comparingInt((Placement note) -> note.y).thenComparingInt(note -> note.x).thenComparingInt(note -> note.id);
+
+    private static final class Placement {
+        private final int id;
+        private final String tag;
+        private final boolean publicNote;
+        private int x;
+        private int y;
+        private boolean moved;
+
+        private Placement(int id, String tag, int x, int y, boolean publicNote) {
+            this.id = id;
+            this.tag = tag;
+            this.x = x;
+            this.y = y;
+            this.publicNote = publicNote;
+        }
+
+        void moveTo(long newX, long newY) {
+            int clampedX = (int) Math.min(Integer.MAX_VALUE, newX);
+            int clampedY = (int) Math.min(Integer.MAX_VALUE, newY);
+            if (clampedX != x || clampedY != y) {
+                x = clampedX;
+                y = clampedY;
+                moved = true;
+            }
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.notevault.service;
+
+import lombok.RequiredArgsConstructor;
+import com.notevault.model.CompressedTextConverter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Compresses the content of notes that were written before compression at rest existed.
+ *
+ * Rows are walked in id order in small batches, so the job never holds many large rows in
+ * memory or locks for long. Each update only applies if the content is still what was
+ * read; notes edited in the meantime were already written compressed.
+ */
+@Service
+@RequiredArgsConstructor
+public class NoteCompressionService {
+
+    private static final Logger logger = Logger.getLogger(NoteCompressionService.class.getName());
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Value("${app.notes.compression.batch-size:100}")
+    private int batchSize;
+
+    @Value("${app.notes.compression.reencode-enabled:true}")
+    private boolean reencodeEnabled;
+
+    private volatile boolean finished;
+
+    @Scheduled(initialDelayString = "${app.notes.compression.initial-delay-ms:60000}",
+               fixedDelayString = "${app.notes.compression.interval-ms:3600000}")
+    public void scheduledReencode() {
+        if (!reencodeEnabled || finished) {
+            return;
+        }
+        try {
+            int compressed = reencodeExistingNotes();
+            if (compressed > 0) {
+                logger.info("Compressed the content of " + compressed + " existing notes");
+            }
+            finished = true;
+        } catch (Exception e) {
+            logger.warning("Error compressing existing notes: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Compresses all uncompressed notes above the size threshold and returns how many were
+     * rewritten.
+     */
+    public int reencodeExistingNotes() {
+        String sql = "SELECT N_id, Inhalt FROM notiz WHERE N_id > ? AND CHAR_LENGTH(Inhalt) >= ? " +
+                     "AND Inhalt NOT LIKE ? ORDER BY N_id LIMIT ?";
+        String markerPattern = CompressedTextConverter.MARKER + "%";
+        int lastId = 0;
+        int rewritten = 0;
+        List<Map<String, Object>> rows;
+        do {
+            rows = jdbcTemplate.queryForList(sql, lastId, CompressedTextConverter.COMPRESSION_THRESHOLD,
+                    markerPattern, batchSize);
+            List<Object[]> updates = new ArrayList<>();
+            for (Map<String, Object> row : rows) {
+                lastId = ((Number) row.get("N_id")).intValue();
+                String content = (String) row.get("Inhalt");
+                String encoded = CompressedTextConverter.encode(content);
+                if (!encoded.equals(content)) {
+                    updates.add(new Object[] {encoded, lastId, content});
+                }
+            }
+            if (!updates.isEmpty()) {
+                for (int updated : jdbcTemplate.batchUpdate(
+                        "UPDATE notiz SET Inhalt = ? WHERE N_id = ? AND Inhalt = ?", updates)) {
+                    rewritten += Math.max(updated, 0);
+                }
+            }
+        } while (rows.size() == batchSize);
+        return rewritten;
+    }
+}
@@ -0,0 +1,211 @@
+package com.notevault.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+import com.notevault.model.CompressedTextConverter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Writes notes and the files they reference as a ZIP archive straight to an output stream.
+ *
+ * Notes are read through a forward-only cursor and every note is written as soon as its
+ * row arrives: first the files it references, copied from the uploads directory into
+ * files/, then notes/&lt;id&gt;.json (or .md). Nothing is staged in temporary files and
+ * memory use does not grow with the number of notes, apart from the set of file names
+ * already written, which keeps shared files from being exported twice.
+ */
+@Service
+@RequiredArgsConstructor
+public class NoteExportService {
+
+    public static final String FORMAT_JSON = "json";
+    public static final String FORMAT_MARKDOWN = "markdown";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Value("${app.uploads-dir:uploads}")
+    private String uploadsDir;
+
+    @Value("${app.export.fetch-size:500}")
+    private int fetchSize;
+
+    /**
+     * Exports the notes of one user, or of all users if userId is null.
+     */
+    public ExportStats export(Integer userId, String format, OutputStream out) throws IOException {
+        boolean markdown = FORMAT_MARKDOWN.equals(format);
+        Path root = Paths.get(uploadsDir).toAbsolutePath().normalize();
+        ExportStats stats = new ExportStats();
+        Set<String> exportedFiles = new HashSet<>();
+
+        ZipOutputStream zip = new ZipOutputStream(new BufferedOutputStream(out, 64 * 1024));
+        String sql = "SELECT N_id, Titel, Tag, Inhalt, B_id, position_x, position_y, color, note_type, " +
+                     "privacy_level, shared_with, editing_permission, image_paths FROM notiz " +
+                     (userId != null ? "WHERE B_id = ? " : "") + "ORDER BY N_id";
+        jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(sql,
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            statement.setFetchSize(fetchSize);
+            if (userId != null) {
+                statement.setInt(1, userId);
+            }
+            return statement;
+        }, (RowCallbackHandler) rs -> {
+            try {
+                writeNote(zip, rs, root, markdown, exportedFiles, stats);
+            } catch (IOException e) {
+                throw new RuntimeException("Error writing export: " + e.getMessage());
+            }
+        });
+
+        Map<String, Object> manifest = new LinkedHashMap<>();
+        manifest.put("exportedAt", LocalDateTime.now().toString());
+        manifest.put("userId", userId);
+        manifest.put("format", markdown ? FORMAT_MARKDOWN : FORMAT_JSON);
+        manifest.put("notes", stats.getNotes());
+        manifest.put("files", stats.getFiles());
+        writeEntry(zip, "manifest.json", objectMapper.writeValueAsBytes(manifest));
+        zip.finish();
+        zip.flush();
+        return stats;
+    }
+
+    private void writeNote(ZipOutputStream zip, ResultSet rs, Path root, boolean markdown,
+                           Set<String> exportedFiles, ExportStats stats) throws SQLException, IOException {
+        int noteId = rs.getInt("N_id");
+        List<String> archivedFiles = new ArrayList<>();
+        String imagePaths = rs.getString("image_paths");
+        if (imagePaths != null) {
+            for (String path : imagePaths.split(",")) {
+                String archivePath = copyFile(zip, root, path, exportedFiles, stats);
+                if (archivePath != null) {
+                    archivedFiles.add(archivePath);
+                }
+            }
+        }
+
+        Map<String, Object> note = new LinkedHashMap<>();
+        note.put("id", noteId);
+        note.put("userId", rs.getInt("B_id"));
+        note.put("title", rs.getString("Titel"));
+        note.put("tag", rs.getString("Tag"));
+        note.put("content", CompressedTextConverter.decode(rs.getString("Inhalt")));
+        note.put("noteType", rs.getString("note_type"));
+        note.put("color", rs.getString("color"));
+        note.put("positionX", rs.getObject("position_x") != null ? rs.getInt("position_x") : 0);
+        note.put("positionY", rs.getObject("position_y") != null ? rs.getInt("position_y") : 0);
+        note.put("privacyLevel", rs.getString("privacy_level"));
+        note.put("sharedWith", rs.getString("shared_with"));
+        note.put("editingPermission", rs.getString("editing_permission"));
+        note.put("files", archivedFiles);
+
+        if (markdown) {
+            writeEntry(zip, "notes/" + noteId + ".md", toMarkdown(note, archivedFiles).getBytes(StandardCharsets.UTF_8));
+        } else {
+            writeEntry(zip, "notes/" + noteId + ".json", objectMapper.writeValueAsBytes(note));
+        }
+        stats.setNotes(stats.getNotes() + 1);
+    }
+
+    private String copyFile(ZipOutputStream zip, Path root, String path, Set<String> exportedFiles,
+                            ExportStats stats) throws IOException {
+        String trimmed = path.trim();
+        if (trimmed.isEmpty()) {
+            return null;
+        }
+        Path file = resolveUpload(root, trimmed);
+        if (file == null) {
+            return null;
+        }
+        String archivePath = "files/" + root.relativize(file).toString().replace('\\', '/');
+        if (exportedFiles.add(archivePath)) {
+            // Images and attachments are compressed already
+            zip.setLevel(Deflater.NO_COMPRESSION);
+            zip.putNextEntry(new ZipEntry(archivePath));
+            stats.setBytes(stats.getBytes() + Files.copy(file, zip));
+            zip.closeEntry();
+            stats.setFiles(stats.getFiles() + 1);
+        }
+        return archivePath;
+    }
+
+    /**
+     * Resolves a stored path to a file inside the uploads directory. Paths are stored
+     * relative to the working directory or absolute, and sometimes as site-relative URLs.
+     */
+    private static Path resolveUpload(Path root, String path) {
+        try {
+            Path file = Paths.get(path).toAbsolutePath().normalize();
+            if (!(file.startsWith(root) && Files.isRegularFile(file)) && path.startsWith("/")) {
+                file = Paths.get(path.substring(1)).toAbsolutePath().normalize();
+            }
+            return file.startsWith(root) && Files.isRegularFile(file) ? file : null;
+        } catch (Exception e) {
+            // Not a file path (e.g. an external URL)
+            return null;
+        }
+    }
+
+    private void writeEntry(ZipOutputStream zip, String name, byte[] data) throws IOException {
+        zip.setLevel(Deflater.BEST_SPEED);
+        zip.putNextEntry(new ZipEntry(name));
+        zip.write(data);
+        zip.closeEntry();
+    }
+
+    private static String toMarkdown(Map<String, Object> note, List<String> files) {
+        StringBuilder markdown = new StringBuilder();
+        markdown.append("---\n");
+        for (String key : new String[] {"id", "tag", "noteType", "color", "privacyLevel", "editingPermission"}) {
+            Object value = note.get(key);
+            if (value != null && !value.toString().isEmpty()) {
+                markdown.append(key).append(": ").append(value.toString().replace("\n", " ")).append('\n');
+            }
+        }
+        markdown.append("---\n\n");
+        markdown.append("# ").append(note.get("title")).append("\n\n");
+        Object content = note.get("content");
+        if ("code".equals(note.get("noteType"))) {
+            markdown.append("```\n").append(content != null ? content : "").append("\n```\n");
+        } else {
+            markdown.append(content != null ? content : "").append('\n');
+        }
+        for (String file : files) {
+            markdown.append("\n![](../").append(file).append(")\n");
+        }
+        return markdown.toString();
+    }
+
+    @Data
+    public static class ExportStats {
+        private long notes;
+        private long files;
+        private long bytes;
+    }
+}
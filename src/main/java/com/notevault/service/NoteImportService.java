@@ -0,0 +1,293 @@
+package com.notevault.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+import com.notevault.model.BlobReference;
+import com.notevault.model.CompressedTextConverter;
+import com.notevault.model.Note;
+import com.notevault.model.User;
+import com.notevault.repository.UserRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Imports notes from an archive in the format written by NoteExportService.
+ *
+ * The archive is read one entry at a time straight from the request: files/ entries go
+ * into the blob store as they arrive, notes/*.json and notes/*.md entries are parsed and
+ * queued, and every batchSize notes are written with a single JDBC batch in their own
+ * transaction, with ids reserved from IdBlockAllocator in one step. Nothing but the
+ * current batch and the map of stored file paths is kept in memory. Progress and
+ * per-entry errors are reported through a callback as the import runs.
+ */
+@Service
+@RequiredArgsConstructor
+public class NoteImportService {
+
+    private static final Logger logger = Logger.getLogger(NoteImportService.class.getName());
+
+    private static final String INSERT_SQL = "INSERT INTO notiz (N_id, Titel, Tag, Inhalt, version, rendered_html, B_id, " +
+            "position_x, position_y, color, note_type, privacy_level, shared_with, has_images, image_paths, " +
+            "editing_permission) VALUES (?, ?, ?, ?, 1, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final UserRepository userRepository;
+    private final FileStorageService fileStorageService;
+    private final NoteRenderingService noteRenderingService;
+    private final IdBlockAllocator idBlockAllocator;
+    private final NoteService noteService;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Value("${app.import.batch-size:500}")
+    private int batchSize;
+
+    /**
+     * Imports the archive for the given user. Notes get new ids; ids in the archive are
+     * only used to name entries in error reports.
+     */
+    public ImportStats importArchive(Integer userId, InputStream in, Consumer<Map<String, Object>> progress) throws IOException {
+        User user = userRepository.findById(userId)
+                .orElseThrow(() -> new RuntimeException("User not found"));
+        ImportStats stats = new ImportStats();
+        Map<String, String> storedFiles = new HashMap<>();
+        List<Note> batch = new ArrayList<>(batchSize);
+
+        ZipInputStream zip = new ZipInputStream(in);
+        ZipEntry entry;
+        while ((entry = zip.getNextEntry()) != null) {
+            String name = entry.getName();
+            if (entry.isDirectory()) {
+                continue;
+            }
+            try {
+                if (name.startsWith("files/")) {
+                    storedFiles.put(name, fileStorageService.store(zip, userId, FileStorageService.extensionOf(name)));
+                    stats.setFiles(stats.getFiles() + 1);
+                } else if (name.startsWith("notes/") && (name.endsWith(".json") || name.endsWith(".md"))) {
+                    String text = new String(zip.readAllBytes(), StandardCharsets.UTF_8);
+                    Note note = name.endsWith(".json") ? parseJson(text, storedFiles) : parseMarkdown(text, storedFiles);
+                    batch.add(note);
+                    if (batch.size() >= batchSize) {
+                        flush(user, batch, stats, progress);
+                    }
+                }
+            } catch (RuntimeException e) {
+                stats.setErrors(stats.getErrors() + 1);
+                progress.accept(event("error", "entry", name, "message", e.getMessage()));
+            }
+        }
+        flush(user, batch, stats, progress);
+
+        progress.accept(event("done", "notes", stats.getNotes(), "files", stats.getFiles(), "errors", stats.getErrors()));
+        logger.info("Imported " + stats.getNotes() + " notes and " + stats.getFiles() + " files for user " + userId);
+        return stats;
+    }
+
+    private void flush(User user, List<Note> batch, ImportStats stats, Consumer<Map<String, Object>> progress) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            Integer userId = user.getId();
+            transactionTemplate.executeWithoutResult(status -> {
+                insertBatch(userId, batch);
+                for (Note note : batch) {
+                    if (note.getImagePaths() != null) {
+                        fileStorageService.updateReferences(BlobReference.OwnerType.NOTE, note.getId(), userId,
+                                List.of(note.getImagePaths().split(",")));
+                    }
+                }
+            });
+            Map<Integer, TagFacetService.NoteFacets> created = new LinkedHashMap<>();
+            for (Note note : batch) {
+                note.setUser(user);
+                created.put(note.getId(), TagFacetService.NoteFacets.of(note));
+            }
+            noteService.notesCreated(created);
+            stats.setNotes(stats.getNotes() + batch.size());
+            progress.accept(event("progress", "notes", stats.getNotes(), "files", stats.getFiles(), "errors", stats.getErrors()));
+        } catch (RuntimeException e) {
+            stats.setErrors(stats.getErrors() + batch.size());
+            progress.accept(event("error", "entry", batch.size() + " notes", "message", e.getMessage()));
+        }
+        batch.clear();
+    }
+
+    private void insertBatch(Integer userId, List<Note> batch) {
+        int firstId = Math.toIntExact(idBlockAllocator.reserveRange("notiz", "N_id", batch.size()));
+        for (int i = 0; i < batch.size(); i++) {
+            batch.get(i).setId(firstId + i);
+        }
+        jdbcTemplate.batchUpdate(INSERT_SQL, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement statement, int i) throws SQLException {
+                Note note = batch.get(i);
+                statement.setInt(1, note.getId());
+                statement.setString(2, note.getTitle());
+                statement.setString(3, note.getTag());
+                statement.setString(4, CompressedTextConverter.encode(note.getContent()));
+                statement.setString(5, CompressedTextConverter.encode(note.getRenderedHtml()));
+                statement.setInt(6, userId);
+                statement.setInt(7, note.getPositionX());
+                statement.setInt(8, note.getPositionY());
+                statement.setString(9, note.getColor());
+                statement.setString(10, note.getNoteType().name());
+                statement.setString(11, note.getPrivacyLevel().getValue());
+                statement.setString(12, note.getSharedWith());
+                statement.setBoolean(13, note.getHasImages());
+                statement.setString(14, note.getImagePaths());
+                statement.setString(15, note.getEditingPermission().getValue());
+            }
+
+            @Override
+            public int getBatchSize() {
+                return batch.size();
+            }
+        });
+    }
+
+    private Note parseJson(String text, Map<String, String> storedFiles) {
+        JsonNode json;
+        try {
+            json = objectMapper.readTree(text);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("Invalid note: " + e.getOriginalMessage());
+        }
+        Note note = new Note();
+        note.setTitle(json.path("title").asText(""));
+        note.setTag(json.path("tag").asText(""));
+        note.setContent(json.path("content").asText(""));
+        note.setPositionX(json.path("positionX").asInt(100));
+        note.setPositionY(json.path("positionY").asInt(100));
+        note.setColor(json.path("color").asText("#fef3c7"));
+        note.setSharedWith(json.hasNonNull("sharedWith") ? json.get("sharedWith").asText() : null);
+        applyEnums(note, json.path("noteType").asText(null), json.path("privacyLevel").asText(null),
+                json.path("editingPermission").asText(null));
+        List<String> files = new ArrayList<>();
+        json.path("files").forEach(file -> files.add(file.asText()));
+        return finish(note, files, storedFiles);
+    }
+
+    /**
+     * Parses the Markdown layout written by the export: front matter, a "# title" line,
+     * the content (fenced for code notes) and one image line per file.
+     */
+    private Note parseMarkdown(String text, Map<String, String> storedFiles) {
+        Map<String, String> frontMatter = new HashMap<>();
+        String body = text.replace("\r\n", "\n");
+        if (body.startsWith("---\n")) {
+            int end = body.indexOf("\n---\n", 3);
+            if (end >= 0) {
+                for (String line : body.substring(4, end).split("\n")) {
+                    int colon = line.indexOf(": ");
+                    if (colon > 0) {
+                        frontMatter.put(line.substring(0, colon), line.substring(colon + 2));
+                    }
+                }
+                body = body.substring(end + 5);
+            }
+        }
+        body = body.replaceFirst("^\n+", "");
+
+        Note note = new Note();
+        note.setTitle("");
+        if (body.startsWith("# ")) {
+            int end = body.indexOf('\n');
+            note.setTitle(end >= 0 ? body.substring(2, end) : body.substring(2));
+            body = end >= 0 ? body.substring(end + 1).replaceFirst("^\n", "") : "";
+        }
+
+        List<String> files = new ArrayList<>();
+        while (true) {
+            String trimmed = body.replaceFirst("\n+$", "");
+            int lineStart = trimmed.lastIndexOf('\n') + 1;
+            String line = trimmed.substring(lineStart);
+            if (!line.startsWith("![](../") || !line.endsWith(")")) {
+                body = trimmed;
+                break;
+            }
+            files.add(0, line.substring(7, line.length() - 1));
+            body = trimmed.substring(0, lineStart);
+        }
+
+        applyEnums(note, frontMatter.get("noteType"), frontMatter.get("privacyLevel"), frontMatter.get("editingPermission"));
+        if (note.getNoteType() == Note.NoteType.code && body.startsWith("```\n") && body.endsWith("\n```")) {
+            body = body.substring(4, body.length() - 4);
+        }
+        note.setContent(body);
+        note.setTag(frontMatter.getOrDefault("tag", ""));
+        note.setColor(frontMatter.getOrDefault("color", "#fef3c7"));
+        note.setPositionX(100);
+        note.setPositionY(100);
+        return finish(note, files, storedFiles);
+    }
+
+    private static void applyEnums(Note note, String noteType, String privacyLevel, String editingPermission) {
+        if (noteType != null) {
+            note.setNoteType(Note.NoteType.valueOf(noteType));
+        }
+        for (Note.PrivacyLevel level : Note.PrivacyLevel.values()) {
+            if (level.getValue().equals(privacyLevel)) {
+                note.setPrivacyLevel(level);
+            }
+        }
+        for (Note.EditingPermission permission : Note.EditingPermission.values()) {
+            if (permission.getValue().equals(editingPermission)) {
+                note.setEditingPermission(permission);
+            }
+        }
+    }
+
+    private Note finish(Note note, List<String> files, Map<String, String> storedFiles) {
+        List<String> imagePaths = new ArrayList<>();
+        for (String file : files) {
+            String storedPath = storedFiles.get(file);
+            if (storedPath == null) {
+                throw new RuntimeException("Missing file " + file);
+            }
+            imagePaths.add(storedPath);
+        }
+        note.setHasImages(!imagePaths.isEmpty());
+        note.setImagePaths(imagePaths.isEmpty() ? null : String.join(",", imagePaths));
+        note.setRenderedHtml(noteRenderingService.render(note.getNoteType(), note.getContent()));
+        return note;
+    }
+
+    private static Map<String, Object> event(String type, Object... fields) {
+        Map<String, Object> event = new LinkedHashMap<>();
+        event.put("type", type);
+        for (int i = 0; i < fields.length; i += 2) {
+            event.put((String) fields[i], fields[i + 1]);
+        }
+        return event;
+    }
+
+    @Data
+    public static class ImportStats {
+        private long notes;
+        private long files;
+        private long errors;
+    }
+}
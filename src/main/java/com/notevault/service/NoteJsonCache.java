@@ -0,0 +1,263 @@
+package com.notevault.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.RawValue;
+import lombok.RequiredArgsConstructor;
+import com.notevault.dto.NoteDTO;
+import com.notevault.invalidation.InvalidationEvent;
+import com.notevault.model.Note;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Notes serialized once and then served as bytes. Boards list the same notes over and
+ * over, mostly unchanged, so instead of running every NoteDTO through Jackson on every
+ * request, the encoded form of each note is cached and list responses are written by
+ * concatenating the cached fragments straight to the output stream.
+ *
+ * Two encodings are kept: UTF-8 JSON, the default, and CBOR for clients that ask for it.
+ * CBOR lists are written as an indefinite-length array, which is what lets cached items
+ * be concatenated there as well.
+ *
+ * Entries are kept per note id and version, so a cache hit neither builds a NoteDTO nor
+ * looks at the content. The version only moves with the title and content, so an entry
+ * also records the few short fields that change without it (position, color, tags,
+ * sharing, images and so on) and is used only while the note still has the same values.
+ * Notes are compared as loaded, so edits made on other nodes are never served stale
+ * either. Entries of a user's notes are dropped when the user changes their name or
+ * picture. Entries serialized while a thumbnail was not generated yet are rebuilt once
+ * thumbnails have been generated, or after a minute for those generated by other nodes.
+ * The cache is a bounded LRU.
+ */
+@Service
+@RequiredArgsConstructor
+public class NoteJsonCache {
+
+    private static final byte[] ARRAY_START = {'['};
+    private static final byte[] SEPARATOR = {','};
+    private static final byte[] ARRAY_END = {']'};
+
+    // CBOR major type 4 (array) with indefinite length, and the "break" that ends it
+    private static final int CBOR_ARRAY_START = 0x9f;
+    private static final int CBOR_BREAK = 0xff;
+
+    private static final long PENDING_THUMBNAIL_RECHECK_MS = 60_000;
+
+    private final ObjectMapper objectMapper;
+    private final ImageDerivativeService imageDerivativeService;
+    private final ObjectMapper cborMapper = Jackson2ObjectMapperBuilder.cbor().build();
+
+    @Value("${app.notes.json-cache-size:10000}")
+    private int cacheSize;
+
+    private Map<Integer, Entry> cache;
+
+    @PostConstruct
+    public void init() {
+        cache = Collections.synchronizedMap(new LinkedHashMap<Integer, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Entry> eldest) {
+                return size() > cacheSize;
+            }
+        });
+    }
+
+    /**
+     * Returns the note's NoteDTO JSON as UTF-8 bytes. The array is shared and must not be
+     * modified.
+     */
+    public byte[] toJson(Note note) {
+        Entry entry = entry(note);
+        if (entry.json == null) {
+            entry.json = serialize(objectMapper, entry.dto);
+        }
+        return entry.json;
+    }
+
+    /**
+     * Returns the note's NoteDTO as CBOR. The array is shared and must not be modified.
+     */
+    public byte[] toCbor(Note note) {
+        Entry entry = entry(note);
+        if (entry.cbor == null) {
+            entry.cbor = serialize(cborMapper, entry.dto);
+        }
+        return entry.cbor;
+    }
+
+    /**
+     * Returns the note's JSON for embedding in a response object serialized by Jackson.
+     */
+    public RawValue toRawJson(Note note) {
+        return new RawValue(new String(toJson(note), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Writes the notes as a JSON array of NoteDTOs.
+     */
+    public void writeArray(List<Note> notes, OutputStream out) throws IOException {
+        out.write(ARRAY_START);
+        for (int i = 0; i < notes.size(); i++) {
+            if (i > 0) {
+                out.write(SEPARATOR);
+            }
+            out.write(toJson(notes.get(i)));
+        }
+        out.write(ARRAY_END);
+        out.flush();
+    }
+
+    /**
+     * Writes the notes as a CBOR array of NoteDTOs.
+     */
+    public void writeCborArray(List<Note> notes, OutputStream out) throws IOException {
+        out.write(CBOR_ARRAY_START);
+        for (Note note : notes) {
+            out.write(toCbor(note));
+        }
+        out.write(CBOR_BREAK);
+        out.flush();
+    }
+
+    /**
+     * Drops the entries of the user's notes, which show their name and picture.
+     */
+    public void userChanged(Integer userId) {
+        synchronized (cache) {
+            cache.values().removeIf(entry -> userId.equals(entry.authorId));
+        }
+    }
+
+    /**
+     * Drops entries affected by a user change made on another node. Note changes need no
+     * event: the notes passed in are compared as loaded.
+     */
+    @EventListener
+    public void onInvalidation(InvalidationEvent event) {
+        if (event.getType() == InvalidationEvent.Type.USER) {
+            userChanged(event.getId());
+        }
+    }
+
+    private Entry entry(Note note) {
+        Entry entry = note.getId() != null ? cache.get(note.getId()) : null;
+        if (entry != null && entry.matches(note) && !thumbnailsMayHaveChanged(entry)) {
+            return entry;
+        }
+        NoteDTO dto = toDto(note);
+        entry = new Entry(note, dto, servesFullSizeImages(dto) ? imageDerivativeService.thumbnailsGenerated() : -1);
+        if (note.getId() != null) {
+            cache.put(note.getId(), entry);
+        }
+        return entry;
+    }
+
+    private boolean thumbnailsMayHaveChanged(Entry entry) {
+        return entry.thumbnailsGenerated >= 0
+                && (entry.thumbnailsGenerated != imageDerivativeService.thumbnailsGenerated()
+                    || System.currentTimeMillis() - entry.createdAt > PENDING_THUMBNAIL_RECHECK_MS);
+    }
+
+    // Images without a thumbnail yet are served in full size
+    private static boolean servesFullSizeImages(NoteDTO dto) {
+        if (dto.getImagePaths() != null && !dto.getImagePaths().trim().isEmpty()) {
+            String[] images = dto.getImagePaths().split(",");
+            String[] thumbnails = dto.getThumbnailPaths().split(",");
+            for (int i = 0; i < images.length; i++) {
+                if (images[i].trim().equals(thumbnails[i])) {
+                    return true;
+                }
+            }
+        }
+        return dto.getAuthorProfilePicture() != null
+                && dto.getAuthorProfilePicture().trim().equals(dto.getAuthorProfileThumbnail());
+    }
+
+    private NoteDTO toDto(Note note) {
+        String authorPicture = note.getUser() != null ? note.getUser().getProfilePicture() : null;
+        return NoteDTO.fromNote(note,
+                imageDerivativeService.thumbnailPaths(note.getImagePaths(), ImageDerivativeService.CARD_THUMBNAIL_WIDTH),
+                imageDerivativeService.thumbnailPath(authorPicture, ImageDerivativeService.AVATAR_THUMBNAIL_WIDTH));
+    }
+
+    private static byte[] serialize(ObjectMapper mapper, NoteDTO dto) {
+        try {
+            return mapper.writeValueAsBytes(dto);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("Could not serialize note " + dto.getId(), e);
+        }
+    }
+
+    private static final class Entry {
+        private final NoteDTO dto;
+        private final long createdAt = System.currentTimeMillis();
+        // Thumbnail generation count when serialized with a full-size image, -1 otherwise
+        private final long thumbnailsGenerated;
+
+        // The version, and what the version does not cover
+        private final Integer version;
+        private final Integer positionX;
+        private final Integer positionY;
+        private final String tag;
+        private final String color;
+        private final Note.NoteType noteType;
+        private final Note.PrivacyLevel privacyLevel;
+        private final String sharedWith;
+        private final Note.EditingPermission editingPermission;
+        private final Boolean hasImages;
+        private final String imagePaths;
+        private final String attachmentIds;
+        private final Integer authorId;
+
+        // Filled on first use; a race only serializes the same bytes twice
+        private volatile byte[] json;
+        private volatile byte[] cbor;
+
+        private Entry(Note note, NoteDTO dto, long thumbnailsGenerated) {
+            this.dto = dto;
+            this.thumbnailsGenerated = thumbnailsGenerated;
+            this.version = note.getVersion();
+            this.positionX = note.getPositionX();
+            this.positionY = note.getPositionY();
+            this.tag = note.getTag();
+            this.color = note.getColor();
+            this.noteType = note.getNoteType();
+            this.privacyLevel = note.getPrivacyLevel();
+            this.sharedWith = note.getSharedWith();
+            this.editingPermission = note.getEditingPermission();
+            this.hasImages = note.getHasImages();
+            this.imagePaths = note.getImagePaths();
+            this.attachmentIds = note.getAttachmentIds();
+            this.authorId = note.getUser() != null ? note.getUser().getId() : null;
+        }
+
+        private boolean matches(Note note) {
+            return Objects.equals(version, note.getVersion())
+                    && Objects.equals(positionX, note.getPositionX())
+                    && Objects.equals(positionY, note.getPositionY())
+                    && Objects.equals(tag, note.getTag())
+                    && Objects.equals(color, note.getColor())
+                    && noteType == note.getNoteType()
+                    && privacyLevel == note.getPrivacyLevel()
+                    && Objects.equals(sharedWith, note.getSharedWith())
+                    && editingPermission == note.getEditingPermission()
+                    && Objects.equals(hasImages, note.getHasImages())
+                    && Objects.equals(imagePaths, note.getImagePaths())
+                    && Objects.equals(attachmentIds, note.getAttachmentIds())
+                    && Objects.equals(authorId, note.getUser() != null ? note.getUser().getId() : null);
+        }
+    }
+}
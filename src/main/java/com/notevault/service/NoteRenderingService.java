@@ -0,0 +1,66 @@
+package com.notevault.service;
+
+import com.notevault.model.Note;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Renders code and rich text notes to HTML once, when they are written, so that clients
+ * can show them without highlighting or sanitizing anything themselves. The result is
+ * stored with the note; identical content (templates, copies) is served from a bounded
+ * in-memory cache keyed by content hash.
+ */
+@Service
+public class NoteRenderingService {
+
+    @Value("${app.rendering.cache-size:2000}")
+    private int cacheSize;
+
+    private Map<String, String> renderCache;
+
+    @PostConstruct
+    public void init() {
+        renderCache = Collections.synchronizedMap(new LinkedHashMap<String, String>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > cacheSize;
+            }
+        });
+    }
+
+    /**
+     * Sets the note's rendered HTML for its current type and content.
+     */
+    public void renderNote(Note note) {
+        note.setRenderedHtml(render(note.getNoteType(), note.getContent()));
+    }
+
+    /**
+     * Returns the HTML for code and rich text content, or null for plain text notes.
+     */
+    public String render(Note.NoteType noteType, String content) {
+        if (noteType != Note.NoteType.code && noteType != Note.NoteType.rich) {
+            return null;
+        }
+        String text = content != null ? content : "";
+        String key = noteType.name() + ":" + contentHash(text);
+        String html = renderCache.get(key);
+        if (html == null) {
+            html = noteType == Note.NoteType.code ? CodeHighlighter.highlight(text) : HtmlSanitizer.sanitize(text);
+            renderCache.put(key, html);
+        }
+        return html;
+    }
+
+    private static String contentHash(String content) {
+        MessageDigest digest = FileStorageService.sha256();
+        return FileStorageService.toHex(digest.digest(content.getBytes(StandardCharsets.UTF_8)));
+    }
+}
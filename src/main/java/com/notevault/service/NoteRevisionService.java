@@ -0,0 +1,183 @@
+package com.notevault.service;
+
+import lombok.RequiredArgsConstructor;
+import com.notevault.model.Note;
+import com.notevault.model.NoteRevision;
+import com.notevault.repository.NoteRevisionRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * Revision history of note content. Revision numbers are the note versions.
+ *
+ * Every snapshotInterval-th revision stores the full content; the ones in between store
+ * a TextDelta against their predecessor, so rebuilding any revision starts at the nearest
+ * snapshot and applies fewer than snapshotInterval deltas. Only the newest maxRevisions
+ * revisions of a note are kept: when older ones are dropped, the oldest kept revision is
+ * rewritten as a snapshot first so it can still be rebuilt.
+ */
+@Service
+@RequiredArgsConstructor
+public class NoteRevisionService {
+
+    private static final Logger logger = Logger.getLogger(NoteRevisionService.class.getName());
+
+    private final NoteRevisionRepository noteRevisionRepository;
+
+    @Value("${app.notes.revisions.snapshot-interval:20}")
+    private int snapshotInterval;
+
+    @Value("${app.notes.revisions.max-revisions:200}")
+    private int maxRevisions;
+
+    /**
+     * Records the note's current title and content as the revision matching its version.
+     * previousContent is the content of the preceding version if the caller has it at
+     * hand, otherwise it is rebuilt from the history.
+     */
+    public void recordRevision(Note note, String previousContent, Integer authorId) {
+        int version = note.getVersion() != null ? note.getVersion() : 0;
+        NoteRevision latest = noteRevisionRepository.findTopByNoteIdOrderByRevisionNumberDesc(note.getId()).orElse(null);
+        if (latest != null && latest.getRevisionNumber() >= version) {
+            return;
+        }
+        String content = note.getContent() != null ? note.getContent() : "";
+
+        NoteRevision revision = new NoteRevision();
+        revision.setNoteId(note.getId());
+        revision.setRevisionNumber(version);
+        revision.setTitle(note.getTitle());
+        revision.setAuthorId(authorId);
+        revision.setCreatedAt(LocalDateTime.now());
+        revision.setSnapshot(true);
+        revision.setData(content);
+
+        // Deltas need an unbroken chain back to a snapshot
+        if (latest != null && latest.getRevisionNumber() == version - 1) {
+            Integer snapshot = noteRevisionRepository.findSnapshotAtOrBefore(note.getId(), latest.getRevisionNumber());
+            if (snapshot != null && version - snapshot < snapshotInterval) {
+                String previous = previousContent != null ? previousContent : rebuild(note.getId(), latest.getRevisionNumber());
+                revision.setSnapshot(false);
+                revision.setData(TextDelta.diff(previous, content).serialize());
+            }
+        }
+
+        try {
+            noteRevisionRepository.save(revision);
+        } catch (DataIntegrityViolationException e) {
+            // A concurrent update recorded this revision number first
+            logger.warning("Skipped revision " + version + " of note " + note.getId() + ": " + e.getMessage());
+            return;
+        }
+        applyRetention(note.getId(), version);
+    }
+
+    /**
+     * Records the note as it is now if it has no history yet, so the first tracked edit
+     * can be undone. Returns the latest revision number.
+     */
+    public int recordBaseRevision(Note note) {
+        NoteRevision latest = noteRevisionRepository.findTopByNoteIdOrderByRevisionNumberDesc(note.getId()).orElse(null);
+        if (latest != null) {
+            return latest.getRevisionNumber();
+        }
+        recordRevision(note, null, note.getUser() != null ? note.getUser().getId() : null);
+        return note.getVersion() != null ? note.getVersion() : 0;
+    }
+
+    public List<NoteRevision> listRevisions(Integer noteId) {
+        return noteRevisionRepository.findByNoteIdOrderByRevisionNumberDesc(noteId);
+    }
+
+    public NoteRevision getRevision(Integer noteId, Integer revisionNumber) {
+        return noteRevisionRepository.findByNoteIdAndRevisionNumber(noteId, revisionNumber)
+                .orElseThrow(() -> new RuntimeException("Revision not found"));
+    }
+
+    /**
+     * Returns the content of a revision, rebuilt from the nearest snapshot before it.
+     */
+    public String rebuild(Integer noteId, Integer revisionNumber) {
+        Integer snapshot = noteRevisionRepository.findSnapshotAtOrBefore(noteId, revisionNumber);
+        if (snapshot == null) {
+            throw new RuntimeException("Revision not found");
+        }
+        List<NoteRevision> chain = noteRevisionRepository.findRange(noteId, snapshot, revisionNumber);
+        if (chain.size() != revisionNumber - snapshot + 1) {
+            throw new RuntimeException("Revision history is incomplete");
+        }
+        String content = chain.get(0).getData();
+        for (NoteRevision revision : chain.subList(1, chain.size())) {
+            content = TextDelta.parse(revision.getData()).apply(content);
+        }
+        return content;
+    }
+
+    /**
+     * Returns the deltas that lead from revision fromRevision to revision toRevision, one
+     * per revision, or null if part of that history is no longer kept.
+     */
+    public List<TextDelta> deltasBetween(Integer noteId, int fromRevision, int toRevision) {
+        List<NoteRevision> revisions = noteRevisionRepository.findRange(noteId, fromRevision + 1, toRevision);
+        if (revisions.size() != toRevision - fromRevision) {
+            return null;
+        }
+        List<TextDelta> deltas = new ArrayList<>();
+        String content = null;
+        for (NoteRevision revision : revisions) {
+            if (revision.getSnapshot()) {
+                if (content == null) {
+                    content = rebuildOrNull(noteId, revision.getRevisionNumber() - 1);
+                    if (content == null) {
+                        return null;
+                    }
+                }
+                deltas.add(TextDelta.diff(content, revision.getData()));
+                content = revision.getData();
+            } else {
+                TextDelta delta = TextDelta.parse(revision.getData());
+                deltas.add(delta);
+                if (content != null) {
+                    content = delta.apply(content);
+                }
+            }
+        }
+        return deltas;
+    }
+
+    private String rebuildOrNull(Integer noteId, Integer revisionNumber) {
+        try {
+            return rebuild(noteId, revisionNumber);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    @Transactional
+    public void deleteRevisions(Integer noteId) {
+        noteRevisionRepository.deleteByNoteId(noteId);
+    }
+
+    private void applyRetention(Integer noteId, int latestRevision) {
+        int oldestKept = latestRevision - maxRevisions + 1;
+        NoteRevision oldest = noteRevisionRepository.findTopByNoteIdOrderByRevisionNumberAsc(noteId).orElse(null);
+        // Compact in steps of a snapshot interval so this runs rarely
+        if (oldest == null || oldestKept - oldest.getRevisionNumber() < snapshotInterval) {
+            return;
+        }
+        NoteRevision base = getRevision(noteId, oldestKept);
+        if (!base.getSnapshot()) {
+            base.setData(rebuild(noteId, oldestKept));
+            base.setSnapshot(true);
+            noteRevisionRepository.save(base);
+        }
+        noteRevisionRepository.deleteOlderThan(noteId, oldestKept);
+    }
+}
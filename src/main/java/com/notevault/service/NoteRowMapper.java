@@ -0,0 +1,91 @@
+package com.notevault.service;
+
+import lombok.RequiredArgsConstructor;
+import com.notevault.model.CompressedTextConverter;
+import com.notevault.model.Note;
+import com.notevault.model.User;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Component;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Maps notiz rows selected with COLUMNS FROM TABLES to the notes shown on the board.
+ *
+ * The author comes from the same row, so loading notes costs one query however many
+ * authors they have. Authors are not entities: they carry only what a note shows of them
+ * (id, username, display name and picture), which also keeps account data out of caches
+ * that hold notes.
+ */
+@Component
+@RequiredArgsConstructor
+public class NoteRowMapper implements RowMapper<Note> {
+
+    public static final String COLUMNS =
+            "n.N_id, n.Titel, n.Tag, n.Inhalt, n.B_id, n.position_x, n.position_y, n.color, " +
+            "n.note_type, n.privacy_level, n.shared_with, n.has_images, n.image_paths, n.attachment_ids, " +
+            "n.rendered_html, n.version, u.benutzername, u.display_name, u.profile_picture";
+
+    public static final String TABLES = "notiz n LEFT JOIN nutzer u ON u.id = n.B_id";
+
+    private final NoteRenderingService noteRenderingService;
+
+    @Override
+    public Note mapRow(ResultSet rs, int rowNum) throws SQLException {
+        Note note = new Note();
+        note.setId(rs.getInt("N_id"));
+        note.setTitle(rs.getString("Titel"));
+        note.setTag(rs.getString("Tag"));
+        note.setContent(CompressedTextConverter.decode(rs.getString("Inhalt")));
+
+        // Set position and color
+        note.setPositionX(rs.getObject("position_x") != null ? rs.getInt("position_x") : 0);
+        note.setPositionY(rs.getObject("position_y") != null ? rs.getInt("position_y") : 0);
+        note.setColor(rs.getString("color") != null ? rs.getString("color") : "#fef3c7");
+
+        // Set new fields
+        String noteTypeStr = rs.getString("note_type");
+        if (noteTypeStr != null) {
+            note.setNoteType(Note.NoteType.valueOf(noteTypeStr));
+        } else {
+            note.setNoteType(Note.NoteType.text);
+        }
+
+        String privacyLevelStr = rs.getString("privacy_level");
+        if (privacyLevelStr != null) {
+            for (Note.PrivacyLevel level : Note.PrivacyLevel.values()) {
+                if (level.getValue().equals(privacyLevelStr)) {
+                    note.setPrivacyLevel(level);
+                    break;
+                }
+            }
+        } else {
+            note.setPrivacyLevel(Note.PrivacyLevel.private_);
+        }
+
+        note.setSharedWith(rs.getString("shared_with"));
+        note.setHasImages(rs.getBoolean("has_images"));
+        note.setImagePaths(rs.getString("image_paths"));
+        note.setAttachmentIds(rs.getString("attachment_ids"));
+
+        // Notes written before pre-rendering existed are rendered here, mostly from the cache
+        note.setVersion(rs.getObject("version") != null ? rs.getInt("version") : null);
+        note.setRenderedHtml(CompressedTextConverter.decode(rs.getString("rendered_html")));
+        if (note.getRenderedHtml() == null) {
+            noteRenderingService.renderNote(note);
+        }
+
+        // Set user
+        if (rs.getString("benutzername") != null) {
+            User author = new User();
+            author.setId(rs.getInt("B_id"));
+            author.setUsername(rs.getString("benutzername"));
+            author.setDisplayName(rs.getString("display_name"));
+            author.setProfilePicture(rs.getString("profile_picture"));
+            note.setUser(author);
+        }
+
+        return note;
+    }
+}
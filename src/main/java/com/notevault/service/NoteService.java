@@ -1,57 +1,96 @@
 package com.notevault.service;
 
+import lombok.Data;
 import lombok.RequiredArgsConstructor;
+import com.notevault.invalidation.InvalidationBus;
+import com.notevault.invalidation.InvalidationEvent;
+import com.notevault.model.Attachment;
+import com.notevault.model.BlobReference;
+import com.notevault.model.CompressedTextConverter;
 import com.notevault.model.Note;
+import com.notevault.model.NoteRevision;
 import com.notevault.model.User;
 import com.notevault.repository.NoteRepository;
 import com.notevault.repository.UserRepository;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.io.InputStream;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
-import java.util.UUID;
+import java.util.Set;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import org.apache.commons.io.input.CharSequenceInputStream;
 import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.jdbc.core.RowMapper;
 
 @Service
 @RequiredArgsConstructor
 public class NoteService {
 
+    private static final Logger logger = Logger.getLogger(NoteService.class.getName());
+
+    private static final int PATCH_ATTEMPTS = 3;
+
     private final NoteRepository noteRepository;
     private final UserRepository userRepository;
     private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final FileStorageService fileStorageService;
+    private final AttachmentService attachmentService;
+    private final NoteRenderingService noteRenderingService;
+    private final NoteRevisionService noteRevisionService;
+    private final TagFacetService tagFacetService;
+    private final TagIndexService tagIndexService;
+    private final PublicFeedService publicFeedService;
+    private final PublicNoteSnapshotService publicNoteSnapshotService;
+    private final NoteRowMapper noteRowMapper;
+    private final SingleFlight singleFlight;
+    private final InvalidationBus invalidationBus;
+
+    @Value("${app.notes.patch.max-rebase-revisions:100}")
+    private int maxRebaseRevisions;
 
     public List<Note> getAllNotesByUser(Integer userId) {
+        // Loads of the same board at the same time (several tabs, or everyone reloading after
+        // a shared note changed) share one query; each caller gets its own list
+        return new ArrayList<>(singleFlight.execute("board:" + userId, () -> loadAllNotesByUser(userId)));
+    }
+    
+    private List<Note> loadAllNotesByUser(Integer userId) {
         try {
             Optional<User> userOpt = userRepository.findById(userId);
             if (userOpt.isPresent()) {
                 User user = userOpt.get();
-                System.out.println("Found user: " + user.getUsername() + " with ID: " + user.getId());
+                logger.fine(() -> "Found user: " + user.getUsername() + " with ID: " + user.getId());
                 
                 // Try direct SQL query first
                 List<Note> notes = getAllNotesByUserIdDirect(userId);
                 if (!notes.isEmpty()) {
-                    System.out.println("Found " + notes.size() + " notes using direct SQL query");
+                    logger.fine(() -> "Found " + notes.size() + " notes using direct SQL query");
                     return notes;
                 }
                 
                 // Fall back to repository method
                 List<Note> repoNotes = noteRepository.findByUser(user);
-                System.out.println("Found " + repoNotes.size() + " notes using repository method");
+                logger.fine(() -> "Found " + repoNotes.size() + " notes using repository method");
                 return repoNotes;
             } else {
-                System.out.println("User not found with ID: " + userId);
+                logger.fine(() -> "User not found with ID: " + userId);
             }
         } catch (Exception e) {
-            System.err.println("Error getting notes for user: " + e.getMessage());
-            e.printStackTrace();
+            logger.warning("Error getting notes for user " + userId + ": " + e.getMessage());
         }
         return new ArrayList<>(); // Return empty list instead of throwing exception
     }
@@ -64,63 +103,23 @@ public class NoteService {
         }
         String username = userOpt.get().getUsername();
         
-        // SQL query to get:
-        // 1. Notes owned by the user (B_id = userId)
-        // 2. Notes shared with everyone (privacy_level = 'everyone')
-        // 3. Notes shared with specific people where username is in shared_with field
-        String sql = "SELECT n.N_id, n.Titel, n.Tag, n.Inhalt, n.B_id, n.position_x, n.position_y, n.color, " +
-                     "n.note_type, n.privacy_level, n.shared_with, n.has_images, n.image_paths " +
-                     "FROM notiz n WHERE " +
+        // Own notes and notes shared with this user specifically come from the database;
+        // notes shared with everyone are the same for every board and come from the snapshot
+        String sql = "SELECT " + NoteRowMapper.COLUMNS + " " +
+                     "FROM " + NoteRowMapper.TABLES + " WHERE " +
                      "n.B_id = ? OR " +  // Notes owned by user
-                     "n.privacy_level = 'everyone' OR " +  // Notes shared with everyone
                      "(n.privacy_level = 'some_people' AND n.shared_with IS NOT NULL AND " +
                      "FIND_IN_SET(?, REPLACE(n.shared_with, ' ', '')) > 0)";
         
-        RowMapper<Note> rowMapper = (rs, rowNum) -> {
-            Note note = new Note();
-            note.setId(rs.getInt("N_id"));
-            note.setTitle(rs.getString("Titel"));
-            note.setTag(rs.getString("Tag"));
-            note.setContent(rs.getString("Inhalt"));
-            
-            // Set position and color
-            note.setPositionX(rs.getObject("position_x") != null ? rs.getInt("position_x") : 0);
-            note.setPositionY(rs.getObject("position_y") != null ? rs.getInt("position_y") : 0);
-            note.setColor(rs.getString("color") != null ? rs.getString("color") : "#fef3c7");
-            
-            // Set new fields
-            String noteTypeStr = rs.getString("note_type");
-            if (noteTypeStr != null) {
-                note.setNoteType(Note.NoteType.valueOf(noteTypeStr));
-            } else {
-                note.setNoteType(Note.NoteType.text);
-            }
-            
-            String privacyLevelStr = rs.getString("privacy_level");
-            if (privacyLevelStr != null) {
-                for (Note.PrivacyLevel level : Note.PrivacyLevel.values()) {
-                    if (level.getValue().equals(privacyLevelStr)) {
-                        note.setPrivacyLevel(level);
-                        break;
-                    }
+        try {
+            List<Note> notes = jdbcTemplate.query(sql, noteRowMapper, userId, username);
+            for (Note note : publicNoteSnapshotService.getNotes()) {
+                // The user's own public notes were loaded above already
+                if (note.getUser() == null || !userId.equals(note.getUser().getId())) {
+                    notes.add(note);
                 }
-            } else {
-                note.setPrivacyLevel(Note.PrivacyLevel.private_);
             }
-            
-            note.setSharedWith(rs.getString("shared_with"));
-            note.setHasImages(rs.getBoolean("has_images"));
-            note.setImagePaths(rs.getString("image_paths"));
-            
-            // Set user
-            Optional<User> noteOwner = userRepository.findById(rs.getInt("B_id"));
-            noteOwner.ifPresent(note::setUser);
-            
-            return note;
-        };
-        
-        try {
-            return jdbcTemplate.query(sql, rowMapper, userId, username);
+            return notes;
         } catch (Exception e) {
             System.err.println("Error executing shared notes SQL query: " + e.getMessage());
             return new ArrayList<>();
@@ -141,8 +140,11 @@ public class NoteService {
             note.setPositionX(positionX);
             note.setPositionY(positionY);
             note.setColor(color);
+            noteRenderingService.renderNote(note);
             
-            return noteRepository.save(note);
+            Note savedNote = noteRepository.save(note);
+            noteChanged(savedNote.getId(), null, TagFacetService.NoteFacets.of(savedNote));
+            return savedNote;
         }
         throw new RuntimeException("User not found");
     }
@@ -151,11 +153,15 @@ public class NoteService {
         Optional<Note> noteOpt = noteRepository.findById(noteId);
         if (noteOpt.isPresent()) {
             Note note = noteOpt.get();
+            TagFacetService.NoteFacets previousFacets = TagFacetService.NoteFacets.of(note);
             note.setTitle(title);
             note.setTag(tag);
             note.setContent(content);
+            noteRenderingService.renderNote(note);
             
-            return noteRepository.save(note);
+            Note savedNote = noteRepository.save(note);
+            noteChanged(savedNote.getId(), previousFacets, TagFacetService.NoteFacets.of(savedNote));
+            return savedNote;
         }
         throw new RuntimeException("Note not found");
     }
@@ -167,13 +173,48 @@ public class NoteService {
             note.setPositionX(positionX);
             note.setPositionY(positionY);
             
-            return noteRepository.save(note);
+            Note savedNote = noteRepository.save(note);
+            singleFlight.forget("board:");
+            if (savedNote.getPrivacyLevel() == Note.PrivacyLevel.everyone) {
+                publicNoteSnapshotService.refresh(List.of(noteId));
+                invalidationBus.publish(InvalidationEvent.note(noteId,
+                        savedNote.getUser() != null ? savedNote.getUser().getId() : null, true));
+            }
+            return savedNote;
         }
         throw new RuntimeException("Note not found");
     }
     
     public void deleteNote(Integer noteId) {
+        Note note = noteRepository.findById(noteId).orElse(null);
+        TagFacetService.NoteFacets previousFacets = note != null ? TagFacetService.NoteFacets.of(note) : null;
         noteRepository.deleteById(noteId);
+        noteChanged(noteId, previousFacets, null);
+        fileStorageService.releaseReferences(BlobReference.OwnerType.NOTE, noteId);
+        noteRevisionService.deleteRevisions(noteId);
+    }
+    
+    /**
+     * Returns the notes the user can see that match the boolean tag expression (see
+     * TagQuery) and, if given, contain the search term.
+     */
+    public List<Note> searchNotes(Integer userId, String searchTerm, String tagQuery) {
+        if (tagQuery == null || tagQuery.trim().isEmpty()) {
+            return searchNotes(userId, searchTerm != null ? searchTerm : "");
+        }
+        List<Integer> ids = Arrays.stream(tagIndexService.findNoteIds(userId, tagQuery)).boxed()
+                .collect(java.util.stream.Collectors.toList());
+        String term = searchTerm != null ? searchTerm.toLowerCase() : "";
+        // The index only narrows down the candidates: its visibility lags behind changes made
+        // on other nodes until the next rebuild, so access is checked on the loaded notes
+        return noteRepository.findAllById(ids).stream()
+                .filter(note -> canViewNote(note, userId))
+                .filter(note -> term.isEmpty() ||
+                    (note.getTitle() != null && note.getTitle().toLowerCase().contains(term)) ||
+                    (note.getTag() != null && note.getTag().toLowerCase().contains(term)) ||
+                    (note.getContent() != null && note.getContent().toLowerCase().contains(term))
+                )
+                .collect(java.util.stream.Collectors.toList());
     }
     
     public List<Note> searchNotes(Integer userId, String searchTerm) {
@@ -240,15 +281,35 @@ public class NoteService {
                 note.setImagePaths(String.join(",", imagePaths));
             }
             
-            return noteRepository.save(note);
+            // Handle attachments uploaded through the attachment endpoints
+            if (noteData.containsKey("attachmentIds")) {
+                applyAttachments(note, userId, noteData.get("attachmentIds"));
+            }
+            
+            note.setVersion(1);
+            noteRenderingService.renderNote(note);
+            Note savedNote = noteRepository.save(note);
+            fileStorageService.updateReferences(BlobReference.OwnerType.NOTE, savedNote.getId(), savedNote.getUser().getId(),
+                    splitPaths(savedNote.getImagePaths()));
+            noteRevisionService.recordRevision(savedNote, null, userId);
+            noteChanged(savedNote.getId(), null, TagFacetService.NoteFacets.of(savedNote));
+            return savedNote;
         }
         throw new RuntimeException("User not found");
     }
     
-    public Note updateEnhancedNote(Integer noteId, Map<String, Object> noteData) {
+    public Note updateEnhancedNote(Integer noteId, Map<String, Object> noteData, Integer userId) {
         Optional<Note> noteOpt = noteRepository.findById(noteId);
         if (noteOpt.isPresent()) {
             Note note = noteOpt.get();
+            int baseVersion = noteRevisionService.recordBaseRevision(note);
+            Integer storedVersion = note.getVersion();
+            if (note.getVersion() == null) {
+                note.setVersion(baseVersion);
+            }
+            String previousTitle = note.getTitle();
+            String previousContent = note.getContent();
+            TagFacetService.NoteFacets previousFacets = TagFacetService.NoteFacets.of(note);
             note.setTitle((String) noteData.get("title"));
             note.setTag((String) noteData.get("tag"));
             note.setContent((String) noteData.get("content"));
@@ -298,89 +359,305 @@ public class NoteService {
                 note.setImagePaths(String.join(",", imagePaths));
             }
             
-            return noteRepository.save(note);
+            // Handle attachments, keeping the existing ones if the images were replaced
+            if (noteData.containsKey("attachmentIds")) {
+                applyAttachments(note, note.getUser().getId(), noteData.get("attachmentIds"));
+            } else if (images != null && !images.isEmpty() && note.getAttachmentIds() != null) {
+                applyAttachments(note, note.getUser().getId(), AttachmentService.parseIds(note.getAttachmentIds()));
+            }
+            
+            boolean textChanged = !Objects.equals(previousTitle, note.getTitle())
+                    || !Objects.equals(previousContent, note.getContent());
+            if (textChanged) {
+                note.setVersion(note.getVersion() + 1);
+            }
+            
+            noteRenderingService.renderNote(note);
+            Note savedNote = textChanged ? saveNewVersion(note, storedVersion) : noteRepository.save(note);
+            fileStorageService.updateReferences(BlobReference.OwnerType.NOTE, savedNote.getId(), savedNote.getUser().getId(),
+                    splitPaths(savedNote.getImagePaths()));
+            if (textChanged) {
+                noteRevisionService.recordRevision(savedNote, previousContent, userId);
+            }
+            noteChanged(savedNote.getId(), previousFacets, TagFacetService.NoteFacets.of(savedNote));
+            return savedNote;
         }
         throw new RuntimeException("Note not found");
     }
     
-    public String saveUploadedFile(MultipartFile file, Integer userId) throws IOException {
-        if (file.isEmpty()) {
-            throw new RuntimeException("File is empty");
+    /**
+     * Sets the note's title and content back to those of an earlier revision. The restore
+     * itself becomes the newest revision, so it can be undone like any other edit.
+     */
+    public Note restoreRevision(Integer noteId, Integer revisionNumber, Integer userId) {
+        Note note = noteRepository.findById(noteId)
+                .orElseThrow(() -> new RuntimeException("Note not found"));
+        if (!canEditNote(note, userId)) {
+            throw new RuntimeException("You are not allowed to edit this note");
         }
         
-        // Create uploads directory if it doesn't exist
-        Path uploadDir = Paths.get("uploads", "user_" + userId);
-        Files.createDirectories(uploadDir);
-        
-        // Generate unique filename
-        String originalFilename = file.getOriginalFilename();
-        String extension = originalFilename != null ? 
-            originalFilename.substring(originalFilename.lastIndexOf(".")) : "";
-        String filename = UUID.randomUUID().toString() + extension;
-        
-        // Save file
-        Path filePath = uploadDir.resolve(filename);
-        Files.copy(file.getInputStream(), filePath);
-        
-        return filePath.toString();
+        NoteRevision revision = noteRevisionService.getRevision(noteId, revisionNumber);
+        int baseVersion = noteRevisionService.recordBaseRevision(note);
+        String previousContent = note.getContent();
+        Integer storedVersion = note.getVersion();
+        note.setTitle(revision.getTitle());
+        note.setContent(noteRevisionService.rebuild(noteId, revisionNumber));
+        note.setVersion((storedVersion != null ? storedVersion : baseVersion) + 1);
+        noteRenderingService.renderNote(note);
+        Note savedNote = saveNewVersion(note, storedVersion);
+        noteRevisionService.recordRevision(savedNote, previousContent, userId);
+        contentChanged(savedNote);
+        return savedNote;
     }
     
-    private String saveBase64Image(String base64Data, Integer userId) {
-        try {
-            // Remove data URL prefix if present
-            if (base64Data.startsWith("data:")) {
-                base64Data = base64Data.substring(base64Data.indexOf(",") + 1);
+    /**
+     * Applies text operations made against baseVersion of the note's content. Operations
+     * against an older version are rebased over the edits made since, as long as those are
+     * still in the revision history. The row is only written if nobody else wrote it in
+     * the meantime; otherwise the patch is rebased again.
+     *
+     * The result holds the operations that turn baseVersion into the new version, or the
+     * full current content when the patch could not be applied.
+     */
+    public ContentPatch patchContent(Integer noteId, int baseVersion, List<TextDelta> operations, Integer userId) {
+        for (int attempt = 0; attempt < PATCH_ATTEMPTS; attempt++) {
+            Note note = getNoteById(noteId);
+            if (!canEditNote(note, userId)) {
+                throw new RuntimeException("You are not allowed to edit this note");
             }
+            int baseRevision = noteRevisionService.recordBaseRevision(note);
+            Integer storedVersion = note.getVersion();
+            int currentVersion = storedVersion != null ? storedVersion : baseRevision;
             
-            // Decode base64
-            byte[] imageBytes = java.util.Base64.getDecoder().decode(base64Data);
-            
-            // Create uploads directory if it doesn't exist
-            Path uploadDir = Paths.get("uploads", "user_" + userId);
-            Files.createDirectories(uploadDir);
+            List<TextDelta> concurrent = new ArrayList<>();
+            if (baseVersion != currentVersion) {
+                concurrent = baseVersion > currentVersion || currentVersion - baseVersion > maxRebaseRevisions
+                        ? null : noteRevisionService.deltasBetween(noteId, baseVersion, currentVersion);
+                if (concurrent == null) {
+                    return ContentPatch.conflict(currentVersion, note.getContent());
+                }
+            }
             
-            // Generate unique filename
-            String filename = UUID.randomUUID().toString() + ".png";
-            Path filePath = uploadDir.resolve(filename);
+            List<TextDelta> rebased = TextDelta.rebase(operations, concurrent);
+            String previousContent = note.getContent() != null ? note.getContent() : "";
+            String content = previousContent;
+            for (TextDelta operation : rebased) {
+                content = operation.apply(content);
+            }
+            if (content.equals(previousContent)) {
+                return ContentPatch.applied(currentVersion, concurrent);
+            }
             
-            // Save file
-            Files.write(filePath, imageBytes);
+            // Only the content changes, so write just those columns instead of saving the entity
+            int newVersion = currentVersion + 1;
+            String renderedHtml = noteRenderingService.render(note.getNoteType(), content);
+            int updated = storedVersion != null
+                    ? jdbcTemplate.update("UPDATE notiz SET Inhalt = ?, rendered_html = ?, version = ? " +
+                                          "WHERE N_id = ? AND version = ?",
+                            CompressedTextConverter.encode(content), CompressedTextConverter.encode(renderedHtml), newVersion, noteId, storedVersion)
+                    : jdbcTemplate.update("UPDATE notiz SET Inhalt = ?, rendered_html = ?, version = ? " +
+                                          "WHERE N_id = ? AND version IS NULL",
+                            CompressedTextConverter.encode(content), CompressedTextConverter.encode(renderedHtml), newVersion, noteId);
+            if (updated == 0) {
+                continue;
+            }
             
-            return filePath.toString();
+            note.setContent(content);
+            note.setVersion(newVersion);
+            noteRevisionService.recordRevision(note, previousContent, userId);
+            contentChanged(note);
+            List<TextDelta> resulting = new ArrayList<>(concurrent);
+            resulting.addAll(rebased);
+            return ContentPatch.applied(newVersion, resulting);
+        }
+        Note note = getNoteById(noteId);
+        return ContentPatch.conflict(note.getVersion() != null ? note.getVersion() : 0, note.getContent());
+    }
+    
+    /**
+     * Saves a note whose version was raised from storedVersion, the version it was read
+     * with. Like patchContent, the version is compare-and-set: the row is claimed first and
+     * stays locked until the save commits, so a concurrent patch either lands before (and
+     * this save fails) or waits and rebases onto the saved content.
+     */
+    private Note saveNewVersion(Note note, Integer storedVersion) {
+        return transactionTemplate.execute(status -> {
+            int updated = storedVersion != null
+                    ? jdbcTemplate.update("UPDATE notiz SET version = ? WHERE N_id = ? AND version = ?",
+                            note.getVersion(), note.getId(), storedVersion)
+                    : jdbcTemplate.update("UPDATE notiz SET version = ? WHERE N_id = ? AND version IS NULL",
+                            note.getVersion(), note.getId());
+            if (updated == 0) {
+                throw new VersionConflictException("The note was changed in the meantime");
+            }
+            return noteRepository.save(note);
+        });
+    }
+    
+    private void noteChanged(Integer noteId, TagFacetService.NoteFacets before, TagFacetService.NoteFacets after) {
+        singleFlight.forget("board:");
+        tagFacetService.noteChanged(noteId, before, after);
+        tagIndexService.noteChanged(noteId, before, after);
+        publicFeedService.noteChanged(before, after);
+        publicNoteSnapshotService.noteChanged(noteId, before, after);
+        invalidationBus.publish(InvalidationEvent.note(noteId,
+                after != null ? after.getOwnerId() : before.getOwnerId(), isPublic(before) || isPublic(after)));
+    }
+    
+    /**
+     * Updates the caches for notes inserted in bulk, batching where the caches allow it.
+     */
+    public void notesCreated(Map<Integer, TagFacetService.NoteFacets> notes) {
+        singleFlight.forget("board:");
+        List<Integer> publicNoteIds = new ArrayList<>();
+        notes.forEach((noteId, facets) -> {
+            tagFacetService.noteChanged(noteId, null, facets);
+            publicFeedService.noteChanged(null, facets);
+            if (isPublic(facets)) {
+                publicNoteIds.add(noteId);
+            }
+        });
+        tagIndexService.notesCreated(notes);
+        publicNoteSnapshotService.refresh(publicNoteIds);
+        notes.forEach((noteId, facets) ->
+                invalidationBus.publish(InvalidationEvent.note(noteId, facets.getOwnerId(), isPublic(facets))));
+    }
+    
+    // For edits that leave tags and visibility alone
+    private void contentChanged(Note note) {
+        singleFlight.forget("board:");
+        TagFacetService.NoteFacets facets = TagFacetService.NoteFacets.of(note);
+        publicFeedService.noteChanged(facets, facets);
+        publicNoteSnapshotService.noteChanged(note.getId(), facets, facets);
+        invalidationBus.publish(InvalidationEvent.note(note.getId(), facets.getOwnerId(), isPublic(facets)));
+    }
+    
+    private static boolean isPublic(TagFacetService.NoteFacets facets) {
+        return facets != null && Note.PrivacyLevel.everyone.getValue().equals(facets.privacyLevel());
+    }
+    
+    public boolean canViewNote(Note note, Integer userId) {
+        if (note.getUser() != null && note.getUser().getId().equals(userId)) {
+            return true;
+        }
+        if (note.getPrivacyLevel() == Note.PrivacyLevel.everyone) {
+            return true;
+        }
+        if (note.getPrivacyLevel() == Note.PrivacyLevel.some_people && note.getSharedWith() != null) {
+            Optional<User> userOpt = userRepository.findById(userId);
+            if (userOpt.isPresent()) {
+                for (String username : note.getSharedWith().split(",")) {
+                    if (username.trim().equals(userOpt.get().getUsername())) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+    
+    public boolean canEditNote(Note note, Integer userId) {
+        if (note.getUser() != null && note.getUser().getId().equals(userId)) {
+            return true;
+        }
+        return note.getEditingPermission() == Note.EditingPermission.collaborative && canViewNote(note, userId);
+    }
+    
+    public Note getNoteById(Integer noteId) {
+        return noteRepository.findById(noteId)
+                .orElseThrow(() -> new RuntimeException("Note not found"));
+    }
+    
+    public String saveUploadedFile(MultipartFile file, Integer userId) throws IOException {
+        if (file.isEmpty()) {
+            throw new RuntimeException("File is empty");
+        }
+        
+        try (InputStream in = file.getInputStream()) {
+            return fileStorageService.store(in, userId, FileStorageService.extensionOf(file.getOriginalFilename()));
+        }
+    }
+    
+    private String saveBase64Image(String base64Data, Integer userId) {
+        // Skip the data URL prefix if present, without copying the payload
+        int start = base64Data.startsWith("data:") ? base64Data.indexOf(",") + 1 : 0;
+        
+        // Decode while writing so only a small buffer of the image is ever on the heap
+        try (InputStream decoded = Base64.getDecoder().wrap(new CharSequenceInputStream(
+                CharBuffer.wrap(base64Data, start, base64Data.length()), StandardCharsets.US_ASCII))) {
+            return fileStorageService.store(decoded, userId, ".png");
         } catch (Exception e) {
             throw new RuntimeException("Error saving image: " + e.getMessage());
         }
     }
-
-    public List<Map<String, Object>> getPublicNotesByUserId(Integer userId) {
-        String sql = "SELECT n.N_id, n.Titel, n.Tag, n.Inhalt, n.B_id, n.position_x, n.position_y, n.color, " +
-                     "n.note_type, n.privacy_level, n.shared_with, n.has_images, n.image_paths, u.benutzername " +
-                     "FROM notiz n " +
-                     "JOIN nutzer u ON n.B_id = u.id " +
-                     "WHERE n.B_id = ? AND n.privacy_level = 'public' " +
-                     "ORDER BY n.N_id DESC";
+    
+    private static List<String> splitPaths(String paths) {
+        List<String> result = new ArrayList<>();
+        if (paths != null && !paths.trim().isEmpty()) {
+            for (String path : paths.split(",")) {
+                if (!path.trim().isEmpty()) {
+                    result.add(path.trim());
+                }
+            }
+        }
+        return result;
+    }
+    
+    private void applyAttachments(Note note, Integer userId, Object rawAttachmentIds) {
+        Set<Integer> attachmentIds = new LinkedHashSet<>();
+        if (rawAttachmentIds instanceof List) {
+            for (Object id : (List<?>) rawAttachmentIds) {
+                attachmentIds.add(Integer.valueOf(id.toString()));
+            }
+        }
+        List<Attachment> attachments = attachmentService.getOwnedAttachments(attachmentIds, userId);
         
-        RowMapper<Map<String, Object>> rowMapper = (rs, rowNum) -> {
-            Map<String, Object> noteData = new java.util.HashMap<>();
-            noteData.put("id", rs.getInt("N_id"));
-            noteData.put("title", rs.getString("Titel"));
-            noteData.put("tag", rs.getString("Tag"));
-            noteData.put("content", rs.getString("Inhalt"));
-            noteData.put("color", rs.getString("color") != null ? rs.getString("color") : "#fef3c7");
-            noteData.put("noteType", rs.getString("note_type") != null ? rs.getString("note_type") : "text");
-            noteData.put("privacyLevel", rs.getString("privacy_level"));
-            noteData.put("hasImages", rs.getBoolean("has_images"));
-            noteData.put("imagePaths", rs.getString("image_paths"));
-            noteData.put("authorUsername", rs.getString("benutzername"));
-            
-            return noteData;
-        };
+        // Replace the files of previously referenced attachments with the new ones
+        List<String> imagePaths = splitPaths(note.getImagePaths());
+        for (Attachment previous : attachmentService.getAttachments(AttachmentService.parseIds(note.getAttachmentIds()))) {
+            imagePaths.remove(previous.getFilePath());
+        }
+        for (Attachment attachment : attachments) {
+            if (!imagePaths.contains(attachment.getFilePath())) {
+                imagePaths.add(attachment.getFilePath());
+            }
+        }
         
-        try {
-            return jdbcTemplate.query(sql, rowMapper, userId);
-        } catch (Exception e) {
-            System.err.println("Error executing public notes SQL query: " + e.getMessage());
-            return new ArrayList<>();
+        note.setAttachmentIds(attachmentIds.isEmpty() ? null :
+                attachmentIds.stream().map(String::valueOf).collect(Collectors.joining(",")));
+        note.setImagePaths(imagePaths.isEmpty() ? null : String.join(",", imagePaths));
+        note.setHasImages(!imagePaths.isEmpty());
+    }
+    
+    /**
+     * Thrown when a note's content was changed by someone else between reading and saving it.
+     */
+    public static class VersionConflictException extends RuntimeException {
+        public VersionConflictException(String message) {
+            super(message);
+        }
+    }
+    
+    @Data
+    public static class ContentPatch {
+        private boolean conflict;
+        private int version;
+        private List<TextDelta> operations;
+        private String content;
+        
+        static ContentPatch applied(int version, List<TextDelta> operations) {
+            ContentPatch patch = new ContentPatch();
+            patch.setVersion(version);
+            patch.setOperations(operations);
+            return patch;
+        }
+        
+        static ContentPatch conflict(int version, String content) {
+            ContentPatch patch = new ContentPatch();
+            patch.setConflict(true);
+            patch.setVersion(version);
+            patch.setContent(content);
+            return patch;
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,180 @@
+package com.notevault.service;
+
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+import com.notevault.invalidation.InvalidationEvent;
+import com.notevault.model.CompressedTextConverter;
+import com.notevault.model.Note;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The public notes shown on a user's profile: their notes with privacy level everyone,
+ * newest first, one page at a time.
+ *
+ * Pages are cut by keyset (notes with an id below the cursor) so every page is a short
+ * index range scan, however deep the reader pages. Pages are cached per profile and shared
+ * by all viewers; NoteService and NoteImportService drop a profile's pages whenever one of
+ * its public notes is created, changed or deleted, on this node directly and on other
+ * nodes through the invalidation bus. Pages older than ttlMs are reloaded in case an
+ * invalidation was missed. Each page carries an ETag derived from
+ * its content, so clients can revalidate without transferring it again.
+ */
+@Service
+@RequiredArgsConstructor
+public class PublicFeedService {
+
+    private static final int PAGES_PER_PROFILE = 16;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final SingleFlight singleFlight;
+
+    @Value("${app.public-feed.cache-size:1000}")
+    private int cacheSize;
+
+    @Value("${app.public-feed.ttl-ms:60000}")
+    private long ttlMs;
+
+    // Profile owner id -> that profile's cached pages, least recently viewed profile first
+    private Map<Integer, Map<String, FeedPage>> profiles;
+
+    @PostConstruct
+    public void init() {
+        profiles = Collections.synchronizedMap(new LinkedHashMap<Integer, Map<String, FeedPage>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Map<String, FeedPage>> eldest) {
+                return size() > cacheSize;
+            }
+        });
+    }
+
+    /**
+     * Returns up to limit of the user's public notes with an id below before, or the
+     * newest ones if before is null.
+     */
+    public FeedPage getPage(Integer userId, Integer before, int limit) {
+        String key = before + ":" + limit;
+        Map<String, FeedPage> pages = profiles.computeIfAbsent(userId, id -> newPageCache());
+        FeedPage page = pages.get(key);
+        if (page != null && System.currentTimeMillis() - page.getLoadedAt() < ttlMs) {
+            return page;
+        }
+
+        // Viewers of a popular profile missing the cache together share one query
+        page = singleFlight.execute("feed:" + userId + ":" + key, () -> load(userId, before, limit));
+        // If the profile was invalidated while loading, pages is no longer cached and the
+        // possibly outdated page is dropped with it
+        pages.put(key, page);
+        return page;
+    }
+
+    /**
+     * Drops the cached pages of the notes' owners if either version of the note is public.
+     * Pass null as before for a new note and as after for a deleted one.
+     */
+    public void noteChanged(TagFacetService.NoteFacets before, TagFacetService.NoteFacets after) {
+        if (before != null && isPublic(before)) {
+            invalidate(before.getOwnerId());
+        }
+        if (after != null && isPublic(after)) {
+            invalidate(after.getOwnerId());
+        }
+    }
+
+    /**
+     * Drops the pages affected by a change made on another node.
+     */
+    @EventListener
+    public void onInvalidation(InvalidationEvent event) {
+        if ((event.getType() == InvalidationEvent.Type.NOTE && event.isPublicNote())
+                || event.getType() == InvalidationEvent.Type.USER) {
+            invalidate(event.getOwnerId());
+        }
+    }
+
+    public void invalidate(Integer userId) {
+        if (userId != null) {
+            profiles.remove(userId);
+            singleFlight.forget("feed:" + userId + ":");
+        }
+    }
+
+    private FeedPage load(Integer userId, Integer before, int limit) {
+        String sql = "SELECT n.N_id, n.Titel, n.Tag, n.Inhalt, n.color, n.note_type, n.privacy_level, " +
+                     "n.has_images, n.image_paths, n.rendered_html, u.benutzername " +
+                     "FROM notiz n " +
+                     "JOIN nutzer u ON n.B_id = u.id " +
+                     "WHERE n.B_id = ? AND n.privacy_level = ? AND n.N_id < ? " +
+                     "ORDER BY n.N_id DESC LIMIT ?";
+        // One extra row tells whether there is a next page
+        List<Map<String, Object>> notes = jdbcTemplate.query(sql, (rs, rowNum) -> {
+            Map<String, Object> noteData = new LinkedHashMap<>();
+            noteData.put("id", rs.getInt("N_id"));
+            noteData.put("title", rs.getString("Titel"));
+            noteData.put("tag", rs.getString("Tag"));
+            noteData.put("content", CompressedTextConverter.decode(rs.getString("Inhalt")));
+            noteData.put("renderedHtml", CompressedTextConverter.decode(rs.getString("rendered_html")));
+            noteData.put("color", rs.getString("color") != null ? rs.getString("color") : "#fef3c7");
+            noteData.put("noteType", rs.getString("note_type") != null ? rs.getString("note_type") : "text");
+            noteData.put("privacyLevel", rs.getString("privacy_level"));
+            noteData.put("hasImages", rs.getBoolean("has_images"));
+            noteData.put("imagePaths", rs.getString("image_paths"));
+            noteData.put("authorUsername", rs.getString("benutzername"));
+            return noteData;
+        }, userId, Note.PrivacyLevel.everyone.getValue(), before != null ? before : Integer.MAX_VALUE, limit + 1);
+
+        FeedPage page = new FeedPage();
+        if (notes.size() > limit) {
+            notes = notes.subList(0, limit);
+            page.setNextCursor((Integer) notes.get(limit - 1).get("id"));
+        }
+        page.setNotes(Collections.unmodifiableList(notes));
+        page.setEtag(etag(notes, page.getNextCursor()));
+        page.setLoadedAt(System.currentTimeMillis());
+        return page;
+    }
+
+    private static Map<String, FeedPage> newPageCache() {
+        return Collections.synchronizedMap(new LinkedHashMap<String, FeedPage>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, FeedPage> eldest) {
+                return size() > PAGES_PER_PROFILE;
+            }
+        });
+    }
+
+    private static boolean isPublic(TagFacetService.NoteFacets facets) {
+        return Note.PrivacyLevel.everyone.getValue().equals(facets.privacyLevel());
+    }
+
+    private static String etag(List<Map<String, Object>> notes, Integer nextCursor) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(String.valueOf(notes).getBytes(StandardCharsets.UTF_8));
+            digest.update(String.valueOf(nextCursor).getBytes(StandardCharsets.UTF_8));
+            return "\"" + HexFormat.of().formatHex(digest.digest(), 0, 16) + "\"";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Data
+    public static class FeedPage {
+        private List<Map<String, Object>> notes;
+        private Integer nextCursor;
+        private String etag;
+        private long loadedAt;
+    }
+}
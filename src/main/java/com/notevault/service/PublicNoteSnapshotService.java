@@ -0,0 +1,179 @@
+package com.notevault.service;
+
+import lombok.RequiredArgsConstructor;
+import com.notevault.invalidation.InvalidationEvent;
+import com.notevault.model.Note;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.logging.Logger;
+
+/**
+ * All notes with privacy level everyone, held in memory once for the whole process. Every
+ * board shows them, so instead of reading them from the database on each board load,
+ * NoteService merges this snapshot into the user's own and shared-with-me notes.
+ *
+ * The snapshot is immutable and replaced as a whole (copy-on-write), so readers never
+ * lock and never see a half-applied change; the notes in it are shared between requests
+ * and must not be modified. NoteService reports changes to public notes, and only those
+ * rows are reloaded, as are a user's notes when UserService reports a change to their
+ * profile; changes made on other nodes arrive the same way through the invalidation bus.
+ * A full reload at startup and periodically catches anything missed.
+ */
+@Service
+@RequiredArgsConstructor
+public class PublicNoteSnapshotService {
+
+    private static final Logger logger = Logger.getLogger(PublicNoteSnapshotService.class.getName());
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NoteRowMapper noteRowMapper;
+
+    private final Object rebuildLock = new Object();
+
+    private volatile Snapshot snapshot;
+
+    // Guarded by this; ids changed while a full reload was reading, applied again after it
+    private Set<Integer> changedDuringRebuild;
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(initialDelayString = "${app.public-snapshot.rebuild-interval-ms:300000}",
+               fixedDelayString = "${app.public-snapshot.rebuild-interval-ms:300000}")
+    public void rebuild() {
+        synchronized (rebuildLock) {
+            try {
+                synchronized (this) {
+                    changedDuringRebuild = new HashSet<>();
+                }
+                List<Note> notes = jdbcTemplate.query("SELECT " + NoteRowMapper.COLUMNS + " FROM " + NoteRowMapper.TABLES +
+                        " WHERE n.privacy_level = ?", noteRowMapper, Note.PrivacyLevel.everyone.getValue());
+                Set<Integer> changed;
+                synchronized (this) {
+                    Map<Integer, Note> byId = new TreeMap<>();
+                    for (Note note : notes) {
+                        byId.put(note.getId(), note);
+                    }
+                    snapshot = new Snapshot(byId);
+                    changed = changedDuringRebuild;
+                    changedDuringRebuild = null;
+                }
+                refresh(changed);
+            } catch (Exception e) {
+                synchronized (this) {
+                    changedDuringRebuild = null;
+                }
+                logger.warning("Error loading public notes: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Returns all public notes. The list is shared and read-only.
+     */
+    public List<Note> getNotes() {
+        Snapshot current = snapshot;
+        if (current == null) {
+            synchronized (rebuildLock) {
+                if (snapshot == null) {
+                    rebuild();
+                }
+            }
+            current = snapshot;
+        }
+        return current != null ? current.notes : Collections.emptyList();
+    }
+
+    /**
+     * Reloads the note if either version of it is public. Pass null as before for a new
+     * note and as after for a deleted one.
+     */
+    public void noteChanged(Integer noteId, TagFacetService.NoteFacets before, TagFacetService.NoteFacets after) {
+        if ((before != null && isPublic(before)) || (after != null && isPublic(after))) {
+            refresh(Collections.singleton(noteId));
+        }
+    }
+
+    /**
+     * Reloads the user's public notes, which carry their name and picture.
+     */
+    public void userChanged(Integer userId) {
+        Snapshot current = snapshot;
+        if (current == null) {
+            return;
+        }
+        List<Integer> noteIds = new ArrayList<>();
+        for (Note note : current.notes) {
+            if (note.getUser() != null && userId.equals(note.getUser().getId())) {
+                noteIds.add(note.getId());
+            }
+        }
+        refresh(noteIds);
+    }
+
+    /**
+     * Reloads what a change made on another node affects.
+     */
+    @EventListener
+    public void onInvalidation(InvalidationEvent event) {
+        if (event.getType() == InvalidationEvent.Type.NOTE && event.isPublicNote()) {
+            refresh(Collections.singleton(event.getId()));
+        } else if (event.getType() == InvalidationEvent.Type.USER) {
+            userChanged(event.getId());
+        }
+    }
+
+    /**
+     * Reloads the given notes: those that are public now replace their old version, the
+     * others are dropped.
+     */
+    public void refresh(Collection<Integer> noteIds) {
+        if (noteIds.isEmpty()) {
+            return;
+        }
+        synchronized (this) {
+            if (changedDuringRebuild != null) {
+                changedDuringRebuild.addAll(noteIds);
+            }
+            if (snapshot == null) {
+                return;
+            }
+            List<Object> args = new ArrayList<>(noteIds);
+            args.add(0, Note.PrivacyLevel.everyone.getValue());
+            String placeholders = String.join(",", Collections.nCopies(noteIds.size(), "?"));
+            List<Note> notes = jdbcTemplate.query("SELECT " + NoteRowMapper.COLUMNS + " FROM " + NoteRowMapper.TABLES +
+                    " WHERE n.privacy_level = ? AND n.N_id IN (" + placeholders + ")", noteRowMapper, args.toArray());
+
+            Map<Integer, Note> byId = new TreeMap<>(snapshot.byId);
+            byId.keySet().removeAll(noteIds);
+            for (Note note : notes) {
+                byId.put(note.getId(), note);
+            }
+            snapshot = new Snapshot(byId);
+        }
+    }
+
+    private static boolean isPublic(TagFacetService.NoteFacets facets) {
+        return Note.PrivacyLevel.everyone.getValue().equals(facets.privacyLevel());
+    }
+
+    private static final class Snapshot {
+        private final Map<Integer, Note> byId;
+        private final List<Note> notes;
+
+        private Snapshot(Map<Integer, Note> byId) {
+            this.byId = Collections.unmodifiableMap(byId);
+            this.notes = Collections.unmodifiableList(new ArrayList<>(byId.values()));
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.notevault.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Region quadtree over axis-aligned rectangles, used to find notes overlapping a spot on
+ * the board. A node splits into four once it holds more than CAPACITY rectangles; a
+ * rectangle stays in the smallest node that contains it completely, so rectangles that
+ * straddle a split line or lie outside the root bounds stay higher up. Both insert and
+ * query take O(log n) for evenly spread rectangles.
+ */
+final class RectQuadtree {
+
+    private static final int CAPACITY = 8;
+    private static final int MAX_DEPTH = 20;
+
+    private final Node root;
+
+    RectQuadtree(long minX, long minY, long maxX, long maxY) {
+        root = new Node(minX, minY, maxX, maxY, 0);
+    }
+
+    void insert(Rect rect) {
+        root.insert(rect);
+    }
+
+    /**
+     * Returns the rectangles that overlap the given one (touching edges do not count).
+     */
+    List<Rect> query(Rect area) {
+        List<Rect> result = new ArrayList<>();
+        root.query(area, result);
+        return result;
+    }
+
+    static final class Rect {
+        final int id;
+        final long x;
+        final long y;
+        final long width;
+        final long height;
+
+        Rect(int id, long x, long y, long width, long height) {
+            this.id = id;
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+        }
+
+        long right() {
+            return x + width;
+        }
+
+        long bottom() {
+            return y + height;
+        }
+
+        boolean overlaps(Rect other) {
+            return x < other.right() && other.x < right() && y < other.bottom() && other.y < bottom();
+        }
+    }
+
+    private static final class Node {
+        private final long minX;
+        private final long minY;
+        private final long maxX;
+        private final long maxY;
+        private final int depth;
+        private final List<Rect> rects = new ArrayList<>();
+        private Node[] children;
+
+        private Node(long minX, long minY, long maxX, long maxY, int depth) {
+            this.minX = minX;
+            this.minY = minY;
+            this.maxX = maxX;
+            this.maxY = maxY;
+            this.depth = depth;
+        }
+
+        void insert(Rect rect) {
+            if (children != null) {
+                Node child = childContaining(rect);
+                if (child != null) {
+                    child.insert(rect);
+                    return;
+                }
+            }
+            rects.add(rect);
+            if (children == null && rects.size() > CAPACITY && depth < MAX_DEPTH) {
+                split();
+            }
+        }
+
+        void query(Rect area, List<Rect> result) {
+            for (Rect rect : rects) {
+                if (rect.overlaps(area)) {
+                    result.add(rect);
+                }
+            }
+            if (children != null) {
+                for (Node child : children) {
+                    if (child.intersects(area)) {
+                        child.query(area, result);
+                    }
+                }
+            }
+        }
+
+        private void split() {
+            long midX = minX + (maxX - minX) / 2;
+            long midY = minY + (maxY - minY) / 2;
+            children = new Node[] {
+                    new Node(minX, minY, midX, midY, depth + 1),
+                    new Node(midX, minY, maxX, midY, depth + 1),
+                    new Node(minX, midY, midX, maxY, depth + 1),
+                    new Node(midX, midY, maxX, maxY, depth + 1)
+            };
+            List<Rect> current = new ArrayList<>(rects);
+            rects.clear();
+            for (Rect rect : current) {
+                Node child = childContaining(rect);
+                if (child != null) {
+                    child.insert(rect);
+                } else {
+                    rects.add(rect);
+                }
+            }
+        }
+
+        private Node childContaining(Rect rect) {
+            for (Node child : children) {
+                if (rect.x >= child.minX && rect.right() <= child.maxX && rect.y >= child.minY && rect.bottom() <= child.maxY) {
+                    return child;
+                }
+            }
+            return null;
+        }
+
+        private boolean intersects(Rect area) {
+            return area.x < maxX && minX < area.right() && area.y < maxY && minY < area.bottom();
+        }
+    }
+}
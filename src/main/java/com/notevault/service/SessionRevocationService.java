@@ -0,0 +1,104 @@
+package com.notevault.service;
+
+import lombok.RequiredArgsConstructor;
+import com.notevault.model.SessionRevocation;
+import com.notevault.repository.SessionRevocationRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+/**
+ * Keeps track of which sessions were invalidated by a ban or a change of privileges.
+ * Every user has a revocation epoch; a session remembers the epoch it was issued with
+ * and is stale as soon as the user's epoch moves past it. Only users whose sessions were
+ * ever revoked have an epoch, held in a map keyed by user id so the per-request check is
+ * a single lookup, and epochs are kept in sync with other nodes by polling the
+ * session_revocations table.
+ */
+@Service
+@RequiredArgsConstructor
+public class SessionRevocationService {
+
+    public static final String SESSION_EPOCH_ATTRIBUTE = "sessionEpoch";
+
+    private static final Logger logger = Logger.getLogger(SessionRevocationService.class.getName());
+
+    private final SessionRevocationRepository sessionRevocationRepository;
+
+    // Rows written by nodes with a slightly lagging clock are still picked up
+    @Value("${app.session-revocation.clock-skew-ms:60000}")
+    private long clockSkewMillis;
+
+    private final Map<Integer, Integer> epochs = new ConcurrentHashMap<>();
+    private volatile long lastPolledAt = 0L;
+
+    @PostConstruct
+    public void loadRevocations() {
+        try {
+            for (SessionRevocation revocation : sessionRevocationRepository.findAll()) {
+                applyEpoch(revocation.getUserId(), revocation.getEpoch());
+                lastPolledAt = Math.max(lastPolledAt, revocation.getUpdatedAt());
+            }
+        } catch (Exception e) {
+            logger.warning("Could not load session revocations: " + e.getMessage());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.session-revocation.poll-interval-ms:5000}")
+    public void pollRevocations() {
+        try {
+            List<SessionRevocation> changed =
+                    sessionRevocationRepository.findByUpdatedAtGreaterThan(lastPolledAt - clockSkewMillis);
+            long newest = lastPolledAt;
+            for (SessionRevocation revocation : changed) {
+                applyEpoch(revocation.getUserId(), revocation.getEpoch());
+                newest = Math.max(newest, revocation.getUpdatedAt());
+            }
+            lastPolledAt = newest;
+        } catch (Exception e) {
+            logger.warning("Error polling session revocations: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the epoch a newly created session for this user has to carry.
+     */
+    public int currentEpoch(Integer userId) {
+        if (userId == null) {
+            return 0;
+        }
+        return epochs.getOrDefault(userId, 0);
+    }
+
+    public boolean isRevoked(Integer userId, Integer sessionEpoch) {
+        return currentEpoch(userId) > (sessionEpoch != null ? sessionEpoch : 0);
+    }
+
+    /**
+     * Invalidates every existing session of the user, on this node immediately and on
+     * other nodes with their next poll.
+     */
+    public synchronized void revokeSessions(Integer userId) {
+        SessionRevocation revocation = sessionRevocationRepository.findById(userId)
+                .orElseGet(() -> new SessionRevocation(userId, 0, 0L));
+        int epoch = Math.max(revocation.getEpoch(), currentEpoch(userId)) + 1;
+        revocation.setEpoch(epoch);
+        revocation.setUpdatedAt(System.currentTimeMillis());
+        sessionRevocationRepository.save(revocation);
+        applyEpoch(userId, epoch);
+    }
+
+    private void applyEpoch(Integer userId, int epoch) {
+        if (userId == null) {
+            return;
+        }
+        // Epochs only move forward, whatever order polls and local revocations arrive in
+        epochs.merge(userId, epoch, Math::max);
+    }
+}
@@ -0,0 +1,130 @@
+package com.notevault.service;
+
+import lombok.Data;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces identical concurrent reads: while a load for a key is running, further callers
+ * with the same key wait for its result instead of running the query again, so a burst of
+ * identical requests costs one query.
+ *
+ * The first caller runs the load on its own thread. The others wait at most the timeout
+ * and then run the load themselves, so a stuck query does not hold up everyone behind it.
+ * Writers call forget for the keys they affect; callers arriving after that start a new
+ * load rather than joining one that may have read the data before the write.
+ *
+ * Keys look like "namespace:rest"; counters are kept per namespace.
+ */
+@Service
+public class SingleFlight {
+
+    @Value("${app.single-flight.timeout-ms:5000}")
+    private long timeoutMs;
+
+    private final Map<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+    private final Map<String, Counters> counters = new ConcurrentHashMap<>();
+
+    public <T> T execute(String key, Supplier<T> loader) {
+        return execute(key, timeoutMs, loader);
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T execute(String key, long timeoutMs, Supplier<T> loader) {
+        Counters keyCounters = counters.computeIfAbsent(namespace(key), namespace -> new Counters());
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> running = inFlight.putIfAbsent(key, future);
+        if (running == null) {
+            keyCounters.executed.increment();
+            try {
+                T result = loader.get();
+                future.complete(result);
+                return result;
+            } catch (RuntimeException | Error e) {
+                keyCounters.failed.increment();
+                future.completeExceptionally(e);
+                throw e;
+            } finally {
+                inFlight.remove(key, future);
+            }
+        }
+
+        keyCounters.coalesced.increment();
+        try {
+            return (T) running.get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            keyCounters.timedOut.increment();
+            return loader.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for " + key, e);
+        }
+    }
+
+    /**
+     * Stops callers from joining loads already running for keys starting with keyPrefix.
+     */
+    public void forget(String keyPrefix) {
+        inFlight.keySet().removeIf(key -> key.startsWith(keyPrefix));
+    }
+
+    public Map<String, Stats> getStats() {
+        Map<String, Stats> stats = new TreeMap<>();
+        counters.forEach((namespace, keyCounters) -> {
+            Stats namespaceStats = new Stats();
+            namespaceStats.setExecuted(keyCounters.executed.sum());
+            namespaceStats.setCoalesced(keyCounters.coalesced.sum());
+            namespaceStats.setTimedOut(keyCounters.timedOut.sum());
+            namespaceStats.setFailed(keyCounters.failed.sum());
+            stats.put(namespace, namespaceStats);
+        });
+        inFlight.keySet().forEach(key -> {
+            Stats namespaceStats = stats.get(namespace(key));
+            if (namespaceStats != null) {
+                namespaceStats.setInFlight(namespaceStats.getInFlight() + 1);
+            }
+        });
+        return stats;
+    }
+
+    private static String namespace(String key) {
+        int separator = key.indexOf(':');
+        return separator >= 0 ? key.substring(0, separator) : key;
+    }
+
+    private static final class Counters {
+        private final LongAdder executed = new LongAdder();
+        private final LongAdder coalesced = new LongAdder();
+        private final LongAdder timedOut = new LongAdder();
+        private final LongAdder failed = new LongAdder();
+    }
+
+    @Data
+    public static class Stats {
+        // Loads actually run, callers that waited for another caller's load, waits that
+        // gave up and ran their own load, and loads that threw
+        private long executed;
+        private long coalesced;
+        private long timedOut;
+        private long failed;
+        private int inFlight;
+    }
+}
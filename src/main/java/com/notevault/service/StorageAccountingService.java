@@ -0,0 +1,186 @@
+package com.notevault.service;
+
+import lombok.RequiredArgsConstructor;
+import com.notevault.model.UserStorageUsage;
+import com.notevault.repository.UserStorageUsageRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+/**
+ * Keeps track of how many bytes and objects every user stores.
+ *
+ * A user is charged for each blob their notes, profile picture and attachments reference,
+ * so a file shared by two users counts for both. Changes are collected in per-user
+ * LongAdders and flushed to user_storage_usage as deltas every few seconds, which keeps
+ * uploads from contending on a single row. Deltas that were not flushed when a node dies
+ * are lost; recalculate() rebuilds the totals from the blob references.
+ *
+ * Other nodes may hold unflushed deltas while a recalculation runs, and those are already
+ * part of the rebuilt totals. Every delta is therefore recorded under the generation that
+ * was current when its blob references were written, and a recalculation moves to the next
+ * generation; a flush only adds deltas of the current generation and drops older ones.
+ */
+@Service
+@RequiredArgsConstructor
+public class StorageAccountingService {
+
+    private static final Logger logger = Logger.getLogger(StorageAccountingService.class.getName());
+
+    private final UserStorageUsageRepository userStorageUsageRepository;
+
+    // Unflushed deltas by the generation they were recorded in, then by user
+    private final Map<Long, Map<Integer, PendingUsage>> pending = new ConcurrentHashMap<>();
+
+    // 0 means unlimited
+    @Value("${app.storage.default-quota-bytes:0}")
+    private long defaultQuotaBytes;
+
+    @PostConstruct
+    public void init() {
+        userStorageUsageRepository.initGeneration();
+    }
+
+    /**
+     * Returns the current generation for recording deltas. Must be called in the transaction
+     * that writes the blob references, before writing them.
+     */
+    public long lockGeneration() {
+        Long generation = userStorageUsageRepository.lockGeneration();
+        return generation != null ? generation : 0L;
+    }
+
+    public void record(long generation, Integer userId, long bytes, int objects) {
+        if (userId == null || (bytes == 0 && objects == 0)) {
+            return;
+        }
+        PendingUsage usage = pending.computeIfAbsent(generation, key -> new ConcurrentHashMap<>())
+                .computeIfAbsent(userId, id -> new PendingUsage());
+        usage.bytes.add(bytes);
+        usage.objects.add(objects);
+    }
+
+    @Scheduled(fixedDelayString = "${app.storage.flush-interval-ms:10000}")
+    @PreDestroy
+    public synchronized void flush() {
+        // Deltas recorded before a newer generation was seen here are part of a recalculation
+        long newest = newestGeneration();
+        pending.keySet().removeIf(generation -> generation < newest);
+        for (Map.Entry<Long, Map<Integer, PendingUsage>> generation : pending.entrySet()) {
+            boolean outdated = false;
+            for (Map.Entry<Integer, PendingUsage> entry : generation.getValue().entrySet()) {
+                PendingUsage usage = entry.getValue();
+                // Only what was written is taken off, so changes recorded meanwhile stay pending
+                long bytes = usage.bytes.sum();
+                long objects = usage.objects.sum();
+                if (bytes == 0 && objects == 0) {
+                    continue;
+                }
+                try {
+                    if (userStorageUsageRepository.addUsage(generation.getKey(), entry.getKey(), bytes, objects) == 0) {
+                        // Recalculated since, and the rebuilt totals already include it
+                        outdated = true;
+                    }
+                    usage.bytes.add(-bytes);
+                    usage.objects.add(-objects);
+                } catch (Exception e) {
+                    // The delta stays pending for the next flush
+                    logger.warning("Error flushing storage usage for user " + entry.getKey() + ": " + e.getMessage());
+                }
+            }
+            if (outdated) {
+                pending.remove(generation.getKey());
+            }
+        }
+    }
+
+    /**
+     * Returns the user's usage including changes that have not been flushed yet.
+     */
+    public UserStorageUsage getUsage(Integer userId) {
+        UserStorageUsage stored = userStorageUsageRepository.findById(userId).orElse(null);
+        UserStorageUsage usage = new UserStorageUsage(userId, 0L, 0L, null);
+        if (stored != null) {
+            usage.setBytesUsed(stored.getBytesUsed());
+            usage.setObjectCount(stored.getObjectCount());
+            usage.setQuotaBytes(stored.getQuotaBytes());
+        }
+        Map<Integer, PendingUsage> generation = pending.get(newestGeneration());
+        PendingUsage unflushed = generation != null ? generation.get(userId) : null;
+        if (unflushed != null) {
+            usage.setBytesUsed(usage.getBytesUsed() + unflushed.bytes.sum());
+            usage.setObjectCount(usage.getObjectCount() + unflushed.objects.sum());
+        }
+        return usage;
+    }
+
+    public long getQuota(UserStorageUsage usage) {
+        return usage.getQuotaBytes() != null ? usage.getQuotaBytes() : defaultQuotaBytes;
+    }
+
+    /**
+     * Returns how many more bytes the user may store, or Long.MAX_VALUE without a quota.
+     */
+    public long getRemainingBytes(Integer userId) {
+        UserStorageUsage usage = getUsage(userId);
+        long quota = getQuota(usage);
+        if (quota <= 0) {
+            return Long.MAX_VALUE;
+        }
+        return Math.max(0, quota - usage.getBytesUsed());
+    }
+
+    public void checkQuota(Integer userId, long additionalBytes) {
+        if (userId != null && additionalBytes > getRemainingBytes(userId)) {
+            throw new RuntimeException("Storage quota exceeded");
+        }
+    }
+
+    public List<UserStorageUsage> getTopConsumers(int limit) {
+        flush();
+        return userStorageUsageRepository.findAllByOrderByBytesUsedDesc(PageRequest.of(0, limit));
+    }
+
+    /**
+     * Sets a per-user quota in bytes; null falls back to the default quota.
+     */
+    public UserStorageUsage setQuota(Integer userId, Long quotaBytes) {
+        flush();
+        UserStorageUsage usage = userStorageUsageRepository.findById(userId)
+                .orElse(new UserStorageUsage(userId, 0L, 0L, null));
+        usage.setQuotaBytes(quotaBytes);
+        return userStorageUsageRepository.save(usage);
+    }
+
+    /**
+     * Rebuilds every user's usage from the blob references. Moving to the next generation
+     * first waits for transactions that are writing references, and makes every node drop
+     * the deltas it recorded before, since the rebuilt totals include them.
+     */
+    @Transactional
+    public void recalculate() {
+        flush();
+        userStorageUsageRepository.nextGeneration();
+        userStorageUsageRepository.resetUsage();
+        userStorageUsageRepository.recalculateFromReferences();
+    }
+
+    private long newestGeneration() {
+        return pending.keySet().stream().max(Long::compare).orElse(Long.MIN_VALUE);
+    }
+
+    private static class PendingUsage {
+        private final LongAdder bytes = new LongAdder();
+        private final LongAdder objects = new LongAdder();
+    }
+}
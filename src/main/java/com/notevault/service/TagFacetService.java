@@ -0,0 +1,339 @@
+package com.notevault.service;
+
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+import com.notevault.invalidation.InvalidationEvent;
+import com.notevault.model.Note;
+import com.notevault.model.User;
+import com.notevault.repository.UserRepository;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Keeps tag, note type, color and privacy level counts of notes up to date, so the tag
+ * cloud and facet counts of the notes a user can see are served without loading notes.
+ *
+ * Counts are kept per bucket: one per owner for their private and some_people notes, one
+ * for all everyone notes, and one per username for some_people notes shared with that
+ * user by someone else. What a user can see is exactly their owner bucket, the public
+ * bucket and their shared bucket, with no note in two of them, so a request merges three
+ * buckets and costs the number of distinct values in them, not the number of notes. NoteService reports every change; counts are rebuilt from the
+ * database at startup, periodically, and shortly after another node reports a change
+ * through the invalidation bus. Changes reported while a rebuild is reading are carried
+ * over into its result.
+ *
+ * The tag column is free text; comma separated values are counted as separate tags and
+ * tags that differ only in case are counted together.
+ */
+@Service
+@RequiredArgsConstructor
+public class TagFacetService {
+
+    private static final Logger logger = Logger.getLogger(TagFacetService.class.getName());
+
+    private static final String PUBLIC_BUCKET = "public";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final UserRepository userRepository;
+
+    private final Object rebuildLock = new Object();
+
+    private volatile Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+
+    // Guarded by this; the rebuild currently reading, if any
+    private Rebuild rebuilding;
+
+    // Set when another node changed a note since the last rebuild started
+    private volatile boolean stale;
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(initialDelayString = "${app.tags.rebuild-interval-ms:600000}",
+               fixedDelayString = "${app.tags.rebuild-interval-ms:600000}")
+    public void rebuild() {
+        synchronized (rebuildLock) {
+            Rebuild rebuild = new Rebuild();
+            stale = false;
+            try {
+                synchronized (this) {
+                    rebuilding = rebuild;
+                }
+                // Read in id order, so noteChanged can tell whether a note was counted yet
+                jdbcTemplate.query("SELECT n.N_id, n.B_id, u.benutzername, n.Tag, n.note_type, n.color, " +
+                                   "n.privacy_level, n.shared_with " +
+                                   "FROM notiz n LEFT JOIN nutzer u ON u.id = n.B_id ORDER BY n.N_id", rs -> {
+                    int noteId = rs.getInt("N_id");
+                    NoteFacets facets = new NoteFacets(rs.getObject("B_id") != null ? rs.getInt("B_id") : null,
+                            rs.getString("benutzername"), rs.getString("Tag"), rs.getString("note_type"),
+                            rs.getString("color"), rs.getString("privacy_level"), rs.getString("shared_with"));
+                    synchronized (this) {
+                        rebuild.lastNoteId = noteId;
+                        if (!rebuild.changed.containsKey(noteId)) {
+                            apply(rebuild.buckets, facets, 1);
+                        }
+                    }
+                });
+                synchronized (this) {
+                    for (NoteFacets facets : rebuild.changed.values()) {
+                        if (facets != null) {
+                            apply(rebuild.buckets, facets, 1);
+                        }
+                    }
+                    buckets = rebuild.buckets;
+                    rebuilding = null;
+                }
+            } catch (Exception e) {
+                synchronized (this) {
+                    rebuilding = null;
+                }
+                logger.warning("Error rebuilding tag facets: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Notes a change made on another node. Counts keep no record of each note to take the
+     * old version off, so the change is picked up by rebuilding shortly after; changes
+     * arriving in the meantime share that rebuild.
+     */
+    @EventListener
+    public void onInvalidation(InvalidationEvent event) {
+        if (event.getType() == InvalidationEvent.Type.NOTE) {
+            stale = true;
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.tags.stale-rebuild-delay-ms:5000}")
+    public void rebuildIfStale() {
+        if (stale) {
+            rebuild();
+        }
+    }
+
+    /**
+     * Records a note change. Pass null as before for a new note and as after for a
+     * deleted one.
+     */
+    public void noteChanged(Integer noteId, NoteFacets before, NoteFacets after) {
+        if (Objects.equals(before, after)) {
+            return;
+        }
+        // Under the same lock as the swap, so the change lands in the new counts exactly once
+        synchronized (this) {
+            Rebuild rebuild = rebuilding;
+            if (rebuild != null) {
+                if (noteId > rebuild.lastNoteId) {
+                    // Not read yet: its row is skipped and its latest version counted at the end
+                    rebuild.changed.put(noteId, after);
+                } else {
+                    apply(rebuild.buckets, before, after);
+                }
+            }
+            apply(buckets, before, after);
+        }
+    }
+
+    /**
+     * Returns the tag counts and facet counts of the notes the user can see. Tags are
+     * limited to those starting with prefix (ignoring case), most used first.
+     */
+    public Map<String, Object> getFacets(Integer userId, String prefix, int limit) {
+        Map<String, Bucket> current = buckets;
+        List<Bucket> visible = new ArrayList<>();
+        addIfPresent(visible, current.get(ownerBucket(userId)));
+        addIfPresent(visible, current.get(PUBLIC_BUCKET));
+        User user = userRepository.findById(userId).orElse(null);
+        if (user != null) {
+            addIfPresent(visible, current.get(sharedBucket(user.getUsername())));
+        }
+
+        Map<String, Integer> tagCounts = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        for (Bucket bucket : visible) {
+            ConcurrentNavigableMap<String, AtomicInteger> tags = prefix == null || prefix.trim().isEmpty()
+                    ? bucket.tags
+                    : bucket.tags.subMap(prefix.trim(), true, prefix.trim() + Character.MAX_VALUE, true);
+            merge(tagCounts, tags);
+        }
+        List<Map<String, Object>> tags = new ArrayList<>();
+        tagCounts.entrySet().stream()
+                .sorted(Map.Entry.<String, Integer>comparingByValue(Comparator.reverseOrder())
+                        .thenComparing(Map.Entry.comparingByKey(String.CASE_INSENSITIVE_ORDER)))
+                .limit(limit)
+                .forEach(entry -> {
+                    Map<String, Object> tag = new LinkedHashMap<>();
+                    tag.put("tag", entry.getKey());
+                    tag.put("count", entry.getValue());
+                    tags.add(tag);
+                });
+
+        Map<String, Integer> noteTypes = new TreeMap<>();
+        Map<String, Integer> colors = new TreeMap<>();
+        Map<String, Integer> privacyLevels = new TreeMap<>();
+        int total = 0;
+        for (Bucket bucket : visible) {
+            merge(noteTypes, bucket.noteTypes);
+            merge(colors, bucket.colors);
+            merge(privacyLevels, bucket.privacyLevels);
+            total += bucket.notes.get();
+        }
+
+        Map<String, Object> facets = new LinkedHashMap<>();
+        facets.put("noteType", noteTypes);
+        facets.put("color", colors);
+        facets.put("privacyLevel", privacyLevels);
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("totalNotes", total);
+        result.put("tags", tags);
+        result.put("facets", facets);
+        return result;
+    }
+
+    private static void apply(Map<String, Bucket> buckets, NoteFacets before, NoteFacets after) {
+        if (before != null) {
+            apply(buckets, before, -1);
+        }
+        if (after != null) {
+            apply(buckets, after, 1);
+        }
+    }
+
+    private static void apply(Map<String, Bucket> buckets, NoteFacets facets, int delta) {
+        for (String key : bucketsOf(facets)) {
+            Bucket bucket = buckets.computeIfAbsent(key, k -> new Bucket());
+            bucket.notes.addAndGet(delta);
+            for (String tag : facets.tags()) {
+                increment(bucket.tags, tag, delta);
+            }
+            increment(bucket.noteTypes, facets.getNoteType() != null ? facets.getNoteType() : Note.NoteType.text.name(), delta);
+            if (facets.getColor() != null) {
+                increment(bucket.colors, facets.getColor().toLowerCase(), delta);
+            }
+            increment(bucket.privacyLevels, facets.privacyLevel(), delta);
+        }
+    }
+
+    private static Set<String> bucketsOf(NoteFacets facets) {
+        Set<String> keys = new LinkedHashSet<>();
+        String privacyLevel = facets.privacyLevel();
+        if (Note.PrivacyLevel.everyone.getValue().equals(privacyLevel)) {
+            keys.add(PUBLIC_BUCKET);
+            return keys;
+        }
+        if (facets.getOwnerId() != null) {
+            keys.add(ownerBucket(facets.getOwnerId()));
+        }
+        if (Note.PrivacyLevel.some_people.getValue().equals(privacyLevel) && facets.getSharedWith() != null) {
+            for (String username : facets.getSharedWith().split(",")) {
+                String trimmed = username.trim();
+                // The owner already counts the note in their own bucket
+                if (!trimmed.isEmpty() && !trimmed.equals(facets.getOwnerUsername())) {
+                    keys.add(sharedBucket(trimmed));
+                }
+            }
+        }
+        return keys;
+    }
+
+    private static void increment(ConcurrentNavigableMap<String, AtomicInteger> counts, String key, int delta) {
+        counts.computeIfAbsent(key, k -> new AtomicInteger()).addAndGet(delta);
+    }
+
+    private static void merge(Map<String, Integer> target, Map<String, AtomicInteger> counts) {
+        for (Map.Entry<String, AtomicInteger> entry : counts.entrySet()) {
+            int count = entry.getValue().get();
+            if (count > 0) {
+                target.merge(entry.getKey(), count, Integer::sum);
+            }
+        }
+    }
+
+    private static void addIfPresent(List<Bucket> buckets, Bucket bucket) {
+        if (bucket != null) {
+            buckets.add(bucket);
+        }
+    }
+
+    private static String ownerBucket(Integer userId) {
+        return "owner:" + userId;
+    }
+
+    private static String sharedBucket(String username) {
+        return "shared:" + username;
+    }
+
+    private static final class Rebuild {
+        private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+        // Rows up to this note id have been counted
+        private int lastNoteId;
+        // Notes changed before their row was read, with their latest version (null if deleted)
+        private final Map<Integer, NoteFacets> changed = new HashMap<>();
+    }
+
+    private static class Bucket {
+        private final AtomicInteger notes = new AtomicInteger();
+        private final ConcurrentNavigableMap<String, AtomicInteger> tags =
+                new ConcurrentSkipListMap<>(String.CASE_INSENSITIVE_ORDER);
+        private final ConcurrentNavigableMap<String, AtomicInteger> noteTypes = new ConcurrentSkipListMap<>();
+        private final ConcurrentNavigableMap<String, AtomicInteger> colors = new ConcurrentSkipListMap<>();
+        private final ConcurrentNavigableMap<String, AtomicInteger> privacyLevels = new ConcurrentSkipListMap<>();
+    }
+
+    /**
+     * The properties of a note that facets are counted by.
+     */
+    @Data
+    public static class NoteFacets {
+        private final Integer ownerId;
+        private final String ownerUsername;
+        private final String tag;
+        private final String noteType;
+        private final String color;
+        private final String privacyLevel;
+        private final String sharedWith;
+
+        public static NoteFacets of(Note note) {
+            User owner = note.getUser();
+            return new NoteFacets(owner != null ? owner.getId() : null, owner != null ? owner.getUsername() : null,
+                    note.getTag(), note.getNoteType() != null ? note.getNoteType().name() : null, note.getColor(),
+                    note.getPrivacyLevel() != null ? note.getPrivacyLevel().getValue() : null, note.getSharedWith());
+        }
+
+        List<String> tags() {
+            if (tag == null || tag.trim().isEmpty()) {
+                return Collections.emptyList();
+            }
+            Set<String> tags = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+            for (String value : tag.split(",")) {
+                if (!value.trim().isEmpty()) {
+                    tags.add(value.trim());
+                }
+            }
+            return new ArrayList<>(tags);
+        }
+
+        String privacyLevel() {
+            return privacyLevel != null ? privacyLevel : Note.PrivacyLevel.private_.getValue();
+        }
+    }
+}
@@ -0,0 +1,332 @@
+package com.notevault.service;
+
+import lombok.RequiredArgsConstructor;
+import com.notevault.invalidation.InvalidationEvent;
+import com.notevault.model.Note;
+import com.notevault.model.Tag;
+import com.notevault.model.User;
+import com.notevault.repository.UserRepository;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+/**
+ * Normalized tags and an in-memory bitmap index for boolean tag queries.
+ *
+ * Every note's tags are stored as rows of note_tags pointing into tags. In memory, each
+ * tag maps to an IdBitmap of the notes carrying it, and visibility is kept as bitmaps too:
+ * one per owner, one for everyone notes and one per username for some_people notes shared
+ * with that user. A query ORs the user's three visibility bitmaps and evaluates the tag
+ * expression on bitmaps within them, so it never touches notes that do not match.
+ *
+ * NoteService reports every change, and changes made on other nodes arrive through the
+ * invalidation bus. The index is rebuilt from the database at startup and periodically,
+ * which also catches anything missed; before that, notes that have tags but no note_tags
+ * rows yet (written before this table existed) are backfilled.
+ * Changes reported while a rebuild is reading are replayed onto its result before it is
+ * swapped in.
+ */
+@Service
+@RequiredArgsConstructor
+public class TagIndexService {
+
+    private static final Logger logger = Logger.getLogger(TagIndexService.class.getName());
+
+    private final JdbcTemplate jdbcTemplate;
+    private final UserRepository userRepository;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, Integer> tagIds = new ConcurrentHashMap<>();
+
+    private final Object rebuildLock = new Object();
+
+    // Guarded by lock
+    private Index index = new Index();
+    // Guarded by lock; changes to replay onto the index being rebuilt, if any
+    private List<Consumer<Index>> changedDuringRebuild;
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(initialDelayString = "${app.tags.rebuild-interval-ms:600000}",
+               fixedDelayString = "${app.tags.rebuild-interval-ms:600000}")
+    public void rebuild() {
+        synchronized (rebuildLock) {
+            try {
+                rebuildIndex();
+            } catch (Exception e) {
+                lock.writeLock().lock();
+                try {
+                    changedDuringRebuild = null;
+                } finally {
+                    lock.writeLock().unlock();
+                }
+                logger.warning("Error rebuilding tag index: " + e.getMessage());
+            }
+        }
+    }
+
+    private void rebuildIndex() {
+        lock.writeLock().lock();
+        try {
+            changedDuringRebuild = new ArrayList<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        backfill();
+        Index rebuilt = new Index();
+        jdbcTemplate.query("SELECT N_id, B_id, privacy_level, shared_with FROM notiz", rs -> {
+            rebuilt.addVisibility(rs.getInt("N_id"), rs.getObject("B_id") != null ? rs.getInt("B_id") : null,
+                    rs.getString("privacy_level"), rs.getString("shared_with"));
+        });
+        jdbcTemplate.query("SELECT nt.note_id, t.name FROM note_tags nt JOIN tags t ON t.id = nt.tag_id", rs -> {
+            rebuilt.tags.computeIfAbsent(rs.getString("name"), name -> new IdBitmap()).add(rs.getInt("note_id"));
+        });
+        lock.writeLock().lock();
+        try {
+            // The rows may or may not include these changes; bitmaps make replaying them safe either way
+            for (Consumer<Index> change : changedDuringRebuild) {
+                change.accept(rebuilt);
+            }
+            index = rebuilt;
+            changedDuringRebuild = null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Records a note change in note_tags and the index. Pass null as before for a new
+     * note and as after for a deleted one.
+     */
+    public void noteChanged(Integer noteId, TagFacetService.NoteFacets before, TagFacetService.NoteFacets after) {
+        Set<String> beforeTags = normalizedTags(before);
+        Set<String> afterTags = normalizedTags(after);
+        if (!beforeTags.equals(afterTags)) {
+            if (before != null) {
+                jdbcTemplate.update("DELETE FROM note_tags WHERE note_id = ?", noteId);
+            }
+            insertNoteTags(Collections.singletonMap(noteId, afterTags));
+        }
+
+        apply(target -> {
+            if (before != null) {
+                target.removeVisibility(noteId, before.getOwnerId(), before.privacyLevel(), before.getSharedWith());
+                for (String tag : beforeTags) {
+                    IdBitmap bitmap = target.tags.get(tag);
+                    if (bitmap != null) {
+                        bitmap.remove(noteId);
+                    }
+                }
+            }
+            if (after != null) {
+                target.addVisibility(noteId, after.getOwnerId(), after.privacyLevel(), after.getSharedWith());
+                for (String tag : afterTags) {
+                    target.tags.computeIfAbsent(tag, name -> new IdBitmap()).add(noteId);
+                }
+            }
+        });
+    }
+
+    /**
+     * Records new notes in one batch, for bulk inserts.
+     */
+    public void notesCreated(Map<Integer, TagFacetService.NoteFacets> notes) {
+        Map<Integer, Set<String>> noteTags = new HashMap<>();
+        notes.forEach((noteId, facets) -> noteTags.put(noteId, normalizedTags(facets)));
+        insertNoteTags(noteTags);
+
+        apply(target -> notes.forEach((noteId, facets) -> {
+            target.addVisibility(noteId, facets.getOwnerId(), facets.privacyLevel(), facets.getSharedWith());
+            for (String tag : noteTags.get(noteId)) {
+                target.tags.computeIfAbsent(tag, name -> new IdBitmap()).add(noteId);
+            }
+        }));
+    }
+
+    /**
+     * Reloads a note changed on another node. That node wrote its note_tags rows.
+     */
+    @EventListener
+    public void onInvalidation(InvalidationEvent event) {
+        if (event.getType() != InvalidationEvent.Type.NOTE) {
+            return;
+        }
+        Integer noteId = event.getId();
+        List<TagFacetService.NoteFacets> rows = jdbcTemplate.query(
+                "SELECT B_id, privacy_level, shared_with FROM notiz WHERE N_id = ?",
+                (rs, rowNum) -> new TagFacetService.NoteFacets(rs.getObject("B_id") != null ? rs.getInt("B_id") : null,
+                        null, null, null, null, rs.getString("privacy_level"), rs.getString("shared_with")),
+                noteId);
+        List<String> tags = jdbcTemplate.queryForList("SELECT t.name FROM note_tags nt JOIN tags t ON t.id = nt.tag_id " +
+                "WHERE nt.note_id = ?", String.class, noteId);
+
+        // What the note looked like before is not known here, so it is taken out everywhere
+        apply(target -> {
+            target.removeNote(noteId);
+            for (TagFacetService.NoteFacets facets : rows) {
+                target.addVisibility(noteId, facets.getOwnerId(), facets.privacyLevel(), facets.getSharedWith());
+                for (String tag : tags) {
+                    target.tags.computeIfAbsent(tag, name -> new IdBitmap()).add(noteId);
+                }
+            }
+        });
+    }
+
+    private void apply(Consumer<Index> change) {
+        lock.writeLock().lock();
+        try {
+            change.accept(index);
+            if (changedDuringRebuild != null) {
+                changedDuringRebuild.add(change);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the ids of the notes the user can see that match the tag expression, in
+     * ascending order.
+     */
+    public int[] findNoteIds(Integer userId, String expression) {
+        TagQuery query = TagQuery.parse(expression);
+        User user = userRepository.findById(userId).orElse(null);
+        lock.readLock().lock();
+        try {
+            IdBitmap visible = index.owners.getOrDefault(userId, new IdBitmap());
+            visible = IdBitmap.or(visible, index.everyone);
+            if (user != null && index.shared.containsKey(user.getUsername())) {
+                visible = IdBitmap.or(visible, index.shared.get(user.getUsername()));
+            }
+            return query.evaluate(index.tags::get, visible).toArray();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void backfill() {
+        Map<Integer, Set<String>> pending = new HashMap<>();
+        jdbcTemplate.query("SELECT n.N_id, n.Tag FROM notiz n WHERE n.Tag IS NOT NULL AND n.Tag <> '' " +
+                           "AND NOT EXISTS (SELECT 1 FROM note_tags nt WHERE nt.note_id = n.N_id)", rs -> {
+            Set<String> tags = normalizedTags(new TagFacetService.NoteFacets(null, null, rs.getString("Tag"),
+                    null, null, null, null));
+            if (!tags.isEmpty()) {
+                pending.put(rs.getInt("N_id"), tags);
+            }
+            if (pending.size() >= 1000) {
+                insertNoteTags(pending);
+                pending.clear();
+            }
+        });
+        insertNoteTags(pending);
+    }
+
+    private void insertNoteTags(Map<Integer, Set<String>> noteTags) {
+        List<Object[]> rows = new ArrayList<>();
+        noteTags.forEach((noteId, tags) -> {
+            for (String tag : tags) {
+                rows.add(new Object[] {noteId, tagId(tag)});
+            }
+        });
+        if (!rows.isEmpty()) {
+            jdbcTemplate.batchUpdate("INSERT INTO note_tags (note_id, tag_id) VALUES (?, ?)", rows);
+        }
+    }
+
+    private Integer tagId(String name) {
+        Integer id = tagIds.get(name);
+        if (id != null) {
+            return id;
+        }
+        List<Integer> ids = jdbcTemplate.queryForList("SELECT id FROM tags WHERE name = ?", Integer.class, name);
+        if (ids.isEmpty()) {
+            try {
+                jdbcTemplate.update("INSERT INTO tags (name) VALUES (?)", name);
+            } catch (DuplicateKeyException e) {
+                // Created concurrently
+            }
+            ids = jdbcTemplate.queryForList("SELECT id FROM tags WHERE name = ?", Integer.class, name);
+        }
+        tagIds.put(name, ids.get(0));
+        return ids.get(0);
+    }
+
+    private static Set<String> normalizedTags(TagFacetService.NoteFacets facets) {
+        if (facets == null) {
+            return Collections.emptySet();
+        }
+        Set<String> tags = new LinkedHashSet<>();
+        for (String tag : facets.tags()) {
+            String normalized = tag.toLowerCase(Locale.ROOT);
+            tags.add(normalized.length() > Tag.MAX_NAME_LENGTH ? normalized.substring(0, Tag.MAX_NAME_LENGTH) : normalized);
+        }
+        return tags;
+    }
+
+    private static final class Index {
+        private final Map<String, IdBitmap> tags = new HashMap<>();
+        private final Map<Integer, IdBitmap> owners = new HashMap<>();
+        private final Map<String, IdBitmap> shared = new HashMap<>();
+        private final IdBitmap everyone = new IdBitmap();
+
+        void addVisibility(int noteId, Integer ownerId, String privacyLevel, String sharedWith) {
+            if (ownerId != null) {
+                owners.computeIfAbsent(ownerId, id -> new IdBitmap()).add(noteId);
+            }
+            if (Note.PrivacyLevel.everyone.getValue().equals(privacyLevel)) {
+                everyone.add(noteId);
+            } else if (Note.PrivacyLevel.some_people.getValue().equals(privacyLevel) && sharedWith != null) {
+                for (String username : sharedWith.split(",")) {
+                    if (!username.trim().isEmpty()) {
+                        shared.computeIfAbsent(username.trim(), name -> new IdBitmap()).add(noteId);
+                    }
+                }
+            }
+        }
+
+        void removeVisibility(int noteId, Integer ownerId, String privacyLevel, String sharedWith) {
+            if (ownerId != null && owners.containsKey(ownerId)) {
+                owners.get(ownerId).remove(noteId);
+            }
+            if (Objects.equals(Note.PrivacyLevel.everyone.getValue(), privacyLevel)) {
+                everyone.remove(noteId);
+            } else if (sharedWith != null) {
+                for (String username : sharedWith.split(",")) {
+                    IdBitmap bitmap = shared.get(username.trim());
+                    if (bitmap != null) {
+                        bitmap.remove(noteId);
+                    }
+                }
+            }
+        }
+
+        void removeNote(int noteId) {
+            for (IdBitmap bitmap : tags.values()) {
+                bitmap.remove(noteId);
+            }
+            for (IdBitmap bitmap : owners.values()) {
+                bitmap.remove(noteId);
+            }
+            for (IdBitmap bitmap : shared.values()) {
+                bitmap.remove(noteId);
+            }
+            everyone.remove(noteId);
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package com.notevault.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Function;
+
+/**
+ * Boolean tag expression such as {@code work AND (urgent OR "due soon") AND NOT done}.
+ *
+ * Operators are AND, OR and NOT (case-insensitive) with the usual precedence, terms next
+ * to each other are ANDed, and tags containing spaces or operator names can be quoted.
+ * Tags match case-insensitively. Expressions are evaluated on id bitmaps: NOT is taken
+ * relative to the bitmap of all notes the user can see, and "a AND NOT b" runs as a
+ * single AND NOT.
+ */
+final class TagQuery {
+
+    private static final int MAX_LENGTH = 1000;
+
+    private final Node root;
+
+    private TagQuery(Node root) {
+        this.root = root;
+    }
+
+    static TagQuery parse(String expression) {
+        if (expression == null || expression.trim().isEmpty()) {
+            throw new RuntimeException("Tag query is empty");
+        }
+        if (expression.length() > MAX_LENGTH) {
+            throw new RuntimeException("Tag query is too long");
+        }
+        Parser parser = new Parser(tokenize(expression));
+        Node root = parser.parseOr();
+        if (parser.position < parser.tokens.size()) {
+            throw new RuntimeException("Invalid tag query near '" + parser.tokens.get(parser.position).text + "'");
+        }
+        return new TagQuery(root);
+    }
+
+    /**
+     * Returns the ids within universe that match. tagBitmaps returns null for unknown tags.
+     */
+    IdBitmap evaluate(Function<String, IdBitmap> tagBitmaps, IdBitmap universe) {
+        return IdBitmap.and(root.evaluate(tagBitmaps, universe), universe);
+    }
+
+    private static List<Token> tokenize(String expression) {
+        List<Token> tokens = new ArrayList<>();
+        int i = 0;
+        while (i < expression.length()) {
+            char c = expression.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '(' || c == ')') {
+                tokens.add(new Token(String.valueOf(c), false));
+                i++;
+            } else if (c == '"') {
+                int end = expression.indexOf('"', i + 1);
+                if (end < 0) {
+                    throw new RuntimeException("Unterminated quote in tag query");
+                }
+                tokens.add(new Token(expression.substring(i + 1, end), true));
+                i = end + 1;
+            } else {
+                int end = i;
+                while (end < expression.length() && !Character.isWhitespace(expression.charAt(end))
+                        && "()\"".indexOf(expression.charAt(end)) < 0) {
+                    end++;
+                }
+                tokens.add(new Token(expression.substring(i, end), false));
+                i = end;
+            }
+        }
+        return tokens;
+    }
+
+    private static final class Token {
+        private final String text;
+        private final boolean quoted;
+
+        private Token(String text, boolean quoted) {
+            this.text = text;
+            this.quoted = quoted;
+        }
+
+        boolean is(String operator) {
+            return !quoted && text.equalsIgnoreCase(operator);
+        }
+
+        boolean isTerm() {
+            return quoted || !(is("AND") || is("OR") || is("NOT") || is("(") || is(")"));
+        }
+    }
+
+    private static final class Parser {
+        private final List<Token> tokens;
+        private int position;
+
+        private Parser(List<Token> tokens) {
+            this.tokens = tokens;
+        }
+
+        Node parseOr() {
+            Node left = parseAnd();
+            while (peekIs("OR")) {
+                position++;
+                Node right = parseAnd();
+                Node l = left;
+                left = (tags, universe) -> IdBitmap.or(l.evaluate(tags, universe), right.evaluate(tags, universe));
+            }
+            return left;
+        }
+
+        Node parseAnd() {
+            Node left = parseUnary();
+            while (peekIs("AND") || startsOperand()) {
+                if (peekIs("AND")) {
+                    position++;
+                }
+                Node right = parseUnary();
+                Node l = left;
+                left = right instanceof Not
+                        ? (tags, universe) -> IdBitmap.andNot(l.evaluate(tags, universe), ((Not) right).operand.evaluate(tags, universe))
+                        : (tags, universe) -> IdBitmap.and(l.evaluate(tags, universe), right.evaluate(tags, universe));
+            }
+            return left;
+        }
+
+        Node parseUnary() {
+            if (position >= tokens.size()) {
+                throw new RuntimeException("Tag query ends unexpectedly");
+            }
+            Token token = tokens.get(position++);
+            if (token.is("NOT")) {
+                return new Not(parseUnary());
+            }
+            if (token.is("(")) {
+                Node inner = parseOr();
+                if (!peekIs(")")) {
+                    throw new RuntimeException("Missing ')' in tag query");
+                }
+                position++;
+                return inner;
+            }
+            if (!token.isTerm()) {
+                throw new RuntimeException("Invalid tag query near '" + token.text + "'");
+            }
+            String tag = token.text.trim().toLowerCase(Locale.ROOT);
+            return (tags, universe) -> {
+                IdBitmap bitmap = tags.apply(tag);
+                return bitmap != null ? bitmap : new IdBitmap();
+            };
+        }
+
+        private boolean peekIs(String operator) {
+            return position < tokens.size() && tokens.get(position).is(operator);
+        }
+
+        private boolean startsOperand() {
+            return position < tokens.size() && (tokens.get(position).isTerm() || peekIs("NOT") || peekIs("("));
+        }
+    }
+
+    private interface Node {
+        IdBitmap evaluate(Function<String, IdBitmap> tags, IdBitmap universe);
+    }
+
+    private static final class Not implements Node {
+        private final Node operand;
+
+        private Not(Node operand) {
+            this.operand = operand;
+        }
+
+        @Override
+        public IdBitmap evaluate(Function<String, IdBitmap> tags, IdBitmap universe) {
+            return IdBitmap.andNot(universe, operand.evaluate(tags, universe));
+        }
+    }
+}
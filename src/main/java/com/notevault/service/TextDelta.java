@@ -0,0 +1,115 @@
+package com.notevault.service;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A single replace operation on a text: remove deleteLength characters at start and
+ * insert the given text there. The diff between two versions of a note is the region
+ * between their common prefix and suffix, which is compact for the usual single-place edit.
+ *
+ * Serialized as "start,deleteLength,insert".
+ */
+@Data
+@AllArgsConstructor
+public class TextDelta {
+
+    private int start;
+    private int deleteLength;
+    private String insert;
+
+    public static TextDelta diff(String from, String to) {
+        String a = from != null ? from : "";
+        String b = to != null ? to : "";
+        int prefix = 0;
+        int maxPrefix = Math.min(a.length(), b.length());
+        while (prefix < maxPrefix && a.charAt(prefix) == b.charAt(prefix)) {
+            prefix++;
+        }
+        int suffix = 0;
+        int maxSuffix = maxPrefix - prefix;
+        while (suffix < maxSuffix && a.charAt(a.length() - 1 - suffix) == b.charAt(b.length() - 1 - suffix)) {
+            suffix++;
+        }
+        return new TextDelta(prefix, a.length() - prefix - suffix, b.substring(prefix, b.length() - suffix));
+    }
+
+    public String apply(String text) {
+        String base = text != null ? text : "";
+        if (start < 0 || deleteLength < 0 || start + deleteLength > base.length()) {
+            throw new RuntimeException("Delta does not fit the text");
+        }
+        return base.substring(0, start) + insert + base.substring(start + deleteLength);
+    }
+
+    @JsonIgnore
+    public boolean isEmpty() {
+        return deleteLength == 0 && insert.isEmpty();
+    }
+
+    /**
+     * Rewrites ops, a sequence of edits made against some version of a text, so that they
+     * apply after the concurrent sequence of edits that was applied to that version first.
+     * Concurrent inserts at the same position keep the concurrent text first.
+     */
+    public static List<TextDelta> rebase(List<TextDelta> ops, List<TextDelta> concurrent) {
+        List<TextDelta> rebased = new ArrayList<>(ops);
+        for (TextDelta applied : concurrent) {
+            TextDelta other = applied;
+            for (int i = 0; i < rebased.size(); i++) {
+                TextDelta op = rebased.get(i);
+                rebased.set(i, transform(op, other, false));
+                other = transform(other, op, true);
+            }
+        }
+        return rebased;
+    }
+
+    /**
+     * Returns a version of a that has the same intent when applied after b, where a and b
+     * were both made against the same text. When their ranges overlap, a also replaces
+     * whatever b inserted there.
+     */
+    static TextDelta transform(TextDelta a, TextDelta b, boolean aFirstOnTie) {
+        int shift = b.insert.length() - b.deleteLength;
+        int aEnd = a.start + a.deleteLength;
+        int bEnd = b.start + b.deleteLength;
+        int bInsertEnd = b.start + b.insert.length();
+
+        if (a.deleteLength == 0 && b.deleteLength == 0 && a.start == b.start) {
+            return aFirstOnTie ? a : new TextDelta(a.start + b.insert.length(), 0, a.insert);
+        }
+        if (a.start < b.start && aEnd <= b.start) {
+            return a;
+        }
+        if (a.start >= bEnd && (a.start > b.start || b.deleteLength == 0)) {
+            return new TextDelta(a.start + shift, a.deleteLength, a.insert);
+        }
+        if (a.deleteLength == 0) {
+            // An insert inside text that b replaced goes after b's text
+            return new TextDelta(a.start == b.start ? b.start : bInsertEnd, 0, a.insert);
+        }
+        int start = Math.min(a.start, b.start);
+        int end = aEnd >= bEnd ? aEnd + shift : bInsertEnd;
+        return new TextDelta(start, end - start, a.insert);
+    }
+
+    public String serialize() {
+        return start + "," + deleteLength + "," + insert;
+    }
+
+    public static TextDelta parse(String serialized) {
+        int first = serialized.indexOf(',');
+        int second = serialized.indexOf(',', first + 1);
+        if (first < 0 || second < 0) {
+            throw new RuntimeException("Invalid delta");
+        }
+        return new TextDelta(Integer.parseInt(serialized.substring(0, first)),
+                Integer.parseInt(serialized.substring(first + 1, second)),
+                serialized.substring(second + 1));
+    }
+}
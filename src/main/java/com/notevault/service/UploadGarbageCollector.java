@@ -0,0 +1,304 @@
+package com.notevault.service;
+
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+import com.notevault.repository.StoredBlobRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Mark-and-sweep collector for files in the uploads directory that nothing points to any
+ * more: images of deleted notes, images replaced by an update, old profile pictures.
+ *
+ * The mark phase streams every stored path out of the database into a set; the sweep
+ * phase walks the uploads directory and deletes files that are neither in the set nor
+ * younger than the grace period. Thumbnails live as long as their original.
+ */
+@Service
+@RequiredArgsConstructor
+public class UploadGarbageCollector {
+
+    private static final Logger logger = Logger.getLogger(UploadGarbageCollector.class.getName());
+
+    private static final Pattern DERIVATIVE_NAME = Pattern.compile("(.+)_(w\\d+|c)\\.(jpg|png)");
+    private static final int REPORT_SAMPLE_SIZE = 100;
+    private static final String STEM_PREFIX = "stem:";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final StoredBlobRepository storedBlobRepository;
+
+    @Value("${app.uploads-dir:uploads}")
+    private String uploadsDir;
+
+    @Value("${app.uploads.gc.grace-hours:24}")
+    private long graceHours;
+
+    @Value("${app.uploads.gc.max-deletes-per-second:200}")
+    private int maxDeletesPerSecond;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final AtomicLong runs = new AtomicLong();
+    private final AtomicLong totalFilesDeleted = new AtomicLong();
+    private final AtomicLong totalBytesFreed = new AtomicLong();
+    private volatile GcReport lastReport;
+
+    @Scheduled(cron = "${app.uploads.gc.cron:0 30 3 * * *}")
+    public void scheduledCollect() {
+        GcReport report = collect(false);
+        if (report != null) {
+            logger.info("Upload GC deleted " + report.getFilesDeleted() + " of " + report.getFilesScanned()
+                    + " files (" + report.getBytesFreed() + " bytes) in " + report.getDurationMillis() + " ms");
+        }
+    }
+
+    /**
+     * Runs one collection. With dryRun nothing is deleted and the report lists what would be.
+     * Returns null if a collection is already running.
+     */
+    public GcReport collect(boolean dryRun) {
+        if (!running.compareAndSet(false, true)) {
+            return null;
+        }
+        long started = System.currentTimeMillis();
+        GcReport report = new GcReport();
+        report.setDryRun(dryRun);
+        try {
+            Set<String> live = markLivePaths();
+            report.setLivePaths(live.size());
+            sweep(live, dryRun, report);
+        } catch (Exception e) {
+            logger.warning("Error collecting orphaned uploads: " + e.getMessage());
+            report.addError(e.getMessage());
+        } finally {
+            report.setDurationMillis(System.currentTimeMillis() - started);
+            if (!dryRun) {
+                runs.incrementAndGet();
+                totalFilesDeleted.addAndGet(report.getFilesDeleted());
+                totalBytesFreed.addAndGet(report.getBytesFreed());
+            }
+            lastReport = report;
+            running.set(false);
+        }
+        return report;
+    }
+
+    public GcStats getStats() {
+        GcStats stats = new GcStats();
+        stats.setRunning(running.get());
+        stats.setRuns(runs.get());
+        stats.setTotalFilesDeleted(totalFilesDeleted.get());
+        stats.setTotalBytesFreed(totalBytesFreed.get());
+        stats.setLastReport(lastReport);
+        return stats;
+    }
+
+    private Set<String> markLivePaths() {
+        Set<String> live = new HashSet<>();
+        RowCallbackHandler addPaths = rs -> {
+            String paths = rs.getString(1);
+            if (paths != null) {
+                for (String path : paths.split(",")) {
+                    addLivePath(live, path);
+                }
+            }
+        };
+        streamQuery("SELECT image_paths FROM notiz WHERE image_paths IS NOT NULL", addPaths);
+        streamQuery("SELECT profile_picture FROM nutzer WHERE profile_picture IS NOT NULL", addPaths);
+        streamQuery("SELECT file_path FROM attachments", addPaths);
+        streamQuery("SELECT file_path FROM stored_blobs WHERE ref_count > 0", addPaths);
+        return live;
+    }
+
+    private void streamQuery(String sql, RowCallbackHandler handler) {
+        jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(sql,
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            statement.setFetchSize(1000);
+            return statement;
+        }, handler);
+    }
+
+    private void addLivePath(Set<String> live, String path) {
+        String trimmed = path.trim();
+        if (trimmed.isEmpty()) {
+            return;
+        }
+        try {
+            addLivePath(live, Paths.get(trimmed));
+            // Paths are sometimes stored as URLs relative to the site root
+            if (trimmed.startsWith("/")) {
+                addLivePath(live, Paths.get(trimmed.substring(1)));
+            }
+        } catch (Exception e) {
+            // Not a file path (e.g. an external URL)
+        }
+    }
+
+    private void addLivePath(Set<String> live, Path path) {
+        String normalized = normalize(path);
+        live.add(normalized);
+        // Thumbnails are matched against the original's path without its extension
+        int dot = normalized.lastIndexOf('.');
+        if (dot > normalized.lastIndexOf(File.separatorChar)) {
+            live.add(STEM_PREFIX + normalized.substring(0, dot));
+        }
+    }
+
+    private void sweep(Set<String> live, boolean dryRun, GcReport report) throws IOException {
+        Path root = Paths.get(uploadsDir).toAbsolutePath().normalize();
+        if (!Files.isDirectory(root)) {
+            return;
+        }
+        Path tempDir = root.resolve("tmp");
+        long cutoff = System.currentTimeMillis() - Duration.ofHours(graceHours).toMillis();
+        LocalDateTime blobCutoff = LocalDateTime.now().minusHours(graceHours);
+        RateLimiter rateLimiter = new RateLimiter(maxDeletesPerSecond);
+
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                // Temporary and in-progress uploads are cleaned up by their owners
+                return dir.equals(tempDir) ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (!attrs.isRegularFile()) {
+                    return FileVisitResult.CONTINUE;
+                }
+                report.setFilesScanned(report.getFilesScanned() + 1);
+                if (isLive(file, live)) {
+                    return FileVisitResult.CONTINUE;
+                }
+                if (attrs.lastModifiedTime().toMillis() > cutoff) {
+                    report.setFilesInGracePeriod(report.getFilesInGracePeriod() + 1);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                report.setFilesOrphaned(report.getFilesOrphaned() + 1);
+                report.setBytesOrphaned(report.getBytesOrphaned() + attrs.size());
+                if (report.getSample().size() < REPORT_SAMPLE_SIZE) {
+                    report.getSample().add(root.relativize(file).toString());
+                }
+                if (dryRun) {
+                    return FileVisitResult.CONTINUE;
+                }
+
+                try {
+                    // Blob rows are dropped together with their file, unless the blob got referenced meanwhile
+                    String hash = FileStorageService.hashOf(file.toString());
+                    if (hash != null && storedBlobRepository.existsById(hash)
+                            && storedBlobRepository.deleteIfUnreferenced(hash, blobCutoff) == 0) {
+                        return FileVisitResult.CONTINUE;
+                    }
+                    rateLimiter.acquire();
+                    if (Files.deleteIfExists(file)) {
+                        report.setFilesDeleted(report.getFilesDeleted() + 1);
+                        report.setBytesFreed(report.getBytesFreed() + attrs.size());
+                    }
+                } catch (IOException e) {
+                    report.addError(file + ": " + e.getMessage());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return FileVisitResult.TERMINATE;
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                report.addError(file + ": " + e.getMessage());
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private boolean isLive(Path file, Set<String> live) {
+        if (live.contains(normalize(file))) {
+            return true;
+        }
+        Matcher derivative = DERIVATIVE_NAME.matcher(file.getFileName().toString());
+        if (!derivative.matches()) {
+            return false;
+        }
+        // A thumbnail is live if its original (any extension) is
+        return live.contains(STEM_PREFIX + normalize(file.resolveSibling(derivative.group(1))));
+    }
+
+    private static String normalize(Path path) {
+        return path.toAbsolutePath().normalize().toString();
+    }
+
+    private static class RateLimiter {
+        private final long intervalNanos;
+        private long nextSlot = System.nanoTime();
+
+        private RateLimiter(int permitsPerSecond) {
+            this.intervalNanos = permitsPerSecond > 0 ? 1_000_000_000L / permitsPerSecond : 0;
+        }
+
+        private void acquire() throws InterruptedException {
+            long now = System.nanoTime();
+            if (nextSlot > now) {
+                long waitNanos = nextSlot - now;
+                Thread.sleep(waitNanos / 1_000_000, (int) (waitNanos % 1_000_000));
+            }
+            nextSlot = Math.max(now, nextSlot) + intervalNanos;
+        }
+    }
+
+    @Data
+    public static class GcReport {
+        private boolean dryRun;
+        private long livePaths;
+        private long filesScanned;
+        private long filesInGracePeriod;
+        private long filesOrphaned;
+        private long bytesOrphaned;
+        private long filesDeleted;
+        private long bytesFreed;
+        private long durationMillis;
+        private List<String> sample = new ArrayList<>();
+        private List<String> errors = new ArrayList<>();
+
+        void addError(String error) {
+            if (errors.size() < REPORT_SAMPLE_SIZE) {
+                errors.add(error);
+            }
+        }
+    }
+
+    @Data
+    public static class GcStats {
+        private boolean running;
+        private long runs;
+        private long totalFilesDeleted;
+        private long totalBytesFreed;
+        private GcReport lastReport;
+    }
+}
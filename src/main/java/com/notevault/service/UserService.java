@@ -1,6 +1,9 @@
 package com.notevault.service;
 
 import lombok.RequiredArgsConstructor;
+import com.notevault.invalidation.InvalidationBus;
+import com.notevault.invalidation.InvalidationEvent;
+import com.notevault.model.BlobReference;
 import com.notevault.model.User;
 import com.notevault.repository.UserRepository;
 import org.springframework.security.crypto.password.PasswordEncoder;
@@ -8,6 +11,7 @@ import org.springframework.stereotype.Service;
 
 import javax.mail.MessagingException;
 import java.time.LocalDateTime;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -21,6 +25,12 @@ public class UserService {
     private final PasswordEncoder passwordEncoder;
     private final BannedEmailService bannedEmailService;
     private final EmailService emailService;
+    private final SessionRevocationService sessionRevocationService;
+    private final FileStorageService fileStorageService;
+    private final PublicNoteSnapshotService publicNoteSnapshotService;
+    private final PublicFeedService publicFeedService;
+    private final NoteJsonCache noteJsonCache;
+    private final InvalidationBus invalidationBus;
 
     public User registerNewUser(String username, String password, String email) {
         if (userRepository.existsByUsername(username)) {
@@ -208,9 +218,13 @@ public class UserService {
             
             if (profilePicture != null && !profilePicture.trim().isEmpty()) {
                 user.setProfilePicture(profilePicture);
+                fileStorageService.updateReferences(BlobReference.OwnerType.PROFILE_PICTURE, userId, userId,
+                        Collections.singletonList(profilePicture));
             }
             
-            return userRepository.save(user);
+            User savedUser = userRepository.save(user);
+            userChanged(userId);
+            return savedUser;
         }
         throw new RuntimeException("User not found");
     }
@@ -234,6 +248,8 @@ public class UserService {
             
             user.setIsBanned(true);
             User bannedUser = userRepository.save(user);
+            sessionRevocationService.revokeSessions(userId);
+            userChanged(userId);
             
             // Ban the email as well
             bannedEmailService.banEmail(user.getEmail(), reason, bannedById);
@@ -256,6 +272,7 @@ public class UserService {
             User user = userOpt.get();
             user.setIsBanned(false);
             User unbannedUser = userRepository.save(user);
+            userChanged(userId);
             
             // Unban the email as well
             try {
@@ -274,7 +291,9 @@ public class UserService {
         if (userOpt.isPresent()) {
             User user = userOpt.get();
             user.setIsAdmin(true);
-            return userRepository.save(user);
+            User promotedUser = userRepository.save(user);
+            userChanged(userId);
+            return promotedUser;
         }
         throw new RuntimeException("User not found");
     }
@@ -284,7 +303,10 @@ public class UserService {
         if (userOpt.isPresent()) {
             User user = userOpt.get();
             user.setIsAdmin(false);
-            return userRepository.save(user);
+            User demotedUser = userRepository.save(user);
+            sessionRevocationService.revokeSessions(userId);
+            userChanged(userId);
+            return demotedUser;
         }
         throw new RuntimeException("User not found");
     }
@@ -325,4 +347,12 @@ public class UserService {
         }
         return false;
     }
-}
\ No newline at end of file
+    
+    // Notes carry their author's name and picture, so caches holding notes reload them too
+    private void userChanged(Integer userId) {
+        publicNoteSnapshotService.userChanged(userId);
+        publicFeedService.invalidate(userId);
+        noteJsonCache.userChanged(userId);
+        invalidationBus.publish(InvalidationEvent.user(userId));
+    }
+}
@@ -0,0 +1,272 @@
+package com.notevault.session;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.session.SessionRepository;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Session repository shared by all NoteVault nodes through the database.
+ *
+ * Each node keeps a near-cache of session attributes keyed by session id and version.
+ * Loading a session only reads the small nv_session row; attributes are re-read when
+ * another node bumped the version. Saving writes only the attributes that changed, and
+ * the last access time at most once per touch interval.
+ */
+public class JdbcSessionRepository implements SessionRepository<NoteVaultSession> {
+
+    private static final Logger logger = Logger.getLogger(JdbcSessionRepository.class.getName());
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Duration defaultMaxInactiveInterval;
+    private final Duration touchInterval;
+    private final int cleanupBatchSize;
+    private final Map<String, CachedAttributes> nearCache;
+
+    public JdbcSessionRepository(JdbcTemplate jdbcTemplate, Duration defaultMaxInactiveInterval,
+                                 Duration touchInterval, int nearCacheSize, int cleanupBatchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.defaultMaxInactiveInterval = defaultMaxInactiveInterval;
+        this.touchInterval = touchInterval;
+        this.cleanupBatchSize = cleanupBatchSize;
+        this.nearCache = Collections.synchronizedMap(new LinkedHashMap<String, CachedAttributes>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedAttributes> eldest) {
+                return size() > nearCacheSize;
+            }
+        });
+    }
+
+    public void initializeSchema() {
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS nv_session (" +
+                "session_id VARCHAR(36) NOT NULL PRIMARY KEY, " +
+                "creation_time BIGINT NOT NULL, " +
+                "last_access_time BIGINT NOT NULL, " +
+                "max_inactive_interval INT NOT NULL, " +
+                "expiry_time BIGINT NOT NULL, " +
+                "version BIGINT NOT NULL DEFAULT 0)");
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS nv_session_attributes (" +
+                "session_id VARCHAR(36) NOT NULL, " +
+                "attribute_name VARCHAR(200) NOT NULL, " +
+                "attribute_bytes BLOB NOT NULL, " +
+                "PRIMARY KEY (session_id, attribute_name))");
+        try {
+            jdbcTemplate.execute("CREATE INDEX idx_nv_session_expiry ON nv_session (expiry_time)");
+        } catch (Exception e) {
+            // Index already exists
+        }
+    }
+
+    @Override
+    public NoteVaultSession createSession() {
+        return new NoteVaultSession(defaultMaxInactiveInterval);
+    }
+
+    @Override
+    public void save(NoteVaultSession session) {
+        if (session.isNew()) {
+            insertSession(session);
+            return;
+        }
+
+        if (!session.getId().equals(session.getOriginalId())) {
+            jdbcTemplate.update("UPDATE nv_session SET session_id = ? WHERE session_id = ?",
+                    session.getId(), session.getOriginalId());
+            jdbcTemplate.update("UPDATE nv_session_attributes SET session_id = ? WHERE session_id = ?",
+                    session.getId(), session.getOriginalId());
+            nearCache.remove(session.getOriginalId());
+        }
+
+        if (!session.getChangedAttributes().isEmpty()) {
+            writeChangedAttributes(session);
+            jdbcTemplate.update("UPDATE nv_session SET version = version + 1, last_access_time = ?, " +
+                            "max_inactive_interval = ?, expiry_time = ? WHERE session_id = ?",
+                    session.getLastAccessedTime().toEpochMilli(),
+                    (int) session.getMaxInactiveInterval().getSeconds(),
+                    expiryMillis(session), session.getId());
+            // Another node may have written other attributes concurrently, so reload on next access
+            nearCache.remove(session.getId());
+            session.markSaved(session.getVersion() + 1);
+        } else if (session.isMaxInactiveIntervalChanged()
+                || Duration.between(session.getPersistedLastAccessedTime(), session.getLastAccessedTime())
+                        .compareTo(touchInterval) >= 0) {
+            jdbcTemplate.update("UPDATE nv_session SET last_access_time = ?, max_inactive_interval = ?, " +
+                            "expiry_time = ? WHERE session_id = ?",
+                    session.getLastAccessedTime().toEpochMilli(),
+                    (int) session.getMaxInactiveInterval().getSeconds(),
+                    expiryMillis(session), session.getId());
+            session.markSaved(session.getVersion());
+        }
+    }
+
+    @Override
+    public NoteVaultSession findById(String id) {
+        List<Object[]> rows = jdbcTemplate.query(
+                "SELECT creation_time, last_access_time, max_inactive_interval, version " +
+                        "FROM nv_session WHERE session_id = ?",
+                (rs, rowNum) -> new Object[] {
+                        rs.getLong("creation_time"), rs.getLong("last_access_time"),
+                        rs.getInt("max_inactive_interval"), rs.getLong("version")
+                },
+                id);
+        if (rows.isEmpty()) {
+            nearCache.remove(id);
+            return null;
+        }
+
+        Object[] row = rows.get(0);
+        long version = (Long) row[3];
+        Map<String, Object> attributes;
+        CachedAttributes cached = nearCache.get(id);
+        if (cached != null && cached.version == version) {
+            attributes = cached.attributes;
+        } else {
+            attributes = loadAttributes(id);
+            nearCache.put(id, new CachedAttributes(version, attributes));
+        }
+
+        NoteVaultSession session = new NoteVaultSession(id,
+                Instant.ofEpochMilli((Long) row[0]),
+                Instant.ofEpochMilli((Long) row[1]),
+                Duration.ofSeconds((Integer) row[2]),
+                attributes, version);
+        if (session.isExpired()) {
+            deleteById(id);
+            return null;
+        }
+        return session;
+    }
+
+    @Override
+    public void deleteById(String id) {
+        jdbcTemplate.update("DELETE FROM nv_session_attributes WHERE session_id = ?", id);
+        jdbcTemplate.update("DELETE FROM nv_session WHERE session_id = ?", id);
+        nearCache.remove(id);
+    }
+
+    /**
+     * Removes expired sessions in batches so a large backlog never locks the tables for long.
+     */
+    @Scheduled(fixedDelayString = "${app.session.cleanup-interval-ms:60000}")
+    public void cleanUpExpiredSessions() {
+        try {
+            int total = 0;
+            List<String> expiredIds;
+            do {
+                expiredIds = jdbcTemplate.queryForList(
+                        "SELECT session_id FROM nv_session WHERE expiry_time < ? ORDER BY expiry_time LIMIT ?",
+                        String.class, System.currentTimeMillis(), cleanupBatchSize);
+                if (!expiredIds.isEmpty()) {
+                    String placeholders = String.join(",", Collections.nCopies(expiredIds.size(), "?"));
+                    Object[] args = expiredIds.toArray();
+                    jdbcTemplate.update("DELETE FROM nv_session_attributes WHERE session_id IN (" + placeholders + ")", args);
+                    jdbcTemplate.update("DELETE FROM nv_session WHERE session_id IN (" + placeholders + ")", args);
+                    expiredIds.forEach(nearCache::remove);
+                    total += expiredIds.size();
+                }
+            } while (expiredIds.size() == cleanupBatchSize);
+            if (total > 0) {
+                logger.info("Removed " + total + " expired sessions");
+            }
+        } catch (Exception e) {
+            logger.warning("Error cleaning up expired sessions: " + e.getMessage());
+        }
+    }
+
+    private void insertSession(NoteVaultSession session) {
+        jdbcTemplate.update("INSERT INTO nv_session (session_id, creation_time, last_access_time, " +
+                        "max_inactive_interval, expiry_time, version) VALUES (?, ?, ?, ?, ?, 0)",
+                session.getId(),
+                session.getCreationTime().toEpochMilli(),
+                session.getLastAccessedTime().toEpochMilli(),
+                (int) session.getMaxInactiveInterval().getSeconds(),
+                expiryMillis(session));
+        List<Object[]> rows = new ArrayList<>();
+        for (Map.Entry<String, Object> attribute : session.getAttributes().entrySet()) {
+            rows.add(new Object[] { session.getId(), attribute.getKey(), serialize(attribute.getValue()) });
+        }
+        if (!rows.isEmpty()) {
+            jdbcTemplate.batchUpdate("INSERT INTO nv_session_attributes (session_id, attribute_name, attribute_bytes) " +
+                    "VALUES (?, ?, ?)", rows);
+        }
+        nearCache.put(session.getId(), new CachedAttributes(0, new HashMap<>(session.getAttributes())));
+        session.markSaved(0);
+    }
+
+    private void writeChangedAttributes(NoteVaultSession session) {
+        List<Object[]> deletes = new ArrayList<>();
+        List<Object[]> inserts = new ArrayList<>();
+        for (String name : session.getChangedAttributes()) {
+            deletes.add(new Object[] { session.getId(), name });
+            Object value = session.getAttributes().get(name);
+            if (value != null) {
+                inserts.add(new Object[] { session.getId(), name, serialize(value) });
+            }
+        }
+        jdbcTemplate.batchUpdate("DELETE FROM nv_session_attributes WHERE session_id = ? AND attribute_name = ?", deletes);
+        if (!inserts.isEmpty()) {
+            jdbcTemplate.batchUpdate("INSERT INTO nv_session_attributes (session_id, attribute_name, attribute_bytes) " +
+                    "VALUES (?, ?, ?)", inserts);
+        }
+    }
+
+    private Map<String, Object> loadAttributes(String id) {
+        Map<String, Object> attributes = new HashMap<>();
+        jdbcTemplate.query("SELECT attribute_name, attribute_bytes FROM nv_session_attributes WHERE session_id = ?",
+                rs -> {
+                    attributes.put(rs.getString("attribute_name"), deserialize(rs.getBytes("attribute_bytes")));
+                },
+                id);
+        return attributes;
+    }
+
+    private long expiryMillis(NoteVaultSession session) {
+        if (session.getMaxInactiveInterval().isNegative()) {
+            return Long.MAX_VALUE;
+        }
+        return session.getExpiryTime().toEpochMilli();
+    }
+
+    private static byte[] serialize(Object value) {
+        try (ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+             ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(value);
+            out.flush();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new RuntimeException("Error serializing session attribute", e);
+        }
+    }
+
+    private static Object deserialize(byte[] bytes) {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return in.readObject();
+        } catch (IOException | ClassNotFoundException e) {
+            throw new RuntimeException("Error deserializing session attribute", e);
+        }
+    }
+
+    private static class CachedAttributes {
+        private final long version;
+        private final Map<String, Object> attributes;
+
+        private CachedAttributes(long version, Map<String, Object> attributes) {
+            this.version = version;
+            this.attributes = attributes;
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package com.notevault.session;
+
+import org.springframework.session.Session;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Session stored by {@link JdbcSessionRepository}. Tracks which attributes were touched
+ * since it was loaded so that saving only writes the changed rows.
+ */
+public class NoteVaultSession implements Session {
+
+    private String id;
+    private String originalId;
+    private final Instant creationTime;
+    private Instant lastAccessedTime;
+    private Duration maxInactiveInterval;
+    private final Map<String, Object> attributes;
+
+    private final Set<String> changedAttributes = new HashSet<>();
+    private boolean isNew;
+    private boolean maxInactiveIntervalChanged;
+    private Instant persistedLastAccessedTime;
+    private long version;
+
+    NoteVaultSession(Duration maxInactiveInterval) {
+        this.id = UUID.randomUUID().toString();
+        this.originalId = id;
+        this.creationTime = Instant.now();
+        this.lastAccessedTime = creationTime;
+        this.persistedLastAccessedTime = creationTime;
+        this.maxInactiveInterval = maxInactiveInterval;
+        this.attributes = new HashMap<>();
+        this.isNew = true;
+    }
+
+    NoteVaultSession(String id, Instant creationTime, Instant lastAccessedTime,
+                     Duration maxInactiveInterval, Map<String, Object> attributes, long version) {
+        this.id = id;
+        this.originalId = id;
+        this.creationTime = creationTime;
+        this.lastAccessedTime = lastAccessedTime;
+        this.persistedLastAccessedTime = lastAccessedTime;
+        this.maxInactiveInterval = maxInactiveInterval;
+        this.attributes = new HashMap<>(attributes);
+        this.version = version;
+    }
+
+    @Override
+    public String getId() {
+        return id;
+    }
+
+    @Override
+    public String changeSessionId() {
+        id = UUID.randomUUID().toString();
+        return id;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T getAttribute(String attributeName) {
+        return (T) attributes.get(attributeName);
+    }
+
+    @Override
+    public Set<String> getAttributeNames() {
+        return new HashSet<>(attributes.keySet());
+    }
+
+    @Override
+    public void setAttribute(String attributeName, Object attributeValue) {
+        if (attributeValue == null) {
+            removeAttribute(attributeName);
+            return;
+        }
+        attributes.put(attributeName, attributeValue);
+        changedAttributes.add(attributeName);
+    }
+
+    @Override
+    public void removeAttribute(String attributeName) {
+        if (attributes.remove(attributeName) != null) {
+            changedAttributes.add(attributeName);
+        }
+    }
+
+    @Override
+    public Instant getCreationTime() {
+        return creationTime;
+    }
+
+    @Override
+    public void setLastAccessedTime(Instant lastAccessedTime) {
+        this.lastAccessedTime = lastAccessedTime;
+    }
+
+    @Override
+    public Instant getLastAccessedTime() {
+        return lastAccessedTime;
+    }
+
+    @Override
+    public void setMaxInactiveInterval(Duration interval) {
+        if (!interval.equals(maxInactiveInterval)) {
+            maxInactiveInterval = interval;
+            maxInactiveIntervalChanged = true;
+        }
+    }
+
+    @Override
+    public Duration getMaxInactiveInterval() {
+        return maxInactiveInterval;
+    }
+
+    @Override
+    public boolean isExpired() {
+        return isExpired(Instant.now());
+    }
+
+    boolean isExpired(Instant now) {
+        return !maxInactiveInterval.isNegative()
+                && now.minus(maxInactiveInterval).isAfter(lastAccessedTime);
+    }
+
+    Instant getExpiryTime() {
+        return lastAccessedTime.plus(maxInactiveInterval);
+    }
+
+    String getOriginalId() {
+        return originalId;
+    }
+
+    Map<String, Object> getAttributes() {
+        return attributes;
+    }
+
+    Set<String> getChangedAttributes() {
+        return changedAttributes;
+    }
+
+    boolean isNew() {
+        return isNew;
+    }
+
+    boolean isMaxInactiveIntervalChanged() {
+        return maxInactiveIntervalChanged;
+    }
+
+    Instant getPersistedLastAccessedTime() {
+        return persistedLastAccessedTime;
+    }
+
+    long getVersion() {
+        return version;
+    }
+
+    void markSaved(long version) {
+        this.originalId = id;
+        this.isNew = false;
+        this.maxInactiveIntervalChanged = false;
+        this.persistedLastAccessedTime = lastAccessedTime;
+        this.version = version;
+        changedAttributes.clear();
+    }
+}
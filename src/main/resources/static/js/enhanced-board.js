@@ -344,7 +344,7 @@ document.addEventListener('DOMContentLoaded', function() {
         viewNoteTag.textContent = note.querySelector('.note-tag')?.textContent || 'No tag';
         
         // Handle content based on type
-        if (noteType === 'code') {
+        if (noteType === 'code' && !note.querySelector('.note-content pre.code-highlight')) {
             viewNoteContent.innerHTML = `<pre><code>${note.querySelector('.note-content').textContent}</code></pre>`;
         } else {
             viewNoteContent.innerHTML = note.querySelector('.note-content').innerHTML;
@@ -578,7 +578,8 @@ document.addEventListener('DOMContentLoaded', function() {
         // Content
         noteElement.querySelector('.note-title').textContent = note.title;
         noteElement.querySelector('.note-tag').textContent = note.tag || '';
-        noteElement.querySelector('.note-content').innerHTML = note.content;
+        // Code and rich text notes come pre-rendered and sanitized from the server
+        noteElement.querySelector('.note-content').innerHTML = note.renderedHtml || note.content;
         
         // Type indicator
         const typeIndicator = noteElement.querySelector('.note-type-indicator');
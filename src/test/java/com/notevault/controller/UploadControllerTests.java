@@ -0,0 +1,196 @@
+package com.notevault.controller;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
+import org.springframework.boot.web.servlet.context.AnnotationConfigServletWebServerApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.servlet.DispatcherServlet;
+import org.springframework.web.servlet.config.annotation.EnableWebMvc;
+import org.springframework.web.servlet.config.annotation.ResourceHandlerRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+class UploadControllerTests {
+
+    private static final String HASH = "3f79bb7b435b05321651daefd374cdc681dc06faa65e374e38337b88ca046dea";
+
+    @TempDir
+    Path uploadsDir;
+
+    private MockMvc mockMvc;
+    private byte[] blob;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        blob = new byte[1000];
+        new Random(1).nextBytes(blob);
+        Path blobDir = Files.createDirectories(uploadsDir.resolve("blobs/3f/79"));
+        Files.write(blobDir.resolve(HASH + ".png"), blob);
+        Files.write(Files.createDirectories(uploadsDir.resolve("user_1")).resolve("legacy.png"), blob);
+
+        UploadController controller = new UploadController();
+        ReflectionTestUtils.setField(controller, "uploadsDir", uploadsDir.toString());
+        ReflectionTestUtils.setField(controller, "maxAgeSeconds", 60L);
+        mockMvc = MockMvcBuilders.standaloneSetup(controller).build();
+    }
+
+    @Test
+    void contentAddressedFilesAreImmutable() throws Exception {
+        mockMvc.perform(get("/uploads/blobs/3f/79/" + HASH + ".png"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"" + HASH + ".png\""))
+                .andExpect(header().string("Cache-Control", "public, max-age=31536000, immutable"))
+                .andExpect(header().string("Content-Type", "image/png"))
+                .andExpect(content().bytes(blob));
+
+        mockMvc.perform(get("/uploads/user_1/legacy.png"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Cache-Control", "public, max-age=60"));
+    }
+
+    @Test
+    void matchingEtagReturnsNotModified() throws Exception {
+        mockMvc.perform(get("/uploads/blobs/3f/79/" + HASH + ".png")
+                        .header("If-None-Match", "\"" + HASH + ".png\""))
+                .andExpect(status().isNotModified())
+                .andExpect(content().bytes(new byte[0]));
+    }
+
+    @Test
+    void servesSingleByteRanges() throws Exception {
+        byte[] expected = new byte[100];
+        System.arraycopy(blob, 100, expected, 0, 100);
+        mockMvc.perform(get("/uploads/blobs/3f/79/" + HASH + ".png").header("Range", "bytes=100-199"))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string("Content-Range", "bytes 100-199/1000"))
+                .andExpect(content().bytes(expected));
+
+        byte[] suffix = new byte[10];
+        System.arraycopy(blob, 990, suffix, 0, 10);
+        mockMvc.perform(get("/uploads/blobs/3f/79/" + HASH + ".png").header("Range", "bytes=-10"))
+                .andExpect(status().isPartialContent())
+                .andExpect(content().bytes(suffix));
+
+        mockMvc.perform(get("/uploads/blobs/3f/79/" + HASH + ".png").header("Range", "bytes=5000-"))
+                .andExpect(status().isRequestedRangeNotSatisfiable())
+                .andExpect(header().string("Content-Range", "bytes */1000"));
+    }
+
+    @Test
+    void rejectsPathsOutsideTheUploadsDirectory() throws Exception {
+        mockMvc.perform(get("/uploads/../secret.txt")).andExpect(status().isNotFound());
+        mockMvc.perform(get("/uploads/tmp/upload-1.part")).andExpect(status().isNotFound());
+        assertNull(UploadController.parseRange("bytes=10-5", 100));
+        assertArrayEquals(new long[0], UploadController.parseRange("bytes=0-1,5-6", 100));
+    }
+
+    /**
+     * Compares throughput of UploadController with Spring's static resource handler on a
+     * real Tomcat. Run with -Dbenchmark=true.
+     */
+    @Test
+    @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+    void benchmarkAgainstResourceHandler() throws Exception {
+        byte[] large = new byte[4 * 1024 * 1024];
+        new Random(2).nextBytes(large);
+        Files.write(uploadsDir.resolve("blobs/3f/79/" + HASH + ".jpg"), large);
+
+        AnnotationConfigServletWebServerApplicationContext context = new AnnotationConfigServletWebServerApplicationContext();
+        context.getEnvironment().getPropertySources().addFirst(new MapPropertySource("benchmark",
+                Map.of("app.uploads-dir", uploadsDir.toString())));
+        context.register(BenchmarkServerConfig.class);
+        context.refresh();
+        try {
+            int port = context.getWebServer().getPort();
+            HttpClient client = HttpClient.newHttpClient();
+            for (String prefix : new String[] {"/static-uploads/", "/uploads/", "/static-uploads/", "/uploads/"}) {
+                URI uri = URI.create("http://localhost:" + port + prefix + "blobs/3f/79/" + HASH + ".jpg");
+                int requests = 400;
+                long startNanos = System.nanoTime();
+                ExecutorService pool = Executors.newFixedThreadPool(8);
+                List<Future<Long>> results = new ArrayList<>();
+                for (int i = 0; i < requests; i++) {
+                    results.add(pool.submit(() -> {
+                        HttpResponse<InputStream> response = client.send(HttpRequest.newBuilder(uri).build(),
+                                HttpResponse.BodyHandlers.ofInputStream());
+                        try (InputStream body = response.body()) {
+                            assertEquals(200, response.statusCode());
+                            return body.transferTo(java.io.OutputStream.nullOutputStream());
+                        }
+                    }));
+                }
+                long bytes = 0;
+                for (Future<Long> result : results) {
+                    bytes += result.get();
+                }
+                pool.shutdown();
+                double seconds = (System.nanoTime() - startNanos) / 1e9;
+                System.out.printf("%-16s %6.0f req/s %8.1f MB/s%n", prefix, requests / seconds,
+                        bytes / seconds / (1024 * 1024));
+            }
+        } finally {
+            context.close();
+        }
+    }
+
+    @Configuration
+    @EnableWebMvc
+    static class BenchmarkServerConfig implements WebMvcConfigurer {
+
+        @Autowired
+        private Environment environment;
+
+        @Bean
+        TomcatServletWebServerFactory servletWebServerFactory() {
+            return new TomcatServletWebServerFactory(0);
+        }
+
+        @Bean
+        DispatcherServlet dispatcherServlet() {
+            return new DispatcherServlet();
+        }
+
+        @Bean
+        UploadController uploadController() {
+            return new UploadController();
+        }
+
+        @Override
+        public void addResourceHandlers(ResourceHandlerRegistry registry) {
+            registry.addResourceHandler("/static-uploads/**")
+                    .addResourceLocations("file:" + environment.getProperty("app.uploads-dir") + "/");
+        }
+    }
+}
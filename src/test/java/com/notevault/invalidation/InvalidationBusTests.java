@@ -0,0 +1,157 @@
+package com.notevault.invalidation;
+
+import com.notevault.config.InvalidationConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import javax.sql.DataSource;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class InvalidationBusTests {
+
+    private AnnotationConfigApplicationContext nodeA;
+    private AnnotationConfigApplicationContext nodeB;
+
+    @BeforeEach
+    void startNodes() {
+        nodeA = startNode();
+        nodeB = startNode();
+    }
+
+    @AfterEach
+    void stopNodes() {
+        nodeA.getBean(JdbcTemplate.class).execute("DROP ALL OBJECTS");
+        nodeA.close();
+        nodeB.close();
+    }
+
+    @Test
+    void eventsReachOtherNodesButNotThePublisher() {
+        InvalidationBus busA = nodeA.getBean(InvalidationBus.class);
+        busA.publish(InvalidationEvent.note(5, 7, true));
+        busA.publish(InvalidationEvent.user(7));
+
+        nodeB.getBean(InvalidationBus.class).poll();
+        List<InvalidationEvent> received = nodeB.getBean(Recorder.class).events;
+        assertEquals(List.of(InvalidationEvent.Type.NOTE, InvalidationEvent.Type.USER),
+                received.stream().map(InvalidationEvent::getType).collect(Collectors.toList()));
+        assertEquals(5, received.get(0).getId());
+        assertEquals(7, received.get(0).getOwnerId());
+        assertTrue(received.get(0).isPublicNote());
+        assertEquals(7, received.get(1).getId());
+
+        busA.poll();
+        assertTrue(nodeA.getBean(Recorder.class).events.isEmpty());
+    }
+
+    @Test
+    void failedDeliveriesAreRetriedAndDeliveredOnce() {
+        InvalidationBus busA = nodeA.getBean(InvalidationBus.class);
+        InvalidationBus busB = nodeB.getBean(InvalidationBus.class);
+        Recorder recorderB = nodeB.getBean(Recorder.class);
+        for (int noteId = 1; noteId <= 5; noteId++) {
+            busA.publish(InvalidationEvent.note(noteId, 7, false));
+        }
+
+        // The third event fails, so the poll stops there and it is handed over again
+        recorderB.failAfter = 2;
+        busB.poll();
+        assertEquals(List.of(1, 2), noteIds(recorderB));
+        busB.poll();
+        assertEquals(List.of(1, 2, 3, 4, 5), noteIds(recorderB));
+        busB.poll();
+        assertEquals(List.of(1, 2, 3, 4, 5), noteIds(recorderB));
+    }
+
+    @Test
+    void rowsCommittedOutOfOrderAreNotSkipped() throws Exception {
+        JdbcTemplate jdbcTemplate = nodeA.getBean(JdbcTemplate.class);
+        InvalidationBus busB = nodeB.getBean(InvalidationBus.class);
+        Recorder recorderB = nodeB.getBean(Recorder.class);
+
+        // Row 2 is committed before row 1
+        insert(jdbcTemplate, 2, 20);
+        busB.poll();
+        insert(jdbcTemplate, 1, 10);
+        busB.poll();
+        assertEquals(List.of(20, 10), noteIds(recorderB));
+
+        // Row 3 never shows up; after the gap timeout, rows after it still come through
+        insert(jdbcTemplate, 4, 40);
+        busB.poll();
+        Thread.sleep(100);
+        busB.poll();
+        insert(jdbcTemplate, 5, 50);
+        busB.poll();
+        assertEquals(List.of(20, 10, 40, 50), noteIds(recorderB));
+    }
+
+    private static void insert(JdbcTemplate jdbcTemplate, long id, int noteId) {
+        jdbcTemplate.update("INSERT INTO nv_invalidation (id, event_type, entity_id, owner_id, origin, created_at) " +
+                "VALUES (?, 'NOTE', ?, 7, 'other-node', ?)", id, noteId, System.currentTimeMillis());
+    }
+
+    private static List<Integer> noteIds(Recorder recorder) {
+        return recorder.events.stream().map(InvalidationEvent::getId).collect(Collectors.toList());
+    }
+
+    private AnnotationConfigApplicationContext startNode() {
+        AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("app.invalidation.batch-size", "2");
+        properties.put("app.invalidation.gap-timeout-ms", "50");
+        context.getEnvironment().getPropertySources().addFirst(new MapPropertySource("test", properties));
+        context.register(SharedDatabaseConfig.class);
+        context.refresh();
+        return context;
+    }
+
+    static class Recorder {
+        private final List<InvalidationEvent> events = new CopyOnWriteArrayList<>();
+        private int failAfter = -1;
+
+        @EventListener
+        public void onInvalidation(InvalidationEvent event) {
+            if (failAfter-- == 0) {
+                throw new IllegalStateException("Cache unavailable");
+            }
+            events.add(event);
+        }
+    }
+
+    @Configuration
+    @Import(InvalidationConfig.class)
+    static class SharedDatabaseConfig {
+
+        @Bean
+        DataSource dataSource() {
+            return new DriverManagerDataSource("jdbc:h2:mem:invalidation;MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "");
+        }
+
+        @Bean
+        JdbcTemplate jdbcTemplate(DataSource dataSource) {
+            return new JdbcTemplate(dataSource);
+        }
+
+        @Bean
+        Recorder recorder() {
+            return new Recorder();
+        }
+    }
+}
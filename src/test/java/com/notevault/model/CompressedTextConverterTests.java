@@ -0,0 +1,36 @@
+package com.notevault.model;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CompressedTextConverterTests {
+
+    @Test
+    void compressesLargeContent() {
+        String log = "2024-01-01 12:00:00 INFO Request handled in 12 ms\n".repeat(500);
+        String encoded = CompressedTextConverter.encode(log);
+        assertTrue(encoded.length() < log.length() / 5);
+        assertEquals(CompressedTextConverter.MARKER, encoded.charAt(0));
+        assertEquals(log, CompressedTextConverter.decode(encoded));
+    }
+
+    @Test
+    void leavesSmallAndLegacyContentAlone() {
+        String small = "Buy milk ✓";
+        assertSame(small, CompressedTextConverter.encode(small));
+        assertSame(small, CompressedTextConverter.decode(small));
+        assertNull(CompressedTextConverter.decode(null));
+        assertEquals("", CompressedTextConverter.decode(""));
+    }
+
+    @Test
+    void escapesPlainContentStartingWithTheMarker() {
+        String tricky = CompressedTextConverter.MARKER + "D not base64";
+        String encoded = CompressedTextConverter.encode(tricky);
+        assertEquals(tricky, CompressedTextConverter.decode(encoded));
+    }
+}
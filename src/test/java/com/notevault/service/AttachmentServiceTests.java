@@ -0,0 +1,71 @@
+package com.notevault.service;
+
+import com.notevault.model.Attachment;
+import com.notevault.model.BlobReference;
+import com.notevault.repository.AttachmentRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class AttachmentServiceTests {
+
+    @Mock
+    private AttachmentRepository attachmentRepository;
+
+    @Mock
+    private FileStorageService fileStorageService;
+
+    @InjectMocks
+    private AttachmentService attachmentService;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(attachmentService, "maxAttachmentSize", 100L);
+    }
+
+    @Test
+    void rejectsEmptyFilesWithoutStoringThem() {
+        RuntimeException e = assertThrows(RuntimeException.class, () -> attachmentService.storeAttachment(
+                new ByteArrayInputStream(new byte[0]), 7, "empty.txt", "text/plain"));
+        assertEquals("File is empty", e.getMessage());
+        verifyNoInteractions(fileStorageService, attachmentRepository);
+    }
+
+    @Test
+    void storesTheWholeFile() throws Exception {
+        when(fileStorageService.store(any(), anyInt(), anyString())).thenAnswer(invocation -> {
+            InputStream in = invocation.getArgument(0);
+            assertEquals("hello", new String(in.readAllBytes(), StandardCharsets.UTF_8));
+            return "uploads/blob.txt";
+        });
+        when(attachmentRepository.save(any())).thenAnswer(invocation -> {
+            Attachment attachment = invocation.getArgument(0);
+            attachment.setId(3);
+            return attachment;
+        });
+
+        Attachment attachment = attachmentService.storeAttachment(
+                new ByteArrayInputStream("hello".getBytes(StandardCharsets.UTF_8)), 7, "hello.txt", "text/plain");
+        assertEquals(5L, attachment.getSizeBytes());
+        verify(fileStorageService).updateReferences(BlobReference.OwnerType.ATTACHMENT, 3, 7, List.of("uploads/blob.txt"));
+    }
+}
@@ -0,0 +1,153 @@
+package com.notevault.service;
+
+import com.notevault.model.Attachment;
+import com.notevault.model.ChunkedUpload;
+import com.notevault.repository.ChunkedUploadPartRepository;
+import com.notevault.repository.ChunkedUploadRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class ChunkedUploadServiceTests {
+
+    private static final int USER_ID = 1;
+
+    @TempDir
+    Path uploadsDir;
+
+    @Mock
+    private ChunkedUploadRepository chunkedUploadRepository;
+
+    @Mock
+    private ChunkedUploadPartRepository chunkedUploadPartRepository;
+
+    @Mock
+    private FileStorageService fileStorageService;
+
+    @Mock
+    private AttachmentService attachmentService;
+
+    @Mock
+    private StorageAccountingService storageAccountingService;
+
+    @InjectMocks
+    private ChunkedUploadService chunkedUploadService;
+
+    private ChunkedUpload upload;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        ReflectionTestUtils.setField(chunkedUploadService, "uploadsDir", uploadsDir.toString());
+        ReflectionTestUtils.setField(chunkedUploadService, "maxUploadSize", 1024L);
+        ReflectionTestUtils.setField(chunkedUploadService, "minChunkSize", 4);
+        ReflectionTestUtils.setField(chunkedUploadService, "maxChunkSize", 1024);
+
+        when(chunkedUploadRepository.save(any())).thenAnswer(invocation -> invocation.getArgument(0));
+        upload = chunkedUploadService.initiate(USER_ID, "notes.txt", "text/plain", 8L, 4);
+        when(chunkedUploadRepository.findById(upload.getId())).thenReturn(Optional.of(upload));
+    }
+
+    @Test
+    void badRetryKeepsTheAcceptedChunk() throws IOException {
+        when(chunkedUploadPartRepository.findByUploadIdAndChunkIndex(eq(upload.getId()), anyInt()))
+                .thenReturn(Optional.empty());
+        writeChunk(0, "good");
+
+        // The retry claims the accepted checksum, but its bytes were damaged on the way
+        assertThrows(RuntimeException.class, () -> chunkedUploadService.writeChunk(upload.getId(), USER_ID, 0,
+                sha256("good"), new ByteArrayInputStream(bytes("gxxd"))));
+        assertThrows(RuntimeException.class, () -> chunkedUploadService.writeChunk(upload.getId(), USER_ID, 0,
+                sha256("good"), new ByteArrayInputStream(bytes("good, and more"))));
+
+        assertArrayEquals(bytes("good"), readPart(4));
+        assertEquals(1, listUploadFiles());
+    }
+
+    @Test
+    void failedCompleteCanBeRetried() throws IOException {
+        when(chunkedUploadPartRepository.findByUploadIdAndChunkIndex(eq(upload.getId()), anyInt()))
+                .thenReturn(Optional.empty());
+        writeChunk(0, "good");
+        writeChunk(1, "data");
+        when(chunkedUploadPartRepository.countByUploadId(upload.getId())).thenReturn(2L);
+
+        AtomicReference<byte[]> stored = new AtomicReference<>();
+        when(fileStorageService.storeFile(any(), anyString()))
+                .thenThrow(new IOException("Disk full"))
+                .thenAnswer(invocation -> {
+                    Path file = invocation.getArgument(0);
+                    stored.set(Files.readAllBytes(file));
+                    Files.delete(file);
+                    return "blobs/notes.txt";
+                });
+        when(attachmentService.registerAttachment(eq("blobs/notes.txt"), eq(USER_ID), eq("notes.txt"),
+                eq("text/plain"), anyLong())).thenReturn(new Attachment());
+
+        assertThrows(IOException.class, () -> chunkedUploadService.complete(upload.getId(), USER_ID));
+        chunkedUploadService.complete(upload.getId(), USER_ID);
+
+        assertArrayEquals(bytes("gooddata"), stored.get());
+        assertEquals(0, listUploadFiles());
+    }
+
+    @Test
+    void abortRemovesAClaimedFile() throws IOException {
+        Path partFile = uploadsDir.resolve("tmp/chunked/" + upload.getId() + ".part");
+        Files.move(partFile, partFile.resolveSibling(upload.getId() + ".complete"));
+        Files.write(partFile.resolveSibling(upload.getId() + "-123.chunk"), bytes("left"));
+
+        chunkedUploadService.abort(upload.getId(), USER_ID);
+        assertEquals(0, listUploadFiles());
+    }
+
+    private void writeChunk(int chunkIndex, String data) throws IOException {
+        when(chunkedUploadPartRepository.save(any())).thenAnswer(invocation -> invocation.getArgument(0));
+        chunkedUploadService.writeChunk(upload.getId(), USER_ID, chunkIndex, sha256(data),
+                new ByteArrayInputStream(bytes(data)));
+    }
+
+    private byte[] readPart(int length) throws IOException {
+        byte[] content = Files.readAllBytes(uploadsDir.resolve("tmp/chunked/" + upload.getId() + ".part"));
+        return Arrays.copyOf(content, length);
+    }
+
+    private long listUploadFiles() throws IOException {
+        try (Stream<Path> files = Files.list(uploadsDir.resolve("tmp/chunked"))) {
+            return files.filter(file -> file.getFileName().toString().startsWith(upload.getId())).count();
+        }
+    }
+
+    private static String sha256(String data) {
+        return FileStorageService.toHex(FileStorageService.sha256().digest(bytes(data)));
+    }
+
+    private static byte[] bytes(String data) {
+        return data.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,126 @@
+package com.notevault.service;
+
+import com.notevault.model.BlobReference;
+import com.notevault.repository.StoredBlobRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@DataJpaTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:blobs;MODE=MySQL;DB_CLOSE_DELAY=-1",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.hibernate.ddl-auto=create-drop"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+// The reference counting runs in transactions of its own, as it does in production
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import({FileStorageService.class, ImageDerivativeService.class})
+class FileStorageServiceTests {
+
+    @TempDir
+    Path uploadsDir;
+
+    @Autowired
+    private FileStorageService fileStorageService;
+
+    @Autowired
+    private StoredBlobRepository storedBlobRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @MockBean
+    private StorageAccountingService storageAccountingService;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(fileStorageService, "uploadsDir", uploadsDir.toString());
+    }
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.update("DELETE FROM blob_references");
+        jdbcTemplate.update("DELETE FROM stored_blobs");
+    }
+
+    @Test
+    void blobsAreDeletedWithTheirDerivativesOnceNothingReferencesThem() throws IOException {
+        String path = store("not really an image");
+        String hash = FileStorageService.hashOf(path);
+        assertEquals(path, store("not really an image"));
+
+        fileStorageService.updateReferences(BlobReference.OwnerType.NOTE, 1, 7, List.of(path));
+        fileStorageService.updateReferences(BlobReference.OwnerType.PROFILE_PICTURE, 7, 7, List.of(path, "uploads/legacy.png"));
+        assertEquals(2, refCount(hash));
+        verify(storageAccountingService, times(2)).record(0L, 7, 19L, 1);
+
+        // Thumbnails as the derivative service would have written them
+        Path blob = Paths.get(path);
+        Path thumbnail = Files.write(blob.resolveSibling(hash + "_w300.jpg"), new byte[] {1});
+        Path compressed = Files.write(blob.resolveSibling(hash + "_c.jpg"), new byte[] {1});
+        expireGracePeriod();
+
+        fileStorageService.releaseReferences(BlobReference.OwnerType.NOTE, 1);
+        assertEquals(1, refCount(hash));
+        fileStorageService.deleteUnreferencedBlobs();
+        assertTrue(Files.exists(blob));
+
+        fileStorageService.updateReferences(BlobReference.OwnerType.PROFILE_PICTURE, 7, 7, List.of());
+        assertEquals(0, refCount(hash));
+        verify(storageAccountingService, times(2)).record(0L, 7, -19L, -1);
+        fileStorageService.deleteUnreferencedBlobs();
+
+        assertFalse(storedBlobRepository.existsById(hash));
+        assertFalse(Files.exists(blob));
+        assertFalse(Files.exists(thumbnail));
+        assertFalse(Files.exists(compressed));
+    }
+
+    @Test
+    void freshUploadsSurviveTheGracePeriod() throws IOException {
+        String path = store("just uploaded");
+        fileStorageService.deleteUnreferencedBlobs();
+
+        assertTrue(storedBlobRepository.existsById(FileStorageService.hashOf(path)));
+        assertTrue(Files.exists(Paths.get(path)));
+    }
+
+    private String store(String content) throws IOException {
+        return fileStorageService.store(new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)), null, ".png");
+    }
+
+    private int refCount(String hash) {
+        return storedBlobRepository.findById(hash).orElseThrow().getRefCount();
+    }
+
+    private void expireGracePeriod() {
+        jdbcTemplate.update("UPDATE stored_blobs SET last_uploaded_at = DATEADD('DAY', -2, CURRENT_TIMESTAMP)");
+    }
+}
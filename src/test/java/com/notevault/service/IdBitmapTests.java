@@ -0,0 +1,72 @@
+package com.notevault.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IdBitmapTests {
+
+    @Test
+    void matchesSetOperationsOnSparseAndDenseData() {
+        Random random = new Random(42);
+        for (int round = 0; round < 20; round++) {
+            // Alternate between sparse ranges (array containers) and dense ones (bitmap containers)
+            int range = round % 2 == 0 ? 5_000_000 : 200_000;
+            TreeSet<Integer> expectedA = new TreeSet<>();
+            TreeSet<Integer> expectedB = new TreeSet<>();
+            IdBitmap a = new IdBitmap();
+            IdBitmap b = new IdBitmap();
+            for (int i = 0; i < 30_000; i++) {
+                int x = random.nextInt(range);
+                int y = random.nextInt(range);
+                assertEquals(expectedA.add(x), a.add(x));
+                assertEquals(expectedB.add(y), b.add(y));
+            }
+            for (int i = 0; i < 10_000; i++) {
+                int x = random.nextInt(range);
+                assertEquals(expectedA.remove(x), a.remove(x));
+            }
+
+            assertArrayEquals(toArray(expectedA), a.toArray());
+            assertEquals(expectedA.size(), a.cardinality());
+
+            TreeSet<Integer> and = new TreeSet<>(expectedA);
+            and.retainAll(expectedB);
+            assertArrayEquals(toArray(and), IdBitmap.and(a, b).toArray());
+
+            TreeSet<Integer> or = new TreeSet<>(expectedA);
+            or.addAll(expectedB);
+            assertArrayEquals(toArray(or), IdBitmap.or(a, b).toArray());
+
+            TreeSet<Integer> andNot = new TreeSet<>(expectedA);
+            andNot.removeAll(expectedB);
+            assertArrayEquals(toArray(andNot), IdBitmap.andNot(a, b).toArray());
+
+            // Inputs are left alone
+            assertArrayEquals(toArray(expectedA), a.toArray());
+        }
+    }
+
+    @Test
+    void shrinksBackWhenValuesAreRemoved() {
+        IdBitmap bitmap = new IdBitmap();
+        for (int i = 0; i < 10_000; i++) {
+            bitmap.add(i);
+        }
+        for (int i = 0; i < 10_000; i++) {
+            assertTrue(bitmap.remove(i));
+        }
+        assertTrue(bitmap.isEmpty());
+        assertFalse(bitmap.contains(5));
+    }
+
+    private static int[] toArray(TreeSet<Integer> set) {
+        return set.stream().mapToInt(Integer::intValue).toArray();
+    }
+}
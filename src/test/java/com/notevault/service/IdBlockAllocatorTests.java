@@ -0,0 +1,92 @@
+package com.notevault.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IdBlockAllocatorTests {
+
+    private DriverManagerDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setUp() {
+        dataSource = new DriverManagerDataSource("jdbc:h2:mem:ids;MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TABLE id_sequence (name VARCHAR(64) PRIMARY KEY, next_value BIGINT NOT NULL)");
+        jdbcTemplate.execute("CREATE TABLE notiz (N_id INT AUTO_INCREMENT PRIMARY KEY, Titel VARCHAR(255))");
+        jdbcTemplate.update("INSERT INTO notiz (Titel) VALUES ('a'), ('b'), ('c')");
+    }
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.execute("DROP ALL OBJECTS");
+    }
+
+    @Test
+    void startsAfterExistingRowsAndReservesWholeBlocks() {
+        IdBlockAllocator allocator = newAllocator(10);
+
+        assertEquals(4, allocator.nextId("notiz", "N_id"));
+        assertEquals(5, allocator.nextId("notiz", "N_id"));
+        assertEquals(14L, jdbcTemplate.queryForObject("SELECT next_value FROM id_sequence WHERE name = 'notiz'", Long.class));
+        assertEquals(14, allocator.reserveRange("notiz", "N_id", 100));
+        assertEquals(6, allocator.nextId("notiz", "N_id"));
+    }
+
+    @Test
+    void movesPastRowsInsertedThroughAutoIncrement() {
+        newAllocator(10).nextId("notiz", "N_id");
+        jdbcTemplate.update("INSERT INTO notiz (N_id, Titel) VALUES (40, 'legacy')");
+
+        // A node starting later notices the row and moves the shared sequence forward
+        assertEquals(41, newAllocator(10).nextId("notiz", "N_id"));
+    }
+
+    @Test
+    void nodesNeverHandOutTheSameId() throws Exception {
+        List<IdBlockAllocator> nodes = List.of(newAllocator(7), newAllocator(7), newAllocator(7));
+        Set<Long> ids = ConcurrentHashMap.newKeySet();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int thread = 0; thread < 8; thread++) {
+                IdBlockAllocator node = nodes.get(thread % nodes.size());
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 500; i++) {
+                        assertTrue(ids.add(node.nextId("notiz", "N_id")));
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(4000, ids.size());
+        assertTrue(ids.stream().allMatch(id -> id > 3));
+    }
+
+    private IdBlockAllocator newAllocator(int blockSize) {
+        IdBlockAllocator allocator = new IdBlockAllocator(jdbcTemplate, new DataSourceTransactionManager(dataSource));
+        ReflectionTestUtils.setField(allocator, "blockSize", blockSize);
+        allocator.init();
+        return allocator;
+    }
+}
@@ -0,0 +1,68 @@
+package com.notevault.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ImageDerivativeServiceTests {
+
+    @TempDir
+    Path uploadsDir;
+
+    private ImageDerivativeService imageDerivativeService;
+
+    @BeforeEach
+    void setUp() {
+        imageDerivativeService = new ImageDerivativeService();
+        ReflectionTestUtils.setField(imageDerivativeService, "thumbnailWidths", new int[] {150, 300, 600});
+        ReflectionTestUtils.setField(imageDerivativeService, "jpegQuality", 0.8f);
+        ReflectionTestUtils.setField(imageDerivativeService, "maxPixels", 100_000L);
+    }
+
+    @Test
+    void remembersGeneratedThumbnails() throws IOException {
+        Path original = writeImage("photo.png", 400, 200);
+        imageDerivativeService.generateDerivatives(original);
+
+        Path thumbnail = uploadsDir.resolve("photo_w300.jpg");
+        assertEquals(thumbnail.toString(), imageDerivativeService.thumbnailPath(original.toString(), 300));
+        assertEquals(original.toString(), imageDerivativeService.thumbnailPath(original.toString(), 600));
+
+        // Answered from memory, not from the file system
+        Files.delete(thumbnail);
+        assertEquals(thumbnail.toString(), imageDerivativeService.thumbnailPath(original.toString(), 300));
+        // Each service keeps its own memory
+        assertEquals(original.toString(), new ImageDerivativeService().thumbnailPath(original.toString(), 300));
+    }
+
+    @Test
+    void skipsImagesWithTooManyPixels() throws IOException {
+        Path original = writeImage("poster.png", 1000, 1000);
+        imageDerivativeService.generateDerivatives(original);
+
+        try (Stream<Path> files = Files.list(uploadsDir)) {
+            assertEquals(1, files.count());
+        }
+        assertEquals(original.toString(), imageDerivativeService.thumbnailPath(original.toString(), 300));
+    }
+
+    private Path writeImage(String name, int width, int height) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int x = 0; x < width; x++) {
+            image.setRGB(x, x * height / width, 0xff0000);
+        }
+        Path file = uploadsDir.resolve(name);
+        ImageIO.write(image, "png", file.toFile());
+        return file;
+    }
+}
@@ -0,0 +1,169 @@
+package com.notevault.service;
+
+import com.notevault.invalidation.InvalidationBus;
+import com.notevault.invalidation.InvalidationEvent;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+class NoteArrangeServiceTests {
+
+    private JdbcTemplate jdbcTemplate;
+    private PublicNoteSnapshotService publicNoteSnapshotService;
+    private InvalidationBus invalidationBus;
+    private NoteArrangeService noteArrangeService;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = new JdbcTemplate(new DriverManagerDataSource(
+                "jdbc:h2:mem:arrange;MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", ""));
+        jdbcTemplate.execute("CREATE TABLE notiz (N_id INT AUTO_INCREMENT PRIMARY KEY, B_id INT, Tag VARCHAR(255), " +
+                "position_x INT, position_y INT, privacy_level VARCHAR(20) DEFAULT 'private')");
+        publicNoteSnapshotService = mock(PublicNoteSnapshotService.class);
+        invalidationBus = mock(InvalidationBus.class);
+        noteArrangeService = new NoteArrangeService(jdbcTemplate, new SingleFlight(), publicNoteSnapshotService,
+                invalidationBus);
+        ReflectionTestUtils.setField(noteArrangeService, "noteWidth", 100);
+        ReflectionTestUtils.setField(noteArrangeService, "noteHeight", 50);
+        ReflectionTestUtils.setField(noteArrangeService, "gap", 10);
+    }
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.execute("DROP ALL OBJECTS");
+    }
+
+    @Test
+    void gridKeepsReadingOrderAndOnlyTouchesOwnNotes() {
+        for (int i = 0; i < 5; i++) {
+            insert(1, null, 500 - i * 100, 40);
+        }
+        insert(2, null, 0, 0);
+
+        noteArrangeService.arrange(1, NoteArrangeService.STRATEGY_GRID, null, 2);
+
+        // Leftmost note first; the grid starts at the top-left corner of the old layout
+        assertEquals(List.of(Map.of("N_id", 5, "position_x", 100, "position_y", 40),
+                        Map.of("N_id", 4, "position_x", 210, "position_y", 40),
+                        Map.of("N_id", 3, "position_x", 100, "position_y", 100),
+                        Map.of("N_id", 2, "position_x", 210, "position_y", 100),
+                        Map.of("N_id", 1, "position_x", 100, "position_y", 160)),
+                positions("SELECT N_id, position_x, position_y FROM notiz WHERE B_id = 1 ORDER BY position_y, position_x"));
+        assertEquals(0, jdbcTemplate.queryForObject("SELECT position_x FROM notiz WHERE B_id = 2", Integer.class));
+        assertThrows(RuntimeException.class, () -> noteArrangeService.arrange(1, "spiral", null, null));
+    }
+
+    @Test
+    void packByTagKeepsTagsTogether() {
+        for (int i = 0; i < 4; i++) {
+            insert(1, "work, urgent", i * 30, i * 20);
+            insert(1, "Home", i * 30, i * 20);
+        }
+        insert(1, null, 0, 0);
+
+        noteArrangeService.arrange(1, NoteArrangeService.STRATEGY_PACK_BY_TAG, null, null);
+
+        // Each tag gets its own 2x2 block, so the blocks' bounding boxes must not overlap
+        long[] work = bounds("work, urgent");
+        long[] home = bounds("Home");
+        assertEquals(210, work[2] - work[0]);
+        assertEquals(110, home[3] - home[1]);
+        assertFalse(work[0] < home[2] && home[0] < work[2] && work[1] < home[3] && home[1] < work[3]);
+        assertNoOverlaps();
+    }
+
+    @Test
+    void deOverlapMovesOnlyOverlappingNotes() {
+        Random random = new Random(42);
+        for (int i = 0; i < 2000; i++) {
+            insert(1, null, random.nextInt(3000), random.nextInt(3000));
+        }
+        insert(1, null, 10000, 10000);
+
+        List<Map<String, Object>> layout = noteArrangeService.arrange(1, NoteArrangeService.STRATEGY_DE_OVERLAP, null, null);
+
+        assertEquals(2001, layout.size());
+        assertNoOverlaps();
+        assertEquals(10000, jdbcTemplate.queryForObject("SELECT position_x FROM notiz WHERE N_id = 2001", Integer.class));
+
+        // Arranging again finds nothing to move
+        List<Map<String, Object>> before = positions("SELECT N_id, position_x, position_y FROM notiz ORDER BY N_id");
+        noteArrangeService.arrange(1, NoteArrangeService.STRATEGY_DE_OVERLAP, null, null);
+        assertEquals(before, positions("SELECT N_id, position_x, position_y FROM notiz ORDER BY N_id"));
+    }
+
+    @Test
+    void arrangesOnlySelectedNotes() {
+        insert(1, null, 0, 0);
+        insert(1, null, 0, 0);
+        insert(1, null, 0, 0);
+
+        List<Map<String, Object>> layout = noteArrangeService.arrange(1, NoteArrangeService.STRATEGY_DE_OVERLAP, List.of(1, 2), null);
+
+        assertEquals(2, layout.size());
+        assertEquals(List.of(Map.of("N_id", 1, "position_x", 0, "position_y", 0),
+                        Map.of("N_id", 2, "position_x", 0, "position_y", 60),
+                        Map.of("N_id", 3, "position_x", 0, "position_y", 0)),
+                positions("SELECT N_id, position_x, position_y FROM notiz ORDER BY N_id"));
+    }
+
+    @Test
+    void refreshesMovedPublicNotes() {
+        insert(1, null, 0, 0);
+        insert(1, null, 0, 0);
+        insert(1, null, 500, 500);
+        jdbcTemplate.update("UPDATE notiz SET privacy_level = 'everyone'");
+
+        noteArrangeService.arrange(1, NoteArrangeService.STRATEGY_DE_OVERLAP, null, null);
+
+        // Only note 2 had to move
+        verify(publicNoteSnapshotService).refresh(List.of(2));
+        ArgumentCaptor<InvalidationEvent> event = ArgumentCaptor.forClass(InvalidationEvent.class);
+        verify(invalidationBus).publish(event.capture());
+        assertEquals(2, event.getValue().getId());
+        assertTrue(event.getValue().isPublicNote());
+    }
+
+    private void assertNoOverlaps() {
+        List<Map<String, Object>> notes = positions("SELECT N_id, position_x, position_y FROM notiz ORDER BY N_id");
+        RectQuadtree placed = new RectQuadtree(0, 0, 20000, 20000);
+        for (Map<String, Object> note : notes) {
+            RectQuadtree.Rect rect = new RectQuadtree.Rect((Integer) note.get("N_id"),
+                    (Integer) note.get("position_x"), (Integer) note.get("position_y"), 100, 50);
+            assertTrue(placed.query(rect).isEmpty(), "Note " + note.get("N_id") + " overlaps another note");
+            placed.insert(rect);
+        }
+    }
+
+    private long[] bounds(String tag) {
+        return jdbcTemplate.queryForObject("SELECT MIN(position_x), MIN(position_y), MAX(position_x) + 100, " +
+                "MAX(position_y) + 50 FROM notiz WHERE Tag = ?", (rs, row) -> new long[] {rs.getLong(1), rs.getLong(2),
+                rs.getLong(3), rs.getLong(4)}, tag);
+    }
+
+    private List<Map<String, Object>> positions(String sql) {
+        return jdbcTemplate.queryForList(sql).stream()
+                .map(row -> Map.<String, Object>of("N_id", row.get("N_ID"), "position_x", row.get("POSITION_X"),
+                        "position_y", row.get("POSITION_Y")))
+                .toList();
+    }
+
+    private void insert(int ownerId, String tag, int x, int y) {
+        jdbcTemplate.update("INSERT INTO notiz (B_id, Tag, position_x, position_y) VALUES (?, ?, ?, ?)", ownerId, tag, x, y);
+    }
+}
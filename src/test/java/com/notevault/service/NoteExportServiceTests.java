@@ -0,0 +1,177 @@
+package com.notevault.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.notevault.model.CompressedTextConverter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class NoteExportServiceTests {
+
+    @TempDir
+    Path uploads;
+
+    private JdbcTemplate jdbcTemplate;
+    private NoteExportService exportService;
+
+    @BeforeEach
+    void setUp() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(
+                "jdbc:h2:mem:export;MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TABLE notiz (N_id INT AUTO_INCREMENT PRIMARY KEY, Titel VARCHAR(255), " +
+                "Tag VARCHAR(255), Inhalt CLOB, B_id INT, position_x INT, position_y INT, color VARCHAR(20), " +
+                "note_type VARCHAR(20), privacy_level VARCHAR(20), shared_with VARCHAR(255), " +
+                "editing_permission VARCHAR(20), image_paths CLOB)");
+
+        exportService = new NoteExportService(jdbcTemplate);
+        ReflectionTestUtils.setField(exportService, "uploadsDir", uploads.toString());
+        ReflectionTestUtils.setField(exportService, "fetchSize", 500);
+    }
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.execute("DROP ALL OBJECTS");
+    }
+
+    @Test
+    void exportsNotesAndReferencedFilesOfOneUser() throws Exception {
+        Path image = Files.write(Files.createDirectories(uploads.resolve("images")).resolve("cat.png"),
+                new byte[] {1, 2, 3, 4});
+        String bigContent = "x".repeat(CompressedTextConverter.COMPRESSION_THRESHOLD * 2);
+        insertNote("First", CompressedTextConverter.encode(bigContent), 1, "text", image + ",https://example.com/a.png");
+        insertNote("Second", "# Code", 1, "code", image.toString());
+        insertNote("Other user", "hidden", 2, "text", null);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        NoteExportService.ExportStats stats = exportService.export(1, NoteExportService.FORMAT_JSON, out);
+
+        Map<String, byte[]> entries = unzip(out.toByteArray());
+        assertEquals(2, stats.getNotes());
+        assertEquals(1, stats.getFiles());
+        assertEquals(List.of("files/images/cat.png", "notes/1.json", "notes/2.json", "manifest.json"),
+                new ArrayList<>(entries.keySet()));
+        assertEquals(4, entries.get("files/images/cat.png").length);
+
+        JsonNode first = new ObjectMapper().readTree(entries.get("notes/1.json"));
+        assertEquals("First", first.get("title").asText());
+        assertEquals(bigContent, first.get("content").asText());
+        assertEquals("files/images/cat.png", first.get("files").get(0).asText());
+        assertEquals(1, first.get("files").size());
+    }
+
+    @Test
+    void writesMarkdownWithFrontMatter() throws Exception {
+        insertNote("Snippet", "int x = 1;", 1, "code", null);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        exportService.export(null, NoteExportService.FORMAT_MARKDOWN, out);
+
+        String markdown = new String(unzip(out.toByteArray()).get("notes/1.md"), StandardCharsets.UTF_8);
+        assertTrue(markdown.startsWith("---\nid: 1\n"));
+        assertTrue(markdown.contains("# Snippet\n\n```\nint x = 1;\n```\n"));
+    }
+
+    /**
+     * Exports 50,000 notes and 3 GB of images and checks that heap use stays flat.
+     * Run with -Dbenchmark=true.
+     */
+    @Test
+    @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+    void exportsLargeLibraryInConstantMemory() throws Exception {
+        Path images = Files.createDirectories(uploads.resolve("images"));
+        List<String> imagePaths = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Path image = images.resolve("large-" + i + ".png");
+            try (RandomAccessFile file = new RandomAccessFile(image.toFile(), "rw")) {
+                file.setLength(1024L * 1024 * 1024);
+            }
+            imagePaths.add(image.toString());
+        }
+        String content = "Lorem ipsum dolor sit amet. ".repeat(40);
+        jdbcTemplate.batchUpdate("INSERT INTO notiz (Titel, Inhalt, B_id, note_type, image_paths) VALUES (?, ?, 1, 'text', ?)",
+                new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        ps.setString(1, "Note " + i);
+                        ps.setString(2, content);
+                        ps.setString(3, i % 1000 == 0 ? imagePaths.get(i / 1000 % 3) : null);
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return 50_000;
+                    }
+                });
+
+        System.gc();
+        Runtime runtime = Runtime.getRuntime();
+        long heapBefore = runtime.totalMemory() - runtime.freeMemory();
+        long[] written = new long[1];
+        long[] peakHeap = new long[1];
+        OutputStream sink = new OutputStream() {
+            @Override
+            public void write(int b) {
+                written[0]++;
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                written[0] += len;
+                peakHeap[0] = Math.max(peakHeap[0], runtime.totalMemory() - runtime.freeMemory());
+            }
+        };
+
+        long start = System.nanoTime();
+        NoteExportService.ExportStats stats = exportService.export(1, NoteExportService.FORMAT_JSON, sink);
+        long millis = (System.nanoTime() - start) / 1_000_000;
+
+        assertEquals(50_000, stats.getNotes());
+        assertEquals(3, stats.getFiles());
+        assertTrue(written[0] > 3L * 1024 * 1024 * 1024);
+        System.out.printf("Exported %d notes and %d MB in %d ms, heap grew by at most %d MB%n",
+                stats.getNotes(), written[0] / (1024 * 1024), millis, (peakHeap[0] - heapBefore) / (1024 * 1024));
+    }
+
+    private void insertNote(String title, String content, int userId, String type, String imagePaths) {
+        jdbcTemplate.update("INSERT INTO notiz (Titel, Inhalt, B_id, note_type, privacy_level, image_paths) " +
+                "VALUES (?, ?, ?, ?, 'private', ?)", title, content, userId, type, imagePaths);
+    }
+
+    private static Map<String, byte[]> unzip(byte[] archive) throws Exception {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(archive))) {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                entries.put(entry.getName(), zip.readAllBytes());
+            }
+        }
+        return entries;
+    }
+}
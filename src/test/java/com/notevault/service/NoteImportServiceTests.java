@@ -0,0 +1,199 @@
+package com.notevault.service;
+
+import com.notevault.model.CompressedTextConverter;
+import com.notevault.model.User;
+import com.notevault.repository.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class NoteImportServiceTests {
+
+    @Mock
+    private UserRepository users;
+
+    @Mock
+    private NoteService noteService;
+
+    private JdbcTemplate jdbcTemplate;
+    private NoteExportService exportService;
+    private NoteImportService importService;
+
+    @BeforeEach
+    void setUp() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(
+                "jdbc:h2:mem:import;MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TABLE tags (id INT AUTO_INCREMENT PRIMARY KEY, name VARCHAR(100) UNIQUE)");
+        jdbcTemplate.execute("CREATE TABLE note_tags (id BIGINT AUTO_INCREMENT PRIMARY KEY, note_id INT, tag_id INT)");
+        jdbcTemplate.execute("CREATE TABLE id_sequence (name VARCHAR(64) PRIMARY KEY, next_value BIGINT NOT NULL)");
+        jdbcTemplate.execute("CREATE TABLE notiz (N_id INT AUTO_INCREMENT PRIMARY KEY, Titel VARCHAR(255), " +
+                "Tag VARCHAR(255), Inhalt CLOB, version INT, rendered_html CLOB, B_id INT, position_x INT, " +
+                "position_y INT, color VARCHAR(20), note_type VARCHAR(20), privacy_level VARCHAR(20), " +
+                "shared_with VARCHAR(255), has_images BOOLEAN, image_paths CLOB, editing_permission VARCHAR(20))");
+
+        exportService = new NoteExportService(jdbcTemplate);
+        ReflectionTestUtils.setField(exportService, "uploadsDir", "uploads");
+        ReflectionTestUtils.setField(exportService, "fetchSize", 500);
+
+        NoteRenderingService renderingService = new NoteRenderingService();
+        ReflectionTestUtils.setField(renderingService, "cacheSize", 10);
+        renderingService.init();
+        when(users.findById(anyInt())).thenAnswer(invocation -> {
+            User user = new User();
+            user.setId(invocation.getArgument(0));
+            user.setUsername("user" + invocation.getArgument(0));
+            return Optional.of(user);
+        });
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+        IdBlockAllocator idBlockAllocator = new IdBlockAllocator(jdbcTemplate, transactionManager);
+        idBlockAllocator.init();
+        importService = new NoteImportService(jdbcTemplate, new TransactionTemplate(transactionManager), users, null,
+                renderingService, idBlockAllocator, noteService);
+        ReflectionTestUtils.setField(importService, "batchSize", 2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.execute("DROP ALL OBJECTS");
+    }
+
+    @Test
+    void importsWhatWasExported() throws Exception {
+        String bigContent = "y".repeat(CompressedTextConverter.COMPRESSION_THRESHOLD * 2);
+        jdbcTemplate.update("INSERT INTO notiz (Titel, Tag, Inhalt, B_id, color, note_type, privacy_level, editing_permission) " +
+                "VALUES ('Plain', 'work', ?, 1, '#ffffff', 'text', 'everyone', 'collaborative')",
+                CompressedTextConverter.encode(bigContent));
+        jdbcTemplate.update("INSERT INTO notiz (Titel, Tag, Inhalt, B_id, note_type, privacy_level, editing_permission) " +
+                "VALUES ('Snippet', '', 'int x = 1;\nreturn x;', 1, 'code', 'private', 'creator_only')");
+        jdbcTemplate.update("INSERT INTO notiz (Titel, Tag, Inhalt, B_id, note_type, privacy_level, editing_permission) " +
+                "VALUES ('Rich', 'misc', '<p>Hello</p>', 1, 'rich', 'some_people', 'creator_only')");
+
+        for (String format : List.of(NoteExportService.FORMAT_JSON, NoteExportService.FORMAT_MARKDOWN)) {
+            ByteArrayOutputStream archive = new ByteArrayOutputStream();
+            exportService.export(1, format, archive);
+
+            List<Map<String, Object>> events = new ArrayList<>();
+            NoteImportService.ImportStats stats = importService.importArchive(2,
+                    new ByteArrayInputStream(archive.toByteArray()), events::add);
+
+            assertEquals(3, stats.getNotes(), format);
+            assertEquals(0, stats.getErrors(), format);
+            assertEquals("done", events.get(events.size() - 1).get("type"));
+            assertEquals(List.of("progress", "progress", "done"), events.stream().map(e -> e.get("type")).toList());
+
+            List<Map<String, Object>> imported = jdbcTemplate.queryForList(
+                    "SELECT * FROM notiz WHERE B_id = 2 ORDER BY N_id");
+            assertEquals(bigContent, CompressedTextConverter.decode((String) imported.get(0).get("Inhalt")), format);
+            assertEquals("work", imported.get(0).get("Tag"));
+            assertEquals("everyone", imported.get(0).get("privacy_level"));
+            assertEquals("collaborative", imported.get(0).get("editing_permission"));
+            assertEquals("Snippet", imported.get(1).get("Titel"));
+            assertEquals("int x = 1;\nreturn x;", imported.get(1).get("Inhalt"), format);
+            assertTrue(((String) imported.get(1).get("rendered_html")).startsWith("<pre class=\"code-highlight\">"));
+            assertEquals("<p>Hello</p>", imported.get(2).get("rendered_html"));
+            assertEquals(1, imported.get(2).get("version"));
+            jdbcTemplate.update("DELETE FROM notiz WHERE B_id = 2");
+        }
+    }
+
+    @Test
+    void reportsBrokenEntriesAndKeepsGoing() throws Exception {
+        ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(archive)) {
+            writeEntry(zip, "notes/1.json", "{\"title\": \"ok\", \"content\": \"fine\"}");
+            writeEntry(zip, "notes/2.json", "{not json");
+            writeEntry(zip, "notes/3.json", "{\"title\": \"image\", \"files\": [\"files/missing.png\"]}");
+        }
+
+        List<Map<String, Object>> events = new ArrayList<>();
+        NoteImportService.ImportStats stats = importService.importArchive(1,
+                new ByteArrayInputStream(archive.toByteArray()), events::add);
+
+        assertEquals(1, stats.getNotes());
+        assertEquals(2, stats.getErrors());
+        assertEquals("notes/2.json", events.get(0).get("entry"));
+        assertEquals("Missing file files/missing.png", events.get(1).get("message"));
+        verify(noteService).notesCreated(argThat(notes -> notes.keySet().equals(Set.of(importedId()))));
+    }
+
+    @Test
+    void compressesLargeRenderedHtml() throws Exception {
+        String code = "int x = 1;\n".repeat(CompressedTextConverter.COMPRESSION_THRESHOLD / 4);
+        ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(archive)) {
+            writeEntry(zip, "notes/1.json", "{\"title\": \"code\", \"noteType\": \"code\", \"content\": \"" +
+                    code.replace("\n", "\\n") + "\"}");
+        }
+        importService.importArchive(1, new ByteArrayInputStream(archive.toByteArray()), event -> { });
+
+        String stored = jdbcTemplate.queryForObject("SELECT rendered_html FROM notiz", String.class);
+        assertTrue(CompressedTextConverter.isEncoded(stored));
+        assertTrue(CompressedTextConverter.decode(stored).startsWith("<pre class=\"code-highlight\">"));
+    }
+
+    /**
+     * Imports 100,000 notes. Run with -Dbenchmark=true.
+     */
+    @Test
+    @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+    void importsOneHundredThousandNotes() throws Exception {
+        ReflectionTestUtils.setField(importService, "batchSize", 500);
+        ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(archive)) {
+            for (int i = 0; i < 100_000; i++) {
+                writeEntry(zip, "notes/" + i + ".json", "{\"id\": " + i + ", \"title\": \"Note " + i + "\", " +
+                        "\"tag\": \"import\", \"content\": \"Lorem ipsum dolor sit amet, consectetur adipiscing elit.\", " +
+                        "\"noteType\": \"" + (i % 10 == 0 ? "code" : "text") + "\", \"privacyLevel\": \"private\"}");
+            }
+        }
+
+        long start = System.nanoTime();
+        NoteImportService.ImportStats stats = importService.importArchive(1,
+                new ByteArrayInputStream(archive.toByteArray()), event -> { });
+        long millis = (System.nanoTime() - start) / 1_000_000;
+
+        assertEquals(100_000, stats.getNotes());
+        assertEquals(100_000, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM notiz", Integer.class));
+        System.out.printf("Imported %d notes in %d ms%n", stats.getNotes(), millis);
+        assertTrue(millis < 60_000);
+    }
+
+    private int importedId() {
+        return jdbcTemplate.queryForObject("SELECT N_id FROM notiz", Integer.class);
+    }
+
+    private static void writeEntry(ZipOutputStream zip, String name, String content) throws Exception {
+        zip.putNextEntry(new ZipEntry(name));
+        zip.write(content.getBytes(StandardCharsets.UTF_8));
+        zip.closeEntry();
+    }
+}
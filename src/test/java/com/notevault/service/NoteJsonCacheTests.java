@@ -0,0 +1,207 @@
+package com.notevault.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.notevault.dto.NoteDTO;
+import com.notevault.invalidation.InvalidationEvent;
+import com.notevault.model.Note;
+import com.notevault.model.User;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class NoteJsonCacheTests {
+
+    private static final TypeReference<List<NoteDTO>> NOTE_LIST = new TypeReference<>() {};
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ObjectMapper cborMapper = new CBORMapper();
+    private ImageDerivativeService imageDerivativeService;
+    private NoteJsonCache noteJsonCache;
+
+    @BeforeEach
+    void setUp() {
+        imageDerivativeService = spy(new ImageDerivativeService());
+        noteJsonCache = new NoteJsonCache(objectMapper, imageDerivativeService);
+        ReflectionTestUtils.setField(noteJsonCache, "cacheSize", 10);
+        noteJsonCache.init();
+    }
+
+    @Test
+    void writesTheSameJsonAsJackson() throws Exception {
+        List<Note> notes = List.of(note(1, "Plans", "café \"quoted\"\n"), note(2, "Empty", ""));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        noteJsonCache.writeArray(notes, out);
+        assertArrayEquals(objectMapper.writeValueAsBytes(notes.stream().map(NoteJsonCacheTests::dto).collect(Collectors.toList())),
+                out.toByteArray());
+
+        ByteArrayOutputStream empty = new ByteArrayOutputStream();
+        noteJsonCache.writeArray(List.of(), empty);
+        assertEquals("[]", empty.toString());
+
+        String response = objectMapper.writeValueAsString(Map.of("note", noteJsonCache.toRawJson(notes.get(0))));
+        assertEquals(objectMapper.writeValueAsString(Map.of("note", dto(notes.get(0)))), response);
+    }
+
+    @Test
+    void reusesJsonUntilTheNoteChanges() throws Exception {
+        Note note = note(1, "Plans", "text");
+        byte[] first = noteJsonCache.toJson(note);
+        assertSame(first, noteJsonCache.toJson(note(1, "Plans", "text")));
+
+        // Moving a note does not change its version, but still changes its JSON
+        note.setPositionX(300);
+        byte[] moved = noteJsonCache.toJson(note);
+        assertNotSame(first, moved);
+        assertEquals(300, objectMapper.readTree(moved).get("positionX").asInt());
+
+        note.setContent("edited");
+        note.setVersion(2);
+        assertEquals("edited", objectMapper.readTree(noteJsonCache.toJson(note)).get("content").asText());
+    }
+
+    @Test
+    void hitsDoNotResolveThumbnails() {
+        Note note = note(1, "Plans", "text");
+        byte[] first = noteJsonCache.toJson(note);
+        clearInvocations(imageDerivativeService);
+
+        assertSame(first, noteJsonCache.toJson(note(1, "Plans", "text")));
+        verify(imageDerivativeService, never()).thumbnailPath(any(), anyInt());
+        verify(imageDerivativeService, never()).thumbnailPaths(any(), anyInt());
+    }
+
+    @Test
+    void dropsTheNotesOfAChangedUser() throws Exception {
+        Note note = note(1, "Plans", "text");
+        byte[] first = noteJsonCache.toJson(note);
+        Note other = note(2, "Other", "text");
+        other.getUser().setId(8);
+        byte[] otherFirst = noteJsonCache.toJson(other);
+
+        note.getUser().setDisplayName("Alice");
+        noteJsonCache.userChanged(7);
+        byte[] renamed = noteJsonCache.toJson(note);
+        assertNotSame(first, renamed);
+        assertEquals("Alice", objectMapper.readTree(renamed).get("authorDisplayName").asText());
+        assertSame(otherFirst, noteJsonCache.toJson(other));
+
+        // The same change made on another node
+        noteJsonCache.onInvalidation(InvalidationEvent.user(8));
+        assertNotSame(otherFirst, noteJsonCache.toJson(other));
+    }
+
+    @Test
+    void rebuildsOnceThumbnailsAreGenerated() {
+        Note note = note(1, "Photo", "text");
+        note.setHasImages(true);
+        note.setImagePaths("uploads/photo.png");
+        byte[] first = noteJsonCache.toJson(note);
+        assertSame(first, noteJsonCache.toJson(note));
+
+        when(imageDerivativeService.thumbnailsGenerated()).thenReturn(1L);
+        assertNotSame(first, noteJsonCache.toJson(note));
+    }
+
+    @Test
+    void writesCborThatDecodesToTheSameNotes() throws Exception {
+        List<Note> notes = List.of(note(1, "Plans", "café \"quoted\"\n"), note(2, "Empty", ""));
+        List<NoteDTO> expected = notes.stream().map(NoteJsonCacheTests::dto).collect(Collectors.toList());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        noteJsonCache.writeCborArray(notes, out);
+        assertEquals(expected, cborMapper.readValue(out.toByteArray(), NOTE_LIST));
+
+        ByteArrayOutputStream empty = new ByteArrayOutputStream();
+        noteJsonCache.writeCborArray(List.of(), empty);
+        assertEquals(List.of(), cborMapper.readValue(empty.toByteArray(), NOTE_LIST));
+    }
+
+    @Test
+    @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+    void comparesJsonAndCborForLargeBoards() throws Exception {
+        ReflectionTestUtils.setField(noteJsonCache, "cacheSize", 20_000);
+        noteJsonCache.init();
+        List<Note> notes = new ArrayList<>();
+        for (int i = 1; i <= 10_000; i++) {
+            Note note = note(i, "Note " + i, "Lorem ipsum dolor sit amet, consectetur adipiscing elit. ".repeat(4));
+            note.setPositionX(i % 100 * 300);
+            note.setPositionY(i / 100 * 220);
+            note.setTag("work,ideas");
+            notes.add(note);
+        }
+
+        for (String format : List.of("json", "cbor")) {
+            ObjectMapper mapper = format.equals("json") ? objectMapper : cborMapper;
+            byte[] body = write(format, notes);
+            for (int i = 0; i < 5; i++) {
+                write(format, notes);
+                mapper.readValue(body, NOTE_LIST);
+            }
+
+            long start = System.nanoTime();
+            for (int i = 0; i < 20; i++) {
+                write(format, notes);
+            }
+            long writeNanos = (System.nanoTime() - start) / 20;
+            start = System.nanoTime();
+            for (int i = 0; i < 20; i++) {
+                mapper.readValue(body, NOTE_LIST);
+            }
+            long parseNanos = (System.nanoTime() - start) / 20;
+            System.out.printf("%s: %d notes, %d bytes, write %.1f ms, parse %.1f ms%n",
+                    format, notes.size(), body.length, writeNanos / 1e6, parseNanos / 1e6);
+            assertEquals(notes.size(), mapper.readValue(body, NOTE_LIST).size());
+        }
+    }
+
+    private byte[] write(String format, List<Note> notes) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        if (format.equals("json")) {
+            noteJsonCache.writeArray(notes, out);
+        } else {
+            noteJsonCache.writeCborArray(notes, out);
+        }
+        return out.toByteArray();
+    }
+
+    // The notes have no images, so there are no thumbnails to resolve
+    private static NoteDTO dto(Note note) {
+        return NoteDTO.fromNote(note, null, null);
+    }
+
+    private static Note note(int id, String title, String content) {
+        User user = new User();
+        user.setId(7);
+        user.setUsername("alice");
+        Note note = new Note();
+        note.setId(id);
+        note.setTitle(title);
+        note.setContent(content);
+        note.setPositionX(10);
+        note.setPositionY(20);
+        note.setUser(user);
+        return note;
+    }
+}
@@ -0,0 +1,67 @@
+package com.notevault.service;
+
+import com.notevault.model.Note;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class NoteRenderingServiceTests {
+
+    private NoteRenderingService renderingService;
+
+    @BeforeEach
+    void setUp() {
+        renderingService = new NoteRenderingService();
+        ReflectionTestUtils.setField(renderingService, "cacheSize", 10);
+        renderingService.init();
+    }
+
+    @Test
+    void keepsAllowedMarkupAndDropsScripts() {
+        String html = renderingService.render(Note.NoteType.rich,
+                "<p onclick=\"x()\">Hi <b>there</b><script>alert(1)</script><style>p{}</style>"
+                        + "<a href=\"https://example.com/?a=1&amp;b=2\" style=\"x\">link</a>");
+        assertEquals("<p>Hi <b>there</b><a href=\"https://example.com/?a=1&amp;b=2\" "
+                + "rel=\"nofollow noopener noreferrer\">link</a></p>", html);
+    }
+
+    @Test
+    void rejectsScriptUrlsAndUnknownTags() {
+        String html = renderingService.render(Note.NoteType.rich,
+                "<a href=\"jav&#x09;ascript:alert(1)\">a</a><img src=x onerror=alert(1)>"
+                        + "<iframe src=\"https://evil\"></iframe><custom>text</custom> 1 < 2 & 3");
+        assertFalse(html.contains("javascript"));
+        assertFalse(html.contains("onerror"));
+        assertFalse(html.contains("iframe"));
+        assertTrue(html.endsWith("text 1 &lt; 2 &amp; 3"));
+    }
+
+    @Test
+    void closesUnbalancedTags() {
+        assertEquals("<ul><li>one</li></ul>", renderingService.render(Note.NoteType.rich, "<ul><li>one</ul></div>"));
+        assertEquals("<b>bold</b>", renderingService.render(Note.NoteType.rich, "<b>bold"));
+    }
+
+    @Test
+    void highlightsCodeAndEscapesIt() {
+        String html = renderingService.render(Note.NoteType.code, "if (a < 1) return \"<b>\"; // done");
+        assertTrue(html.startsWith("<pre class=\"code-highlight\"><code>"));
+        assertTrue(html.contains("<span class=\"tok-keyword\">if</span>"));
+        assertTrue(html.contains("<span class=\"tok-string\">&quot;&lt;b&gt;&quot;</span>"));
+        assertTrue(html.contains("<span class=\"tok-comment\">// done</span>"));
+        assertTrue(html.contains("a &lt; <span class=\"tok-number\">1</span>"));
+    }
+
+    @Test
+    void cachesByContentAndSkipsPlainText() {
+        String first = renderingService.render(Note.NoteType.code, "int x = 1;");
+        assertSame(first, renderingService.render(Note.NoteType.code, "int x = 1;"));
+        assertNull(renderingService.render(Note.NoteType.text, "<b>plain</b>"));
+    }
+}
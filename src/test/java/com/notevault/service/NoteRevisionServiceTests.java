@@ -0,0 +1,110 @@
+package com.notevault.service;
+
+import com.notevault.model.Note;
+import com.notevault.model.NoteRevision;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@DataJpaTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:revisions;MODE=MySQL;DB_CLOSE_DELAY=-1",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.hibernate.ddl-auto=create-drop"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import(NoteRevisionService.class)
+class NoteRevisionServiceTests {
+
+    private static final int NOTE_ID = 10;
+
+    @Autowired
+    private NoteRevisionService noteRevisionService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.update("DELETE FROM note_revisions");
+    }
+
+    @Test
+    void rebuildsAcrossSnapshotBoundaries() {
+        for (int version = 1; version <= 45; version++) {
+            record(version);
+        }
+
+        // Every 20th revision after the first is stored in full
+        assertEquals(List.of(1, 21, 41), snapshots());
+        for (int version : new int[] {1, 2, 19, 20, 21, 22, 40, 41, 45}) {
+            assertEquals(content(version), noteRevisionService.rebuild(NOTE_ID, version), "revision " + version);
+        }
+        assertEquals(45, noteRevisionService.listRevisions(NOTE_ID).size());
+    }
+
+    @Test
+    void dropsOldRevisionsBeyondTheLimit() {
+        // Version 31 never got a revision (a lost concurrent write), so 32 starts a new chain
+        for (int version = 1; version <= 250; version++) {
+            if (version != 31) {
+                record(version);
+            }
+        }
+
+        // Pruned to the newest 200 in steps of 20; 41 was a delta and is now a snapshot
+        List<NoteRevision> revisions = noteRevisionService.listRevisions(NOTE_ID);
+        assertEquals(210, revisions.size());
+        assertEquals(41, revisions.get(revisions.size() - 1).getRevisionNumber());
+        assertTrue(noteRevisionService.getRevision(NOTE_ID, 41).getSnapshot());
+        assertFalse(noteRevisionService.getRevision(NOTE_ID, 42).getSnapshot());
+        assertThrows(RuntimeException.class, () -> noteRevisionService.getRevision(NOTE_ID, 40));
+
+        for (int version : new int[] {41, 42, 51, 52, 250}) {
+            assertEquals(content(version), noteRevisionService.rebuild(NOTE_ID, version), "revision " + version);
+        }
+        assertEquals(9, noteRevisionService.deltasBetween(NOTE_ID, 41, 50).size());
+    }
+
+    private void record(int version) {
+        Note note = new Note();
+        note.setId(NOTE_ID);
+        note.setTitle("Plans");
+        note.setVersion(version);
+        note.setContent(content(version));
+        noteRevisionService.recordRevision(note, version > 1 ? content(version - 1) : null, 1);
+    }
+
+    private List<Integer> snapshots() {
+        return noteRevisionService.listRevisions(NOTE_ID).stream()
+                .filter(NoteRevision::getSnapshot)
+                .map(NoteRevision::getRevisionNumber)
+                .sorted()
+                .collect(Collectors.toList());
+    }
+
+    // Each version appends a line and edits the first one
+    private static String content(int version) {
+        return "Edited " + version + " times\n" + IntStream.rangeClosed(1, version)
+                .mapToObj(line -> "line " + line)
+                .collect(Collectors.joining("\n"));
+    }
+}
@@ -0,0 +1,225 @@
+package com.notevault.service;
+
+import com.notevault.invalidation.InvalidationBus;
+import com.notevault.model.CompressedTextConverter;
+import com.notevault.model.Note;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.orm.jpa.EntityManagerHolder;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.when;
+
+@DataJpaTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:notes;MODE=MySQL;DB_CLOSE_DELAY=-1",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.hibernate.ddl-auto=create-drop"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+// Writes have to commit for the version checks to see each other
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import({NoteService.class, NoteRevisionService.class})
+class NoteServiceTests {
+
+    private static final int OWNER_ID = 1;
+    private static final int NOTE_ID = 10;
+
+    @Autowired
+    private NoteService noteService;
+
+    @Autowired
+    private NoteRevisionService noteRevisionService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @MockBean
+    private NoteRenderingService noteRenderingService;
+    @MockBean
+    private FileStorageService fileStorageService;
+    @MockBean
+    private AttachmentService attachmentService;
+    @MockBean
+    private TagFacetService tagFacetService;
+    @MockBean
+    private TagIndexService tagIndexService;
+    @MockBean
+    private PublicFeedService publicFeedService;
+    @MockBean
+    private PublicNoteSnapshotService publicNoteSnapshotService;
+    @MockBean
+    private NoteRowMapper noteRowMapper;
+    @MockBean
+    private SingleFlight singleFlight;
+    @MockBean
+    private InvalidationBus invalidationBus;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate.update("INSERT INTO nutzer (id, benutzername, passwort, email, b_id, is_admin, is_banned, " +
+                "email_verified) VALUES (?, 'alice', 'secret', 'alice@example.com', 0, FALSE, FALSE, TRUE)", OWNER_ID);
+        jdbcTemplate.update("INSERT INTO notiz (N_id, Titel, Tag, Inhalt, B_id, version, note_type, privacy_level, " +
+                        "editing_permission) VALUES (?, 'Plans', '', ?, ?, 1, 'text', 'private', 'creator_only')",
+                NOTE_ID, CompressedTextConverter.encode("hello world"), OWNER_ID);
+    }
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.update("DELETE FROM note_revisions");
+        jdbcTemplate.update("DELETE FROM notiz");
+        jdbcTemplate.update("DELETE FROM nutzer");
+    }
+
+    @Test
+    void rebasesPatchesMadeAgainstAnOlderVersion() {
+        NoteService.ContentPatch first = patch(1, new TextDelta(5, 0, " big"));
+        assertFalse(first.isConflict());
+        assertEquals(2, first.getVersion());
+
+        // Made against version 1, so the append has to move past " big"
+        NoteService.ContentPatch second = patch(1, new TextDelta(11, 0, "!"));
+        assertFalse(second.isConflict());
+        assertEquals(3, second.getVersion());
+        assertEquals("hello big world!", content());
+        assertEquals(content(), noteRevisionService.rebuild(NOTE_ID, 3));
+        assertEquals("hello big world", noteRevisionService.rebuild(NOTE_ID, 2));
+
+        // The returned operations turn the client's version 1 into version 3
+        String client = "hello world";
+        for (TextDelta operation : second.getOperations()) {
+            client = operation.apply(client);
+        }
+        assertEquals(content(), client);
+    }
+
+    @Test
+    void reportsAConflictWhenTheBaseVersionIsUnknown() {
+        NoteService.ContentPatch patch = patch(5, new TextDelta(0, 0, "x"));
+        assertTrue(patch.isConflict());
+        assertEquals(1, patch.getVersion());
+        assertEquals("hello world", patch.getContent());
+        assertEquals("hello world", content());
+    }
+
+    @Test
+    void updateLosesToAPatchThatLandedAfterItWasRead() {
+        // The patch runs while the update is between reading and saving the note
+        doAnswer(invocation -> {
+            patch(1, new TextDelta(0, 5, "goodbye"));
+            return null;
+        }).when(noteRenderingService).renderNote(any(Note.class));
+
+        Map<String, Object> update = new HashMap<>();
+        update.put("title", "Plans");
+        update.put("tag", "");
+        update.put("content", "overwritten");
+        assertThrows(NoteService.VersionConflictException.class,
+                () -> request(() -> noteService.updateEnhancedNote(NOTE_ID, update, OWNER_ID)));
+
+        assertEquals("goodbye world", content());
+        assertEquals(2, version());
+        assertEquals(content(), noteRevisionService.rebuild(NOTE_ID, 2));
+
+        // Retried on top of the patch, the update gets the next version and its own revision
+        doAnswer(invocation -> null).when(noteRenderingService).renderNote(any(Note.class));
+        request(() -> noteService.updateEnhancedNote(NOTE_ID, update, OWNER_ID));
+        assertEquals("overwritten", content());
+        assertEquals(3, version());
+        assertEquals("overwritten", noteRevisionService.rebuild(NOTE_ID, 3));
+
+        // A patch still based on version 2 is rebased onto the update
+        NoteService.ContentPatch patch = patch(2, new TextDelta(13, 0, "!"));
+        assertFalse(patch.isConflict());
+        assertEquals(4, patch.getVersion());
+        assertEquals(content(), noteRevisionService.rebuild(NOTE_ID, 4));
+    }
+
+    @Test
+    void restoringARevisionWritesItAsANewVersion() {
+        patch(1, new TextDelta(5, 0, " big"));
+        patch(2, new TextDelta(0, 5, "goodbye"));
+        assertEquals("goodbye big world", content());
+
+        request(() -> noteService.restoreRevision(NOTE_ID, 1, OWNER_ID));
+        assertEquals("hello world", content());
+        assertEquals(4, version());
+        assertEquals("hello world", noteRevisionService.rebuild(NOTE_ID, 4));
+        assertEquals("goodbye big world", noteRevisionService.rebuild(NOTE_ID, 3));
+        assertThrows(RuntimeException.class, () -> request(() -> noteService.restoreRevision(NOTE_ID, 9, OWNER_ID)));
+    }
+
+    @Test
+    void tagSearchChecksAccessToIndexedNotes() {
+        jdbcTemplate.update("INSERT INTO nutzer (id, benutzername, passwort, email, b_id, is_admin, is_banned, " +
+                "email_verified) VALUES (2, 'bob', 'secret', 'bob@example.com', 0, FALSE, FALSE, TRUE)");
+        // Unshared from bob on another node, which this node's index has not caught up with
+        jdbcTemplate.update("INSERT INTO notiz (N_id, Titel, Tag, Inhalt, B_id, version, note_type, privacy_level, " +
+                "shared_with, editing_permission) VALUES (11, 'Secret', 'plans', '', ?, 1, 'text', 'private', " +
+                "'bob', 'creator_only')", OWNER_ID);
+        when(tagIndexService.findNoteIds(eq(2), anyString())).thenReturn(new int[] {11});
+
+        assertTrue(request(() -> noteService.searchNotes(2, null, "plans")).isEmpty());
+
+        jdbcTemplate.update("UPDATE notiz SET privacy_level = 'some_people' WHERE N_id = 11");
+        assertEquals(1, request(() -> noteService.searchNotes(2, null, "plans")).size());
+    }
+
+    private NoteService.ContentPatch patch(int baseVersion, TextDelta operation) {
+        return request(() -> noteService.patchContent(NOTE_ID, baseVersion, List.of(operation), OWNER_ID));
+    }
+
+    // Runs the call with its own EntityManager, like a request with open-in-view
+    private <T> T request(Supplier<T> call) {
+        Object outer = TransactionSynchronizationManager.unbindResourceIfPossible(entityManagerFactory);
+        EntityManager entityManager = entityManagerFactory.createEntityManager();
+        TransactionSynchronizationManager.bindResource(entityManagerFactory, new EntityManagerHolder(entityManager));
+        try {
+            return call.get();
+        } finally {
+            TransactionSynchronizationManager.unbindResource(entityManagerFactory);
+            entityManager.close();
+            if (outer != null) {
+                TransactionSynchronizationManager.bindResource(entityManagerFactory, outer);
+            }
+        }
+    }
+
+    private String content() {
+        return CompressedTextConverter.decode(jdbcTemplate.queryForObject(
+                "SELECT Inhalt FROM notiz WHERE N_id = ?", String.class, NOTE_ID));
+    }
+
+    private int version() {
+        return jdbcTemplate.queryForObject("SELECT version FROM notiz WHERE N_id = ?", Integer.class, NOTE_ID);
+    }
+}
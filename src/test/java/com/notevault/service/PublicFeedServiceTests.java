@@ -0,0 +1,91 @@
+package com.notevault.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class PublicFeedServiceTests {
+
+    private JdbcTemplate jdbcTemplate;
+    private PublicFeedService publicFeedService;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = new JdbcTemplate(new DriverManagerDataSource(
+                "jdbc:h2:mem:feed;MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", ""));
+        jdbcTemplate.execute("CREATE TABLE nutzer (id INT PRIMARY KEY, benutzername VARCHAR(20))");
+        jdbcTemplate.execute("CREATE TABLE notiz (N_id INT AUTO_INCREMENT PRIMARY KEY, B_id INT, Titel VARCHAR(255), " +
+                "Tag VARCHAR(255), Inhalt MEDIUMTEXT, color VARCHAR(20), note_type VARCHAR(20), privacy_level VARCHAR(20), " +
+                "has_images BOOLEAN, image_paths VARCHAR(255), rendered_html MEDIUMTEXT)");
+        jdbcTemplate.update("INSERT INTO nutzer VALUES (1, 'alice'), (2, 'bob')");
+        publicFeedService = new PublicFeedService(jdbcTemplate, new SingleFlight());
+        ReflectionTestUtils.setField(publicFeedService, "cacheSize", 10);
+        ReflectionTestUtils.setField(publicFeedService, "ttlMs", 60000L);
+        publicFeedService.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.execute("DROP ALL OBJECTS");
+    }
+
+    @Test
+    void pagesThroughPublicNotesNewestFirst() {
+        for (int i = 1; i <= 7; i++) {
+            insert(1, "note " + i, i % 3 == 0 ? "private" : "everyone");
+        }
+        insert(2, "other", "everyone");
+
+        PublicFeedService.FeedPage first = publicFeedService.getPage(1, null, 3);
+        assertEquals(List.of(7, 5, 4), ids(first));
+        assertEquals(4, first.getNextCursor());
+        assertEquals("alice", first.getNotes().get(0).get("authorUsername"));
+
+        PublicFeedService.FeedPage second = publicFeedService.getPage(1, first.getNextCursor(), 3);
+        assertEquals(List.of(2, 1), ids(second));
+        assertNull(second.getNextCursor());
+    }
+
+    @Test
+    void servesFromCacheUntilAPublicNoteChanges() {
+        insert(1, "first", "everyone");
+        PublicFeedService.FeedPage page = publicFeedService.getPage(1, null, 10);
+        assertSame(page, publicFeedService.getPage(1, null, 10));
+
+        // A private note does not change the feed, so the cached page stays
+        insert(1, "draft", "private");
+        publicFeedService.noteChanged(null, new TagFacetService.NoteFacets(1, "alice", "", "text", null, "private", null));
+        assertSame(page, publicFeedService.getPage(1, null, 10));
+
+        jdbcTemplate.update("UPDATE notiz SET Titel = 'renamed' WHERE N_id = 1");
+        TagFacetService.NoteFacets published = new TagFacetService.NoteFacets(1, "alice", "", "text", null, "everyone", null);
+        publicFeedService.noteChanged(published, published);
+        PublicFeedService.FeedPage reloaded = publicFeedService.getPage(1, null, 10);
+        assertEquals("renamed", reloaded.getNotes().get(0).get("title"));
+        assertNotEquals(page.getEtag(), reloaded.getEtag());
+
+        // Unchanged content gives the same ETag, even after the cache was dropped
+        publicFeedService.invalidate(1);
+        assertEquals(reloaded.getEtag(), publicFeedService.getPage(1, null, 10).getEtag());
+    }
+
+    private static List<Integer> ids(PublicFeedService.FeedPage page) {
+        return page.getNotes().stream().map(note -> (Integer) note.get("id")).collect(Collectors.toList());
+    }
+
+    private void insert(int ownerId, String title, String privacyLevel) {
+        jdbcTemplate.update("INSERT INTO notiz (B_id, Titel, Tag, Inhalt, privacy_level) VALUES (?, ?, '', 'text', ?)",
+                ownerId, title, privacyLevel);
+    }
+}
@@ -0,0 +1,122 @@
+package com.notevault.service;
+
+import com.notevault.invalidation.InvalidationEvent;
+import com.notevault.model.Note;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class PublicNoteSnapshotServiceTests {
+
+    private JdbcTemplate jdbcTemplate;
+    private PublicNoteSnapshotService snapshotService;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = new JdbcTemplate(new DriverManagerDataSource(
+                "jdbc:h2:mem:snapshot;MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", ""));
+        jdbcTemplate.execute("CREATE TABLE notiz (N_id INT AUTO_INCREMENT PRIMARY KEY, Titel VARCHAR(255), " +
+                "Tag VARCHAR(255), Inhalt CLOB, version INT, rendered_html CLOB, B_id INT, position_x INT, " +
+                "position_y INT, color VARCHAR(20), note_type VARCHAR(20), privacy_level VARCHAR(20), " +
+                "shared_with VARCHAR(255), has_images BOOLEAN, image_paths CLOB, attachment_ids CLOB)");
+        jdbcTemplate.execute("CREATE TABLE nutzer (id INT PRIMARY KEY, benutzername VARCHAR(20), " +
+                "display_name VARCHAR(50), profile_picture VARCHAR(255), passwort VARCHAR(60))");
+        jdbcTemplate.update("INSERT INTO nutzer VALUES (1, 'user1', NULL, NULL, 'secret'), " +
+                "(2, 'user2', 'User Two', 'uploads/two.png', 'secret')");
+
+        NoteRenderingService renderingService = new NoteRenderingService();
+        ReflectionTestUtils.setField(renderingService, "cacheSize", 10);
+        renderingService.init();
+        snapshotService = new PublicNoteSnapshotService(jdbcTemplate, new NoteRowMapper(renderingService));
+    }
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.execute("DROP ALL OBJECTS");
+    }
+
+    @Test
+    void holdsOnlyPublicNotes() {
+        insert(1, "everyone");
+        insert(1, "private");
+        insert(2, "some_people");
+        insert(2, "everyone");
+
+        List<Note> notes = snapshotService.getNotes();
+        assertEquals(List.of(1, 4), ids(notes));
+        assertEquals("user2", notes.get(1).getUser().getUsername());
+        assertEquals("User Two", notes.get(1).getUser().getDisplayName());
+        assertEquals("uploads/two.png", notes.get(1).getUser().getProfilePicture());
+        // Only what notes show of their authors is kept
+        assertNull(notes.get(1).getUser().getPassword());
+        assertThrows(UnsupportedOperationException.class, () -> notes.remove(0));
+    }
+
+    @Test
+    void appliesChangesCopyOnWrite() {
+        insert(1, "everyone");
+        insert(1, "private");
+        List<Note> before = snapshotService.getNotes();
+
+        // Published, changed and unpublished notes are reloaded; readers keep their old list
+        jdbcTemplate.update("UPDATE notiz SET privacy_level = 'everyone' WHERE N_id = 2");
+        snapshotService.noteChanged(2, facets("private"), facets("everyone"));
+        jdbcTemplate.update("UPDATE notiz SET Titel = 'renamed' WHERE N_id = 1");
+        snapshotService.noteChanged(1, facets("everyone"), facets("everyone"));
+        assertEquals(List.of(1), ids(before));
+        assertEquals(List.of(1, 2), ids(snapshotService.getNotes()));
+        assertEquals("renamed", snapshotService.getNotes().get(0).getTitle());
+
+        jdbcTemplate.update("DELETE FROM notiz WHERE N_id = 1");
+        snapshotService.noteChanged(1, facets("everyone"), null);
+        jdbcTemplate.update("UPDATE notiz SET privacy_level = 'private' WHERE N_id = 2");
+        snapshotService.noteChanged(2, facets("everyone"), facets("private"));
+        assertEquals(List.of(), ids(snapshotService.getNotes()));
+
+        // Private edits are not looked at
+        insert(1, "private");
+        snapshotService.noteChanged(3, null, facets("private"));
+        assertEquals(List.of(), ids(snapshotService.getNotes()));
+        snapshotService.rebuild();
+        assertEquals(List.of(), ids(snapshotService.getNotes()));
+    }
+
+    @Test
+    void reloadsTheNotesOfAChangedUser() {
+        insert(1, "everyone");
+        insert(2, "everyone");
+        assertEquals("user1", snapshotService.getNotes().get(0).getUser().getUsername());
+
+        jdbcTemplate.update("UPDATE nutzer SET benutzername = CONCAT('renamed', id)");
+        snapshotService.userChanged(1);
+        assertEquals("renamed1", snapshotService.getNotes().get(0).getUser().getUsername());
+        assertEquals("user2", snapshotService.getNotes().get(1).getUser().getUsername());
+
+        // The same change made on another node
+        snapshotService.onInvalidation(InvalidationEvent.user(2));
+        assertEquals("renamed2", snapshotService.getNotes().get(1).getUser().getUsername());
+    }
+
+    private static TagFacetService.NoteFacets facets(String privacyLevel) {
+        return new TagFacetService.NoteFacets(1, "user1", "", "text", null, privacyLevel, null);
+    }
+
+    private static List<Integer> ids(List<Note> notes) {
+        return notes.stream().map(Note::getId).collect(Collectors.toList());
+    }
+
+    private void insert(int ownerId, String privacyLevel) {
+        jdbcTemplate.update("INSERT INTO notiz (B_id, Titel, Tag, Inhalt, note_type, privacy_level) " +
+                "VALUES (?, 'title', '', 'text', 'text', ?)", ownerId, privacyLevel);
+    }
+}
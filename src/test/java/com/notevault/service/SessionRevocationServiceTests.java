@@ -0,0 +1,142 @@
+package com.notevault.service;
+
+import com.notevault.config.SessionRevocationFilter;
+import com.notevault.model.SessionRevocation;
+import com.notevault.repository.SessionRevocationRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.FilterType;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.mock.web.MockHttpSession;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SessionRevocationServiceTests {
+
+    private AnnotationConfigApplicationContext nodeA;
+    private AnnotationConfigApplicationContext nodeB;
+
+    @BeforeEach
+    void startNodes() {
+        nodeA = new AnnotationConfigApplicationContext(SharedDatabaseConfig.class);
+        nodeB = new AnnotationConfigApplicationContext(SharedDatabaseConfig.class);
+    }
+
+    @AfterEach
+    void stopNodes() {
+        nodeA.getBean(JdbcTemplate.class).execute("DROP ALL OBJECTS");
+        nodeA.close();
+        nodeB.close();
+    }
+
+    @Test
+    void revocationOnOneNodeReachesTheOther() throws Exception {
+        SessionRevocationService serviceA = nodeA.getBean(SessionRevocationService.class);
+        SessionRevocationService serviceB = nodeB.getBean(SessionRevocationService.class);
+        MockHttpSession sessionOnA = loggedIn(42, serviceA);
+        MockHttpSession sessionOnB = loggedIn(42, serviceB);
+        MockHttpSession otherUser = loggedIn(43, serviceB);
+
+        serviceA.revokeSessions(42);
+        assertTrue(filter(nodeA, sessionOnA).isInvalid());
+        assertFalse(filter(nodeB, sessionOnB).isInvalid());
+
+        serviceB.pollRevocations();
+        assertTrue(filter(nodeB, sessionOnB).isInvalid());
+        assertFalse(filter(nodeB, otherUser).isInvalid());
+
+        // Logging in again issues a session with the new epoch
+        assertFalse(filter(nodeB, loggedIn(42, serviceB)).isInvalid());
+    }
+
+    @Test
+    void revokingAgainMovesTheEpochPastBothNodes() {
+        SessionRevocationService serviceA = nodeA.getBean(SessionRevocationService.class);
+        SessionRevocationService serviceB = nodeB.getBean(SessionRevocationService.class);
+
+        serviceA.revokeSessions(7);
+        serviceB.revokeSessions(7);
+        serviceA.pollRevocations();
+        assertEquals(2, serviceA.currentEpoch(7));
+        assertTrue(serviceA.isRevoked(7, 1));
+        assertFalse(serviceA.isRevoked(7, 2));
+
+        // Ids are no longer array indexes, so large ones cost nothing
+        serviceA.revokeSessions(Integer.MAX_VALUE);
+        serviceB.pollRevocations();
+        assertEquals(1, serviceB.currentEpoch(Integer.MAX_VALUE));
+        assertEquals(0, serviceB.currentEpoch(8));
+        assertEquals(2, nodeA.getBean(SessionRevocationRepository.class).count());
+    }
+
+    private static MockHttpSession loggedIn(int userId, SessionRevocationService service) {
+        MockHttpSession session = new MockHttpSession();
+        session.setAttribute("userId", userId);
+        session.setAttribute(SessionRevocationService.SESSION_EPOCH_ATTRIBUTE, service.currentEpoch(userId));
+        return session;
+    }
+
+    private static MockHttpSession filter(AnnotationConfigApplicationContext node, MockHttpSession session)
+            throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setSession(session);
+        node.getBean(SessionRevocationFilter.class).doFilter(request, new MockHttpServletResponse(), new MockFilterChain());
+        return session;
+    }
+
+    @Configuration
+    @Import({SessionRevocationService.class, SessionRevocationFilter.class})
+    @EnableJpaRepositories(basePackageClasses = SessionRevocationRepository.class,
+            includeFilters = @ComponentScan.Filter(type = FilterType.ASSIGNABLE_TYPE,
+                    classes = SessionRevocationRepository.class))
+    static class SharedDatabaseConfig {
+
+        @Bean
+        DataSource dataSource() {
+            return new DriverManagerDataSource("jdbc:h2:mem:revocations;MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "");
+        }
+
+        @Bean
+        JdbcTemplate jdbcTemplate(DataSource dataSource) {
+            return new JdbcTemplate(dataSource);
+        }
+
+        @Bean
+        LocalContainerEntityManagerFactoryBean entityManagerFactory(DataSource dataSource) {
+            LocalContainerEntityManagerFactoryBean factory = new LocalContainerEntityManagerFactoryBean();
+            factory.setDataSource(dataSource);
+            factory.setPackagesToScan(SessionRevocation.class.getPackageName());
+            factory.setJpaVendorAdapter(new HibernateJpaVendorAdapter());
+            factory.setJpaPropertyMap(Map.of(
+                    "hibernate.dialect", "org.hibernate.dialect.H2Dialect",
+                    "hibernate.hbm2ddl.auto", "update"));
+            return factory;
+        }
+
+        @Bean
+        PlatformTransactionManager transactionManager(EntityManagerFactory entityManagerFactory) {
+            return new JpaTransactionManager(entityManagerFactory);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.notevault.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SingleFlightTests {
+
+    private SingleFlight singleFlight;
+    private ExecutorService executor;
+
+    @BeforeEach
+    void setUp() {
+        singleFlight = new SingleFlight();
+        ReflectionTestUtils.setField(singleFlight, "timeoutMs", 5000L);
+        executor = Executors.newFixedThreadPool(8);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void concurrentCallersShareOneLoad() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger loads = new AtomicInteger();
+        List<Future<String>> results = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            results.add(executor.submit(() -> singleFlight.execute("board:1", () -> {
+                loads.incrementAndGet();
+                await(release);
+                return "notes";
+            })));
+        }
+        waitFor(() -> stats("board").getCoalesced() == 7);
+        assertEquals(1, stats("board").getInFlight());
+        release.countDown();
+
+        for (Future<String> result : results) {
+            assertEquals("notes", result.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, loads.get());
+        assertEquals(1, stats("board").getExecuted());
+
+        // Once the load is done, the next caller runs a new one
+        assertEquals("fresh", singleFlight.execute("board:1", () -> "fresh"));
+        assertEquals(2, stats("board").getExecuted());
+    }
+
+    @Test
+    void waitersGiveUpAfterTimeoutAndFailuresAreShared() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        Future<String> stuck = executor.submit(() -> singleFlight.execute("feed:1", () -> {
+            await(release);
+            throw new IllegalStateException("database down");
+        }));
+        waitFor(() -> stats("feed").getInFlight() == 1);
+
+        assertEquals("own", singleFlight.execute("feed:1", 50, () -> "own"));
+        assertEquals(1, stats("feed").getTimedOut());
+
+        Future<String> waiting = executor.submit(() -> singleFlight.execute("feed:1", () -> "unused"));
+        waitFor(() -> stats("feed").getCoalesced() == 2);
+        release.countDown();
+        Exception failure = assertThrows(Exception.class, () -> waiting.get(5, TimeUnit.SECONDS));
+        assertTrue(failure.getCause() instanceof IllegalStateException);
+        assertThrows(Exception.class, () -> stuck.get(5, TimeUnit.SECONDS));
+        assertEquals(1, stats("feed").getFailed());
+    }
+
+    @Test
+    void forgottenLoadsAreNotJoined() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        Future<String> before = executor.submit(() -> singleFlight.execute("board:1", () -> {
+            await(release);
+            return "before write";
+        }));
+        waitFor(() -> stats("board").getInFlight() == 1);
+
+        singleFlight.forget("board:");
+        assertEquals("after write", singleFlight.execute("board:1", () -> "after write"));
+        release.countDown();
+        assertEquals("before write", before.get(5, TimeUnit.SECONDS));
+        assertEquals(0, stats("board").getCoalesced());
+    }
+
+    private SingleFlight.Stats stats(String namespace) {
+        return singleFlight.getStats().getOrDefault(namespace, new SingleFlight.Stats());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "Timed out waiting");
+            Thread.sleep(5);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.notevault.service;
+
+import com.notevault.repository.UserStorageUsageRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class StorageAccountingServiceTests {
+
+    private static final int USER_ID = 1;
+    private static final long GENERATION = 3L;
+
+    @Mock
+    private UserStorageUsageRepository userStorageUsageRepository;
+
+    @InjectMocks
+    private StorageAccountingService storageAccountingService;
+
+    @Test
+    void recordsDuringFlushAreNotLost() throws Exception {
+        AtomicLong flushedBytes = new AtomicLong();
+        AtomicLong flushedObjects = new AtomicLong();
+        when(userStorageUsageRepository.addUsage(eq(GENERATION), eq(USER_ID), anyLong(), anyLong())).thenAnswer(invocation -> {
+            flushedBytes.addAndGet(invocation.getArgument(2));
+            flushedObjects.addAndGet(invocation.getArgument(3));
+            return 1;
+        });
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        AtomicBoolean recording = new AtomicBoolean(true);
+        try {
+            Future<?> flusher = executor.submit(() -> {
+                while (recording.get()) {
+                    storageAccountingService.flush();
+                }
+            });
+            Future<?>[] recorders = new Future<?>[3];
+            for (int i = 0; i < recorders.length; i++) {
+                recorders[i] = executor.submit(() -> {
+                    for (int n = 0; n < 100_000; n++) {
+                        storageAccountingService.record(GENERATION, USER_ID, 10, 1);
+                    }
+                });
+            }
+            for (Future<?> recorder : recorders) {
+                recorder.get();
+            }
+            recording.set(false);
+            flusher.get();
+        } finally {
+            executor.shutdown();
+        }
+        storageAccountingService.flush();
+
+        assertEquals(3_000_000L, flushedBytes.get());
+        assertEquals(300_000L, flushedObjects.get());
+    }
+
+    @Test
+    void usageIsCountedWhileItIsBeingFlushed() {
+        AtomicLong seenDuringFlush = new AtomicLong();
+        when(userStorageUsageRepository.findById(USER_ID)).thenReturn(Optional.empty());
+        when(userStorageUsageRepository.addUsage(GENERATION, USER_ID, 100L, 1L)).thenAnswer(invocation -> {
+            // Not committed yet, so quota checks must still see it as pending
+            seenDuringFlush.set(storageAccountingService.getUsage(USER_ID).getBytesUsed());
+            return 1;
+        });
+        storageAccountingService.record(GENERATION, USER_ID, 100, 1);
+        storageAccountingService.flush();
+        assertEquals(100L, seenDuringFlush.get());
+    }
+
+    @Test
+    void failedFlushKeepsTheDelta() {
+        when(userStorageUsageRepository.addUsage(GENERATION, USER_ID, 100L, 1L)).thenThrow(new RuntimeException("Deadlock"));
+        when(userStorageUsageRepository.findById(USER_ID)).thenReturn(Optional.empty());
+        storageAccountingService.record(GENERATION, USER_ID, 100, 1);
+        storageAccountingService.flush();
+        assertEquals(100L, storageAccountingService.getUsage(USER_ID).getBytesUsed());
+
+        storageAccountingService.record(GENERATION, USER_ID, 50, 1);
+        when(userStorageUsageRepository.addUsage(GENERATION, USER_ID, 150L, 2L)).thenReturn(1);
+        storageAccountingService.flush();
+        verify(userStorageUsageRepository).addUsage(GENERATION, USER_ID, 150L, 2L);
+        assertEquals(0L, storageAccountingService.getUsage(USER_ID).getBytesUsed());
+    }
+
+    @Test
+    void deltasOfARecalculatedGenerationAreDropped() {
+        when(userStorageUsageRepository.findById(USER_ID)).thenReturn(Optional.empty());
+        // Another node recalculated, so the conditional insert finds no current generation row
+        when(userStorageUsageRepository.addUsage(GENERATION, USER_ID, 100L, 1L)).thenReturn(0);
+        storageAccountingService.record(GENERATION, USER_ID, 100, 1);
+        storageAccountingService.flush();
+        assertEquals(0L, storageAccountingService.getUsage(USER_ID).getBytesUsed());
+
+        storageAccountingService.flush();
+        verify(userStorageUsageRepository).addUsage(GENERATION, USER_ID, 100L, 1L);
+    }
+
+    @Test
+    void olderGenerationsAreNotFlushedOnceANewerOneIsRecorded() {
+        when(userStorageUsageRepository.findById(USER_ID)).thenReturn(Optional.empty());
+        when(userStorageUsageRepository.addUsage(GENERATION + 1, USER_ID, 50L, 1L)).thenReturn(1);
+        storageAccountingService.record(GENERATION, USER_ID, 100, 1);
+        storageAccountingService.record(GENERATION + 1, USER_ID, 50, 1);
+        assertEquals(50L, storageAccountingService.getUsage(USER_ID).getBytesUsed());
+
+        storageAccountingService.flush();
+        verify(userStorageUsageRepository, never()).addUsage(eq(GENERATION), eq(USER_ID), anyLong(), anyLong());
+        verify(userStorageUsageRepository).addUsage(GENERATION + 1, USER_ID, 50L, 1L);
+    }
+
+    @Test
+    void recalculationMovesToTheNextGenerationBeforeRebuilding() {
+        storageAccountingService.recalculate();
+        InOrder inOrder = inOrder(userStorageUsageRepository);
+        inOrder.verify(userStorageUsageRepository).nextGeneration();
+        inOrder.verify(userStorageUsageRepository).resetUsage();
+        inOrder.verify(userStorageUsageRepository).recalculateFromReferences();
+    }
+}
@@ -0,0 +1,225 @@
+package com.notevault.service;
+
+import com.notevault.invalidation.InvalidationEvent;
+import com.notevault.model.User;
+import com.notevault.repository.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class TagFacetServiceTests {
+
+    private static final Map<Integer, String> USERNAMES = Map.of(1, "alice", 2, "bob", 3, "carol");
+
+    @Mock
+    private UserRepository users;
+
+    private JdbcTemplate jdbcTemplate;
+    private TagFacetService tagFacetService;
+    // Runs once the rebuild has read its first note
+    private Runnable afterFirstNoteRead;
+    // Runs once the rebuild has read all notes, just before it swaps in the new counts
+    private Runnable afterLastNoteRead;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = new JdbcTemplate(new DriverManagerDataSource(
+                "jdbc:h2:mem:tags;MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "")) {
+            @Override
+            public void query(String sql, RowCallbackHandler rch) {
+                super.query(sql, rs -> {
+                    rch.processRow(rs);
+                    if (afterFirstNoteRead != null && rs.getRow() == 1) {
+                        afterFirstNoteRead.run();
+                    }
+                });
+                if (afterLastNoteRead != null) {
+                    afterLastNoteRead.run();
+                }
+            }
+        };
+        jdbcTemplate.execute("CREATE TABLE nutzer (id INT PRIMARY KEY, benutzername VARCHAR(20))");
+        jdbcTemplate.execute("CREATE TABLE notiz (N_id INT AUTO_INCREMENT PRIMARY KEY, B_id INT, Tag VARCHAR(255), " +
+                "note_type VARCHAR(20), color VARCHAR(20), privacy_level VARCHAR(20), shared_with VARCHAR(255))");
+        USERNAMES.forEach((id, name) -> jdbcTemplate.update("INSERT INTO nutzer VALUES (?, ?)", id, name));
+
+        when(users.findById(anyInt())).thenAnswer(invocation -> {
+            User user = new User();
+            user.setId(invocation.getArgument(0));
+            user.setUsername(USERNAMES.get(invocation.getArgument(0)));
+            return Optional.of(user);
+        });
+        tagFacetService = new TagFacetService(jdbcTemplate, users);
+    }
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.execute("DROP ALL OBJECTS");
+    }
+
+    @Test
+    void countsOnlyNotesTheUserCanSee() {
+        insert(1, "work, Urgent", "text", "private", null);
+        insert(1, "work", "code", "some_people", "bob, alice");
+        insert(2, "urgent", "text", "everyone", null);
+        insert(3, "secret", "rich", "private", null);
+        tagFacetService.rebuild();
+
+        Map<String, Object> alice = tagFacetService.getFacets(1, null, 10);
+        assertEquals(3, alice.get("totalNotes"));
+        assertEquals(List.of(Map.of("tag", "urgent", "count", 2), Map.of("tag", "work", "count", 2)),
+                lowerCaseTags(alice));
+
+        Map<String, Object> bob = tagFacetService.getFacets(2, null, 10);
+        assertEquals(2, bob.get("totalNotes"));
+        assertEquals(Map.of("code", 1, "text", 1), facet(bob, "noteType"));
+        assertEquals(Map.of("everyone", 1, "some_people", 1), facet(bob, "privacyLevel"));
+
+        assertEquals(List.of(Map.of("tag", "secret", "count", 1)), tagFacetService.getFacets(3, "SE", 10).get("tags"));
+    }
+
+    @Test
+    void followsChangesIncludingVisibility() {
+        tagFacetService.rebuild();
+        TagFacetService.NoteFacets draft = new TagFacetService.NoteFacets(1, "alice", "plans", "text", "#FFF", "private", null);
+        tagFacetService.noteChanged(1, null, draft);
+        assertEquals(0, tagFacetService.getFacets(2, null, 10).get("totalNotes"));
+
+        TagFacetService.NoteFacets shared = new TagFacetService.NoteFacets(1, "alice", "plans", "text", "#FFF", "some_people", "bob");
+        tagFacetService.noteChanged(1, draft, shared);
+        assertEquals(List.of(Map.of("tag", "plans", "count", 1)), tagFacetService.getFacets(2, "pl", 10).get("tags"));
+        assertEquals(1, tagFacetService.getFacets(1, null, 10).get("totalNotes"));
+
+        tagFacetService.noteChanged(1, shared, null);
+        assertEquals(List.of(), tagFacetService.getFacets(2, null, 10).get("tags"));
+        assertEquals(List.of(), tagFacetService.getFacets(1, null, 10).get("tags"));
+    }
+
+    @Test
+    void changesMadeDuringRebuildAreKept() {
+        insert(1, "work", "text", "private", null);
+        insert(1, "draft", "text", "private", null);
+        insert(1, "old", "text", "private", null);
+        tagFacetService.rebuild();
+
+        TagFacetService.NoteFacets work = new TagFacetService.NoteFacets(1, "alice", "work", "text", "#fef3c7", "private", null);
+        TagFacetService.NoteFacets draft = new TagFacetService.NoteFacets(1, "alice", "draft", "text", "#fef3c7", "private", null);
+        TagFacetService.NoteFacets old = new TagFacetService.NoteFacets(1, "alice", "old", "text", "#fef3c7", "private", null);
+        TagFacetService.NoteFacets done = new TagFacetService.NoteFacets(1, "alice", "done", "text", "#fef3c7", "private", null);
+        TagFacetService.NoteFacets created = new TagFacetService.NoteFacets(1, "alice", "new", "text", "#fef3c7", "private", null);
+        afterFirstNoteRead = () -> {
+            // Note 1 was counted already; notes 2 and 3 are still to be read, note 4 is new
+            tagFacetService.noteChanged(1, work, done);
+            tagFacetService.noteChanged(2, draft, done);
+            tagFacetService.noteChanged(3, old, null);
+            tagFacetService.noteChanged(4, null, created);
+        };
+        tagFacetService.rebuild();
+
+        assertEquals(3, tagFacetService.getFacets(1, null, 10).get("totalNotes"));
+        assertEquals(List.of(Map.of("tag", "done", "count", 2), Map.of("tag", "new", "count", 1)),
+                tagFacetService.getFacets(1, null, 10).get("tags"));
+    }
+
+    @Test
+    void changeInFlightDuringTheSwapIsCountedOnce() throws Exception {
+        insert(1, "work", "text", "private", null);
+        tagFacetService.rebuild();
+
+        CountDownLatch counting = new CountDownLatch(1);
+        TagFacetService.NoteFacets created = new TagFacetService.NoteFacets(1, "alice", "new", "text", "#fef3c7", "private", null) {
+            @Override
+            String privacyLevel() {
+                // Holds the change halfway through being counted while the rebuild tries to swap
+                counting.countDown();
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.privacyLevel();
+            }
+        };
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            AtomicReference<Future<?>> change = new AtomicReference<>();
+            afterLastNoteRead = () -> {
+                insert(1, "new", "text", "private", null);
+                change.set(executor.submit(() -> tagFacetService.noteChanged(2, null, created)));
+                try {
+                    counting.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            };
+            tagFacetService.rebuild();
+            change.get().get();
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(2, tagFacetService.getFacets(1, null, 10).get("totalNotes"));
+        assertEquals(List.of(Map.of("tag", "new", "count", 1), Map.of("tag", "work", "count", 1)),
+                tagFacetService.getFacets(1, null, 10).get("tags"));
+    }
+
+    @Test
+    void rebuildsOnceAfterChangesFromOtherNodes() {
+        insert(1, "work", "text", "private", null);
+        tagFacetService.rebuild();
+        tagFacetService.rebuildIfStale();
+
+        insert(1, "new", "text", "private", null);
+        insert(1, "new", "text", "private", null);
+        tagFacetService.onInvalidation(InvalidationEvent.note(2, 1, false));
+        tagFacetService.onInvalidation(InvalidationEvent.note(3, 1, false));
+        assertEquals(1, tagFacetService.getFacets(1, null, 10).get("totalNotes"));
+
+        tagFacetService.rebuildIfStale();
+        assertEquals(List.of(Map.of("tag", "new", "count", 2), Map.of("tag", "work", "count", 1)),
+                tagFacetService.getFacets(1, null, 10).get("tags"));
+        tagFacetService.onInvalidation(InvalidationEvent.user(1));
+        jdbcTemplate.update("DELETE FROM notiz");
+        tagFacetService.rebuildIfStale();
+        assertEquals(3, tagFacetService.getFacets(1, null, 10).get("totalNotes"));
+    }
+
+    private void insert(int userId, String tag, String type, String privacyLevel, String sharedWith) {
+        jdbcTemplate.update("INSERT INTO notiz (B_id, Tag, note_type, color, privacy_level, shared_with) " +
+                "VALUES (?, ?, ?, '#fef3c7', ?, ?)", userId, tag, type, privacyLevel, sharedWith);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Map<String, Object>> lowerCaseTags(Map<String, Object> facets) {
+        List<Map<String, Object>> tags = (List<Map<String, Object>>) facets.get("tags");
+        return tags.stream()
+                .map(tag -> Map.of("tag", ((String) tag.get("tag")).toLowerCase(), "count", tag.get("count")))
+                .toList();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Integer> facet(Map<String, Object> facets, String name) {
+        return (Map<String, Integer>) ((Map<String, Object>) facets.get("facets")).get(name);
+    }
+}
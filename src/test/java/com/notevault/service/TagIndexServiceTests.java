@@ -0,0 +1,151 @@
+package com.notevault.service;
+
+import com.notevault.invalidation.InvalidationEvent;
+import com.notevault.model.User;
+import com.notevault.repository.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class TagIndexServiceTests {
+
+    private static final Map<Integer, String> USERNAMES = Map.of(1, "alice", 2, "bob");
+
+    @Mock
+    private UserRepository users;
+
+    private JdbcTemplate jdbcTemplate;
+    private TagIndexService tagIndexService;
+    // Runs after the rebuild has read the notes but before it reads their tags
+    private Runnable afterNotesRead;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = new JdbcTemplate(new DriverManagerDataSource(
+                "jdbc:h2:mem:tagindex;MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "")) {
+            @Override
+            public void query(String sql, RowCallbackHandler rch) {
+                super.query(sql, rch);
+                if (afterNotesRead != null && sql.startsWith("SELECT N_id, B_id")) {
+                    afterNotesRead.run();
+                }
+            }
+        };
+        jdbcTemplate.execute("CREATE TABLE notiz (N_id INT PRIMARY KEY, B_id INT, Tag VARCHAR(255), " +
+                "privacy_level VARCHAR(20), shared_with VARCHAR(255))");
+        jdbcTemplate.execute("CREATE TABLE tags (id INT AUTO_INCREMENT PRIMARY KEY, name VARCHAR(100) UNIQUE)");
+        jdbcTemplate.execute("CREATE TABLE note_tags (id BIGINT AUTO_INCREMENT PRIMARY KEY, note_id INT, tag_id INT, " +
+                "UNIQUE (note_id, tag_id))");
+
+        when(users.findById(anyInt())).thenAnswer(invocation -> {
+            User user = new User();
+            user.setId(invocation.getArgument(0));
+            user.setUsername(USERNAMES.get(invocation.getArgument(0)));
+            return Optional.of(user);
+        });
+        tagIndexService = new TagIndexService(jdbcTemplate, users);
+    }
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.execute("DROP ALL OBJECTS");
+    }
+
+    @Test
+    void backfillsExistingNotesAndEvaluatesExpressions() {
+        insert(1, 1, "work, urgent", "private", null);
+        insert(2, 1, "work, done", "private", null);
+        insert(3, 1, "Work", "private", null);
+        insert(4, 2, "work, urgent", "private", null);
+        insert(5, 2, "to do, urgent", "some_people", "alice");
+        insert(6, 2, "urgent", "everyone", null);
+        tagIndexService.rebuild();
+
+        assertEquals(10, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM note_tags", Integer.class));
+        assertEquals(4, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM tags", Integer.class));
+        assertArrayEquals(new int[] {1, 2, 3}, tagIndexService.findNoteIds(1, "work"));
+        assertArrayEquals(new int[] {1}, tagIndexService.findNoteIds(1, "work AND urgent AND NOT done"));
+        assertArrayEquals(new int[] {1, 2, 5, 6}, tagIndexService.findNoteIds(1, "urgent OR done"));
+        assertArrayEquals(new int[] {5, 6}, tagIndexService.findNoteIds(1, "urgent NOT work"));
+        assertArrayEquals(new int[] {5}, tagIndexService.findNoteIds(1, "\"To Do\" (urgent OR missing)"));
+        assertArrayEquals(new int[] {3, 5, 6}, tagIndexService.findNoteIds(1, "NOT (done OR urgent AND work)"));
+        assertArrayEquals(new int[] {4, 6}, tagIndexService.findNoteIds(2, "urgent AND NOT \"to do\""));
+        assertThrows(RuntimeException.class, () -> tagIndexService.findNoteIds(1, "work AND (urgent"));
+        assertThrows(RuntimeException.class, () -> tagIndexService.findNoteIds(1, "OR work"));
+    }
+
+    @Test
+    void followsTagAndVisibilityChanges() {
+        tagIndexService.rebuild();
+        TagFacetService.NoteFacets draft = new TagFacetService.NoteFacets(2, "bob", "plans", "text", null, "private", null);
+        tagIndexService.noteChanged(10, null, draft);
+        assertArrayEquals(new int[] {}, tagIndexService.findNoteIds(1, "plans"));
+
+        TagFacetService.NoteFacets shared = new TagFacetService.NoteFacets(2, "bob", "plans, q3", "text", null, "some_people", "alice");
+        tagIndexService.noteChanged(10, draft, shared);
+        assertArrayEquals(new int[] {10}, tagIndexService.findNoteIds(1, "plans q3"));
+        assertEquals(2, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM note_tags WHERE note_id = 10", Integer.class));
+
+        tagIndexService.noteChanged(10, shared, null);
+        assertArrayEquals(new int[] {}, tagIndexService.findNoteIds(2, "plans"));
+        assertEquals(0, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM note_tags WHERE note_id = 10", Integer.class));
+    }
+
+    @Test
+    void changesMadeDuringRebuildAreKept() {
+        insert(1, 1, "work", "private", null);
+        tagIndexService.rebuild();
+
+        TagFacetService.NoteFacets created = new TagFacetService.NoteFacets(1, "alice", "work", "text", null, "private", null);
+        afterNotesRead = () -> {
+            insert(2, 1, "work", "private", null);
+            tagIndexService.noteChanged(2, null, created);
+        };
+        tagIndexService.rebuild();
+        assertArrayEquals(new int[] {1, 2}, tagIndexService.findNoteIds(1, "work"));
+    }
+
+    @Test
+    void followsChangesFromOtherNodes() {
+        tagIndexService.rebuild();
+        TagIndexService otherNode = new TagIndexService(jdbcTemplate, users);
+
+        // The other node writes the row and its note_tags, then publishes the change
+        insert(10, 2, "plans", "some_people", "alice");
+        TagFacetService.NoteFacets shared = new TagFacetService.NoteFacets(2, "bob", "plans", "text", null, "some_people", "alice");
+        otherNode.noteChanged(10, null, shared);
+        tagIndexService.onInvalidation(InvalidationEvent.note(10, 2, false));
+        assertArrayEquals(new int[] {10}, tagIndexService.findNoteIds(1, "plans"));
+
+        jdbcTemplate.update("UPDATE notiz SET Tag = 'done', privacy_level = 'private', shared_with = NULL WHERE N_id = 10");
+        otherNode.noteChanged(10, shared, new TagFacetService.NoteFacets(2, "bob", "done", "text", null, "private", null));
+        tagIndexService.onInvalidation(InvalidationEvent.note(10, 2, false));
+        assertArrayEquals(new int[] {}, tagIndexService.findNoteIds(1, "plans OR done"));
+        assertArrayEquals(new int[] {10}, tagIndexService.findNoteIds(2, "done NOT plans"));
+
+        jdbcTemplate.update("DELETE FROM notiz WHERE N_id = 10");
+        tagIndexService.onInvalidation(InvalidationEvent.note(10, 2, false));
+        assertArrayEquals(new int[] {}, tagIndexService.findNoteIds(2, "done"));
+    }
+
+    private void insert(int id, int userId, String tag, String privacyLevel, String sharedWith) {
+        jdbcTemplate.update("INSERT INTO notiz (N_id, B_id, Tag, privacy_level, shared_with) VALUES (?, ?, ?, ?, ?)",
+                id, userId, tag, privacyLevel, sharedWith);
+    }
+}
@@ -0,0 +1,49 @@
+package com.notevault.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TextDeltaTests {
+
+    @Test
+    void diffAppliesAndSerializes() {
+        TextDelta delta = TextDelta.diff("Hello world", "Hello, brave world");
+        assertEquals(new TextDelta(5, 0, ", brave"), delta);
+        assertEquals("Hello, brave world", TextDelta.parse(delta.serialize()).apply("Hello world"));
+        assertEquals("a,b", TextDelta.parse(new TextDelta(0, 1, "a,b").serialize()).apply("x"));
+    }
+
+    @Test
+    void rebasesEditsAroundConcurrentEdits() {
+        String base = "The quick fox";
+        // Concurrent: "quick" -> "slow", then append
+        List<TextDelta> concurrent = List.of(new TextDelta(4, 5, "slow"), new TextDelta(12, 0, " jumps"));
+        // Client: insert "brown " before "fox", then delete "The "
+        List<TextDelta> ops = List.of(new TextDelta(10, 0, "brown "), new TextDelta(0, 4, ""));
+
+        String server = base;
+        for (TextDelta delta : concurrent) {
+            server = delta.apply(server);
+        }
+        for (TextDelta delta : TextDelta.rebase(ops, concurrent)) {
+            server = delta.apply(server);
+        }
+        assertEquals("slow brown fox jumps", server);
+    }
+
+    @Test
+    void concurrentInsertsAtTheSamePositionKeepTheEarlierFirst() {
+        List<TextDelta> rebased = TextDelta.rebase(List.of(new TextDelta(3, 0, "B")), List.of(new TextDelta(3, 0, "A")));
+        assertEquals("abcAB", rebased.get(0).apply(new TextDelta(3, 0, "A").apply("abc")));
+    }
+
+    @Test
+    void overlappingDeleteReplacesTheConcurrentEdit() {
+        TextDelta applied = new TextDelta(2, 3, "XY");
+        List<TextDelta> rebased = TextDelta.rebase(List.of(new TextDelta(0, 4, "")), List.of(applied));
+        assertEquals("fgh", rebased.get(0).apply(applied.apply("abcdefgh")));
+    }
+}
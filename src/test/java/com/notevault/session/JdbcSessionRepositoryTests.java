@@ -0,0 +1,144 @@
+package com.notevault.session;
+
+import com.notevault.config.SessionStoreConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import javax.sql.DataSource;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JdbcSessionRepositoryTests {
+
+    private AnnotationConfigApplicationContext nodeA;
+    private AnnotationConfigApplicationContext nodeB;
+
+    @BeforeEach
+    void startNodes() {
+        nodeA = startNode();
+        nodeB = startNode();
+    }
+
+    @AfterEach
+    void stopNodes() {
+        nodeA.getBean(JdbcTemplate.class).execute("DROP ALL OBJECTS");
+        nodeA.close();
+        nodeB.close();
+    }
+
+    @Test
+    void sessionCreatedOnOneNodeIsVisibleOnTheOther() {
+        JdbcSessionRepository repositoryA = nodeA.getBean(JdbcSessionRepository.class);
+        JdbcSessionRepository repositoryB = nodeB.getBean(JdbcSessionRepository.class);
+
+        NoteVaultSession session = repositoryA.createSession();
+        session.setAttribute("userId", 42);
+        session.setAttribute("username", "alice");
+        session.setAttribute("isAdmin", false);
+        repositoryA.save(session);
+
+        NoteVaultSession loaded = repositoryB.findById(session.getId());
+        assertNotNull(loaded);
+        assertEquals(42, (Integer) loaded.getAttribute("userId"));
+        assertEquals("alice", loaded.getAttribute("username"));
+        assertEquals(false, loaded.getAttribute("isAdmin"));
+    }
+
+    @Test
+    void attributeChangeOnOneNodeRefreshesTheOthersNearCache() {
+        JdbcSessionRepository repositoryA = nodeA.getBean(JdbcSessionRepository.class);
+        JdbcSessionRepository repositoryB = nodeB.getBean(JdbcSessionRepository.class);
+
+        NoteVaultSession session = repositoryA.createSession();
+        session.setAttribute("userId", 7);
+        session.setAttribute("isAdmin", true);
+        repositoryA.save(session);
+        assertEquals(true, repositoryA.findById(session.getId()).getAttribute("isAdmin"));
+
+        NoteVaultSession onB = repositoryB.findById(session.getId());
+        onB.setAttribute("isAdmin", false);
+        onB.removeAttribute("userId");
+        repositoryB.save(onB);
+
+        NoteVaultSession onA = repositoryA.findById(session.getId());
+        assertEquals(false, onA.getAttribute("isAdmin"));
+        assertNull(onA.getAttribute("userId"));
+    }
+
+    @Test
+    void changedSessionIdIsVisibleOnTheOtherNode() {
+        JdbcSessionRepository repositoryA = nodeA.getBean(JdbcSessionRepository.class);
+        JdbcSessionRepository repositoryB = nodeB.getBean(JdbcSessionRepository.class);
+
+        NoteVaultSession session = repositoryA.createSession();
+        session.setAttribute("userId", 3);
+        repositoryA.save(session);
+        String oldId = session.getId();
+
+        session.changeSessionId();
+        repositoryA.save(session);
+
+        assertNull(repositoryB.findById(oldId));
+        assertEquals(3, (Integer) repositoryB.findById(session.getId()).getAttribute("userId"));
+    }
+
+    @Test
+    void expiredSessionsAreRemovedInBatches() {
+        JdbcSessionRepository repositoryA = nodeA.getBean(JdbcSessionRepository.class);
+        JdbcSessionRepository repositoryB = nodeB.getBean(JdbcSessionRepository.class);
+        JdbcTemplate jdbcTemplate = nodeA.getBean(JdbcTemplate.class);
+
+        for (int i = 0; i < 5; i++) {
+            NoteVaultSession session = repositoryA.createSession();
+            session.setAttribute("userId", i);
+            session.setLastAccessedTime(Instant.now().minusSeconds(3600));
+            repositoryA.save(session);
+        }
+        NoteVaultSession active = repositoryA.createSession();
+        active.setAttribute("userId", 99);
+        repositoryA.save(active);
+
+        repositoryB.cleanUpExpiredSessions();
+
+        assertEquals(1, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM nv_session", Integer.class));
+        assertEquals(1, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM nv_session_attributes", Integer.class));
+        assertNotNull(repositoryA.findById(active.getId()));
+    }
+
+    private AnnotationConfigApplicationContext startNode() {
+        AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("app.session.store", "jdbc");
+        properties.put("app.session.cleanup-batch-size", "2");
+        context.getEnvironment().getPropertySources().addFirst(new MapPropertySource("test", properties));
+        context.register(SharedDatabaseConfig.class);
+        context.refresh();
+        return context;
+    }
+
+    @Configuration
+    @Import(SessionStoreConfig.class)
+    static class SharedDatabaseConfig {
+
+        @Bean
+        DataSource dataSource() {
+            return new DriverManagerDataSource("jdbc:h2:mem:sessions;MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "");
+        }
+
+        @Bean
+        JdbcTemplate jdbcTemplate(DataSource dataSource) {
+            return new JdbcTemplate(dataSource);
+        }
+    }
+}